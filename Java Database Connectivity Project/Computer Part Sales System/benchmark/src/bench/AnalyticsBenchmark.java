@@ -0,0 +1,73 @@
+/*
+ * ColumnStore scans over synthetic sales (10M transactions by default, no database), once per number of
+ * scan threads, so the results show how the parallel scan scales with the cores it is given. The manager
+ * reports as scans, plus an ad-hoc grouping by two columns.
+ * by Jeffery
+ */
+
+package bench;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyticsBenchmark {
+
+    @Param({"10000000"})
+    public int transactions;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Object category;
+    private Object salesperson;
+    private LocalDate from;
+    private LocalDate to;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        App.setStatic("ColumnStore", "parallelism", threads);
+        App.ANALYTICS_SYNTHETIC.invoke(transactions, 5000, 500, 42L);
+        category = App.constant("ColumnStore$Column", "CATEGORY");
+        salesperson = App.constant("ColumnStore$Column", "SALESPERSON");
+        to = LocalDate.now();
+        from = to.minusDays(180);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        App.ANALYTICS_INVALIDATE.invoke();
+    }
+
+    @Benchmark
+    public Object salesByExperience() throws Throwable {
+        return App.ANALYTICS_BY_EXPERIENCE.invoke(0, 10);
+    }
+
+    @Benchmark
+    public Object salesByManufacturer() throws Throwable {
+        return App.ANALYTICS_BY_MANUFACTURER.invoke();
+    }
+
+    @Benchmark
+    public Object popularParts() throws Throwable {
+        return App.ANALYTICS_POPULAR_PARTS.invoke(10);
+    }
+
+    @Benchmark
+    public Object salesInRange() throws Throwable {
+        return App.ANALYTICS_IN_RANGE.invoke(category, from, to);
+    }
+
+    @Benchmark
+    public Object revenueByCategoryAndSalesperson() throws Throwable {
+        return App.ANALYTICS_BY.invoke(category, salesperson);
+    }
+}
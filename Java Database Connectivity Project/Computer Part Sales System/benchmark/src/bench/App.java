@@ -0,0 +1,149 @@
+/*
+ * The sales system's entry points as seen by the benchmarks.
+ * - JMH does not accept benchmarks in the default package, and a class in a named package cannot refer to the
+ *   default-package classes of the application, so they are reached through method handles looked up once by
+ *   name. The handles are static finals: the JIT inlines them like direct calls.
+ * - Package-private members (AdminOperations.resetCaches, TableDumper.console, ...) are opened with
+ *   setAccessible; everything runs on the class path, in the same unnamed module.
+ * by Jeffery
+ */
+
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.util.Scanner;
+import java.util.function.Predicate;
+
+final class App {
+
+    static final MethodHandle CONFIGURE = method("DBConnection", "configure", String.class, String.class, String.class);
+    static final MethodHandle CONFIGURE_READ = method("DBConnection", "configureRead", String.class, String.class, String.class);
+    static final MethodHandle SHUTDOWN = method("DBConnection", "shutdown");
+    static final MethodHandle GET_CONNECTION = method("DBConnection", "getConnection");
+    static final MethodHandle SHARDS_CONFIGURE = method("Shards", "configure", String[].class, String.class, String.class);
+    static final MethodHandle SHARDS_LOAD_DATA = method("Shards", "loadData", String.class, Predicate.class);
+
+    static final MethodHandle CREATE_TABLES = method("AdminOperations", "createTables");
+    static final MethodHandle RESET_CACHES = method("AdminOperations", "resetCaches");
+    static final MethodHandle REBUILD_SUMMARIES = method("SalesAggregates", "rebuild");
+    static final MethodHandle POPULAR_PARTS_WARM_UP = method("PopularParts", "warmUp");
+    static final MethodHandle LOAD_CATEGORY = method("AdminOperations", "loadCategory", String.class);
+    static final MethodHandle LOAD_MANUFACTURER = method("AdminOperations", "loadManufacturer", String.class);
+    static final MethodHandle LOAD_PART = method("AdminOperations", "loadPart", String.class);
+    static final MethodHandle LOAD_SALESPERSON = method("AdminOperations", "loadSalesperson", String.class);
+    static final MethodHandle LOAD_TRANSACTION = method("AdminOperations", "loadTransaction", String.class);
+    static final MethodHandle LOAD_DATA = method("AdminOperations", "loadData", String.class);
+    static final MethodHandle BULK_LOAD_DATA = method("BulkLoader", "loadData", String.class);
+    static final MethodHandle RESUME_LOAD_DATA = method("BulkLoader", "resumeData", String.class);
+    static final MethodHandle DELTA_LOAD_DATA = method("DeltaLoader", "loadData", String.class);
+    static final MethodHandle EXPORT_SNAPSHOT = method("SnapshotFile", "exportAll", String.class);
+    static final MethodHandle IMPORT_SNAPSHOT = method("SnapshotFile", "importAll", String.class);
+
+    static final MethodHandle RECORD_READER = constructor("RecordReader", String.class);
+    static final MethodHandle READER_NEXT = method("RecordReader", "next");
+    static final MethodHandle READER_FIELD_COUNT = method("RecordReader", "fieldCount");
+    static final MethodHandle READER_INT_FIELD = method("RecordReader", "intField", int.class);
+    static final MethodHandle READER_JOIN_FIELDS = method("RecordReader", "joinFields", int.class, int.class);
+    static final MethodHandle READER_DATE_FIELD = method("RecordReader", "dateField", int.class);
+    static final MethodHandle READER_CLOSE = method("RecordReader", "close");
+
+    static final MethodHandle TRANSACTION = method("SalesOperations", "Transaction", Scanner.class);
+    static final MethodHandle SELL = method("SalesOperations", "sell", int.class, int.class);
+    static final MethodHandle SALE_STATUS = getter("SalesOperations$Sale", "status");
+    static final MethodHandle SALE_PART = getter("SalesOperations$Sale", "partId");
+    static final MethodHandle SALE_TRANSACTION = getter("SalesOperations$Sale", "transactionId");
+    static final MethodHandle JOURNAL_OPEN = method("SaleJournal", "open");
+    static final MethodHandle JOURNAL_DRAIN = method("SaleJournal", "drain");
+    static final MethodHandle JOURNAL_SHUTDOWN = method("SaleJournal", "shutdown");
+    static final MethodHandle SEARCH_TABLE = method("SalesOperations", "searchTable", Scanner.class);
+    static final MethodHandle SEARCH_DATABASE = method("SalesOperations", "searchDatabase",
+            boolean.class, String.class, boolean.class, boolean.class);
+    static final MethodHandle CATALOGUE_SEARCH = method("CatalogueCache", "search",
+            boolean.class, String.class, boolean.class, boolean.class);
+    static final MethodHandle TRIGRAM_CANDIDATES = method("TrigramIndex", "candidates", String.class);
+
+    static final MethodHandle MANAGER_MENU = method("ManagerOperations", "showMenu", Scanner.class);
+
+    static final MethodHandle ANALYTICS_SYNTHETIC = method("ColumnStore", "synthetic", int.class, int.class, int.class, long.class);
+    static final MethodHandle ANALYTICS_INVALIDATE = method("ColumnStore", "invalidate");
+    static final MethodHandle ANALYTICS_BY_EXPERIENCE = method("ColumnStore", "salesByExperience", int.class, int.class);
+    static final MethodHandle ANALYTICS_BY_MANUFACTURER = method("ColumnStore", "salesByManufacturer");
+    static final MethodHandle ANALYTICS_POPULAR_PARTS = method("ColumnStore", "popularParts", int.class);
+    static final MethodHandle ANALYTICS_IN_RANGE = method("ColumnStore", "salesInRange",
+            type("ColumnStore$Column"), LocalDate.class, LocalDate.class);
+    static final MethodHandle ANALYTICS_BY = method("ColumnStore", "salesBy",
+            type("ColumnStore$Column"), type("ColumnStore$Column"));
+
+    private App() {
+    }
+
+    // Sets a static field of an application class, e.g. setStatic("CatalogueCache", "enabled", true).
+    static void setStatic(String className, String fieldName, Object value) {
+        try {
+            Field f = Class.forName(className).getDeclaredField(fieldName);
+            f.setAccessible(true);
+            f.set(null, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set " + className + "." + fieldName, e);
+        }
+    }
+
+    // A static field of an application class, e.g. getStatic("CatalogueCache", "partNames").
+    static Object getStatic(String className, String fieldName) {
+        try {
+            Field f = Class.forName(className).getDeclaredField(fieldName);
+            f.setAccessible(true);
+            return f.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot read " + className + "." + fieldName, e);
+        }
+    }
+
+    // A constant of an application enum, e.g. constant("ColumnStore$Column", "CATEGORY").
+    static Object constant(String enumName, String name) {
+        for (Object c : type(enumName).getEnumConstants()) {
+            if (((Enum<?>) c).name().equals(name)) return c;
+        }
+        throw new IllegalArgumentException("No " + enumName + "." + name);
+    }
+
+    private static Class<?> type(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle constructor(String className, Class<?>... parameterTypes) {
+        try {
+            return MethodHandles.lookup().unreflectConstructor(Class.forName(className).getDeclaredConstructor(parameterTypes));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle getter(String className, String fieldName) {
+        try {
+            Field f = Class.forName(className).getDeclaredField(fieldName);
+            f.setAccessible(true);
+            return MethodHandles.lookup().unreflectGetter(f);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle method(String className, String name, Class<?>... parameterTypes) {
+        try {
+            Method m = Class.forName(className).getDeclaredMethod(name, parameterTypes);
+            m.setAccessible(true);
+            return MethodHandles.lookup().unreflect(m);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * The database the benchmarks run against: the embedded H2 backend (in memory), so no network or Oracle
+ * account is needed; the application renders its SQL for H2 through Dialect.
+ * - open() starts a new, empty in-memory database (a fresh name each time) through DBConnection.configure and
+ *   creates the tables with AdminOperations.createTables. The database lives as long as the connection pool
+ *   holds a connection to it; close() shuts the pool down, which drops it.
+ * - openWithReadSide(data) is open() plus a second in-memory database as the read side of DBConnection
+ *   (configureRead), both loaded with the same data: the primary / replica setup of two embedded databases.
+ *   Nothing replicates between them; the sales stay on the primary.
+ * - openShards(shards, data) starts shards in-memory databases as the shards of a multi-store deployment
+ *   (Shards.configure), with the salespersons of data dealt evenly over them, and bulk loads every shard
+ *   with its part of data (Shards.loadData).
+ * - scaledData(scale) writes sample_data repeated scale times into a temporary folder, with the IDs of every
+ *   copy shifted past the previous one (parts, salespersons and transactions; categories and manufacturers
+ *   are kept). Transactions of copy k refer to the parts and salespersons of copy k. Every part gets a large
+ *   stock so the sell benchmarks never run out.
+ * - scaledParts(parts) is scaledData with the scale that gives at least that many parts.
+ * - silence() discards what the operations print, so console I/O does not dominate the measurements.
+ *
+ * The sample_data folder is read from -Dsales.bench.sampleData (default sample_data, relative to the project
+ * folder where "ant bench" runs).
+ * by Jeffery
+ */
+
+package bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+final class BenchDatabase {
+
+    static final String SAMPLE_DATA = System.getProperty("sales.bench.sampleData", "sample_data");
+    static final int STOCK = 100_000_000;
+
+    private static final AtomicInteger databases = new AtomicInteger();
+    private static String readUrl;
+
+    // The files written by scaledData and the number of rows of the scaled tables.
+    static final class Data {
+        final Path folder;
+        final int parts;
+        final int salespersons;
+        final int transactions;
+
+        Data(Path folder, int parts, int salespersons, int transactions) {
+            this.folder = folder;
+            this.parts = parts;
+            this.salespersons = salespersons;
+            this.transactions = transactions;
+        }
+
+        String file(String name) {
+            return folder.resolve(name).toString();
+        }
+
+        void delete() {
+            try (Stream<Path> files = Files.walk(folder)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private BenchDatabase() {
+    }
+
+    static void open() throws Throwable {
+        App.CONFIGURE.invoke("jdbc:h2:mem:sales" + databases.incrementAndGet(), "sa", "");
+        App.CREATE_TABLES.invoke();
+    }
+
+    static void openWithReadSide(Data data) throws Throwable {
+        // Kept in memory without a connection (DB_CLOSE_DELAY) while the primary is set up; close() drops it.
+        readUrl = "jdbc:h2:mem:sales" + databases.incrementAndGet() + "read;DB_CLOSE_DELAY=-1";
+        App.CONFIGURE.invoke(readUrl, "sa", "");
+        App.CREATE_TABLES.invoke();
+        App.BULK_LOAD_DATA.invoke(data.folder.toString());
+        App.REBUILD_SUMMARIES.invoke();
+        open();
+        App.BULK_LOAD_DATA.invoke(data.folder.toString());
+        App.REBUILD_SUMMARIES.invoke();
+        App.CONFIGURE_READ.invoke(readUrl, "sa", "");
+    }
+
+    static void openShards(int shards, Data data) throws Throwable {
+        String[] urls = new String[shards];
+        int first = databases.incrementAndGet();
+        for (int i = 0; i < shards; i++) urls[i] = "jdbc:h2:mem:sales" + first + "shard" + i;
+        App.setStatic("Shards", "sidRange", (data.salespersons + shards - 1) / shards);
+        App.SHARDS_CONFIGURE.invoke(urls, "sa", "");
+        App.CREATE_TABLES.invoke();
+        App.SHARDS_LOAD_DATA.invoke(data.folder.toString(), (Predicate<String>) folder -> {
+            try {
+                return (boolean) App.BULK_LOAD_DATA.invoke(folder);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Bulk load of " + folder + " failed", e);
+            }
+        });
+    }
+
+    static void close() throws Throwable {
+        App.SHUTDOWN.invoke();
+        App.RESET_CACHES.invoke();
+        if (readUrl != null) {
+            try (Connection conn = DriverManager.getConnection(readUrl, "sa", "");
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("SHUTDOWN");
+            }
+            readUrl = null;
+        }
+    }
+
+    static void silence() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        App.setStatic("TableDumper", "console", OutputStream.nullOutputStream());
+    }
+
+    static Data scaledData(int scale) throws IOException {
+        Path source = Paths.get(SAMPLE_DATA);
+        Path target = Files.createTempDirectory("sales-bench");
+
+        List<String[]> parts = read(source.resolve("part.txt"));
+        List<String[]> salespersons = read(source.resolve("salesperson.txt"));
+        List<String[]> transactions = read(source.resolve("transaction.txt"));
+        int maxPart = maxId(parts);
+        int maxSalesperson = maxId(salespersons);
+        int maxTransaction = maxId(transactions);
+
+        Files.copy(source.resolve("category.txt"), target.resolve("category.txt"));
+        Files.copy(source.resolve("manufacturer.txt"), target.resolve("manufacturer.txt"));
+
+        List<String> out = new ArrayList<>();
+        for (int k = 0; k < scale; k++) {
+            for (String[] p : parts) {
+                // pID, pName, pPrice, mID, cID, pWarrantyPeriod, pAvailableQuantity
+                out.add(String.join("\t", shift(p[0], k * maxPart), k == 0 ? p[1] : p[1] + " #" + k,
+                        p[2], p[3], p[4], p[5], Integer.toString(STOCK)));
+            }
+        }
+        write(target.resolve("part.txt"), out);
+
+        out.clear();
+        for (int k = 0; k < scale; k++) {
+            for (String[] s : salespersons) {
+                String[] copy = s.clone();
+                copy[0] = shift(s[0], k * maxSalesperson);
+                out.add(String.join("\t", copy));
+            }
+        }
+        write(target.resolve("salesperson.txt"), out);
+
+        out.clear();
+        for (int k = 0; k < scale; k++) {
+            for (String[] t : transactions) {
+                // tID, pID, sID, tDate
+                out.add(String.join("\t", shift(t[0], k * maxTransaction), shift(t[1], k * maxPart),
+                        shift(t[2], k * maxSalesperson), t[3]));
+            }
+        }
+        write(target.resolve("transaction.txt"), out);
+
+        return new Data(target, parts.size() * scale, salespersons.size() * scale, transactions.size() * scale);
+    }
+
+    static Data scaledParts(int parts) throws IOException {
+        int sampleParts = read(Paths.get(SAMPLE_DATA).resolve("part.txt")).size();
+        return scaledData((parts + sampleParts - 1) / sampleParts);
+    }
+
+    private static List<String[]> read(Path file) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            line = line.strip();
+            if (!line.isEmpty()) rows.add(line.split("\t"));
+        }
+        return rows;
+    }
+
+    private static void write(Path file, List<String> lines) throws IOException {
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    private static int maxId(List<String[]> rows) {
+        int max = 0;
+        for (String[] row : rows) max = Math.max(max, Integer.parseInt(row[0].strip()));
+        return max;
+    }
+
+    private static String shift(String id, int offset) {
+        return Integer.toString(Integer.parseInt(id.strip()) + offset);
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Crash check of the SaleJournal replay ("ant stress", after SellStress): a child JVM sells through the
+ * journal on a file H2 database, drains part of the sales, sells more, leaves a torn record at the end of
+ * the last segment and halts without shutting anything down (no drain, no shutdown hooks). This process then
+ * reopens the same database and journal directory and checks that the replay:
+ * - wrote every sale the child sold exactly once: one TRANSACTION row per sold tID, no other new rows, and
+ *   the stock of every part lowered by exactly its sales (a sale written twice would lower it twice);
+ * - ignored the torn record, and left no segment behind;
+ * - changes nothing when the directory is opened again.
+ * The drained sales are still in the segments the child left, so the replay has to skip them.
+ *
+ * Tunable with -Dsales.replay.drained (sales drained before the crash, default 40) and
+ * -Dsales.replay.undrained (sales left in the journal only, default 60). Exits with status 1 if a check fails.
+ * by Jeffery
+ */
+
+package bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class JournalReplayCheck {
+
+    static final int DRAINED = Integer.getInteger("sales.replay.drained", 40);
+    static final int UNDRAINED = Integer.getInteger("sales.replay.undrained", 60);
+    // Small segments, so the crash leaves full segments as well as the one being written.
+    static final long SEGMENT_BYTES = 16 * 32;
+    static final int TORN_BYTES = 13;
+
+    public static void main(String[] args) throws Throwable {
+        if (args.length == 2 && args[0].equals("crash")) {
+            crash(Paths.get(args[1]));
+            return;
+        }
+        PrintStream console = System.out;
+        Path work = Files.createTempDirectory("sales-replay");
+        List<String> failures = new ArrayList<>();
+        try {
+            Process child = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"),
+                    "-Dsales.bench.sampleData=" + BenchDatabase.SAMPLE_DATA,
+                    JournalReplayCheck.class.getName(), "crash", work.toString())
+                    .inheritIO().start();
+            int status = child.waitFor();
+            if (status != 0) {
+                failures.add("the selling process failed with status " + status);
+            } else {
+                failures.addAll(replay(work, console));
+            }
+        } finally {
+            new BenchDatabase.Data(work, 0, 0, 0).delete();
+        }
+        for (String failure : failures) {
+            console.println("FAILED: " + failure);
+        }
+        if (!failures.isEmpty()) System.exit(1);
+        console.println("All checks passed.");
+    }
+
+    // The child: sells, drains some of it, sells more, tears the tail of the journal and halts.
+    private static void crash(Path work) throws Throwable {
+        PrintStream console = System.out;
+        BenchDatabase.silence();
+        BenchDatabase.Data data = BenchDatabase.scaledData(1);
+        try {
+            configure(work);
+            App.CREATE_TABLES.invoke();
+            App.BULK_LOAD_DATA.invoke(data.folder.toString());
+        } finally {
+            data.delete();
+        }
+        App.setStatic("SaleJournal", "enabled", true);
+        App.setStatic("SaleJournal", "directory", work.resolve("journal").toString());
+        App.setStatic("SaleJournal", "segmentBytes", SEGMENT_BYTES);
+        // Only the explicit drain below writes to the database.
+        App.setStatic("SaleJournal", "drainMillis", 3_600_000L);
+
+        List<String> sold = new ArrayList<>();
+        for (int i = 0; i < DRAINED + UNDRAINED; i++) {
+            if (i == DRAINED) App.JOURNAL_DRAIN.invoke();
+            Object sale = App.SELL.invoke(1 + i % data.parts, 1 + i % data.salespersons);
+            if (!((Enum<?>) App.SALE_STATUS.invoke(sale)).name().equals("SOLD")) {
+                throw new IllegalStateException("Sale " + i + " was not sold: " + App.SALE_STATUS.invoke(sale));
+            }
+            sold.add(App.SALE_TRANSACTION.invoke(sale) + "\t"
+                    + App.SALE_PART.invoke(sale));
+        }
+        Files.write(work.resolve("sold.txt"), sold, StandardCharsets.UTF_8);
+
+        // H2 writes committed transactions to its file in the background; a checkpoint makes the drained
+        // sales durable before the crash, as a commit is on the production database.
+        try (Connection conn = (Connection) App.GET_CONNECTION.invoke();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CHECKPOINT SYNC");
+        }
+        Path last;
+        try (Stream<Path> s = Files.list(work.resolve("journal"))) {
+            last = s.filter(p -> p.getFileName().toString().endsWith(".journal")).sorted()
+                    .reduce((a, b) -> b).orElseThrow();
+        }
+        Files.write(last, new byte[TORN_BYTES], StandardOpenOption.APPEND);
+        console.printf("Sold %d sales through the journal, drained %d, tore %s; halting.%n",
+                sold.size(), DRAINED, last.getFileName());
+        console.flush();
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static List<String> replay(Path work, PrintStream console) throws Throwable {
+        List<String> failures = new ArrayList<>();
+        Map<Integer, Integer> soldByPart = new HashMap<>();
+        List<Integer> tids = new ArrayList<>();
+        for (String line : Files.readAllLines(work.resolve("sold.txt"), StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t");
+            tids.add(Integer.parseInt(fields[0]));
+            soldByPart.merge(Integer.parseInt(fields[1]), 1, Integer::sum);
+        }
+        Path journalDir = work.resolve("journal");
+        int segments = segments(journalDir);
+        if (segments < 2) failures.add("the crash left " + segments + " segments, expected a full one and a torn one");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+        App.setStatic("SaleJournal", "enabled", true);
+        App.setStatic("SaleJournal", "directory", journalDir.toString());
+        configure(work);
+        try {
+            long before = transactions();
+            App.JOURNAL_OPEN.invoke();
+            App.JOURNAL_SHUTDOWN.invoke();
+            long after = transactions();
+            App.JOURNAL_OPEN.invoke();
+            App.JOURNAL_SHUTDOWN.invoke();
+            String printed = out.toString(StandardCharsets.UTF_8);
+            console.print(printed);
+
+            if (!printed.contains("ignored " + TORN_BYTES + " incomplete bytes")) {
+                failures.add("the replay did not report the torn record of " + TORN_BYTES + " bytes");
+            }
+            if (after - before != UNDRAINED) {
+                failures.add("the replay wrote " + (after - before) + " sales, expected " + UNDRAINED);
+            }
+            if (transactions() != after) failures.add("opening the journal a second time changed TRANSACTION");
+            if (segments(journalDir) != 0) failures.add(segments(journalDir) + " segments are left after the replay");
+
+            try (Connection conn = (Connection) App.GET_CONNECTION.invoke();
+                 Statement stmt = conn.createStatement()) {
+                long found = single(stmt, "SELECT COUNT(*) FROM transaction WHERE tID IN (" + join(tids) + ")");
+                long distinct = single(stmt, "SELECT COUNT(DISTINCT tID) FROM transaction");
+                long total = single(stmt, "SELECT COUNT(*) FROM transaction");
+                if (found != tids.size()) failures.add(found + " of the " + tids.size() + " sold tIDs are in TRANSACTION");
+                if (total != distinct) failures.add((total - distinct) + " duplicate tIDs in TRANSACTION");
+                for (Map.Entry<Integer, Integer> e : soldByPart.entrySet()) {
+                    long stock = single(stmt, "SELECT pAvailableQuantity FROM part WHERE pID = " + e.getKey());
+                    if (stock != BenchDatabase.STOCK - e.getValue()) {
+                        failures.add("part " + e.getKey() + " has stock " + stock + ", expected "
+                                + (BenchDatabase.STOCK - e.getValue()));
+                    }
+                }
+            }
+            console.printf("Replay: %d sold tIDs, %d written by the replay, %d segments before, %d after.%n",
+                    tids.size(), after - before, segments, segments(journalDir));
+        } finally {
+            System.setOut(console);
+            App.SHUTDOWN.invoke();
+            App.setStatic("SaleJournal", "enabled", false);
+        }
+        return failures;
+    }
+
+    private static void configure(Path work) throws Throwable {
+        App.CONFIGURE.invoke("jdbc:h2:" + work.resolve("sales").toAbsolutePath(), "sa", "");
+    }
+
+    private static long transactions() throws Throwable {
+        try (Connection conn = (Connection) App.GET_CONNECTION.invoke();
+             Statement stmt = conn.createStatement()) {
+            return single(stmt, "SELECT COUNT(*) FROM transaction");
+        }
+    }
+
+    private static int segments(Path dir) throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            return (int) s.filter(p -> p.getFileName().toString().endsWith(".journal")).count();
+        }
+    }
+
+    private static String join(List<Integer> ids) {
+        StringBuilder sb = new StringBuilder();
+        for (int id : ids) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(id);
+        }
+        return sb.toString();
+    }
+
+    private static long single(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * The AdminOperations loaders, one table file each (row by row, auto-commit), plus the whole folder row by
+ * row (AdminOperations.loadData) and batched (BulkLoader.loadData) for comparison.
+ * - Every invocation gets a fresh database; the tables a file refers to are loaded beforehand, outside the
+ *   measured time (PartParents for part.txt, TransactionParents for transaction.txt).
+ * - resumeLoadData is the bulk load with checkpoints (BulkLoader.resumeData). deltaLoadData runs
+ *   DeltaLoader over files that did not change since the last delta load (DeltaLoaded), the nightly refresh
+ *   with nothing to do: the cost of reading and comparing the files.
+ * - exportSnapshot writes the loaded tables to snapshot files (SnapshotFile.exportAll); importSnapshot loads
+ *   the snapshot files of the same data into a fresh database (load mode 4), next to bulkLoadData, which
+ *   loads the text files.
+ * - Single-shot: one measurement is one complete load.
+ * by Jeffery
+ */
+
+package bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Data {
+        @Param({"1", "100"})
+        public int scale;
+
+        BenchDatabase.Data files;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            BenchDatabase.silence();
+            files = BenchDatabase.scaledData(scale);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            files.delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class EmptyDatabase {
+        @Setup(Level.Invocation)
+        public void open() throws Throwable {
+            BenchDatabase.open();
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() throws Throwable {
+            BenchDatabase.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PartParents {
+        @Setup(Level.Invocation)
+        public void open(Data data) throws Throwable {
+            BenchDatabase.open();
+            App.LOAD_CATEGORY.invoke(data.files.file("category.txt"));
+            App.LOAD_MANUFACTURER.invoke(data.files.file("manufacturer.txt"));
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() throws Throwable {
+            BenchDatabase.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class TransactionParents {
+        @Setup(Level.Invocation)
+        public void open(Data data) throws Throwable {
+            BenchDatabase.open();
+            App.LOAD_CATEGORY.invoke(data.files.file("category.txt"));
+            App.LOAD_MANUFACTURER.invoke(data.files.file("manufacturer.txt"));
+            App.LOAD_PART.invoke(data.files.file("part.txt"));
+            App.LOAD_SALESPERSON.invoke(data.files.file("salesperson.txt"));
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() throws Throwable {
+            BenchDatabase.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class DeltaLoaded {
+        @Setup(Level.Invocation)
+        public void open(Data data) throws Throwable {
+            BenchDatabase.open();
+            App.DELTA_LOAD_DATA.invoke(data.files.folder.toString());
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() throws Throwable {
+            BenchDatabase.close();
+        }
+    }
+
+    // A database with the data loaded, and an empty folder the snapshot files are written to.
+    @State(Scope.Thread)
+    public static class LoadedDatabase {
+        Path exportFolder;
+
+        @Setup(Level.Trial)
+        public void open(Data data) throws Throwable {
+            BenchDatabase.open();
+            App.BULK_LOAD_DATA.invoke(data.files.folder.toString());
+            exportFolder = Files.createTempDirectory("sales-bench-export");
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Throwable {
+            BenchDatabase.close();
+            new BenchDatabase.Data(exportFolder, 0, 0, 0).delete();
+        }
+    }
+
+    // The snapshot files of the data, exported once.
+    @State(Scope.Benchmark)
+    public static class Snapshots {
+        Path folder;
+
+        @Setup(Level.Trial)
+        public void export(Data data) throws Throwable {
+            folder = Files.createTempDirectory("sales-bench-snapshot");
+            BenchDatabase.open();
+            App.BULK_LOAD_DATA.invoke(data.files.folder.toString());
+            App.EXPORT_SNAPSHOT.invoke(folder.toString());
+            BenchDatabase.close();
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() {
+            new BenchDatabase.Data(folder, 0, 0, 0).delete();
+        }
+    }
+
+    @Benchmark
+    public void loadCategory(Data data, EmptyDatabase db) throws Throwable {
+        App.LOAD_CATEGORY.invoke(data.files.file("category.txt"));
+    }
+
+    @Benchmark
+    public void loadManufacturer(Data data, EmptyDatabase db) throws Throwable {
+        App.LOAD_MANUFACTURER.invoke(data.files.file("manufacturer.txt"));
+    }
+
+    @Benchmark
+    public void loadPart(Data data, PartParents db) throws Throwable {
+        App.LOAD_PART.invoke(data.files.file("part.txt"));
+    }
+
+    @Benchmark
+    public void loadSalesperson(Data data, EmptyDatabase db) throws Throwable {
+        App.LOAD_SALESPERSON.invoke(data.files.file("salesperson.txt"));
+    }
+
+    @Benchmark
+    public void loadTransaction(Data data, TransactionParents db) throws Throwable {
+        App.LOAD_TRANSACTION.invoke(data.files.file("transaction.txt"));
+    }
+
+    @Benchmark
+    public void loadData(Data data, EmptyDatabase db) throws Throwable {
+        App.LOAD_DATA.invoke(data.files.folder.toString());
+    }
+
+    @Benchmark
+    public void bulkLoadData(Data data, EmptyDatabase db) throws Throwable {
+        App.BULK_LOAD_DATA.invoke(data.files.folder.toString());
+    }
+
+    @Benchmark
+    public void exportSnapshot(LoadedDatabase db) throws Throwable {
+        App.EXPORT_SNAPSHOT.invoke(db.exportFolder.toString());
+    }
+
+    @Benchmark
+    public void importSnapshot(Snapshots snapshots, EmptyDatabase db) throws Throwable {
+        App.IMPORT_SNAPSHOT.invoke(snapshots.folder.toString());
+    }
+
+    @Benchmark
+    public void resumeLoadData(Data data, EmptyDatabase db) throws Throwable {
+        App.RESUME_LOAD_DATA.invoke(data.files.folder.toString());
+    }
+
+    @Benchmark
+    public void deltaLoadData(Data data, DeltaLoaded db) throws Throwable {
+        App.DELTA_LOAD_DATA.invoke(data.files.folder.toString());
+    }
+}
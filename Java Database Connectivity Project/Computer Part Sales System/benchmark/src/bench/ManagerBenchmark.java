@@ -0,0 +1,92 @@
+/*
+ * The ManagerOperations reports, run through ManagerOperations.showMenu with scripted input (report, then
+ * "7" to return), so each measurement covers the aggregation and the printed table.
+ * - popularParts answers from the warm top-K of PopularParts (loaded in the setup). popularPartsCold resets
+ *   the caches before every invocation, so it measures the SQL aggregate the cold state answers with; the
+ *   background load that the cold path starts is finished after the invocation, outside the measured time.
+ * by Jeffery
+ */
+
+package bench;
+
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManagerBenchmark {
+
+    @Param({"1", "100"})
+    public int scale;
+
+    private BenchDatabase.Data data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        BenchDatabase.silence();
+        BenchDatabase.open();
+        data = BenchDatabase.scaledData(scale);
+        App.BULK_LOAD_DATA.invoke(data.folder.toString());
+        App.POPULAR_PARTS_WARM_UP.invoke();
+    }
+
+    @State(Scope.Thread)
+    public static class Cold {
+        @Setup(Level.Invocation)
+        public void reset() throws Throwable {
+            App.RESET_CACHES.invoke();
+        }
+
+        // Waits for the background load the cold report started (or does it), so it does not overlap the next one.
+        @TearDown(Level.Invocation)
+        public void settle() throws Throwable {
+            App.POPULAR_PARTS_WARM_UP.invoke();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        BenchDatabase.close();
+        data.delete();
+    }
+
+    @Benchmark
+    public void listSalespersons() throws Throwable {
+        report("1\n1\n");
+    }
+
+    @Benchmark
+    public void salesByExperience() throws Throwable {
+        report("2\n0\n50\n");
+    }
+
+    @Benchmark
+    public void salesByManufacturer() throws Throwable {
+        report("3\n");
+    }
+
+    @Benchmark
+    public void popularParts() throws Throwable {
+        report("4\n10\n");
+    }
+
+    @Benchmark
+    public void popularPartsCold(Cold cold) throws Throwable {
+        report("4\n10\n");
+    }
+
+    @Benchmark
+    public void salesInRange() throws Throwable {
+        report("5\n1\n1/1/2016\n31/12/2016\n");
+    }
+
+    private static void report(String input) throws Throwable {
+        App.MANAGER_MENU.invoke(new Scanner(input + "7\n"));
+    }
+}
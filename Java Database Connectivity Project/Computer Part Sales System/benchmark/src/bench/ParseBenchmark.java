@@ -0,0 +1,104 @@
+/*
+ * Parsing the data files without a database: the loaders' RecordReader against the Scanner path it replaced
+ * (Scanner.nextLine, trim, String.split("\\s+"), Integer.parseInt, String.join of the name fields and the
+ * dd/mm/yyyy date rebuilt as a string for java.sql.Date.valueOf).
+ * - part.txt: a variable-width name and six ints per line; transaction.txt: three ints and a date.
+ * - Both read the same scaled files (BenchDatabase.scaledData) and hand every parsed value to the Blackhole,
+ *   so the difference is the reading, splitting and number / date parsing alone.
+ * by Jeffery
+ */
+
+package bench;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"1", "100"})
+    public int scale;
+
+    private BenchDatabase.Data data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        data = BenchDatabase.scaledData(scale);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        data.delete();
+    }
+
+    @Benchmark
+    public void scannerPart(Blackhole bh) throws Throwable {
+        try (Scanner scanner = new Scanner(new File(data.file("part.txt")))) {
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine().trim();
+                if (line.isEmpty()) continue;
+                String[] tokens = line.split("\\s+");
+                int len = tokens.length;
+                bh.consume(Integer.parseInt(tokens[0]));
+                bh.consume(String.join(" ", Arrays.copyOfRange(tokens, 1, len - 5)));
+                for (int i = len - 5; i < len; i++) bh.consume(Integer.parseInt(tokens[i]));
+            }
+        }
+    }
+
+    @Benchmark
+    public void recordReaderPart(Blackhole bh) throws Throwable {
+        Object reader = App.RECORD_READER.invoke(data.file("part.txt"));
+        try {
+            while ((boolean) App.READER_NEXT.invoke(reader)) {
+                int len = (int) App.READER_FIELD_COUNT.invoke(reader);
+                bh.consume((int) App.READER_INT_FIELD.invoke(reader, 0));
+                bh.consume((String) App.READER_JOIN_FIELDS.invoke(reader, 1, len - 5));
+                for (int i = len - 5; i < len; i++) bh.consume((int) App.READER_INT_FIELD.invoke(reader, i));
+            }
+        } finally {
+            App.READER_CLOSE.invoke(reader);
+        }
+    }
+
+    @Benchmark
+    public void scannerTransaction(Blackhole bh) throws Throwable {
+        try (Scanner scanner = new Scanner(new File(data.file("transaction.txt")))) {
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine().trim();
+                if (line.isEmpty()) continue;
+                String[] tokens = line.split("\\s+");
+                bh.consume(Integer.parseInt(tokens[0]));
+                bh.consume(Integer.parseInt(tokens[1]));
+                bh.consume(Integer.parseInt(tokens[2]));
+                String[] date = tokens[3].split("/");
+                bh.consume(java.sql.Date.valueOf(date[2] + "-" + date[1] + "-" + date[0]));
+            }
+        }
+    }
+
+    @Benchmark
+    public void recordReaderTransaction(Blackhole bh) throws Throwable {
+        Object reader = App.RECORD_READER.invoke(data.file("transaction.txt"));
+        try {
+            while ((boolean) App.READER_NEXT.invoke(reader)) {
+                bh.consume((int) App.READER_INT_FIELD.invoke(reader, 0));
+                bh.consume((int) App.READER_INT_FIELD.invoke(reader, 1));
+                bh.consume((int) App.READER_INT_FIELD.invoke(reader, 2));
+                bh.consume((java.sql.Date) App.READER_DATE_FIELD.invoke(reader, 3));
+            }
+        } finally {
+            App.READER_CLOSE.invoke(reader);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Month-end reporting next to the counter: one thread sells while three run the manager reports, with the
+ * reports on the primary (reads=primary) or on a second embedded database as the read side
+ * (reads=replica, BenchDatabase.openWithReadSide). JMH reports the sell and report throughput of the group
+ * separately; the sell figure is the one the read side should protect.
+ * by Jeffery
+ */
+
+package bench;
+
+import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadRoutingBenchmark {
+
+    static final String[] REPORTS = {"1\n1\n", "2\n0\n50\n", "3\n"};
+
+    @Param({"primary", "replica"})
+    public String reads;
+
+    @Param({"100"})
+    public int scale;
+
+    private BenchDatabase.Data data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        BenchDatabase.silence();
+        data = BenchDatabase.scaledData(scale);
+        if (reads.equals("replica")) {
+            BenchDatabase.openWithReadSide(data);
+        } else {
+            BenchDatabase.open();
+            App.BULK_LOAD_DATA.invoke(data.folder.toString());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        BenchDatabase.close();
+        data.delete();
+    }
+
+    @Benchmark
+    @Group("monthEnd")
+    @GroupThreads(1)
+    public void sell() throws Throwable {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        App.TRANSACTION.invoke(new Scanner(random.nextInt(1, data.parts + 1) + " "
+                + random.nextInt(1, data.salespersons + 1)));
+    }
+
+    @Benchmark
+    @Group("monthEnd")
+    @GroupThreads(3)
+    public void report() throws Throwable {
+        String input = REPORTS[ThreadLocalRandom.current().nextInt(REPORTS.length)];
+        App.MANAGER_MENU.invoke(new Scanner(input + "7\n"));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * The basic schema against the tuned one (TunedSchema) on a large dataset (sample_data x 1000: 32,000 parts,
+ * 4,000 salespersons, 36,000 sales; -p scale=10000 for ten times that).
+ * - schema: basic (primary keys only), tuned (indexes created with the tables) or deferred (tuned, indexes
+ *   built after the load). Once loaded, tuned and deferred are the same database.
+ * - The manager reports run cold: the caches are reset before every invocation, so each one answers from the
+ *   tables (the summary rebuild, the top parts and daily rollup queries) the way the first report after a
+ *   load or restart does.
+ * - sell is the salesperson's sale, the write path that pays for the indexes of the transaction table.
+ * - Load.bulkLoad: the whole bulk load into a new database per schema (single shot), including the deferred
+ *   index builds.
+ * by Jeffery
+ */
+
+package bench;
+
+import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchemaBenchmark {
+
+    @Param({"basic", "tuned", "deferred"})
+    public String schema;
+
+    @Param({"1000"})
+    public int scale;
+
+    private BenchDatabase.Data data;
+
+    @State(Scope.Thread)
+    public static class Cold {
+        @Setup(Level.Invocation)
+        public void reset() throws Throwable {
+            App.RESET_CACHES.invoke();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        BenchDatabase.silence();
+        useSchema(schema);
+        BenchDatabase.open();
+        data = BenchDatabase.scaledData(scale);
+        App.BULK_LOAD_DATA.invoke(data.folder.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        BenchDatabase.close();
+        data.delete();
+        useSchema("basic");
+    }
+
+    @Benchmark
+    public void listSalespersons(Cold cold) throws Throwable {
+        report("1\n1\n");
+    }
+
+    @Benchmark
+    public void salesByExperience(Cold cold) throws Throwable {
+        report("2\n0\n50\n");
+    }
+
+    @Benchmark
+    public void salesByManufacturer(Cold cold) throws Throwable {
+        report("3\n");
+    }
+
+    @Benchmark
+    public void popularParts(Cold cold) throws Throwable {
+        report("4\n10\n");
+    }
+
+    @Benchmark
+    public void salesInRange(Cold cold) throws Throwable {
+        report("5\n1\n1/1/2016\n31/12/2016\n");
+    }
+
+    @Benchmark
+    public void sell() throws Throwable {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        App.TRANSACTION.invoke(new Scanner(random.nextInt(1, data.parts + 1) + " "
+                + random.nextInt(1, data.salespersons + 1)));
+    }
+
+    private static void report(String input) throws Throwable {
+        App.MANAGER_MENU.invoke(new Scanner(input + "7\n"));
+    }
+
+    // Sets the TunedSchema switches that BenchDatabase.open (createTables) and the loaders read.
+    static void useSchema(String schema) {
+        App.setStatic("TunedSchema", "enabled", !schema.equals("basic"));
+        App.setStatic("TunedSchema", "deferIndexes", schema.equals("deferred"));
+    }
+
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    @Fork(1)
+    public static class Load {
+
+        @State(Scope.Benchmark)
+        public static class Files {
+            @Param({"basic", "tuned", "deferred"})
+            public String schema;
+
+            @Param({"1000"})
+            public int scale;
+
+            BenchDatabase.Data files;
+
+            @Setup(Level.Trial)
+            public void setUp() throws Throwable {
+                BenchDatabase.silence();
+                useSchema(schema);
+                files = BenchDatabase.scaledData(scale);
+            }
+
+            @TearDown(Level.Trial)
+            public void tearDown() {
+                files.delete();
+                useSchema("basic");
+            }
+        }
+
+        @State(Scope.Thread)
+        public static class EmptyDatabase {
+            @Setup(Level.Invocation)
+            public void open(Files files) throws Throwable {
+                BenchDatabase.open();
+            }
+
+            @TearDown(Level.Invocation)
+            public void close() throws Throwable {
+                BenchDatabase.close();
+            }
+        }
+
+        @Benchmark
+        public void bulkLoad(Files files, EmptyDatabase db) throws Throwable {
+            App.BULK_LOAD_DATA.invoke(files.files.folder.toString());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Part search by part name and by manufacturer name, ordered by price, on catalogues of 10k, 100k and 1M
+ * parts (sample_data scaled up, BenchDatabase.scaledParts), without the console formatting of searchTable:
+ * - like*: the LIKE query on the database (SalesOperations.searchDatabase).
+ * - cache*: CatalogueCache.search, trigram candidates plus the substring check and the sort by price. The
+ *   snapshot is loaded in the setup and never expires during the run, so no load is measured.
+ * - trigramCandidates: TrigramIndex.candidates of the cache's part name index alone.
+ * keyword: AMD matches a sixteenth of the parts, "8320 #99" one to about a hundred (the copies of one part
+ * numbered 99, 990 to 999, ...).
+ * by Jeffery
+ */
+
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    static final String MANUFACTURER = "Intel";
+
+    @Param({"10000", "100000", "1000000"})
+    public int parts;
+
+    @Param({"AMD", "8320 #99"})
+    public String keyword;
+
+    private BenchDatabase.Data data;
+    private Object partNames;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        BenchDatabase.silence();
+        App.setStatic("CatalogueCache", "enabled", true);
+        App.setStatic("CatalogueCache", "maxParts", Integer.MAX_VALUE);
+        App.setStatic("CatalogueCache", "ttlMillis", Long.MAX_VALUE);
+        BenchDatabase.open();
+        data = BenchDatabase.scaledParts(parts);
+        App.BULK_LOAD_DATA.invoke(data.folder.toString());
+        // Loads the snapshot and builds the trigram indexes.
+        App.CATALOGUE_SEARCH.invoke(false, keyword, true, false);
+        partNames = App.getStatic("CatalogueCache", "partNames");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        BenchDatabase.close();
+        data.delete();
+        App.setStatic("CatalogueCache", "enabled", false);
+    }
+
+    @Benchmark
+    public Object likePartName() throws Throwable {
+        return App.SEARCH_DATABASE.invoke(false, keyword, true, false);
+    }
+
+    @Benchmark
+    public Object likeManufacturerName() throws Throwable {
+        return App.SEARCH_DATABASE.invoke(true, MANUFACTURER, true, false);
+    }
+
+    @Benchmark
+    public Object cachePartName() throws Throwable {
+        return App.CATALOGUE_SEARCH.invoke(false, keyword, true, false);
+    }
+
+    @Benchmark
+    public Object cacheManufacturerName() throws Throwable {
+        return App.CATALOGUE_SEARCH.invoke(true, MANUFACTURER, true, false);
+    }
+
+    @Benchmark
+    public Object trigramCandidates() throws Throwable {
+        return App.TRIGRAM_CANDIDATES.invoke(partNames, keyword);
+    }
+}
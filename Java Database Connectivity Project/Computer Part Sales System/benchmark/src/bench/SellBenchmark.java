@@ -0,0 +1,82 @@
+/*
+ * SalesOperations.Transaction: selling a part, as the salesperson menu does it (input parsed from a Scanner).
+ * - transaction: one thread selling random parts to random salespersons.
+ * - contended: four threads selling the same HOT_PARTS parts, so the stock UPDATEs queue on the same rows.
+ * Both run with direct sales (journal=false) and through SaleJournal (journal=true, in a temporary journal
+ * directory that is drained and deleted after the trial).
+ * by Jeffery
+ */
+
+package bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SellBenchmark {
+
+    static final int HOT_PARTS = 4;
+
+    @Param({"1", "100"})
+    public int scale;
+
+    @Param({"false", "true"})
+    public boolean journal;
+
+    private BenchDatabase.Data data;
+    private Path journalDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        BenchDatabase.silence();
+        App.setStatic("SaleJournal", "enabled", journal);
+        if (journal) {
+            journalDir = Files.createTempDirectory("sales-bench-journal");
+            App.setStatic("SaleJournal", "directory", journalDir.toString());
+        }
+        BenchDatabase.open();
+        data = BenchDatabase.scaledData(scale);
+        App.BULK_LOAD_DATA.invoke(data.folder.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        // The journal drains into the database, so it is shut down before the database.
+        App.JOURNAL_SHUTDOWN.invoke();
+        BenchDatabase.close();
+        App.setStatic("SaleJournal", "enabled", false);
+        data.delete();
+        if (journalDir != null) {
+            new BenchDatabase.Data(journalDir, 0, 0, 0).delete();
+            journalDir = null;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void transaction() throws Throwable {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        sell(random.nextInt(1, data.parts + 1), random.nextInt(1, data.salespersons + 1));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void contended() throws Throwable {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        sell(random.nextInt(1, HOT_PARTS + 1), random.nextInt(1, data.salespersons + 1));
+    }
+
+    private static void sell(int partId, int salespersonId) throws Throwable {
+        App.TRANSACTION.invoke(new Scanner(partId + " " + salespersonId));
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Stress check of the sell path ("ant stress"): hundreds of threads sell the last units of one part at the
+ * same time, on the in-memory H2 database of the benchmarks, and the outcome is checked:
+ * - exactly stock sales succeed and the stock of the part ends at 0 (no oversell, no unit lost);
+ * - the part has exactly stock new rows in TRANSACTION, and every tID in TRANSACTION is unique;
+ * - no sale failed with an exception.
+ * It runs once with direct sales (SalesOperations.sell) and once through SaleJournal (in a temporary journal
+ * directory, drained before the checks).
+ *
+ * Tunable with -Dsales.stress.threads (default 200), -Dsales.stress.stock (default 100) and
+ * -Dsales.stress.attempts (sales tried per thread, default 5). Exits with status 1 if a check fails.
+ * by Jeffery
+ */
+
+package bench;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SellStress {
+
+    static final int THREADS = Integer.getInteger("sales.stress.threads", 200);
+    static final int STOCK = Integer.getInteger("sales.stress.stock", 100);
+    static final int ATTEMPTS = Integer.getInteger("sales.stress.attempts", 5);
+    static final int PART = 1;
+
+    public static void main(String[] args) throws Throwable {
+        PrintStream console = System.out;
+        BenchDatabase.silence();
+        BenchDatabase.Data data = BenchDatabase.scaledData(1);
+        List<String> failures = new ArrayList<>();
+        try {
+            for (boolean journal : new boolean[]{false, true}) {
+                failures.addAll(run(journal, data, console));
+            }
+        } finally {
+            data.delete();
+        }
+        for (String failure : failures) {
+            console.println("FAILED: " + failure);
+        }
+        if (!failures.isEmpty()) System.exit(1);
+        console.println("All checks passed.");
+    }
+
+    private static List<String> run(boolean journal, BenchDatabase.Data data, PrintStream console) throws Throwable {
+        String mode = journal ? "journal" : "direct";
+        List<String> failures = new ArrayList<>();
+        Path journalDir = journal ? Files.createTempDirectory("sales-stress-journal") : null;
+        App.setStatic("SaleJournal", "enabled", journal);
+        if (journal) App.setStatic("SaleJournal", "directory", journalDir.toString());
+        BenchDatabase.open();
+        try {
+            App.BULK_LOAD_DATA.invoke(data.folder.toString());
+            long before;
+            try (Connection conn = (Connection) App.GET_CONNECTION.invoke();
+                 Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("UPDATE part SET pAvailableQuantity = " + STOCK + " WHERE pID = " + PART);
+                before = single(stmt, "SELECT COUNT(*) FROM transaction WHERE pID = " + PART);
+            }
+            App.RESET_CACHES.invoke();
+
+            AtomicInteger sold = new AtomicInteger();
+            AtomicInteger errors = new AtomicInteger();
+            AtomicReference<Throwable> firstError = new AtomicReference<>();
+            CountDownLatch go = new CountDownLatch(1);
+            ExecutorService sellers = Executors.newFixedThreadPool(THREADS);
+            for (int t = 0; t < THREADS; t++) {
+                sellers.execute(() -> {
+                    try {
+                        go.await();
+                        for (int a = 0; a < ATTEMPTS; a++) {
+                            int salesperson = ThreadLocalRandom.current().nextInt(1, data.salespersons + 1);
+                            Object sale = App.SELL.invoke(PART, salesperson);
+                            if (((Enum<?>) App.SALE_STATUS.invoke(sale)).name().equals("SOLD")) sold.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        errors.incrementAndGet();
+                        firstError.compareAndSet(null, e);
+                    }
+                });
+            }
+            long start = System.nanoTime();
+            go.countDown();
+            sellers.shutdown();
+            if (!sellers.awaitTermination(5, TimeUnit.MINUTES)) failures.add(mode + ": sellers did not finish in 5 minutes");
+            long elapsed = System.nanoTime() - start;
+            if (journal) App.JOURNAL_SHUTDOWN.invoke();
+
+            try (Connection conn = (Connection) App.GET_CONNECTION.invoke();
+                 Statement stmt = conn.createStatement()) {
+                long stock = single(stmt, "SELECT pAvailableQuantity FROM part WHERE pID = " + PART);
+                long rows = single(stmt, "SELECT COUNT(*) FROM transaction WHERE pID = " + PART) - before;
+                long total = single(stmt, "SELECT COUNT(*) FROM transaction");
+                long distinct = single(stmt, "SELECT COUNT(DISTINCT tID) FROM transaction");
+                console.printf("%s: %d threads x %d attempts, stock %d: %d sold, %d errors, stock left %d, %d new rows, %.0f ms%n",
+                        mode, THREADS, ATTEMPTS, STOCK, sold.get(), errors.get(), stock, rows, elapsed / 1e6);
+                if (sold.get() != STOCK) failures.add(mode + ": " + sold.get() + " sales succeeded, expected " + STOCK);
+                if (stock != 0) failures.add(mode + ": stock left is " + stock + ", expected 0");
+                if (rows != STOCK) failures.add(mode + ": " + rows + " new TRANSACTION rows for the part, expected " + STOCK);
+                if (total != distinct) failures.add(mode + ": " + (total - distinct) + " duplicate tIDs in TRANSACTION");
+            }
+            if (errors.get() > 0) {
+                failures.add(mode + ": " + errors.get() + " sellers failed, first: " + firstError.get());
+            }
+        } finally {
+            BenchDatabase.close();
+            App.setStatic("SaleJournal", "enabled", false);
+            if (journalDir != null) new BenchDatabase.Data(journalDir, 0, 0, 0).delete();
+        }
+        return failures;
+    }
+
+    private static long single(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The multi-store deployment (Shards): the same data on 1, 2, 4 or 8 embedded databases, the salespersons
+ * dealt evenly over them (BenchDatabase.openShards).
+ * - sell: eight threads selling random parts to random salespersons; every sale runs on the shard of its
+ *   salesperson, so the shards share the writes. With one shard this is the unsharded setup.
+ * - contended: eight threads selling the same HOT_PARTS parts. Every shard has its own stock rows, so the
+ *   stock UPDATEs queue on one row per shard instead of one row overall.
+ * - The manager reports run cold as scatter-gather over all shards (ShardReports).
+ * The databases share the JVM and its cores: the sell figures show how the write path scales with the number
+ * of shards as long as there are idle cores, the report figures what the scatter and merge cost.
+ * by Jeffery
+ */
+
+package bench;
+
+import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardBenchmark {
+
+    static final int HOT_PARTS = 4;
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    @Param({"100"})
+    public int scale;
+
+    private BenchDatabase.Data data;
+
+    @State(Scope.Thread)
+    public static class Cold {
+        @Setup(Level.Invocation)
+        public void reset() throws Throwable {
+            App.RESET_CACHES.invoke();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        BenchDatabase.silence();
+        data = BenchDatabase.scaledData(scale);
+        if (shards == 1) {
+            BenchDatabase.open();
+            App.BULK_LOAD_DATA.invoke(data.folder.toString());
+        } else {
+            BenchDatabase.openShards(shards, data);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        BenchDatabase.close();
+        data.delete();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void sell() throws Throwable {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        sell(random.nextInt(1, data.parts + 1), random.nextInt(1, data.salespersons + 1));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void contended() throws Throwable {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        sell(random.nextInt(1, HOT_PARTS + 1), random.nextInt(1, data.salespersons + 1));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void salesByManufacturer(Cold cold) throws Throwable {
+        report("3\n");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void popularParts(Cold cold) throws Throwable {
+        report("4\n10\n");
+    }
+
+    private static void sell(int partId, int salespersonId) throws Throwable {
+        App.TRANSACTION.invoke(new Scanner(partId + " " + salespersonId));
+    }
+
+    private static void report(String input) throws Throwable {
+        App.MANAGER_MENU.invoke(new Scanner(input + "7\n"));
+    }
+}
@@ -2,23 +2,112 @@
  * Implements Administrator functions for setting up and managing the database.
  * Menu functions:
  * 1) createTables(): Create all table schemas (category, manufacturer, part, salesperson, transaction) following the ER Diagram that I posted
- * 2) deleteTables(): Drop all tables (with CASCADE CONSTRAINTS).
+ * 2) deleteTables(): Drop all tables (with CASCADE CONSTRAINTS, or the Dialect's equivalent).
  * 3) loadData(folderPath): Load initial records from text files under a user-specified folder.
- * 4) showTable(tableName): Display all records of a specified table with column headers.
+ * 4) showTable(tableName, maxRows): Display the records of a specified table with column headers,
+ *    streamed page by page (keyset pagination, buffered output) by TableDumper.
+ * 5) Export all tables to columnar snapshot files (SnapshotFile); load mode 4 reads them back.
+ * 6) Rebuild the sales summary tables (SalesAggregates) from the transaction table.
+ * 7) Show the performance metrics (Metrics): latency and count of every operation, connection / execute /
+ *    fetch time, connection pool and per-query statistics.
  *
- * - Each operation opens a JDBC Connection via DBConnection.getConnection().
+ * - Each operation opens a JDBC Connection via DBConnection.getConnection(); showTable reads through
+ *   DBConnection.getReadConnection() (the read side, if one is configured).
+ * - Every operation and every table of every load mode is timed into Metrics (admin.*).
  * - Data loading is split into helper methods:
  *   loadCategory(), loadManufacturer(), loadPart(), loadSalesperson(), loadTransaction().
- * - SQL insertion uses PreparedStatement to bind parameters from parsed text files.
+ * - createTables() also creates id_block, the ID high-water-mark table used by IdAllocator, and the
+ *   summary tables of SalesAggregates.
+ * - SQL insertion uses the named INSERT statements of Queries, with parameters bound from the parsed files.
+ * - Data files are read with RecordReader (FileChannel based, fields tokenized in place).
+ * - The row parsers (bindCategory() ... bindTransaction()) are shared with BulkLoader, which offers
+ *   a batched load mode (addBatch/executeBatch, periodic commits, reject file) for large files,
+ *   and ParallelLoader, which runs BulkLoader on several connections following the FK graph of TABLE_DDL.
+ * - Load mode 5 is BulkLoader with checkpoints (load_checkpoint, see LoadCheckpoint): run it again after an
+ *   interrupted load and it resumes there. Load mode 6 (DeltaLoader) merges only the new and changed
+ *   records of updated data files into a loaded database.
+ * - createTables(true) (or -Dsales.schema.tuned=true) creates the tuned schema of TunedSchema: the foreign key
+ *   and covering indexes of the queries, optionally a transaction table partitioned by month and indexes
+ *   deferred until a load has finished. Every load mode ends in loadFinished(), which builds deferred indexes.
+ * - With several shards (Shards), createTables and deleteTables run on every shard, and load modes 1 and 2
+ *   load each shard with its part of the data files. showTable shows part, salesperson and transaction of
+ *   every shard.
  * by Jeffery
  */
 
+import java.io.IOException;
+import java.io.Writer;
 import java.sql.*;
 import java.util.*;
-import java.io.*;
 
 public class AdminOperations {
 
+    private static final Metrics.Timer CREATE_TABLES = Metrics.timer("admin.createTables");
+    private static final Metrics.Timer DELETE_TABLES = Metrics.timer("admin.deleteTables");
+    private static final Metrics.Timer LOAD_ROW = Metrics.timer("admin.load.row");
+    private static final Metrics.Timer SHOW_TABLE = Metrics.timer("admin.showTable");
+    private static final Metrics.Timer REBUILD_SUMMARIES = Metrics.timer("admin.rebuildSummaries");
+
+    // Table name -> CREATE TABLE statement, in creation order (referenced tables first).
+    // ParallelLoader reads the FOREIGN KEY ... REFERENCES clauses to build its load order.
+    static final Map<String, String> TABLE_DDL = new LinkedHashMap<>();
+    // The tables whose rows differ per shard (Shards): the sales, the salespersons and the stores' stock.
+    private static final Set<String> PER_STORE_TABLES = Set.of("part", "salesperson", "transaction");
+
+    static {
+        TABLE_DDL.put("category", "CREATE TABLE category (" +
+                "cID INTEGER PRIMARY KEY, " +
+                "cName VARCHAR(50))");
+
+        TABLE_DDL.put("manufacturer", "CREATE TABLE manufacturer (" +
+                "mID INTEGER PRIMARY KEY, " +
+                "mName VARCHAR(50), " +
+                "mAddress VARCHAR(100), " +
+                "mPhoneNumber INTEGER)");
+
+        TABLE_DDL.put("part", "CREATE TABLE part (" +
+                "pID INTEGER PRIMARY KEY, " +
+                "pName VARCHAR(100), " +
+                "pPrice INTEGER, " +
+                "mID INTEGER, " +
+                "cID INTEGER, " +
+                "pWarrantyPeriod INTEGER, " +
+                "pAvailableQuantity INTEGER, " +
+                "FOREIGN KEY (mID) REFERENCES manufacturer(mID), " +
+                "FOREIGN KEY (cID) REFERENCES category(cID))");
+
+        TABLE_DDL.put("salesperson", "CREATE TABLE salesperson (" +
+                "sID INTEGER PRIMARY KEY, " +
+                "sName VARCHAR(50), " +
+                "sAddress VARCHAR(100), " +
+                "sPhoneNumber INTEGER, " +
+                "sExperience INTEGER)");
+
+        TABLE_DDL.put("transaction", "CREATE TABLE transaction (" +
+                "tID INTEGER PRIMARY KEY, " +
+                "pID INTEGER, " +
+                "sID INTEGER, " +
+                "tDate DATE, " +
+                "FOREIGN KEY (pID) REFERENCES part(pID), " +
+                "FOREIGN KEY (sID) REFERENCES salesperson(sID))");
+
+        // High-water marks for IdAllocator (next free ID per table.column).
+        TABLE_DDL.put("id_block", "CREATE TABLE id_block (" +
+                "bName VARCHAR(30) PRIMARY KEY, " +
+                "bNextID INTEGER)");
+
+        // Summary tables maintained by SalesAggregates for the manager reports.
+        TABLE_DDL.put("sales_by_manufacturer", SalesAggregates.MANUFACTURER_DDL);
+        TABLE_DDL.put("sales_by_salesperson", SalesAggregates.SALESPERSON_DDL);
+        TABLE_DDL.put("sales_summary_state", SalesAggregates.STATE_DDL);
+
+        // Progress of resumable loads (BulkLoader.resumeData) and the database token of DeltaLoader.
+        TABLE_DDL.put("load_checkpoint", LoadCheckpoint.DDL);
+
+        // Heartbeat of ReplicaMonitor, replicated to the read side to measure its lag.
+        TABLE_DDL.put("replica_heartbeat", ReplicaMonitor.DDL);
+    }
+
     public static void showMenu(Scanner sc) {
         while (true) {
             System.out.println("\n-----Operations for administrator menu-----");
@@ -27,7 +116,10 @@ public class AdminOperations {
             System.out.println("2. Delete all tables");
             System.out.println("3. Load from datafile");
             System.out.println("4. Show content of a table");
-            System.out.println("5. Return to the main menu");
+            System.out.println("5. Export all tables to snapshot files");
+            System.out.println("6. Rebuild the sales summary tables");
+            System.out.println("7. Show performance metrics");
+            System.out.println("8. Return to the main menu");
             System.out.print("Enter Your Choice: ");
             int choice = sc.nextInt();
             sc.nextLine();  
@@ -42,14 +134,53 @@ public class AdminOperations {
                 case 3:
                     System.out.print("\nType in the Source Data Folder Path: ");
                     String input = sc.next();
-                    loadData(input);
+                    System.out.println("Choose the load mode:");
+                    System.out.println("1. Row by row");
+                    System.out.println("2. Bulk (batched inserts)");
+                    System.out.println("3. Parallel bulk (independent tables and file chunks loaded concurrently)");
+                    System.out.println("4. Snapshot files (*.snap written by the export option)");
+                    System.out.println("5. Resumable bulk (checkpointed; choose it again to resume an interrupted load)");
+                    System.out.println("6. Delta (merge only the new and changed records into the loaded data)");
+                    System.out.print("Choose the load mode: ");
+                    int mode = sc.nextInt();
+                    if (Shards.enabled) {
+                        if (mode == 1 || mode == 2) {
+                            Shards.loadData(input, mode == 2 ? BulkLoader::loadData : AdminOperations::loadData);
+                        } else {
+                            System.out.println("With shards, only load modes 1 and 2 are available.");
+                        }
+                    } else if (mode == 2) {
+                        BulkLoader.loadData(input);
+                    } else if (mode == 3) {
+                        ParallelLoader.loadData(input);
+                    } else if (mode == 4) {
+                        SnapshotFile.importAll(input);
+                    } else if (mode == 5) {
+                        BulkLoader.resumeData(input);
+                    } else if (mode == 6) {
+                        DeltaLoader.loadData(input);
+                    } else {
+                        loadData(input);
+                    }
                     return;
                 case 4:
                     System.out.print("Which table would you like to show: ");
                     String tableName = sc.next();
-                    showTable(tableName);
+                    System.out.print("Maximum number of rows to show (0 for all): ");
+                    long maxRows = sc.nextLong();
+                    showTable(tableName, maxRows);
                     return;
                 case 5:
+                    System.out.print("\nType in the Target Folder Path: ");
+                    SnapshotFile.exportAll(sc.next());
+                    return;
+                case 6:
+                    rebuildSummaries();
+                    return;
+                case 7:
+                    System.out.print(Metrics.report());
+                    return;
+                case 8:
                     return;
                 default:
                     System.out.println("Invalid input.");
@@ -57,325 +188,383 @@ public class AdminOperations {
         }
     }
 
-public static void showTable(String tableName) {
-    try (Connection conn = DBConnection.getConnection();
-         Statement stmt = conn.createStatement()) {
+public static void rebuildSummaries() {
+    long start = System.nanoTime();
+    try {
+        SalesAggregates.rebuild();
+        System.out.println("Processing...Done! Sales summary tables are rebuilt!");
+    } catch (SQLException e) {
+        System.out.println(" Fail to rebuild: " + e.getMessage());
+    } finally {
+        REBUILD_SUMMARIES.record(start);
+    }
+}
 
-        ResultSet rs = stmt.executeQuery("SELECT * FROM " + tableName);
-        ResultSetMetaData meta = rs.getMetaData();
-        int columnCount = meta.getColumnCount();
+public static void showTable(String tableName) {
+    showTable(tableName, 0);
+}
 
+// Shows at most maxRows rows (0 = all), streamed page by page through TableDumper. With shards the tables
+// that differ per store are shown for every shard.
+public static void showTable(String tableName, long maxRows) {
+    if (Shards.enabled && !Shards.isPinned() && PER_STORE_TABLES.contains(tableName.toLowerCase(Locale.ROOT))) {
+        Shards.onEveryShard(shard -> {
+            showTable(tableName, maxRows);
+            return true;
+        });
+        return;
+    }
+    long start = System.nanoTime();
+    try {
         System.out.println("Content of table " + tableName + ":");
-        
-        for (int i = 1; i <= columnCount; i++) {
-            System.out.print("| " + meta.getColumnName(i) + " ");
-        }
-        System.out.println("|");
-
-        while (rs.next()) {
-            for (int i = 1; i <= columnCount; i++) {
-                System.out.print("| " + rs.getString(i) + " ");
-            }
-            System.out.println("|");
+        Writer out = TableDumper.consoleWriter();
+        long rows = TableDumper.dump(tableName, maxRows, out);
+        if (maxRows > 0 && rows == maxRows) {
+            System.out.println("(stopped after " + rows + " rows)");
         }
-
-    } catch (SQLException e) {
+    } catch (SQLException | IOException e) {
         System.out.println(" Fail to show：" + e.getMessage());
+    } finally {
+        SHOW_TABLE.record(start);
     }
 }
     
     
     
     
-public static void loadData(String folderPath) {
+// Returns false if a table could not be loaded (rows skipped one by one do not count).
+public static boolean loadData(String folderPath) {
+    long start = System.nanoTime();
+    boolean ok = false;
     try {
-        loadCategory(folderPath + "/category.txt");
-        loadManufacturer(folderPath + "/manufacturer.txt");
-        loadPart(folderPath + "/part.txt");
-        loadSalesperson(folderPath + "/salesperson.txt");
-        loadTransaction(folderPath + "/transaction.txt");
+        // Every table is tried, even after one failed.
+        ok = loadCategory(folderPath + "/category.txt");
+        ok &= loadManufacturer(folderPath + "/manufacturer.txt");
+        ok &= loadPart(folderPath + "/part.txt");
+        ok &= loadSalesperson(folderPath + "/salesperson.txt");
+        ok &= loadTransaction(folderPath + "/transaction.txt");
 
         System.out.println(" Processing...Done! Data is inputted to the database!");
     } catch (Exception e) {
         System.out.println(" Error while loading data: " + e.getMessage());
     }
+    ok &= loadFinished();
+    LOAD_ROW.record(start);
+    return ok;
 }
     
 
-public static void loadCategory(String path) {
+public static boolean loadCategory(String path) {
+    long start = System.nanoTime();
     try (Connection conn = DBConnection.getConnection();
-         Scanner scanner = new Scanner(new File(path))) {
-
-        String sql = "INSERT INTO category (cID, cName) VALUES (?, ?)";
-        PreparedStatement pstmt = conn.prepareStatement(sql);
-
-        while (scanner.hasNextLine()) {
-            String line = scanner.nextLine().trim();
-            if (line.isEmpty()) continue;
-
-            String[] tokens = line.split("\\s+");
-            int id = Integer.parseInt(tokens[0]);
-            String name = String.join(" ", Arrays.copyOfRange(tokens, 1, tokens.length));
+         RecordReader reader = new RecordReader(path)) {
 
-            pstmt.setInt(1, id);
-            pstmt.setString(2, name);
+        PreparedStatement pstmt = Queries.INSERT_CATEGORY.prepare(conn);
 
-            pstmt.executeUpdate();
+        while (reader.next()) {
+            bindCategory(reader, pstmt);
+            Queries.INSERT_CATEGORY.executeUpdate(pstmt);
         }
 
         System.out.println(" category.txt SUCCESSFUL!");
+        return true;
     } catch (Exception e) {
         System.out.println(" category.txt FAIL:" + e.getMessage());
+        return false;
+    } finally {
+        Metrics.timer("admin.load.row.category").record(start);
     }
 }
     
     
-public static void loadManufacturer(String path) {
+public static boolean loadManufacturer(String path) {
+    long start = System.nanoTime();
     try (Connection conn = DBConnection.getConnection();
-         Scanner scanner = new Scanner(new File(path))) {
-
-        String sql = "INSERT INTO manufacturer (mID, mName, mAddress, mPhoneNumber) VALUES (?, ?, ?, ?)";
-        PreparedStatement pstmt = conn.prepareStatement(sql);
-
-        while (scanner.hasNextLine()) {
-            String line = scanner.nextLine().trim();
-            if (line.isEmpty()) continue;
-
-            String[] tokens = line.split("\\s+");
-            int id = Integer.parseInt(tokens[0]);
-            int phone = Integer.parseInt(tokens[tokens.length - 1]);
-
-            String name = tokens[1];
-            String address = String.join(" ", Arrays.copyOfRange(tokens, 2, tokens.length-1));
+         RecordReader reader = new RecordReader(path)) {
 
-            pstmt.setInt(1, id);
-            pstmt.setString(2, name);
-            pstmt.setString(3, address);
-            pstmt.setInt(4, phone);
+        PreparedStatement pstmt = Queries.INSERT_MANUFACTURER.prepare(conn);
 
-            pstmt.executeUpdate();
+        while (reader.next()) {
+            bindManufacturer(reader, pstmt);
+            Queries.INSERT_MANUFACTURER.executeUpdate(pstmt);
         }
 
         System.out.println(" manufacturer.txt SUCCESSFUL!");
+        return true;
     } catch (Exception e) {
         System.out.println(" manufacturer.txt FAIL:" + e.getMessage());
+        return false;
+    } finally {
+        Metrics.timer("admin.load.row.manufacturer").record(start);
     }
 }
     
     
     
-public static void loadPart(String path) {
-    String sql = "INSERT INTO part (pID, pName, pPrice, mID, cID, pWarrantyPeriod, pAvailableQuantity) VALUES (?, ?, ?, ?, ?, ?, ?)";
+public static boolean loadPart(String path) {
+    long start = System.nanoTime();
     try (Connection conn = DBConnection.getConnection();
-         Scanner scanner = new Scanner(new File(path));
-         PreparedStatement pstmt = conn.prepareStatement(sql)) {
+         RecordReader reader = new RecordReader(path)) {
 
-        while (scanner.hasNextLine()) {
-            String line = scanner.nextLine().trim();
-            if (line.isEmpty()) continue;
+        PreparedStatement pstmt = Queries.INSERT_PART.prepare(conn);
 
-            String[] tokens = line.split("\\s+");
-            int len = tokens.length;
-
-            if (len < 7) {
-                System.out.println("I will skip this line due to not enough column data: " + line);
+        while (reader.next()) {
+            if (!bindPart(reader, pstmt)) {
+                System.out.println("I will skip this line due to not enough column data: " + reader.line());
                 continue;
             }
 
-            int pID = Integer.parseInt(tokens[0]);
-            int price = Integer.parseInt(tokens[len - 5]);
-            int mID = Integer.parseInt(tokens[len - 4]);
-            int cID = Integer.parseInt(tokens[len - 3]);
-            int warranty = Integer.parseInt(tokens[len - 2]);
-            int quantity = Integer.parseInt(tokens[len - 1]);
-
-            String name = String.join(" ", Arrays.copyOfRange(tokens, 1, len - 5));
-
-            pstmt.setInt(1, pID);
-            pstmt.setString(2, name);
-            pstmt.setInt(3, price);
-            pstmt.setInt(4, mID);
-            pstmt.setInt(5, cID);
-            pstmt.setInt(6, warranty);
-            pstmt.setInt(7, quantity);
-
-            pstmt.executeUpdate();
+            Queries.INSERT_PART.executeUpdate(pstmt);
         }
 
         System.out.println(" part.txt SUCCESSFUL!");
+        return true;
     } catch (Exception e) {
         e.printStackTrace();
         System.out.println(" part.txt FAIL:" + e.getMessage());
+        return false;
+    } finally {
+        Metrics.timer("admin.load.row.part").record(start);
     }
 }
 
     
-public static void loadSalesperson(String path) {
+public static boolean loadSalesperson(String path) {
+    long start = System.nanoTime();
     try (Connection conn = DBConnection.getConnection();
-         Scanner scanner = new Scanner(new File(path))) {
-
-        String sql = "INSERT INTO salesperson (sID, sName, sAddress, sPhoneNumber, sExperience) VALUES (?, ?, ?, ?, ?)";
-        PreparedStatement pstmt = conn.prepareStatement(sql);
+         RecordReader reader = new RecordReader(path)) {
 
-        while (scanner.hasNextLine()) {
-            String line = scanner.nextLine().trim();
-            if (line.isEmpty()) continue;
+        PreparedStatement pstmt = Queries.INSERT_SALESPERSON.prepare(conn);
 
-            String[] tokens = line.split("\\s+");
-            int id = Integer.parseInt(tokens[0]);
-            String name = tokens[1] + " " + tokens[2];
-            String address = String.join(" ", Arrays.copyOfRange(tokens, 3, tokens.length - 2));
-            int phone = Integer.parseInt(tokens[tokens.length - 2]);
-            int experience = Integer.parseInt(tokens[tokens.length - 1]);
-
-            pstmt.setInt(1, id);
-            pstmt.setString(2, name);
-            pstmt.setString(3, address);
-            pstmt.setInt(4, phone);
-            pstmt.setInt(5, experience);
-
-            pstmt.executeUpdate();
+        while (reader.next()) {
+            bindSalesperson(reader, pstmt);
+            Queries.INSERT_SALESPERSON.executeUpdate(pstmt);
         }
 
         System.out.println(" salesperson.txt SUCCESSFUL!");
+        return true;
     } catch (Exception e) {
         System.out.println(" salesperson.txt FAIL:" + e.getMessage());
+        return false;
+    } finally {
+        Metrics.timer("admin.load.row.salesperson").record(start);
     }
 }
 
-public static void loadTransaction(String path) {
+public static boolean loadTransaction(String path) {
+    long start = System.nanoTime();
     try (Connection conn = DBConnection.getConnection();
-         Scanner scanner = new Scanner(new File(path))) {
-
-        String sql = "INSERT INTO transaction (tID, pID, sID, tDate) VALUES (?, ?, ?, ?)";
-        PreparedStatement pstmt = conn.prepareStatement(sql);
-
-        while (scanner.hasNextLine()) {
-            String line = scanner.nextLine().trim();
-            if (line.isEmpty()) continue;
+         RecordReader reader = new RecordReader(path)) {
 
-            String[] tokens = line.split("\\s+");
-            int tID = Integer.parseInt(tokens[0]);
-            int pID = Integer.parseInt(tokens[1]);
-            int sID = Integer.parseInt(tokens[2]);
-            String tDate = tokens[3];
+        PreparedStatement pstmt = Queries.INSERT_TRANSACTION.prepare(conn);
 
+        while (reader.next()) {
             try {
-                pstmt.setInt(1, tID);
-                pstmt.setInt(2, pID);
-                pstmt.setInt(3, sID);
-                pstmt.setDate(4, java.sql.Date.valueOf(convertDate(tDate)));
-
-                pstmt.executeUpdate();
+                bindTransaction(reader, pstmt);
+                Queries.INSERT_TRANSACTION.executeUpdate(pstmt);
             } catch (Exception innerEx) {
-                System.out.println(" tID=" + tID + " (pID=" + pID + ", sID=" + sID + ")：" + innerEx.getMessage());
+                System.out.println(" " + reader.line() + "：" + innerEx.getMessage());
             }
         }
 
         System.out.println(" transaction.txt SUCCESSFUL!");
+        return true;
     } catch (Exception e) {
         System.out.println(" transaction.txt FAIL:" + e.getMessage());
+        return false;
+    } finally {
+        Metrics.timer("admin.load.row.transaction").record(start);
+    }
+}
+
+// End of every load mode: builds the indexes a tuned schema deferred, then resets the caches. False if the
+// indexes could not be built.
+static boolean loadFinished() {
+    boolean ok = true;
+    if (TunedSchema.enabled && TunedSchema.deferIndexes) {
+        try {
+            TunedSchema.buildIndexes();
+        } catch (SQLException e) {
+            System.out.println(" Error while building indexes: " + e.getMessage());
+            ok = false;
+        }
+    }
+    resetCaches();
+    return ok;
+}
+
+// Drops in-memory state derived from the tables (reserved ID blocks, cached catalogue)
+// after tables are created / dropped or rows are loaded outside the sell path.
+static void resetCaches() {
+    SaleJournal.invalidate();
+    IdAllocator.invalidateAll();
+    CatalogueCache.invalidate();
+    SalesAggregates.invalidate();
+    PopularParts.invalidate();
+    SalesRollups.invalidate();
+    ColumnStore.invalidate();
+}
+
+// Row parsers shared by the row-by-row loaders above and BulkLoader.
+// Each one binds the current record of the data file to the table's INSERT statement.
+
+static void bindCategory(RecordReader rec, PreparedStatement pstmt) throws SQLException {
+    pstmt.setInt(1, rec.intField(0));
+    pstmt.setString(2, rec.joinFields(1, rec.fieldCount()));
+}
+
+static void bindManufacturer(RecordReader rec, PreparedStatement pstmt) throws SQLException {
+    int len = rec.fieldCount();
+
+    pstmt.setInt(1, rec.intField(0));
+    pstmt.setString(2, rec.field(1));
+    pstmt.setString(3, rec.joinFields(2, len - 1));
+    pstmt.setInt(4, rec.intField(len - 1));
+}
+
+// Returns false (and binds nothing) when the line has too few columns.
+static boolean bindPart(RecordReader rec, PreparedStatement pstmt) throws SQLException {
+    int len = rec.fieldCount();
+
+    if (len < 7) {
+        return false;
     }
+
+    pstmt.setInt(1, rec.intField(0));
+    pstmt.setString(2, rec.joinFields(1, len - 5));
+    pstmt.setInt(3, rec.intField(len - 5));
+    pstmt.setInt(4, rec.intField(len - 4));
+    pstmt.setInt(5, rec.intField(len - 3));
+    pstmt.setInt(6, rec.intField(len - 2));
+    pstmt.setInt(7, rec.intField(len - 1));
+    return true;
 }
 
-private static String convertDate(String date) {
-    String[] parts = date.split("/");
-    return parts[2] + "-" + parts[1] + "-" + parts[0]; 
+static void bindSalesperson(RecordReader rec, PreparedStatement pstmt) throws SQLException {
+    int len = rec.fieldCount();
+
+    pstmt.setInt(1, rec.intField(0));
+    pstmt.setString(2, rec.joinFields(1, 3));
+    pstmt.setString(3, rec.joinFields(3, len - 2));
+    pstmt.setInt(4, rec.intField(len - 2));
+    pstmt.setInt(5, rec.intField(len - 1));
+}
+
+static void bindTransaction(RecordReader rec, PreparedStatement pstmt) throws SQLException {
+    pstmt.setInt(1, rec.intField(0));
+    pstmt.setInt(2, rec.intField(1));
+    pstmt.setInt(3, rec.intField(2));
+    pstmt.setDate(4, rec.dateField(3));
 }
     
     
     
     
-    public static void createTables() {
+    public static boolean createTables() {
+        return createTables(TunedSchema.enabled);
+    }
+
+    // tuned: the TunedSchema variant (indexes, partitioning); it stays the schema of this run. Returns false
+    // if a table could not be created.
+    public static boolean createTables(boolean tuned) {
+        if (Shards.enabled && !Shards.isPinned()) {
+            return Shards.onEveryShard(shard -> createTables(tuned));
+        }
+        long start = System.nanoTime();
+        TunedSchema.enabled = tuned;
         try (Connection conn = DBConnection.getConnection(); 
             Statement stmt = conn.createStatement()) {
 
-            String Category = "CREATE TABLE category (" +
-                    "cID INTEGER PRIMARY KEY, " +
-                    "cName VARCHAR(50))";
-
-            String Manufacturer = "CREATE TABLE manufacturer (" +
-                    "mID INTEGER PRIMARY KEY, " +
-                    "mName VARCHAR(50), " +
-                    "mAddress VARCHAR(100), " +
-                    "mPhoneNumber INTEGER)";
-
-            String Part = "CREATE TABLE part (" +
-                    "pID INTEGER PRIMARY KEY, " +
-                    "pName VARCHAR(100), " +
-                    "pPrice INTEGER, " +
-                    "mID INTEGER, " +
-                    "cID INTEGER, " +
-                    "pWarrantyPeriod INTEGER, " +
-                    "pAvailableQuantity INTEGER, " +
-                    "FOREIGN KEY (mID) REFERENCES manufacturer(mID), " +
-                    "FOREIGN KEY (cID) REFERENCES category(cID))";
-
-            String Salesperson = "CREATE TABLE salesperson (" +
-                    "sID INTEGER PRIMARY KEY, " +
-                    "sName VARCHAR(50), " +
-                    "sAddress VARCHAR(100), " +
-                    "sPhoneNumber INTEGER, " +
-                    "sExperience INTEGER)";
-
-            String Transaction = "CREATE TABLE transaction (" +
-                    "tID INTEGER PRIMARY KEY, " +
-                    "pID INTEGER, " +
-                    "sID INTEGER, " +
-                    "tDate DATE, " +
-                    "FOREIGN KEY (pID) REFERENCES part(pID), " +
-                    "FOREIGN KEY (sID) REFERENCES salesperson(sID))";
-
-            stmt.executeUpdate(Category);
-            stmt.executeUpdate(Manufacturer);
-            stmt.executeUpdate(Part);
-            stmt.executeUpdate(Salesperson);
-            stmt.executeUpdate(Transaction);
+            for (Map.Entry<String, String> e : TABLE_DDL.entrySet()) {
+                stmt.executeUpdate(tuned ? TunedSchema.tableDdl(e.getKey(), e.getValue()) : e.getValue());
+            }
+            if (tuned && !TunedSchema.deferIndexes) {
+                TunedSchema.buildIndexes();
+            }
 
+            resetCaches();
             System.out.println("Processing...Done! Database is initialized!");
+            return true;
         } catch (SQLException e) {
             System.out.println("Error: " + e.getMessage());
+            return false;
+        } finally {
+            CREATE_TABLES.record(start);
         }
     }
 
     
     
-    public static void deleteTables() {
+    // Returns false if a table could not be dropped.
+    public static boolean deleteTables() {
+        if (Shards.enabled && !Shards.isPinned()) {
+            return Shards.onEveryShard(shard -> deleteTables());
+        }
+        long start = System.nanoTime();
+        boolean ok = true;
+        // Journaled sales still need their tables.
+        SaleJournal.invalidate();
         try (Connection conn = DBConnection.getConnection(); 
             Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate("DROP TABLE transaction CASCADE CONSTRAINTS");
+            stmt.executeUpdate(DBConnection.dialect().dropTable("transaction"));
         } catch (SQLException e) {
             System.out.print("Error for transaction: " + e.getMessage());
+            ok = false;
         }
         
         try (Connection conn = DBConnection.getConnection(); 
             Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate("DROP TABLE part CASCADE CONSTRAINTS");
+            stmt.executeUpdate(DBConnection.dialect().dropTable("part"));
         } catch (SQLException e) {
             System.out.print("Error for part: " + e.getMessage());
+            ok = false;
         }
         
         try (Connection conn = DBConnection.getConnection(); 
             Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate("DROP TABLE salesperson CASCADE CONSTRAINTS");
+            stmt.executeUpdate(DBConnection.dialect().dropTable("salesperson"));
         } catch (SQLException e) {
             System.out.print("Error for salesperson: " + e.getMessage());
+            ok = false;
         }
         
         try (Connection conn = DBConnection.getConnection(); 
             Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate("DROP TABLE manufacturer CASCADE CONSTRAINTS"); 
+            stmt.executeUpdate(DBConnection.dialect().dropTable("manufacturer")); 
         } catch (SQLException e) {
             System.out.print("Error for manufacturer: " + e.getMessage());
+            ok = false;
         }
         
         try (Connection conn = DBConnection.getConnection(); 
             Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate("DROP TABLE category CASCADE CONSTRAINTS");
+            stmt.executeUpdate(DBConnection.dialect().dropTable("category"));
         } catch (SQLException e) {
             System.out.print("Error for category: " + e.getMessage());
+            ok = false;
+        }
+        
+        try (Connection conn = DBConnection.getConnection(); 
+            Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(DBConnection.dialect().dropTable("id_block"));
+        } catch (SQLException e) {
+            System.out.print("Error for id_block: " + e.getMessage());
+            ok = false;
+        }
+
+        for (String summary : new String[]{"sales_by_manufacturer", "sales_by_salesperson", "sales_summary_state", "load_checkpoint", "replica_heartbeat"}) {
+            try (Connection conn = DBConnection.getConnection();
+                Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate(DBConnection.dialect().dropTable(summary));
+            } catch (SQLException e) {
+                System.out.print("Error for " + summary + ": " + e.getMessage());
+                ok = false;
+            }
         }
         
+        resetCaches();
+        DELETE_TABLES.record(start);
         System.out.println("Processing...Done! Database is removed!");
+        return ok;
     }
 }
\ No newline at end of file
@@ -0,0 +1,454 @@
+/*
+ * Non-interactive command mode: java ComputerPartSalesSystem --batch [file]   (no file or "-": standard input)
+ * Reads one command per line and writes machine-readable, tab-separated results to standard output, for
+ * replaying point-of-sale logs and running reports from cron. The interactive menus are not involved.
+ *
+ * Commands (blank lines and lines starting with # are skipped):
+ *   sell <pID> <sID>
+ *   search <part|manufacturer> <asc|desc> <keyword...>
+ *   report salespersons [asc|desc]
+ *   report experience <lower> <upper>
+ *   report manufacturers
+ *   report popular <n>
+ *   report range <manufacturer|category|part|salesperson> <yyyy-mm-dd> <yyyy-mm-dd>
+ *   report analysis <column>[,<column>...] [<yyyy-mm-dd> <yyyy-mm-dd>]     (ColumnStore; column: manufacturer,
+ *          category, part, salesperson, day, month, experience or price; rows: key and name per column,
+ *          number of sales, sales value)
+ *   load <folder> [row|bulk|parallel|snapshot|resume|delta]        (default bulk; with shards row or bulk)
+ *   export <folder>
+ *   create [basic|tuned]                                           (tuned: TunedSchema; default -Dsales.schema.tuned)
+ *   delete | rebuild | metrics
+ *
+ * Output: every line starts with the input line number and the command word, then a status:
+ *   <line> <command> row <fields...>      one per result row (search / report)
+ *   <line> <command> ok [<fields...>]     sell: tID and remaining quantity; search / report: number of rows
+ *   <line> sell out_of_stock | not_found
+ *   <line> <command> error <message>
+ * Fields are tab-separated; tabs and line breaks inside values become spaces. What the operations print for
+ * people (load progress etc.) goes to standard error. The exit status is 1 if any command failed.
+ *
+ * - Consecutive sell commands are grouped (up to sellGroup, and never waiting for more input) and sold with
+ *   SalesOperations.sell(partIds, salespersonIds): one transaction on one pooled connection with the INSERTs
+ *   batched. If the group fails (e.g. an unknown salesperson) its sales are retried one by one, so only the
+ *   failing sale reports an error; with shards, the sales a group committed on other shards before the
+ *   failure are reported as sold and not retried.
+ * - load, export, create and delete report their failures on standard error themselves; the command then
+ *   ends with "error failed, see standard error". Rows a loader rejects (see the .rejected files) do not fail
+ *   a load.
+ * - Every command is timed into Metrics (batch.<command>).
+ *
+ * Tunable with -Dsales.batch.sellGroup.
+ * by Jeffery
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+public class BatchMode {
+
+    private static int sellGroup = Math.max(1, DBConnection.intSetting("sales.batch.sellGroup", 50));
+
+    private static final Set<String> COMMANDS = new HashSet<>(Arrays.asList(
+            "search", "report", "load", "export", "create", "delete", "rebuild", "metrics"));
+
+    // A sell command waiting for its group.
+    private static final class PendingSell {
+        final int line;
+        final int partId;
+        final int salespersonId;
+
+        PendingSell(int line, int partId, int salespersonId) {
+            this.line = line;
+            this.partId = partId;
+            this.salespersonId = salespersonId;
+        }
+    }
+
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private final List<PendingSell> sells = new ArrayList<>();
+    private int errors;
+
+    private BatchMode(BufferedReader in, PrintWriter out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    // Runs the commands of the file (or standard input for null / "-"); returns the process exit status.
+    public static int run(String file) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8)));
+        PrintStream console = System.out;
+        // The operations' messages for people go to standard error, the results stay machine-readable.
+        System.setOut(System.err);
+        try (BufferedReader in = file == null || file.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            return run(in, out);
+        } catch (IOException e) {
+            System.err.println("Error while reading commands: " + e.getMessage());
+            return 1;
+        } finally {
+            out.flush();
+            System.setOut(console);
+        }
+    }
+
+    // Runs the commands read from in and writes the results to out (SalesServer's batch sessions); returns the
+    // exit status. Leaves System.out alone.
+    static int run(BufferedReader in, PrintWriter out) throws IOException {
+        BatchMode batch = new BatchMode(in, out);
+        batch.runAll();
+        out.flush();
+        return batch.errors > 0 ? 1 : 0;
+    }
+
+    private void runAll() throws IOException {
+        String text;
+        int line = 0;
+        while ((text = in.readLine()) != null) {
+            line++;
+            text = text.trim();
+            if (!text.isEmpty() && !text.startsWith("#")) {
+                String[] words = text.split("\\s+");
+                if (words[0].equalsIgnoreCase("sell")) {
+                    queueSell(line, words);
+                } else {
+                    flushSells();
+                    execute(line, words, text);
+                }
+            }
+            // Do not hold sales (or results) back while the producer of a stream is idle.
+            if (sells.size() >= sellGroup || !in.ready()) {
+                flushSells();
+                out.flush();
+            }
+        }
+        flushSells();
+    }
+
+    private void queueSell(int line, String[] words) {
+        if (words.length != 3) {
+            error(line, "sell", "usage: sell <pID> <sID>");
+            return;
+        }
+        try {
+            sells.add(new PendingSell(line, Integer.parseInt(words[1]), Integer.parseInt(words[2])));
+        } catch (NumberFormatException e) {
+            error(line, "sell", "not a number: " + e.getMessage());
+        }
+    }
+
+    private void flushSells() {
+        if (sells.isEmpty()) return;
+        long start = System.nanoTime();
+        int[] partIds = new int[sells.size()];
+        int[] salespersonIds = new int[sells.size()];
+        for (int i = 0; i < sells.size(); i++) {
+            partIds[i] = sells.get(i).partId;
+            salespersonIds[i] = sells.get(i).salespersonId;
+        }
+        try {
+            List<SalesOperations.Sale> sales = SalesOperations.sell(partIds, salespersonIds);
+            for (int i = 0; i < sales.size(); i++) {
+                printSale(sells.get(i).line, sales.get(i));
+            }
+        } catch (SQLException | RuntimeException groupFailure) {
+            // With shards the groups of other shards may be committed already; those are not sold again.
+            SalesOperations.Sale[] sold = groupFailure instanceof SalesOperations.PartlySoldException
+                    ? ((SalesOperations.PartlySoldException) groupFailure).sales
+                    : new SalesOperations.Sale[sells.size()];
+            for (int i = 0; i < sells.size(); i++) {
+                PendingSell p = sells.get(i);
+                if (sold[i] != null) {
+                    printSale(p.line, sold[i]);
+                    continue;
+                }
+                try {
+                    printSale(p.line, SalesOperations.sell(p.partId, p.salespersonId));
+                } catch (SQLException | RuntimeException e) {
+                    error(p.line, "sell", e.getMessage());
+                }
+            }
+        }
+        sells.clear();
+        Metrics.timer("batch.sell").record(start);
+    }
+
+    private void printSale(int line, SalesOperations.Sale sale) {
+        switch (sale.status) {
+            case SOLD:
+                print(line, "sell", "ok", sale.transactionId, sale.remaining);
+                break;
+            case OUT_OF_STOCK:
+                print(line, "sell", "out_of_stock", sale.partId);
+                break;
+            default:
+                print(line, "sell", "not_found", sale.partId);
+        }
+    }
+
+    private void execute(int line, String[] words, String text) {
+        String command = words[0].toLowerCase(Locale.ROOT);
+        if (!COMMANDS.contains(command)) {
+            error(line, command, "unknown command");
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            switch (command) {
+                case "search":
+                    search(line, words, text);
+                    break;
+                case "report":
+                    report(line, words);
+                    break;
+                case "load":
+                    load(line, words);
+                    break;
+                case "export":
+                    need(words, 2, "export <folder>");
+                    result(line, command, SnapshotFile.exportAll(words[1]));
+                    break;
+                case "create":
+                    if (words.length < 2) {
+                        result(line, command, AdminOperations.createTables());
+                    } else if (words[1].equals("basic") || words[1].equals("tuned")) {
+                        result(line, command, AdminOperations.createTables(words[1].equals("tuned")));
+                    } else {
+                        throw new IllegalArgumentException("usage: create [basic|tuned]");
+                    }
+                    break;
+                case "delete":
+                    result(line, command, AdminOperations.deleteTables());
+                    break;
+                case "rebuild":
+                    SalesAggregates.rebuild();
+                    print(line, command, "ok");
+                    break;
+                case "metrics":
+                    for (String row : Metrics.report().split("\\R")) {
+                        print(line, command, "row", row);
+                    }
+                    print(line, command, "ok");
+                    break;
+            }
+        } catch (SQLException | IllegalArgumentException | DateTimeParseException e) {
+            error(line, command, e.getMessage());
+        } finally {
+            Metrics.timer("batch." + command).record(start);
+        }
+    }
+
+    private void search(int line, String[] words, String text) throws SQLException {
+        need(words, 4, "search <part|manufacturer> <asc|desc> <keyword...>");
+        boolean byManufacturer = choose(words[1], "part", "manufacturer");
+        boolean ascending = !choose(words[2], "asc", "desc");
+        // The keyword is the rest of the line, inner spaces included.
+        String keyword = text.split("\\s+", 4)[3];
+
+        List<SalesOperations.PartRow> rows = SalesOperations.search(byManufacturer, keyword, ascending);
+        for (SalesOperations.PartRow r : rows) {
+            print(line, "search", "row", r.pID, r.pName, r.mName, r.cName, r.quantity, r.warranty, r.price);
+        }
+        print(line, "search", "ok", rows.size());
+    }
+
+    private void report(int line, String[] words) throws SQLException {
+        need(words, 2, "report <salespersons|experience|manufacturers|popular|range|analysis> ...");
+        String report = words[1].toLowerCase(Locale.ROOT);
+        int rows = 0;
+        switch (report) {
+            case "salespersons": {
+                boolean descending = words.length > 2 && choose(words[2], "asc", "desc");
+                Queries.Query query = descending ? Queries.LIST_SALESPERSONS_DESC : Queries.LIST_SALESPERSONS_ASC;
+                if (Shards.enabled) {
+                    rows = printRows(line, ShardReports.listSalespersons(descending));
+                    break;
+                }
+                try (Connection conn = DBConnection.getReadConnection();
+                     ResultSet rs = query.executeQuery(query.prepare(conn))) {
+                    rows = printRows(line, rs);
+                }
+                break;
+            }
+            case "experience": {
+                need(words, 4, "report experience <lower> <upper>");
+                if (Shards.enabled) {
+                    rows = printRows(line, ShardReports.salesByExperience(Integer.parseInt(words[2]), Integer.parseInt(words[3])));
+                    break;
+                }
+                SalesAggregates.refresh();
+                try (Connection conn = DBConnection.getReadConnection()) {
+                    PreparedStatement pstmt = Queries.SALES_BY_EXPERIENCE.prepare(conn);
+                    pstmt.setInt(1, Integer.parseInt(words[3]));
+                    pstmt.setInt(2, Integer.parseInt(words[2]));
+                    try (ResultSet rs = Queries.SALES_BY_EXPERIENCE.executeQuery(pstmt)) {
+                        rows = printRows(line, rs);
+                    }
+                }
+                break;
+            }
+            case "manufacturers": {
+                if (Shards.enabled) {
+                    rows = printRows(line, ShardReports.salesByManufacturer());
+                    break;
+                }
+                SalesAggregates.refresh();
+                try (Connection conn = DBConnection.getReadConnection();
+                     ResultSet rs = Queries.SALES_BY_MANUFACTURER.executeQuery(Queries.SALES_BY_MANUFACTURER.prepare(conn))) {
+                    rows = printRows(line, rs);
+                }
+                break;
+            }
+            case "popular": {
+                need(words, 3, "report popular <n>");
+                int n = Integer.parseInt(words[2]);
+                if (n <= 0) throw new IllegalArgumentException("n must be positive");
+                for (PopularParts.Entry e : Shards.enabled ? ShardReports.topParts(n) : PopularParts.top(n)) {
+                    print(line, "report", "row", e.pID, e.pName, e.count);
+                    rows++;
+                }
+                break;
+            }
+            case "range": {
+                need(words, 5, "report range <manufacturer|category|part|salesperson> <from> <to>");
+                SalesRollups.Dimension dimension = SalesRollups.Dimension.valueOf(words[2].toUpperCase(Locale.ROOT));
+                LocalDate from = LocalDate.parse(words[3]);
+                LocalDate to = LocalDate.parse(words[4]);
+                List<SalesRollups.Total> totals = SalesRollups.range(dimension, from, to);
+                List<Integer> keys = new ArrayList<>(totals.size());
+                for (SalesRollups.Total t : totals) keys.add(t.key);
+                Map<Integer, String> names = dimension.names(keys);
+                for (SalesRollups.Total t : totals) {
+                    print(line, "report", "row", t.key, names.get(t.key), t.count, t.revenue);
+                    rows++;
+                }
+                break;
+            }
+            case "analysis": {
+                need(words, 3, "report analysis <column>[,<column>...] [<from> <to>]");
+                ColumnStore.Scan scan = ColumnStore.scan();
+                for (String column : words[2].split(",")) {
+                    scan.groupBy(ColumnStore.Column.parse(column));
+                }
+                if (words.length > 3) {
+                    need(words, 5, "report analysis <column>[,<column>...] [<from> <to>]");
+                    scan.between(LocalDate.parse(words[3]), LocalDate.parse(words[4]));
+                }
+                for (ColumnStore.Group g : scan.run()) {
+                    Object[] fields = new Object[g.keys.length * 2 + 2];
+                    for (int i = 0; i < g.keys.length; i++) {
+                        fields[2 * i] = g.keys[i];
+                        fields[2 * i + 1] = g.labels[i];
+                    }
+                    fields[fields.length - 2] = g.count;
+                    fields[fields.length - 1] = g.revenue;
+                    print(line, "report", "row", fields);
+                    rows++;
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown report " + words[1]);
+        }
+        print(line, "report", "ok", rows);
+    }
+
+    private void load(int line, String[] words) {
+        need(words, 2, "load <folder> [row|bulk|parallel|snapshot|resume|delta]");
+        String mode = words.length > 2 ? words[2].toLowerCase(Locale.ROOT) : "bulk";
+        if (Shards.enabled) {
+            if (!mode.equals("row") && !mode.equals("bulk")) {
+                throw new IllegalArgumentException("load mode " + mode + " is not available with shards (row or bulk)");
+            }
+            result(line, "load", Shards.loadData(words[1], mode.equals("row") ? AdminOperations::loadData : BulkLoader::loadData));
+            return;
+        }
+        boolean ok;
+        switch (mode) {
+            case "row":
+                ok = AdminOperations.loadData(words[1]);
+                break;
+            case "bulk":
+                ok = BulkLoader.loadData(words[1]);
+                break;
+            case "parallel":
+                ok = ParallelLoader.loadData(words[1]);
+                break;
+            case "snapshot":
+                ok = SnapshotFile.importAll(words[1]);
+                break;
+            case "resume":
+                ok = BulkLoader.resumeData(words[1]);
+                break;
+            case "delta":
+                ok = DeltaLoader.loadData(words[1]);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown load mode " + words[2]);
+        }
+        result(line, "load", ok);
+    }
+
+    // ok or error for an operation that reports its own failures (on standard error) and returns whether it succeeded.
+    private void result(int line, String command, boolean ok) {
+        if (ok) {
+            print(line, command, "ok");
+        } else {
+            error(line, command, "failed, see standard error");
+        }
+    }
+
+    private int printRows(int line, ResultSet rs) throws SQLException {
+        int columns = rs.getMetaData().getColumnCount();
+        int rows = 0;
+        while (rs.next()) {
+            Object[] fields = new Object[columns];
+            for (int c = 0; c < columns; c++) {
+                fields[c] = rs.getObject(c + 1);
+            }
+            print(line, "report", "row", fields);
+            rows++;
+        }
+        return rows;
+    }
+
+    private int printRows(int line, List<Object[]> result) {
+        for (Object[] fields : result) {
+            print(line, "report", "row", fields);
+        }
+        return result.size();
+    }
+
+    // True for the second word, false for the first, else IllegalArgumentException.
+    private static boolean choose(String word, String first, String second) {
+        if (word.equalsIgnoreCase(first)) return false;
+        if (word.equalsIgnoreCase(second)) return true;
+        throw new IllegalArgumentException("expected " + first + " or " + second + ", got " + word);
+    }
+
+    private static void need(String[] words, int count, String usage) {
+        if (words.length < count) throw new IllegalArgumentException("usage: " + usage);
+    }
+
+    private void error(int line, String command, String message) {
+        errors++;
+        print(line, command, "error", message);
+    }
+
+    private void print(int line, String command, String status, Object... fields) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(line).append('\t').append(command).append('\t').append(status);
+        for (Object f : fields) {
+            sb.append('\t').append(f == null ? "" : f.toString().replace('\t', ' ').replace('\r', ' ').replace('\n', ' '));
+        }
+        out.println(sb);
+    }
+}
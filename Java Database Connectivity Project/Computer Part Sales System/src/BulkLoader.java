@@ -0,0 +1,304 @@
+/*
+ * Bulk (batched) variant of AdminOperations.loadData for large data files.
+ * - Rows are bound with the same parsers as the row-by-row loaders (AdminOperations.bind*),
+ *   queued with addBatch() and sent with executeBatch() every batchSize rows.
+ * - Auto-commit is switched off; the loader commits every commitInterval rows (at a batch boundary)
+ *   and once more at the end of each file.
+ * - A batch that fails is rolled back to its savepoint and its byte range of the file is re-read and
+ *   replayed row by row, so only the bad rows are rejected (no copy of the batch is kept in memory).
+ *   Rejected rows are appended with the reason to "<data file>.rejected".
+ * - resumeData() (load mode 5) also commits a LoadCheckpoint with every commit, so running it again after an
+ *   interruption skips the files already loaded and carries on from the last commit of the interrupted one.
+ *   Rows rejected after that commit are rejected (and written to the reject file) a second time.
+ * - A summary with rows / rejected / elapsed time / rows per second is printed for each table.
+ *
+ * Tunable with -Dsales.load.batchSize and -Dsales.load.commitInterval.
+ * AdminOperations.loadData() (one executeUpdate per row, auto-commit) is still the default mode.
+ * by Jeffery
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.*;
+
+public class BulkLoader {
+
+    static int batchSize = DBConnection.intSetting("sales.load.batchSize", 1000);
+    static int commitInterval = DBConnection.intSetting("sales.load.commitInterval", 10000);
+
+    interface RowBinder {
+        // Binds the current record; returns false if the record should be rejected as malformed.
+        boolean bind(RecordReader rec, PreparedStatement pstmt) throws Exception;
+    }
+
+    static final class Table {
+        final String name;
+        final String fileName;
+        final Queries.Query insert;
+        // MERGE with the same parameters as insert, for DeltaLoader.
+        final Queries.Query upsert;
+        final RowBinder binder;
+
+        Table(String name, String fileName, Queries.Query insert, Queries.Query upsert, RowBinder binder) {
+            this.name = name;
+            this.fileName = fileName;
+            this.insert = insert;
+            this.upsert = upsert;
+            this.binder = binder;
+        }
+    }
+
+    static final Table CATEGORY = new Table("category", "category.txt", Queries.INSERT_CATEGORY, Queries.UPSERT_CATEGORY,
+            (rec, pstmt) -> { AdminOperations.bindCategory(rec, pstmt); return true; });
+    static final Table MANUFACTURER = new Table("manufacturer", "manufacturer.txt", Queries.INSERT_MANUFACTURER, Queries.UPSERT_MANUFACTURER,
+            (rec, pstmt) -> { AdminOperations.bindManufacturer(rec, pstmt); return true; });
+    static final Table PART = new Table("part", "part.txt", Queries.INSERT_PART, Queries.UPSERT_PART,
+            AdminOperations::bindPart);
+    static final Table SALESPERSON = new Table("salesperson", "salesperson.txt", Queries.INSERT_SALESPERSON, Queries.UPSERT_SALESPERSON,
+            (rec, pstmt) -> { AdminOperations.bindSalesperson(rec, pstmt); return true; });
+    static final Table TRANSACTION = new Table("transaction", "transaction.txt", Queries.INSERT_TRANSACTION, Queries.UPSERT_TRANSACTION,
+            (rec, pstmt) -> { AdminOperations.bindTransaction(rec, pstmt); return true; });
+
+    // Parents before children, the same order as AdminOperations.loadData().
+    static final List<Table> TABLES = List.of(CATEGORY, MANUFACTURER, PART, SALESPERSON, TRANSACTION);
+
+    // Counters for one load (a whole file or one chunk of it). Written by the loading thread only;
+    // volatile so ParallelLoader's progress reporter can read them while the load runs.
+    static final class Result {
+        final String table;
+        volatile long loaded;
+        volatile long rejected;
+        volatile long elapsedNanos;
+
+        Result(String table) {
+            this.table = table;
+        }
+
+        double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : loaded * 1_000_000_000.0 / elapsedNanos;
+        }
+    }
+
+    // Returns false if the load stopped on an error (rejected rows do not count).
+    public static boolean loadData(String folderPath) {
+        long start = System.nanoTime();
+        List<Result> results = new ArrayList<>();
+        boolean ok = false;
+        try {
+            for (Table table : TABLES) {
+                results.add(load(table, folderPath + "/" + table.fileName));
+            }
+            System.out.println(" Processing...Done! Data is inputted to the database!");
+            ok = true;
+        } catch (Exception e) {
+            System.out.println(" Error while loading data: " + e.getMessage());
+        }
+        ok &= AdminOperations.loadFinished();
+        Metrics.timer("admin.load.bulk").record(start);
+        printSummary(results);
+        return ok;
+    }
+
+    // Load mode 5: loadData with checkpoints. Run it again after an interruption to resume the load.
+    public static boolean resumeData(String folderPath) {
+        long start = System.nanoTime();
+        List<Result> results = new ArrayList<>();
+        boolean ok = false;
+        try {
+            for (Table table : TABLES) {
+                String path = folderPath + "/" + table.fileName;
+                LoadCheckpoint checkpoint;
+                try (Connection conn = DBConnection.getConnection()) {
+                    checkpoint = LoadCheckpoint.of(conn, path);
+                }
+                if (checkpoint.complete) {
+                    System.out.println(" " + table.fileName + " was loaded before, skipped.");
+                    continue;
+                }
+                if (checkpoint.offset > 0) {
+                    System.out.println(" Resuming " + table.fileName + " at byte " + checkpoint.offset
+                            + " (after key " + checkpoint.lastKey + ")");
+                }
+                results.add(load(table, path, checkpoint));
+            }
+            for (Table table : TABLES) {
+                LoadCheckpoint.delete(folderPath + "/" + table.fileName);
+            }
+            System.out.println(" Processing...Done! Data is inputted to the database!");
+            ok = true;
+        } catch (Exception e) {
+            System.out.println(" Error while loading data: " + e.getMessage() + " (load mode 5 resumes from the last commit)");
+        }
+        ok &= AdminOperations.loadFinished();
+        Metrics.timer("admin.load.resume").record(start);
+        printSummary(results);
+        return ok;
+    }
+
+    static Result load(Table table, String path) throws SQLException, IOException {
+        return load(table, path, null);
+    }
+
+    // With a checkpoint: starts at its offset and saves it with every commit.
+    static Result load(Table table, String path, LoadCheckpoint checkpoint) throws SQLException, IOException {
+        Result result = new Result(table.name);
+        long start = System.nanoTime();
+
+        try (RejectWriter rejects = new RejectWriter(path + ".rejected")) {
+            loadRange(table, path, checkpoint == null ? 0 : checkpoint.offset, Long.MAX_VALUE, result, rejects, checkpoint);
+        }
+
+        result.elapsedNanos = System.nanoTime() - start;
+        Metrics.timer("admin.load.bulk." + table.name).recordNanos(result.elapsedNanos);
+        System.out.println(" " + table.fileName + " SUCCESSFUL!" + (result.rejected > 0 ? " (" + result.rejected + " rows rejected, see " + path + ".rejected)" : ""));
+        return result;
+    }
+
+    // Loads the records that start in the byte range [start, end) of the file on its own connection.
+    // Used for whole files above and for the chunks of a large file by ParallelLoader.
+    static void loadRange(Table table, String path, long start, long end, Result result, RejectWriter rejects)
+            throws SQLException, IOException {
+        loadRange(table, path, start, end, result, rejects, null);
+    }
+
+    private static void loadRange(Table table, String path, long start, long end, Result result, RejectWriter rejects,
+                                  LoadCheckpoint checkpoint) throws SQLException, IOException {
+        try (Connection conn = DBConnection.getConnection();
+             RecordReader reader = new RecordReader(Paths.get(path), start, end)) {
+
+            PreparedStatement pstmt = table.insert.prepare(conn);
+            conn.setAutoCommit(false);
+            try {
+                Batch batch = new Batch(path);
+                long sinceCommit = 0;
+                long lastKey = checkpoint == null ? 0 : checkpoint.lastKey;
+
+                while (reader.next()) {
+                    if (batch.size == 0) batch.start = reader.recordOffset();
+                    batch.end = reader.position();
+
+                    try {
+                        if (!table.binder.bind(reader, pstmt)) {
+                            rejects.reject(reader.line(), "not enough column data");
+                            result.rejected++;
+                            continue;
+                        }
+                    } catch (Exception e) {
+                        rejects.reject(reader.line(), e.getMessage());
+                        result.rejected++;
+                        continue;
+                    }
+                    pstmt.addBatch();
+                    batch.size++;
+                    if (checkpoint != null) lastKey = reader.intField(0);
+
+                    if (batch.size >= batchSize) {
+                        if (Thread.interrupted()) {
+                            throw new InterruptedIOException("Load of " + table.fileName + " was cancelled");
+                        }
+                        sinceCommit += flush(conn, pstmt, table, batch, rejects, result);
+                        if (sinceCommit >= commitInterval) {
+                            if (checkpoint != null) checkpoint.save(conn, reader.position(), lastKey, false);
+                            conn.commit();
+                            sinceCommit = 0;
+                        }
+                    }
+                }
+                flush(conn, pstmt, table, batch, rejects, result);
+                if (checkpoint != null) checkpoint.save(conn, reader.position(), lastKey, true);
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // The file range [start, end) holding the rows queued in the current JDBC batch.
+    static final class Batch {
+        final String path;
+        long start;
+        long end;
+        int size;
+
+        Batch(String path) {
+            this.path = path;
+        }
+    }
+
+    // Sends the queued batch; on failure replays it row by row and rejects the rows that fail.
+    private static int flush(Connection conn, PreparedStatement pstmt, Table table, Batch batch,
+                             RejectWriter rejects, Result result) throws SQLException, IOException {
+        if (batch.size == 0) return 0;
+
+        Savepoint savepoint = conn.setSavepoint();
+        int applied;
+        try {
+            table.insert.executeBatch(pstmt);
+            applied = batch.size;
+        } catch (BatchUpdateException e) {
+            conn.rollback(savepoint);
+            pstmt.clearBatch();
+            applied = 0;
+            try (RecordReader replay = new RecordReader(Paths.get(batch.path), batch.start, batch.end)) {
+                while (replay.next()) {
+                    try {
+                        if (!table.binder.bind(replay, pstmt)) continue;
+                    } catch (Exception bindEx) {
+                        continue; // already rejected when the batch was built
+                    }
+                    try {
+                        table.insert.executeUpdate(pstmt);
+                        applied++;
+                    } catch (SQLException rowEx) {
+                        rejects.reject(replay.line(), rowEx.getMessage());
+                        result.rejected++;
+                    }
+                }
+            }
+        }
+        try {
+            conn.releaseSavepoint(savepoint);
+        } catch (SQLException ignored) {
+            // Some drivers (Oracle) do not support releasing savepoints; they are dropped on commit.
+        }
+
+        result.loaded += applied;
+        batch.size = 0;
+        return applied;
+    }
+
+    static void printSummary(List<Result> results) {
+        System.out.printf("| %-12s | %-10s | %-8s | %-10s | %-10s |\n", "Table", "Rows", "Rejected", "Seconds", "Rows/sec");
+        for (Result r : results) {
+            System.out.printf("| %-12s | %-10d | %-8d | %-10.2f | %-10.0f |\n", r.table, r.loaded, r.rejected, r.elapsedNanos / 1e9, r.rowsPerSecond());
+        }
+    }
+
+    // Opens the reject file lazily so clean loads leave no empty files behind.
+    static final class RejectWriter implements Closeable {
+        private final String path;
+        private Writer out;
+
+        RejectWriter(String path) {
+            this.path = path;
+        }
+
+        synchronized void reject(String line, String reason) throws IOException {
+            if (out == null) {
+                out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path, true), StandardCharsets.UTF_8));
+            }
+            out.write(line);
+            out.write("\t# ");
+            out.write(String.valueOf(reason));
+            out.write(System.lineSeparator());
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (out != null) out.close();
+        }
+    }
+}
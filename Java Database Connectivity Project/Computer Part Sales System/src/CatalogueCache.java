@@ -0,0 +1,257 @@
+/*
+ * Optional in-memory copy of the part catalogue for SalesOperations.search().
+ * - Holds the denormalized PART + MANUFACTURER + CATEGORY rows, loaded with one query on first use
+ *   (read-through) and reloaded once they are older than the TTL.
+ * - Searches are answered from memory with the same semantics as the SQL path: case-sensitive substring
+ *   match on the part or manufacturer name, ordered by price. Keywords containing the LIKE wildcards
+ *   % or _ are passed through to the database so they keep their SQL meaning.
+ * - The sell path reports the new available quantity of a sold part (quantityChanged), and
+ *   AdminOperations.resetCaches() drops the copy after tables are created / dropped or data is loaded.
+ * - With shards (Shards) the quantities of every shard's store are kept apart and a search shows their sum,
+ *   like the SQL path; the rest of the row is shard 0's.
+ * - Two TrigramIndex instances (part names, manufacturer names; keyed by PID) narrow a search down to
+ *   candidate parts before the substring check, instead of testing every row. On refresh the indexes are
+ *   updated incrementally: only parts that were added, removed or renamed since the last load are touched.
+ * - Searches can ignore case (ignoreCase); the SQL fallback then compares UPPER(column) LIKE UPPER(keyword).
+ * - If the catalogue has more than maxParts rows the cache stays empty and searches go to the database.
+ * - Hit / miss / bypass counters are exposed through getStats().
+ *
+ * Enabled with -Dsales.cache.enabled=true; tuned with -Dsales.cache.ttlMillis and -Dsales.cache.maxParts.
+ * by Jeffery
+ */
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class CatalogueCache {
+
+    private static boolean enabled = DBConnection.booleanSetting("sales.cache.enabled", false);
+    private static long ttlMillis = DBConnection.longSetting("sales.cache.ttlMillis", 5 * 60 * 1000L);
+    private static int maxParts = DBConnection.intSetting("sales.cache.maxParts", 500_000);
+
+    private static final ReentrantLock loadLock = new ReentrantLock();
+    private static volatile Snapshot snapshot;
+    // Bumped by invalidate(); a load that started before an invalidation is not installed.
+    private static final AtomicLong generation = new AtomicLong();
+
+    private static final TrigramIndex partNames = new TrigramIndex();
+    private static final TrigramIndex manufacturerNames = new TrigramIndex();
+    // The snapshot whose names the two indexes currently reflect (guarded by loadLock).
+    private static Snapshot indexed;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong bypasses = new AtomicLong();
+    private static final AtomicLong loads = new AtomicLong();
+
+    // The cached rows. Everything but the available quantity is immutable; quantities are kept in an
+    // atomic array per shard so sales can update them in place. An oversized snapshot holds no rows and just
+    // remembers (until it expires) that the catalogue is too large to cache.
+    private static final class Snapshot {
+        final boolean oversized;
+        final SalesOperations.PartRow[] rows;
+        final AtomicIntegerArray[] quantity;
+        final Map<Integer, Integer> indexByPid;
+        final long loadedAt;
+
+        Snapshot(List<SalesOperations.PartRow> list, boolean oversized, int shards) {
+            this.oversized = oversized;
+            rows = oversized ? new SalesOperations.PartRow[0] : list.toArray(new SalesOperations.PartRow[0]);
+            quantity = new AtomicIntegerArray[shards];
+            for (int shard = 0; shard < shards; shard++) quantity[shard] = new AtomicIntegerArray(rows.length);
+            indexByPid = new HashMap<>(rows.length * 2);
+            for (int i = 0; i < rows.length; i++) {
+                quantity[0].set(i, rows[i].quantity);
+                indexByPid.put(rows[i].pID, i);
+            }
+            loadedAt = System.currentTimeMillis();
+        }
+
+        // The available quantity of row i over all stores.
+        int quantity(int i) {
+            int sum = 0;
+            for (AtomicIntegerArray q : quantity) sum += q.get(i);
+            return sum;
+        }
+
+        boolean expired() {
+            return System.currentTimeMillis() - loadedAt > ttlMillis;
+        }
+    }
+
+    // Returns the matching rows, or null if the caller should ask the database instead.
+    static List<SalesOperations.PartRow> search(boolean byManufacturer, String keyword, boolean ascending, boolean ignoreCase) throws SQLException {
+        if (!enabled) return null;
+        if (keyword.indexOf('%') >= 0 || keyword.indexOf('_') >= 0) {
+            bypasses.incrementAndGet();
+            return null;
+        }
+
+        Snapshot s = current();
+        if (s == null || s.oversized) {
+            bypasses.incrementAndGet();
+            return null;
+        }
+
+        List<SalesOperations.PartRow> result = new ArrayList<>();
+        int[] candidates = (byManufacturer ? manufacturerNames : partNames).candidates(keyword);
+        if (candidates == null) {
+            for (int i = 0; i < s.rows.length; i++) {
+                addIfMatches(result, s, i, byManufacturer, keyword, ignoreCase);
+            }
+        } else {
+            for (int pid : candidates) {
+                Integer i = s.indexByPid.get(pid);
+                if (i != null) addIfMatches(result, s, i, byManufacturer, keyword, ignoreCase);
+            }
+        }
+        result.sort(ascending ? BY_PRICE : BY_PRICE.reversed());
+        return result;
+    }
+
+    private static void addIfMatches(List<SalesOperations.PartRow> result, Snapshot s, int i,
+                                     boolean byManufacturer, String keyword, boolean ignoreCase) {
+        SalesOperations.PartRow row = s.rows[i];
+        String text = byManufacturer ? row.mName : row.pName;
+        if (text != null && contains(text, keyword, ignoreCase)) {
+            result.add(withQuantity(row, s.quantity(i)));
+        }
+    }
+
+    private static boolean contains(String text, String keyword, boolean ignoreCase) {
+        if (!ignoreCase) return text.contains(keyword);
+        for (int i = 0; i + keyword.length() <= text.length(); i++) {
+            if (text.regionMatches(true, i, keyword, 0, keyword.length())) return true;
+        }
+        return false;
+    }
+
+    static final Comparator<SalesOperations.PartRow> BY_PRICE =
+            Comparator.comparingInt((SalesOperations.PartRow r) -> r.price).thenComparingInt(r -> r.pID);
+
+    // Called after a committed sale with the part's new available quantity on the shard (0 without shards).
+    static void quantityChanged(int shard, int partId, int remaining) {
+        Snapshot s = snapshot;
+        if (s == null || shard >= s.quantity.length) return;
+        Integer index = s.indexByPid.get(partId);
+        if (index == null) return;
+        // Concurrent sales may report out of order; the quantity only goes down on the sell path.
+        s.quantity[shard].accumulateAndGet(index, remaining, Math::min);
+    }
+
+    public static void invalidate() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    public static String getStats() {
+        long h = hits.get();
+        long m = misses.get();
+        Snapshot s = snapshot;
+        return String.format("enabled=%b parts=%d hits=%d misses=%d bypasses=%d loads=%d hitRate=%.1f%%",
+                enabled, s == null ? 0 : s.rows.length, h, m, bypasses.get(), loads.get(),
+                h + m == 0 ? 0.0 : h * 100.0 / (h + m));
+    }
+
+    // The live snapshot, loading or refreshing it if needed. While one thread refreshes an expired
+    // snapshot, other searches keep using the old one instead of waiting.
+    private static Snapshot current() throws SQLException {
+        Snapshot s = snapshot;
+        if (s != null && !s.expired()) {
+            hits.incrementAndGet();
+            return s;
+        }
+        if (s != null && !loadLock.tryLock()) {
+            hits.incrementAndGet();
+            return s;
+        }
+        if (s == null) loadLock.lock();
+        try {
+            s = snapshot;
+            if (s != null && !s.expired()) {
+                hits.incrementAndGet();
+                return s;
+            }
+            misses.incrementAndGet();
+            long gen = generation.get();
+            s = load();
+            if (gen == generation.get()) {
+                reindex(indexed, s);
+                indexed = s;
+                snapshot = s;
+            }
+            return s;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    // Brings the name indexes from the previous snapshot's rows to the new one's.
+    private static void reindex(Snapshot old, Snapshot fresh) {
+        Map<Integer, Integer> before = old == null ? Collections.emptyMap() : old.indexByPid;
+
+        for (SalesOperations.PartRow row : fresh.rows) {
+            Integer o = before.get(row.pID);
+            SalesOperations.PartRow prev = o == null ? null : old.rows[o];
+            if (prev == null || !Objects.equals(prev.pName, row.pName)) {
+                if (prev != null) partNames.remove(prev.pID, prev.pName);
+                partNames.add(row.pID, row.pName);
+            }
+            if (prev == null || !Objects.equals(prev.mName, row.mName)) {
+                if (prev != null) manufacturerNames.remove(prev.pID, prev.mName);
+                manufacturerNames.add(row.pID, row.mName);
+            }
+        }
+        if (old != null) {
+            for (SalesOperations.PartRow prev : old.rows) {
+                if (!fresh.indexByPid.containsKey(prev.pID)) {
+                    partNames.remove(prev.pID, prev.pName);
+                    manufacturerNames.remove(prev.pID, prev.mName);
+                }
+            }
+        }
+    }
+
+    private static Snapshot load() throws SQLException {
+        List<SalesOperations.PartRow> rows = new ArrayList<>();
+        try (Connection conn = DBConnection.getConnection()) {
+            PreparedStatement pstmt = Queries.CATALOGUE.prepare(conn);
+            pstmt.setFetchSize(1000);
+            pstmt.setMaxRows(maxParts + 1);
+            try (ResultSet rs = Queries.CATALOGUE.executeQuery(pstmt)) {
+                while (rs.next()) {
+                    rows.add(new SalesOperations.PartRow(rs.getInt("PID"), rs.getString("PNAME"), rs.getString("MNAME"), rs.getString("CNAME"),
+                            rs.getInt("PAVAILABLEQUANTITY"), rs.getInt("PWARRANTYPERIOD"), rs.getInt("PPRICE")));
+                }
+            }
+        }
+        loads.incrementAndGet();
+        if (rows.size() > maxParts) {
+            System.out.println("Catalogue has more than " + maxParts + " parts; searching the database instead of the cache.");
+            return new Snapshot(Collections.emptyList(), true, 1);
+        }
+        Snapshot s = new Snapshot(rows, false, Shards.count());
+        // The stock of the other stores.
+        for (int shard = 1; shard < Shards.count(); shard++) {
+            try (Connection conn = Shards.getConnection(shard)) {
+                PreparedStatement pstmt = Queries.PART_QUANTITIES.prepare(conn);
+                pstmt.setFetchSize(1000);
+                try (ResultSet rs = Queries.PART_QUANTITIES.executeQuery(pstmt)) {
+                    while (rs.next()) {
+                        Integer index = s.indexByPid.get(rs.getInt(1));
+                        if (index != null) s.quantity[shard].set(index, rs.getInt(2));
+                    }
+                }
+            }
+        }
+        return s;
+    }
+
+    private static SalesOperations.PartRow withQuantity(SalesOperations.PartRow row, int quantity) {
+        if (row.quantity == quantity) return row;
+        return new SalesOperations.PartRow(row.pID, row.pName, row.mName, row.cName, quantity, row.warranty, row.price);
+    }
+}
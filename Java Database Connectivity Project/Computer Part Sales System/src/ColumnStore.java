@@ -0,0 +1,760 @@
+/*
+ * In-memory column store for ad-hoc sales analytics (manager menu option 6, batch "report analysis").
+ * - Loads the transaction, part, salesperson, manufacturer and category tables into primitive int columns
+ *   on the heap, one array per column. Names are dictionary-encoded: every distinct name is kept once and
+ *   the name columns hold its code. With shards (Shards) the salespersons and transactions of every shard
+ *   are loaded, the catalogue from shard 0.
+ * - The joins are resolved once at load time: a transaction row holds the row numbers of its part and
+ *   salesperson, a part row the row numbers of its manufacturer and category. Reaching a manufacturer from a
+ *   sale is two array reads, no hash look-up.
+ * - A Scan filters on value ranges (dates, IDs, experience, price) and groups by up to three columns,
+ *   counting the sales and summing their price per group. It runs as a fork-join task over slices of the
+ *   transaction rows on parallelism threads; each slice sums into its own arrays (hash maps when there are
+ *   more than DENSE_GROUPS groups) and the halves are added together when they join. Within a slice the
+ *   rows are processed in blocks, one column at a time (one tight loop per filter, per group-by column).
+ * - The manager reports can be written as scans (salesByExperience, salesByManufacturer, popularParts,
+ *   salesInRange below). The menu keeps its summary tables for them, they do not have to scan anything.
+ * - Loaded on first use and kept current by recordSale() from the sell path: the transaction columns have
+ *   room for appended sales, which a scan sees as soon as they are counted. The load runs with the sales
+ *   held (SalesFeed), so no sale is counted twice or missed. Every ttlMillis the sales of other JVMs are
+ *   appended in the background, reading only the rows above the tID watermark. Reloaded when the room runs
+ *   out or a sale names a part or salesperson loaded later, and dropped by AdminOperations.resetCaches().
+ * - synthetic() installs generated data instead, for the benchmarks (10M+ transactions without a database).
+ *
+ * Tunable with -Dsales.analytics.ttlMillis, -Dsales.analytics.parallelism and -Dsales.analytics.fetchSize.
+ * by Jeffery
+ */
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ColumnStore {
+
+    private static long ttlMillis = DBConnection.longSetting("sales.analytics.ttlMillis", 5 * 60 * 1000L);
+    private static int parallelism = DBConnection.intSetting("sales.analytics.parallelism", Runtime.getRuntime().availableProcessors());
+    private static int fetchSize = DBConnection.intSetting("sales.analytics.fetchSize", 10000);
+
+    private static final Metrics.Timer LOAD = Metrics.timer("analytics.load");
+    private static final Metrics.Timer SCAN = Metrics.timer("analytics.scan");
+
+    // Up to this many groups a slice sums into arrays, above it into a hash map.
+    static final int DENSE_GROUPS = 1 << 18;
+    // Rows a slice processes one column at a time.
+    private static final int BLOCK = 4096;
+    // Slices are not split below this many rows.
+    private static final int MIN_SLICE = 1 << 15;
+    // Days after the last loaded sale that appended sales may fall on before a reload is needed.
+    private static final int DAY_ROOM = 366;
+
+    // What a scan can filter on and group by. Keys are IDs, epoch days, month numbers (year * 12 + month - 1),
+    // years of experience or prices.
+    public enum Column {
+        MANUFACTURER, CATEGORY, PART, SALESPERSON, DAY, MONTH, EXPERIENCE, PRICE;
+
+        static Column parse(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    // One line of a scan result.
+    public static final class Group {
+        final long[] keys;
+        final String[] labels;
+        final long count;
+        final long revenue;
+
+        Group(long[] keys, String[] labels, long count, long revenue) {
+            this.keys = keys;
+            this.labels = labels;
+            this.count = count;
+            this.revenue = revenue;
+        }
+    }
+
+    // Every distinct string once; columns hold the codes.
+    private static final class Dictionary {
+        final Map<String, Integer> codes = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            if (value == null) return -1;
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        String decode(int code) {
+            return code < 0 ? null : values.get(code);
+        }
+    }
+
+    // A growable int column used while loading.
+    private static final class IntColumn {
+        int[] values = new int[1024];
+        int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        int[] toArray(int capacity) {
+            return Arrays.copyOf(values, Math.max(size, capacity));
+        }
+    }
+
+    // The columns of one load. Foreign keys are row numbers of the referenced table.
+    private static final class Store {
+        final Dictionary names;
+        final int[] cId, cName;
+        final int[] mId, mName;
+        final int[] pId, pName, pPrice, pManufacturer, pCategory;
+        final int[] sId, sName, sExperience;
+        final Map<Integer, Integer> partRow = new HashMap<>();
+        final Map<Integer, Integer> salespersonRow = new HashMap<>();
+
+        // Transaction rows 0..size-1: part row, salesperson row, day (days after firstDay). The arrays are
+        // longer than size, the rest is room for appended sales.
+        final int[] tPart, tSalesperson, tDay;
+        volatile int size;
+        final int firstDay;
+        // Day -> month index (months after firstMonth), for every day a sale may fall on.
+        final int[] dayMonth;
+        final int firstMonth;
+        final int maxExperience, maxPrice;
+
+        final ReentrantLock appendLock = new ReentrantLock();
+        volatile boolean stale;
+        boolean pinned;
+        volatile long checkedAt = System.currentTimeMillis();
+
+        Store(Dictionary names, int[][] categories, int[][] manufacturers, int[][] parts, int[][] salespersons,
+              IntColumn tPart, IntColumn tSalesperson, IntColumn tEpochDay) {
+            this.names = names;
+            cId = categories[0];
+            cName = categories[1];
+            mId = manufacturers[0];
+            mName = manufacturers[1];
+            pId = parts[0];
+            pName = parts[1];
+            pPrice = parts[2];
+            pManufacturer = parts[3];
+            pCategory = parts[4];
+            sId = salespersons[0];
+            sName = salespersons[1];
+            sExperience = salespersons[2];
+            for (int r = 0; r < pId.length; r++) partRow.put(pId[r], r);
+            for (int r = 0; r < sId.length; r++) salespersonRow.put(sId[r], r);
+
+            int n = tEpochDay.size;
+            int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+            for (int i = 0; i < n; i++) {
+                min = Math.min(min, tEpochDay.values[i]);
+                max = Math.max(max, tEpochDay.values[i]);
+            }
+            if (n == 0) min = max = (int) LocalDate.now().toEpochDay();
+            firstDay = min;
+            int capacity = n + Math.max(1 << 16, n / 8);
+            this.tPart = tPart.toArray(capacity);
+            this.tSalesperson = tSalesperson.toArray(capacity);
+            this.tDay = tEpochDay.toArray(capacity);
+            for (int i = 0; i < n; i++) this.tDay[i] -= firstDay;
+            size = n;
+
+            dayMonth = new int[max - min + 1 + DAY_ROOM];
+            firstMonth = monthKey(LocalDate.ofEpochDay(firstDay));
+            for (int d = 0; d < dayMonth.length; d++) {
+                dayMonth[d] = monthKey(LocalDate.ofEpochDay(firstDay + d)) - firstMonth;
+            }
+            int e = 0, p = 0;
+            for (int v : sExperience) e = Math.max(e, v);
+            for (int v : pPrice) p = Math.max(p, v);
+            maxExperience = e;
+            maxPrice = p;
+        }
+
+        // Adds a sale after the loaded ones; false if it does not fit (unknown part / salesperson, no room).
+        boolean append(int partId, int salespersonId, int epochDay) {
+            Integer part = partRow.get(partId);
+            Integer salesperson = salespersonRow.get(salespersonId);
+            int day = epochDay - firstDay;
+            if (part == null || salesperson == null || day < 0 || day >= dayMonth.length) return false;
+            appendLock.lock();
+            try {
+                int row = size;
+                if (row == tPart.length) return false;
+                tPart[row] = part;
+                tSalesperson[row] = salesperson;
+                tDay[row] = day;
+                size = row + 1;
+                return true;
+            } finally {
+                appendLock.unlock();
+            }
+        }
+
+        // The transaction column a column's value is read through, and the table that maps it (null: none).
+        int[] base(Column c) {
+            switch (c) {
+                case SALESPERSON: case EXPERIENCE: return tSalesperson;
+                case DAY: case MONTH: return tDay;
+                default: return tPart;
+            }
+        }
+
+        int[] map(Column c) {
+            switch (c) {
+                case MANUFACTURER: return pManufacturer;
+                case CATEGORY: return pCategory;
+                case PRICE: return pPrice;
+                case EXPERIENCE: return sExperience;
+                case MONTH: return dayMonth;
+                default: return null;
+            }
+        }
+
+        // Number of distinct values (0..n-1) of a column.
+        int cardinality(Column c) {
+            switch (c) {
+                case MANUFACTURER: return mId.length;
+                case CATEGORY: return cId.length;
+                case PART: return pId.length;
+                case SALESPERSON: return sId.length;
+                case DAY: return dayMonth.length;
+                case MONTH: return dayMonth[dayMonth.length - 1] + 1;
+                case EXPERIENCE: return maxExperience + 1;
+                default: return maxPrice + 1;
+            }
+        }
+
+        // Value -> key (ID, epoch day, month number, experience, price).
+        long key(Column c, int value) {
+            switch (c) {
+                case MANUFACTURER: return mId[value];
+                case CATEGORY: return cId[value];
+                case PART: return pId[value];
+                case SALESPERSON: return sId[value];
+                case DAY: return firstDay + value;
+                case MONTH: return firstMonth + value;
+                default: return value;
+            }
+        }
+
+        String label(Column c, int value) {
+            switch (c) {
+                case MANUFACTURER: return names.decode(mName[value]);
+                case CATEGORY: return names.decode(cName[value]);
+                case PART: return names.decode(pName[value]);
+                case SALESPERSON: return names.decode(sName[value]);
+                case DAY: return LocalDate.ofEpochDay(firstDay + value).toString();
+                case MONTH: {
+                    int m = firstMonth + value;
+                    return YearMonth.of(m / 12, m % 12 + 1).toString();
+                }
+                default: return Integer.toString(value);
+            }
+        }
+
+        // Values of the column whose key is within lo..hi.
+        boolean[] allowed(Column c, long lo, long hi) {
+            boolean[] allowed = new boolean[cardinality(c)];
+            for (int v = 0; v < allowed.length; v++) {
+                long k = key(c, v);
+                allowed[v] = k >= lo && k <= hi;
+            }
+            return allowed;
+        }
+
+        // Time to pick up the sales of other JVMs.
+        boolean expired() {
+            return !pinned && System.currentTimeMillis() - checkedAt > ttlMillis;
+        }
+    }
+
+    // A filter or group-by column bound to a store: its value in a row is map == null ? base[row] : map[base[row]].
+    private static final class Bound {
+        final int[] base;
+        final int[] map;
+        final boolean[] allowed;
+        final int cardinality;
+
+        Bound(Store s, Column c, boolean[] allowed) {
+            this.base = s.base(c);
+            this.map = s.map(c);
+            this.allowed = allowed;
+            this.cardinality = s.cardinality(c);
+        }
+
+        // keep[i] &= value(from + i) is allowed, for n rows.
+        void filter(int from, int n, boolean[] keep) {
+            if (map == null) {
+                for (int i = 0; i < n; i++) keep[i] &= allowed[base[from + i]];
+            } else {
+                for (int i = 0; i < n; i++) keep[i] &= allowed[map[base[from + i]]];
+            }
+        }
+
+        // group[i] = group[i] * cardinality + value(from + i), for n rows.
+        void group(int from, int n, long[] group) {
+            if (map == null) {
+                for (int i = 0; i < n; i++) group[i] = group[i] * cardinality + base[from + i];
+            } else {
+                for (int i = 0; i < n; i++) group[i] = group[i] * cardinality + map[base[from + i]];
+            }
+        }
+    }
+
+    // Counts and revenue per group of one slice of rows.
+    private static final class Sums {
+        final long[] counts;
+        final long[] revenue;
+        final Map<Long, long[]> sparse;
+
+        Sums(long groups) {
+            boolean dense = groups <= DENSE_GROUPS;
+            counts = dense ? new long[(int) groups] : null;
+            revenue = dense ? new long[(int) groups] : null;
+            sparse = dense ? null : new HashMap<>();
+        }
+
+        void add(Sums o) {
+            if (sparse == null) {
+                for (int g = 0; g < counts.length; g++) {
+                    counts[g] += o.counts[g];
+                    revenue[g] += o.revenue[g];
+                }
+            } else {
+                for (Map.Entry<Long, long[]> e : o.sparse.entrySet()) {
+                    long[] sum = sparse.computeIfAbsent(e.getKey(), k -> new long[2]);
+                    sum[0] += e.getValue()[0];
+                    sum[1] += e.getValue()[1];
+                }
+            }
+        }
+    }
+
+    // Never serialized (ForkJoinTask is Serializable only for remote execution frameworks).
+    private static final class ScanTask extends RecursiveTask<Sums> {
+        private static final long serialVersionUID = 1L;
+
+        final transient Store store;
+        final transient Bound[] filters;
+        final transient Bound[] keys;
+        final long groups;
+        final int from, to, slice;
+
+        ScanTask(Store store, Bound[] filters, Bound[] keys, long groups, int from, int to, int slice) {
+            this.store = store;
+            this.filters = filters;
+            this.keys = keys;
+            this.groups = groups;
+            this.from = from;
+            this.to = to;
+            this.slice = slice;
+        }
+
+        @Override
+        protected Sums compute() {
+            if (to - from > slice) {
+                int mid = (from + to) >>> 1;
+                ScanTask left = new ScanTask(store, filters, keys, groups, from, mid, slice);
+                left.fork();
+                Sums right = new ScanTask(store, filters, keys, groups, mid, to, slice).compute();
+                Sums sums = left.join();
+                sums.add(right);
+                return sums;
+            }
+            Sums sums = new Sums(groups);
+            int[] tPart = store.tPart;
+            int[] pPrice = store.pPrice;
+            // Column at a time over blocks of rows: one tight loop per filter and per group-by column.
+            boolean[] keep = new boolean[BLOCK];
+            long[] group = new long[BLOCK];
+            for (int block = from; block < to; block += BLOCK) {
+                int n = Math.min(BLOCK, to - block);
+                Arrays.fill(keep, 0, n, true);
+                for (Bound f : filters) f.filter(block, n, keep);
+                Arrays.fill(group, 0, n, 0);
+                for (Bound k : keys) k.group(block, n, group);
+                for (int i = 0; i < n; i++) {
+                    if (!keep[i]) continue;
+                    int price = pPrice[tPart[block + i]];
+                    if (sums.sparse == null) {
+                        sums.counts[(int) group[i]]++;
+                        sums.revenue[(int) group[i]] += price;
+                    } else {
+                        long[] sum = sums.sparse.computeIfAbsent(group[i], x -> new long[2]);
+                        sum[0]++;
+                        sum[1] += price;
+                    }
+                }
+            }
+            return sums;
+        }
+    }
+
+    // An ad-hoc query: filters, grouping, ordering. Build with scan(), then run().
+    public static final class Scan {
+        private final List<Column> filterColumns = new ArrayList<>();
+        private final List<long[]> filterRanges = new ArrayList<>();
+        private final List<Column> groupBy = new ArrayList<>();
+        private boolean byCount;
+        private int limit = Integer.MAX_VALUE;
+
+        // Only sales whose key of the column is within lo..hi (both inclusive).
+        public Scan where(Column column, long lo, long hi) {
+            filterColumns.add(column);
+            filterRanges.add(new long[]{lo, hi});
+            return this;
+        }
+
+        // Only sales on the days from..to (both inclusive).
+        public Scan between(LocalDate from, LocalDate to) {
+            return where(Column.DAY, from.toEpochDay(), to.toEpochDay());
+        }
+
+        // Group by these columns (at most three); without any, one group of all matching sales.
+        public Scan groupBy(Column... columns) {
+            if (groupBy.size() + columns.length > 3) throw new IllegalArgumentException("at most three group-by columns");
+            groupBy.addAll(Arrays.asList(columns));
+            return this;
+        }
+
+        // Most sales first instead of most revenue first.
+        public Scan orderByCount() {
+            byCount = true;
+            return this;
+        }
+
+        public Scan limit(int n) {
+            limit = n;
+            return this;
+        }
+
+        public List<Group> run() throws SQLException {
+            return execute(current(), this);
+        }
+    }
+
+    private static volatile Store store;
+    private static final SalesFeed feed = new SalesFeed();
+    private static final ReentrantLock loadLock = new ReentrantLock();
+    private static final AtomicLong generation = new AtomicLong();
+    private static ForkJoinPool pool;
+    private static final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "column-store-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public static Scan scan() {
+        return new Scan();
+    }
+
+    // Called after a sale has been committed (inside the sales barrier, see SalesFeed).
+    static void recordSale(int transactionId, int partId, int salespersonId, LocalDate day, int price) {
+        Store s = store;
+        if (s == null) return;
+        if (!s.append(partId, salespersonId, (int) day.toEpochDay())) s.stale = true;
+        // Synthetic data is not the database's: nothing to pick up.
+        if (!s.pinned) feed.recorded(salespersonId, transactionId);
+    }
+
+    // The sales were changed outside the sell path (load / create / drop): load again on next use.
+    public static void invalidate() {
+        generation.incrementAndGet();
+        store = null;
+    }
+
+    // ---- The manager reports as scans ----
+
+    // Sales per salesperson with lower..upper years of experience (only those with sales).
+    static List<Group> salesByExperience(int lower, int upper) throws SQLException {
+        return scan().where(Column.EXPERIENCE, lower, upper).groupBy(Column.SALESPERSON).run();
+    }
+
+    static List<Group> salesByManufacturer() throws SQLException {
+        return scan().groupBy(Column.MANUFACTURER).run();
+    }
+
+    static List<Group> popularParts(int n) throws SQLException {
+        return scan().groupBy(Column.PART).orderByCount().limit(n).run();
+    }
+
+    static List<Group> salesInRange(Column column, LocalDate from, LocalDate to) throws SQLException {
+        return scan().between(from, to).groupBy(column).run();
+    }
+
+    // What the reports cannot answer, e.g. salesBy(CATEGORY, SALESPERSON): the revenue per category per salesperson.
+    static List<Group> salesBy(Column first, Column second) throws SQLException {
+        return scan().groupBy(first, second).run();
+    }
+
+    // ---- Scanning ----
+
+    private static List<Group> execute(Store s, Scan scan) {
+        long start = System.nanoTime();
+        try {
+            Bound[] filters = new Bound[scan.filterColumns.size()];
+            for (int i = 0; i < filters.length; i++) {
+                Column c = scan.filterColumns.get(i);
+                long[] range = scan.filterRanges.get(i);
+                filters[i] = new Bound(s, c, s.allowed(c, range[0], range[1]));
+            }
+            Bound[] keys = new Bound[scan.groupBy.size()];
+            long groups = 1;
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = new Bound(s, scan.groupBy.get(i), null);
+                groups *= keys[i].cardinality;
+            }
+
+            int rows = s.size;
+            int threads = Math.max(1, parallelism);
+            // A few slices per thread, so a thread that finishes early can take over work.
+            int slice = Math.max(MIN_SLICE, rows / (threads * 4) + 1);
+            Sums sums = pool(threads).invoke(new ScanTask(s, filters, keys, groups, 0, rows, slice));
+
+            List<Group> result = new ArrayList<>();
+            if (sums.sparse == null) {
+                for (int g = 0; g < sums.counts.length; g++) {
+                    if (sums.counts[g] > 0) result.add(group(s, scan.groupBy, keys, g, sums.counts[g], sums.revenue[g]));
+                }
+            } else {
+                for (Map.Entry<Long, long[]> e : sums.sparse.entrySet()) {
+                    result.add(group(s, scan.groupBy, keys, e.getKey(), e.getValue()[0], e.getValue()[1]));
+                }
+            }
+            Comparator<Group> order = scan.byCount
+                    ? Comparator.comparingLong((Group g) -> -g.count).thenComparingLong(g -> -g.revenue)
+                    : Comparator.comparingLong((Group g) -> -g.revenue).thenComparingLong(g -> -g.count);
+            for (int i = 0; i < keys.length; i++) {
+                int k = i;
+                order = order.thenComparingLong(g -> g.keys[k]);
+            }
+            result.sort(order);
+            return result.size() > scan.limit ? new ArrayList<>(result.subList(0, scan.limit)) : result;
+        } finally {
+            SCAN.record(start);
+        }
+    }
+
+    // Splits a group number back into the values of the group-by columns.
+    private static Group group(Store s, List<Column> columns, Bound[] keys, long g, long count, long revenue) {
+        long[] ids = new long[keys.length];
+        String[] labels = new String[keys.length];
+        for (int i = keys.length - 1; i >= 0; i--) {
+            int value = (int) (g % keys[i].cardinality);
+            g /= keys[i].cardinality;
+            ids[i] = s.key(columns.get(i), value);
+            labels[i] = s.label(columns.get(i), value);
+        }
+        return new Group(ids, labels, count, revenue);
+    }
+
+    private static ForkJoinPool pool(int threads) {
+        loadLock.lock();
+        try {
+            if (pool == null || pool.getParallelism() != threads) {
+                if (pool != null) pool.shutdown();
+                pool = new ForkJoinPool(threads);
+            }
+            return pool;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    // ---- Loading ----
+
+    private static Store current() throws SQLException {
+        Store s = store;
+        if (s == null || s.stale) return reload();
+        if (s.expired()) pickUpAsync(s);
+        return s;
+    }
+
+    // A full load, read and installed with the sales held.
+    private static Store reload() throws SQLException {
+        loadLock.lock();
+        try {
+            Store s = store;
+            if (s != null && !s.stale) return s;
+            long gen = generation.get();
+            SalesAggregates.holdSales();
+            try {
+                feed.reset();
+                Store fresh = load();
+                if (gen == generation.get()) {
+                    store = fresh;
+                }
+                return fresh;
+            } finally {
+                SalesAggregates.releaseSales();
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private static void pickUpAsync(Store s) {
+        if (loadLock.isLocked()) return;
+        loader.execute(() -> {
+            try {
+                pickUp(s);
+            } catch (SQLException e) {
+                System.out.println("Error while reading new sales: " + e.getMessage());
+            }
+        });
+    }
+
+    // Appends the sales of other JVMs above the watermark to s; one that does not fit makes s stale, so the
+    // next scan loads everything again.
+    private static void pickUp(Store s) throws SQLException {
+        loadLock.lock();
+        try {
+            if (store != s || s.stale || !s.expired()) return;
+            SalesAggregates.holdSales();
+            try {
+                feed.pickUp((partId, salespersonId, manufacturerId, categoryId, day, price) -> {
+                    if (!s.append(partId, salespersonId, (int) day.toEpochDay())) s.stale = true;
+                });
+                s.checkedAt = System.currentTimeMillis();
+            } finally {
+                SalesAggregates.releaseSales();
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    // Must hold the sales (see reload).
+    private static Store load() throws SQLException {
+        long start = System.nanoTime();
+        Dictionary names = new Dictionary();
+        try {
+            // The catalogue of shard 0 (every shard has the same); salespersons and sales of every shard.
+            Map<Integer, Integer> categoryRow = new HashMap<>();
+            int[][] categories = readTable(1, Queries.ANALYTICS_CATEGORIES, names, 0, categoryRow);
+            Map<Integer, Integer> manufacturerRow = new HashMap<>();
+            int[][] manufacturers = readTable(1, Queries.ANALYTICS_MANUFACTURERS, names, 0, manufacturerRow);
+            Map<Integer, Integer> partRow = new HashMap<>();
+            int[][] parts = readTable(1, Queries.ANALYTICS_PARTS, names, 3, partRow);
+            for (int r = 0; r < parts[0].length; r++) {
+                parts[3][r] = rowOf(manufacturerRow, parts[3][r], "manufacturer");
+                parts[4][r] = rowOf(categoryRow, parts[4][r], "category");
+            }
+            Map<Integer, Integer> salespersonRow = new HashMap<>();
+            int[][] salespersons = readTable(Shards.count(), Queries.ANALYTICS_SALESPERSONS, names, 1, salespersonRow);
+
+            IntColumn tPart = new IntColumn();
+            IntColumn tSalesperson = new IntColumn();
+            IntColumn tDay = new IntColumn();
+            for (int shard = 0; shard < Shards.count(); shard++) {
+                try (Connection conn = Shards.getConnection(shard)) {
+                    PreparedStatement pstmt = Queries.ANALYTICS_TRANSACTIONS.prepare(conn);
+                    pstmt.setFetchSize(fetchSize);
+                    try (ResultSet rs = Queries.ANALYTICS_TRANSACTIONS.executeQuery(pstmt)) {
+                        while (rs.next()) {
+                            feed.saw(shard, rs.getLong(4));
+                            java.sql.Date day = rs.getDate(3);
+                            if (day == null) continue;
+                            tPart.add(rowOf(partRow, rs.getInt(1), "part"));
+                            tSalesperson.add(rowOf(salespersonRow, rs.getInt(2), "salesperson"));
+                            tDay.add((int) day.toLocalDate().toEpochDay());
+                        }
+                    }
+                }
+            }
+            return new Store(names, categories, manufacturers, parts, salespersons, tPart, tSalesperson, tDay);
+        } finally {
+            LOAD.record(start);
+        }
+    }
+
+    // Reads ID, name and extra int columns of a table on the first shards shards into {ids, name codes, extra...};
+    // fills ID -> row.
+    private static int[][] readTable(int shards, Queries.Query query, Dictionary names, int extra,
+                                     Map<Integer, Integer> rowOfId) throws SQLException {
+        IntColumn[] columns = new IntColumn[2 + extra];
+        for (int i = 0; i < columns.length; i++) columns[i] = new IntColumn();
+        for (int shard = 0; shard < shards; shard++) {
+            try (Connection conn = Shards.getConnection(shard);
+                 ResultSet rs = query.executeQuery(query.prepare(conn))) {
+                while (rs.next()) {
+                    rowOfId.put(rs.getInt(1), columns[0].size);
+                    columns[0].add(rs.getInt(1));
+                    columns[1].add(names.encode(rs.getString(2)));
+                    for (int i = 0; i < extra; i++) columns[2 + i].add(rs.getInt(3 + i));
+                }
+            }
+        }
+        int[][] result = new int[columns.length][];
+        for (int i = 0; i < columns.length; i++) result[i] = columns[i].toArray(0);
+        return result;
+    }
+
+    private static int rowOf(Map<Integer, Integer> rows, int id, String table) throws SQLException {
+        Integer row = rows.get(id);
+        if (row == null) throw new SQLException("No " + table + " with ID " + id + " (changed while loading?)");
+        return row;
+    }
+
+    // ---- Benchmark data ----
+
+    // Installs generated data in place of the database's: transactions sales over the last two years of
+    // parts parts (in 20 categories from 50 manufacturers) by salespersons salespersons.
+    static void synthetic(int transactions, int parts, int salespersons, long seed) {
+        Random random = new Random(seed);
+        Dictionary names = new Dictionary();
+        int[][] categories = syntheticTable(names, "Category ", 20, 0);
+        int[][] manufacturers = syntheticTable(names, "Manufacturer ", 50, 0);
+        int[][] partTable = syntheticTable(names, "Part ", parts, 3);
+        for (int r = 0; r < parts; r++) {
+            partTable[2][r] = 10 + random.nextInt(5000);
+            partTable[3][r] = random.nextInt(50);
+            partTable[4][r] = random.nextInt(20);
+        }
+        int[][] salespersonTable = syntheticTable(names, "Salesperson ", salespersons, 1);
+        for (int r = 0; r < salespersons; r++) salespersonTable[2][r] = 1 + random.nextInt(30);
+
+        int today = (int) LocalDate.now().toEpochDay();
+        IntColumn tPart = new IntColumn();
+        IntColumn tSalesperson = new IntColumn();
+        IntColumn tDay = new IntColumn();
+        for (int i = 0; i < transactions; i++) {
+            tPart.add(random.nextInt(parts));
+            tSalesperson.add(random.nextInt(salespersons));
+            tDay.add(today - random.nextInt(730));
+        }
+        Store s = new Store(names, categories, manufacturers, partTable, salespersonTable, tPart, tSalesperson, tDay);
+        // Kept until invalidate(): the TTL would otherwise replace it with the database's sales.
+        s.pinned = true;
+        generation.incrementAndGet();
+        store = s;
+    }
+
+    private static int[][] syntheticTable(Dictionary names, String prefix, int rows, int extra) {
+        int[][] table = new int[2 + extra][rows];
+        for (int r = 0; r < rows; r++) {
+            table[0][r] = r + 1;
+            table[1][r] = names.encode(prefix + (r + 1));
+        }
+        return table;
+    }
+
+    private static int monthKey(LocalDate day) {
+        return day.getYear() * 12 + day.getMonthValue() - 1;
+    }
+}
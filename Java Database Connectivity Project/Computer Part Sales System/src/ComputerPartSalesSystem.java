@@ -7,18 +7,53 @@
  *
  * - This class focuses on UI flow only; database logic is implemented in the Operations classes.
  * - Scanner is shared and passed to sub-menus to reuse the same input stream.
+ * - With -Dsales.journal.enabled=true the SaleJournal is opened (and replayed) at start and drained on exit.
+ * - On exit the metrics are written to the file given by -Dsales.metrics.file (Metrics.dumpOnExit).
+ * - "--server [port]" serves many terminals from this process, see SalesServer.
+ * - "--batch [file]" runs the commands of a file (or standard input) without the menus, see BatchMode.
  * by Jeffery
  */
 
 
 
+import java.io.IOException;
+import java.sql.SQLException;
 import java.util.Scanner;
 
 public class ComputerPartSalesSystem {
 
     public static void main(String[] args) {
-        Scanner sc = new Scanner(System.in);
+        if (args.length > 0 && args[0].equals("--batch")) {
+            int status = BatchMode.run(args.length > 1 ? args[1] : null);
+            shutdown();
+            System.exit(status);
+        }
+
+        // Sales journaled but not written by an earlier run are replayed now, not with the next sale.
+        if (SaleJournal.enabled) {
+            try {
+                SaleJournal.open();
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+        }
 
+        if (args.length > 0 && args[0].equals("--server")) {
+            try {
+                SalesServer.run(args.length > 1 ? Integer.parseInt(args[1]) : SalesServer.port);
+            } catch (IOException | NumberFormatException e) {
+                System.out.println("Cannot start the server: " + e.getMessage());
+            }
+            shutdown();
+            return;
+        }
+
+        runMenu(new Scanner(System.in));
+        shutdown();
+    }
+
+    // The main menu on the given input; returns when the user exits (also used by the server's sessions).
+    static void runMenu(Scanner sc) {
         while (true) {
             System.out.println("Welcome to sales system!");
             System.out.println("\n-----Main menu-----");
@@ -49,4 +84,11 @@ public class ComputerPartSalesSystem {
             }
         }
     }
-}
\ No newline at end of file
+
+    static void shutdown() {
+        SaleJournal.shutdown();
+        SalesAggregates.shutdown();
+        Metrics.dumpOnExit();
+        DBConnection.shutdown();
+    }
+}
@@ -0,0 +1,480 @@
+/*
+ * A bounded JDBC connection pool used behind DBConnection.getConnection().
+ * - Keeps between minSize and maxSize physical connections; callers beyond maxSize wait
+ *   up to borrowTimeoutMillis for a connection to be returned.
+ * - Borrowed connections are handed out as proxies: close() returns the physical connection
+ *   to the pool instead of closing it, so existing try-with-resources code keeps working.
+ * - Statements created through a proxy are closed when the connection is returned, and an
+ *   open transaction is rolled back and auto-commit restored.
+ * - Connections that sat idle are validated on borrow (Connection.isValid).
+ * - A housekeeping thread evicts connections idle longer than idleTimeoutMillis (down to minSize)
+ *   and reports connections held longer than leakThresholdMillis, with the borrowing stack trace.
+ * - Each physical connection keeps an LRU cache of up to statementCacheSize prepared statements that
+ *   survive across leases. Leases implement StatementCache; prepareCached(sql) returns the cached statement
+ *   (parameters and batch cleared) so a repeated query is neither re-prepared nor hard-parsed again.
+ *   Callers must not close cached statements (Queries does this for the named queries).
+ * - queryTimeoutSeconds (0: none) is set on every statement of the pool's connections, so a runaway query
+ *   is cancelled by the driver instead of holding its connection.
+ * - Metrics: active / idle / total counts, wait time, a borrow latency histogram and statement cache hits.
+ * by Jeffery
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ConnectionPool {
+    // Connections used more recently than this are handed out without a validation round-trip.
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+    private final int queryTimeoutSeconds;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition returned = lock.newCondition();
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private int total;
+    private boolean closed;
+
+    private final ScheduledExecutorService housekeeper;
+
+    private final LatencyHistogram borrowLatency = new LatencyHistogram();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    // Implemented by the connections handed out by borrow().
+    public interface StatementCache {
+        // A prepared statement for sql owned by the physical connection; do not close it.
+        PreparedStatement prepareCached(String sql) throws SQLException;
+    }
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long idleTimeoutMillis, long borrowTimeoutMillis, long leakThresholdMillis,
+                          int statementCacheSize, int queryTimeoutSeconds) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMillis, leakThresholdMillis > 0 ? leakThresholdMillis : Long.MAX_VALUE) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+
+        while (true) {
+            PooledConnection pc;
+            boolean create = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) throw new SQLException("Connection pool is closed");
+                    pc = idle.pollFirst();
+                    if (pc != null) break;
+                    if (total < maxSize) {
+                        total++;
+                        create = true;
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeouts.incrementAndGet();
+                        throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis
+                                + " ms waiting for a database connection (pool size " + maxSize + ")");
+                    }
+                    returned.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                pc = open();
+            } else if (!validate(pc)) {
+                validationFailures.incrementAndGet();
+                discard(pc);
+                continue;
+            }
+
+            long now = System.nanoTime();
+            pc.borrowedAt = now;
+            pc.leakReported = false;
+            pc.borrower = leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+            borrowed.add(pc);
+
+            borrowCount.incrementAndGet();
+            waitNanos.addAndGet(now - start);
+            borrowLatency.record(now - start);
+            return pc.newLease();
+        }
+    }
+
+    public void close() {
+        housekeeper.shutdownNow();
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            total -= toClose.size();
+            returned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (PooledConnection pc : toClose) {
+            closeQuietly(pc.physical);
+        }
+    }
+
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    public int getIdleCount() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getTotalCount() {
+        lock.lock();
+        try {
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public double getTotalWaitMillis() {
+        return waitNanos.get() / 1_000_000.0;
+    }
+
+    public LatencyHistogram getBorrowLatency() {
+        return borrowLatency;
+    }
+
+    public String getStats() {
+        return String.format("active=%d idle=%d total=%d max=%d borrows=%d wait=%.1fms timeouts=%d created=%d evicted=%d invalid=%d leaks=%d" +
+                        " statementCache(hits=%d misses=%d)%n borrow latency: %s",
+                getActiveCount(), getIdleCount(), getTotalCount(), maxSize, borrowCount.get(), getTotalWaitMillis(),
+                timeouts.get(), created.get(), evicted.get(), validationFailures.get(), leaks.get(),
+                statementHits.get(), statementMisses.get(), borrowLatency);
+    }
+
+    private PooledConnection open() throws SQLException {
+        try {
+            PooledConnection pc = new PooledConnection(DriverManager.getConnection(url, user, password));
+            created.incrementAndGet();
+            return pc;
+        } catch (SQLException | RuntimeException e) {
+            lock.lock();
+            try {
+                total--;
+                returned.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private boolean validate(PooledConnection pc) {
+        if (System.nanoTime() - pc.lastUsed < TimeUnit.MILLISECONDS.toNanos(VALIDATION_BYPASS_MILLIS)) {
+            return true;
+        }
+        try {
+            return pc.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pc) {
+        borrowed.remove(pc);
+        boolean healthy = pc.reset();
+        pc.lastUsed = System.nanoTime();
+
+        lock.lock();
+        try {
+            if (healthy && !closed) {
+                idle.addFirst(pc);
+                returned.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        discard(pc);
+    }
+
+    private void discard(PooledConnection pc) {
+        closeQuietly(pc.physical);
+        lock.lock();
+        try {
+            total--;
+            returned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void housekeep() {
+        try {
+            long now = System.nanoTime();
+            List<PooledConnection> expired = new ArrayList<>();
+
+            lock.lock();
+            try {
+                // The tail of the deque holds the least recently used connections.
+                while (total - expired.size() > minSize && !idle.isEmpty()
+                        && now - idle.peekLast().lastUsed > TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis)) {
+                    expired.add(idle.pollLast());
+                }
+                total -= expired.size();
+            } finally {
+                lock.unlock();
+            }
+            for (PooledConnection pc : expired) {
+                closeQuietly(pc.physical);
+                evicted.incrementAndGet();
+            }
+
+            if (leakThresholdMillis > 0) {
+                for (PooledConnection pc : borrowed) {
+                    if (!pc.leakReported && now - pc.borrowedAt > TimeUnit.MILLISECONDS.toNanos(leakThresholdMillis)) {
+                        pc.leakReported = true;
+                        leaks.incrementAndGet();
+                        System.err.println("Possible connection leak: connection held for more than " + leakThresholdMillis + " ms");
+                        if (pc.borrower != null) pc.borrower.printStackTrace();
+                    }
+                }
+            }
+
+            fillToMinimum();
+        } catch (RuntimeException e) {
+            System.err.println("Connection pool housekeeping failed: " + e.getMessage());
+        }
+    }
+
+    private void fillToMinimum() {
+        while (true) {
+            lock.lock();
+            try {
+                if (closed || total >= minSize) return;
+                total++;
+            } finally {
+                lock.unlock();
+            }
+            PooledConnection pc;
+            try {
+                pc = open();
+            } catch (SQLException e) {
+                return;
+            }
+            pc.lastUsed = System.nanoTime();
+            lock.lock();
+            try {
+                idle.addLast(pc);
+                returned.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        try {
+            resource.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    private static boolean isClosedQuietly(Statement stmt) {
+        try {
+            return stmt.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    // One physical connection plus the bookkeeping for its current lease.
+    private final class PooledConnection {
+        final Connection physical;
+        final List<Statement> openStatements = new ArrayList<>();
+        // Access-ordered, so the eldest entry is the least recently used statement.
+        final Map<String, PreparedStatement> statementCache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= statementCacheSize) return false;
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+        volatile long lastUsed = System.nanoTime();
+        volatile long borrowedAt;
+        volatile boolean leakReported;
+        volatile Throwable borrower;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection newLease() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class, StatementCache.class}, new Lease(this));
+        }
+
+        PreparedStatement cached(String sql) throws SQLException {
+            if (statementCacheSize <= 0) {
+                PreparedStatement pstmt = physical.prepareStatement(sql);
+                limit(pstmt);
+                track(pstmt);
+                return pstmt;
+            }
+            PreparedStatement pstmt = statementCache.get(sql);
+            if (pstmt != null && !isClosedQuietly(pstmt)) {
+                statementHits.incrementAndGet();
+                pstmt.clearParameters();
+                pstmt.clearBatch();
+                return pstmt;
+            }
+            statementMisses.incrementAndGet();
+            pstmt = physical.prepareStatement(sql);
+            limit(pstmt);
+            statementCache.put(sql, pstmt);
+            return pstmt;
+        }
+
+        void limit(Statement stmt) throws SQLException {
+            if (queryTimeoutSeconds > 0) stmt.setQueryTimeout(queryTimeoutSeconds);
+        }
+
+        void track(Statement stmt) {
+            if (openStatements.size() >= 64) {
+                openStatements.removeIf(ConnectionPool::isClosedQuietly);
+            }
+            openStatements.add(stmt);
+        }
+
+        // Puts the connection back into a clean state; returns false if it should be discarded.
+        boolean reset() {
+            boolean healthy = true;
+            for (Statement stmt : openStatements) {
+                closeQuietly(stmt);
+            }
+            openStatements.clear();
+            try {
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                physical.clearWarnings();
+            } catch (SQLException e) {
+                healthy = false;
+            }
+            return healthy;
+        }
+    }
+
+    // The handle given to callers; close() returns the physical connection to the pool exactly once.
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean released;
+
+        Lease(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pc.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pc.physical + "]";
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (method.getName().equals("prepareCached")) {
+                return pc.cached((String) args[0]);
+            }
+
+            Object result;
+            try {
+                result = method.invoke(pc.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement) {
+                pc.limit((Statement) result);
+                pc.track((Statement) result);
+            }
+            return result;
+        }
+    }
+}
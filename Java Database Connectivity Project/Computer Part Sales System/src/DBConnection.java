@@ -2,19 +2,287 @@
  * DBConnection.java is a centralized helper for obtaining a JDBC Connection.
  * It stores database connection parameters (URL / username / password) and provide getConnection() for other classes to open a connection.
  * In production, credentials should not be hard-coded in source code. Consider using environment variables or a config file.
+ *
+ * - The database is configurable. Every setting below is looked up, in this order, as a system property
+ *   (-Dsales.db.url=...), an environment variable (SALES_DB_URL=...), a line of the properties file
+ *   (-Dsales.config=path, default sales.properties in the working folder, if present), then the built-in default:
+ *     sales.db.url, sales.db.user, sales.db.password   (default: the Oracle server)
+ *     sales.db.dialect                                   ORACLE or H2 (default: from the URL, see Dialect)
+ * - Embedded mode: put the H2 jar on the class path and use e.g.
+ *     sales.db.url=jdbc:h2:./sales-db                    (a local file database)
+ *     sales.db.url=jdbc:h2:mem:sales;DB_CLOSE_DELAY=-1   (in memory, gone on exit)
+ *   createTables, the loaders, selling and all reports work unchanged there (Dialect renders the SQL).
+ * - Connections come from a shared ConnectionPool, so the Oracle logon handshake is paid once per
+ *   physical connection instead of once per operation. Callers still close() the connection as before;
+ *   that returns it to the pool.
+ * - Pool sizing can be tuned the same way, e.g. -Dsales.pool.maxSize=50:
+ *   sales.pool.minSize, sales.pool.maxSize, sales.pool.idleTimeoutMillis,
+ *   sales.pool.borrowTimeoutMillis, sales.pool.leakThresholdMillis (0 disables leak detection),
+ *   sales.pool.statementCacheSize (prepared statements cached per connection, 0 disables the cache).
+ * - sales.db.queryTimeoutSeconds sets a timeout on every statement of the pool (default 0: none).
+ * - getConnection() times every borrow into Metrics (db.connection).
+ * - configure(url, user, password) switches to another database (used by the benchmarks under benchmark/).
+ * - The tunables of the other classes (sales.load.batchSize, sales.cache.ttlMillis, sales.journal.enabled, ...)
+ *   are looked up the same way, through setting / intSetting / longSetting / booleanSetting, once when their
+ *   class is loaded. The fields holding them are not public; the benchmarks change them by reflection.
+ *
+ * Read side (optional): with sales.db.read.url set, e.g. to a read-only replica of the database, the reads
+ * that need not see the very latest sale get their connections from a second pool, getReadConnection():
+ * the manager reports, the part search (when not answered by CatalogueCache) and showTable. Selling,
+ * loading, the summary rebuild and the cache warm-ups (the sales after them are applied in memory, so they
+ * must start from the primary's data) stay on the primary. Month-end reporting then no longer competes with
+ * the sales for the primary's connections and CPU.
+ *     sales.db.read.url, sales.db.read.user, sales.db.read.password   (user / password default to the primary's)
+ *     sales.pool.read.minSize, sales.pool.read.maxSize, sales.pool.read.borrowTimeoutMillis
+ *                                                        (default to the primary's sizing)
+ *     sales.db.read.queryTimeoutSeconds                  (default 0: none)
+ *   The read side must be the same kind of database (same Dialect) holding the same tables. Without
+ *   sales.db.read.url, getReadConnection() is getConnection(). ReplicaMonitor measures the replica's lag and,
+ *   with sales.db.readYourWrites=true, sends a search to the primary until the replica has the caller's
+ *   last sale. configureRead(url, user, password) sets the read side at runtime (e.g. a second embedded
+ *   database); configure() drops it.
+ * - Several shards (sales.shards, see Shards): this is shard 0; the sell path and the manager reports
+ *   choose their shards through Shards.
  * by Jeffery
  */
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
 
 public class DBConnection {
-    private static final String URL = "jdbc:oracle:thin:@db18.cse.cuhk.edu.hk:1521/oradb.cse.cuhk.edu.hk";
-    private static final String USER = "h048";
-    private static final String PASSWORD = "wreshVig";
+    private static final Properties FILE_SETTINGS = loadSettingsFile();
 
+    private static volatile String URL = setting("sales.db.url", "jdbc:oracle:thin:@db18.cse.cuhk.edu.hk:1521/oradb.cse.cuhk.edu.hk");
+    private static volatile String USER = setting("sales.db.user", "h048");
+    private static volatile String PASSWORD = setting("sales.db.password", "wreshVig");
+    private static volatile Dialect DIALECT = dialectFor(URL, setting("sales.db.dialect", null));
+
+    private static final int POOL_MIN_SIZE = Integer.parseInt(setting("sales.pool.minSize", "2"));
+    private static final int POOL_MAX_SIZE = Integer.parseInt(setting("sales.pool.maxSize", "20"));
+    private static final long POOL_IDLE_TIMEOUT_MILLIS = Long.parseLong(setting("sales.pool.idleTimeoutMillis", "600000"));
+    private static final long POOL_BORROW_TIMEOUT_MILLIS = Long.parseLong(setting("sales.pool.borrowTimeoutMillis", "30000"));
+    private static final long POOL_LEAK_THRESHOLD_MILLIS = Long.parseLong(setting("sales.pool.leakThresholdMillis", "60000"));
+    private static final int POOL_STATEMENT_CACHE_SIZE = Integer.parseInt(setting("sales.pool.statementCacheSize", "64"));
+    private static final int QUERY_TIMEOUT_SECONDS = Integer.parseInt(setting("sales.db.queryTimeoutSeconds", "0"));
+
+    // The read side; READ_URL null: reads go to the primary.
+    private static volatile String READ_URL = setting("sales.db.read.url", null);
+    private static volatile String READ_USER = setting("sales.db.read.user", USER);
+    private static volatile String READ_PASSWORD = setting("sales.db.read.password", PASSWORD);
+    private static final int READ_POOL_MIN_SIZE = Integer.parseInt(setting("sales.pool.read.minSize", String.valueOf(POOL_MIN_SIZE)));
+    private static final int READ_POOL_MAX_SIZE = Integer.parseInt(setting("sales.pool.read.maxSize", String.valueOf(POOL_MAX_SIZE)));
+    private static final long READ_POOL_BORROW_TIMEOUT_MILLIS = Long.parseLong(setting("sales.pool.read.borrowTimeoutMillis",
+            String.valueOf(POOL_BORROW_TIMEOUT_MILLIS)));
+    private static final int READ_QUERY_TIMEOUT_SECONDS = Integer.parseInt(setting("sales.db.read.queryTimeoutSeconds", "0"));
+
+    private static final Metrics.Timer READ_CONNECTION = Metrics.timer("db.connection.read");
+    private static final LongAdder READS_ON_REPLICA = Metrics.counter("db.read.replica");
+    private static final LongAdder READS_ON_PRIMARY = Metrics.counter("db.read.primary");
+
+    private static volatile ConnectionPool pool;
+    private static volatile ConnectionPool readPool;
+
+    // The time taken is recorded as Metrics.CONNECTION.
+    // Inside Shards.onEveryShard / scatter the connection is to the shard being worked on.
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        long start = System.nanoTime();
+        try {
+            ConnectionPool pinned = Shards.pinnedPool();
+            return (pinned != null ? pinned : getPool()).borrow();
+        } finally {
+            Metrics.CONNECTION.record(start);
+        }
+    }
+
+    public static ConnectionPool getPool() {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (DBConnection.class) {
+                p = pool;
+                if (p == null) {
+                    p = new ConnectionPool(URL, USER, PASSWORD, POOL_MIN_SIZE, POOL_MAX_SIZE,
+                            POOL_IDLE_TIMEOUT_MILLIS, POOL_BORROW_TIMEOUT_MILLIS, POOL_LEAK_THRESHOLD_MILLIS,
+                            POOL_STATEMENT_CACHE_SIZE, QUERY_TIMEOUT_SECONDS);
+                    pool = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    // A pool sized like the primary's for another database (a shard); null user / password: the primary's.
+    static ConnectionPool newPool(String url, String user, String password) {
+        return new ConnectionPool(url, user != null ? user : USER, password != null ? password : PASSWORD,
+                POOL_MIN_SIZE, POOL_MAX_SIZE, POOL_IDLE_TIMEOUT_MILLIS, POOL_BORROW_TIMEOUT_MILLIS,
+                POOL_LEAK_THRESHOLD_MILLIS, POOL_STATEMENT_CACHE_SIZE, QUERY_TIMEOUT_SECONDS);
+    }
+
+    // A connection for reads that may lag behind the latest sales: the read side if one is configured.
+    public static Connection getReadConnection() throws SQLException {
+        return getReadConnection(false);
+    }
+
+    // afterOwnWrites: the caller must see its own sales (the search after a sale); with
+    // sales.db.readYourWrites the primary answers until the replica has caught up with them.
+    public static Connection getReadConnection(boolean afterOwnWrites) throws SQLException {
+        // The read side is shard 0's; a pinned shard reads its own database.
+        if (READ_URL == null || Shards.isPinned()) return getConnection();
+        if (afterOwnWrites && !ReplicaMonitor.seesOwnWrites()) {
+            READS_ON_PRIMARY.increment();
+            return getConnection();
+        }
+        long start = System.nanoTime();
+        try {
+            Connection conn = getReadPool().borrow();
+            READS_ON_REPLICA.increment();
+            return conn;
+        } finally {
+            READ_CONNECTION.record(start);
+        }
+    }
+
+    // The pool of the read side, or null if reads go to the primary.
+    public static ConnectionPool getReadPool() {
+        ConnectionPool p = readPool;
+        if (p == null && READ_URL != null) {
+            synchronized (DBConnection.class) {
+                p = readPool;
+                if (p == null && READ_URL != null) {
+                    p = new ConnectionPool(READ_URL, READ_USER, READ_PASSWORD, READ_POOL_MIN_SIZE, READ_POOL_MAX_SIZE,
+                            POOL_IDLE_TIMEOUT_MILLIS, READ_POOL_BORROW_TIMEOUT_MILLIS, POOL_LEAK_THRESHOLD_MILLIS,
+                            POOL_STATEMENT_CACHE_SIZE, READ_QUERY_TIMEOUT_SECONDS);
+                    readPool = p;
+                    ReplicaMonitor.start();
+                }
+            }
+        }
+        return p;
+    }
+
+    // Whether reads have a side of their own.
+    public static boolean hasReadSide() {
+        return READ_URL != null;
+    }
+
+    // Points later getConnection() calls at another database (e.g. the in-memory database of the benchmarks).
+    // The current pool (and any shards) is closed; the caller resets the caches derived from the old database.
+    public static void configure(String url, String user, String password) {
+        synchronized (DBConnection.class) {
+            shutdown();
+            URL = url;
+            USER = user;
+            PASSWORD = password;
+            DIALECT = Dialect.forUrl(url);
+            READ_URL = null;
+        }
+    }
+
+    // Sends later getReadConnection() calls to another database (null: back to the primary).
+    public static void configureRead(String url, String user, String password) {
+        synchronized (DBConnection.class) {
+            closeReadSide();
+            READ_URL = url;
+            READ_USER = user;
+            READ_PASSWORD = password;
+        }
+    }
+
+    // The SQL dialect of the configured database.
+    public static Dialect dialect() {
+        return DIALECT;
+    }
+
+    // System property, then environment variable (sales.db.url -> SALES_DB_URL), then the properties file.
+    static String setting(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) value = System.getenv(key.replace('.', '_').toUpperCase(Locale.ROOT));
+        if (value == null) value = FILE_SETTINGS.getProperty(key);
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    // The tunables of the other classes (batch sizes, TTLs, ...) are read through these; a value that is not
+    // a number is reported and the default used.
+    static int intSetting(String key, int defaultValue) {
+        long value = longSetting(key, defaultValue);
+        if (value == (int) value) return (int) value;
+        System.out.println("Ignoring " + key + "=" + value + " (out of range), using " + defaultValue);
+        return defaultValue;
+    }
+
+    static long longSetting(String key, long defaultValue) {
+        String value = setting(key, null);
+        if (value == null || value.isEmpty()) return defaultValue;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.out.println("Ignoring " + key + "=" + value + " (not a number), using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    static boolean booleanSetting(String key, boolean defaultValue) {
+        String value = setting(key, null);
+        return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    private static Properties loadSettingsFile() {
+        Properties settings = new Properties();
+        String configured = System.getProperty("sales.config");
+        Path file = Paths.get(configured != null ? configured : "sales.properties");
+        if (configured == null && !Files.exists(file)) return settings;
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            settings.load(in);
+        } catch (IOException e) {
+            System.out.println("Error while reading " + file + ": " + e.getMessage());
+        }
+        return settings;
+    }
+
+    private static Dialect dialectFor(String url, String configured) {
+        if (configured == null || configured.isEmpty()) return Dialect.forUrl(url);
+        try {
+            return Dialect.valueOf(configured.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown sales.db.dialect " + configured + ", using the one of the URL");
+            return Dialect.forUrl(url);
+        }
+    }
+
+    public static String getPoolStats() {
+        ConnectionPool p = pool;
+        String stats = p == null ? "Connection pool not started" : p.getStats();
+        if (READ_URL == null) return stats;
+        ConnectionPool r = readPool;
+        return "primary: " + stats + System.lineSeparator()
+                + "read: " + (r == null ? "Connection pool not started" : r.getStats()) + System.lineSeparator()
+                + "replica: " + ReplicaMonitor.getStats();
+    }
+
+    public static void shutdown() {
+        synchronized (DBConnection.class) {
+            Shards.shutdown();
+            closeReadSide();
+            if (pool != null) {
+                pool.close();
+                pool = null;
+            }
+        }
+    }
+
+    private static void closeReadSide() {
+        ReplicaMonitor.stop();
+        if (readPool != null) {
+            readPool.close();
+            readPool = null;
+        }
     }
-}
\ No newline at end of file
+}
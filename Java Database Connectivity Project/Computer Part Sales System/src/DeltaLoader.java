@@ -0,0 +1,301 @@
+/*
+ * Delta load (load mode 6): applies only the new and changed records of updated data files, for nightly
+ * refreshes of a loaded database. Running loadData again on such files fails on the primary keys.
+ * - Every successful delta load leaves a digest next to each data file, "<data file>.digest": the key
+ *   (first column) and a 64-bit hash of the fields of every record, sorted by key.
+ * - The next run reads each file and compares each record with the digest. Unchanged records are skipped
+ *   without touching the database; new and changed ones are sent with the table's MERGE
+ *   (BulkLoader.Table.upsert) in batches, committed every commitInterval rows. The database work is
+ *   proportional to the change, not to the size of the file.
+ * - Without a digest (first run), or with a digest of other tables (the database token of LoadCheckpoint
+ *   differs, e.g. the tables were dropped and created again), every record is merged once.
+ * - The new digest replaces the old one only after the file's last commit; rows that were rejected keep
+ *   their old hash, so they are tried again next time. MERGE is idempotent: a run that fails halfway is
+ *   simply run again.
+ * - A changed part row overwrites its available quantity with the file's. Records missing from a file are
+ *   counted but not deleted, since sales may refer to them.
+ * - Failed batches are replayed row by row and bad rows rejected to "<data file>.rejected", as in BulkLoader.
+ * by Jeffery
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+public class DeltaLoader {
+
+    private static final int DIGEST_MAGIC = 0x44474553;  // "DGES"
+
+    // Counters of one file.
+    static final class Result {
+        final String table;
+        long added;
+        long changed;
+        long unchanged;
+        long missing;
+        long rejected;
+        long elapsedNanos;
+
+        Result(String table) {
+            this.table = table;
+        }
+    }
+
+    // Key -> record hash of one version of a data file.
+    static final class Digest {
+        final int[] keys;
+        final long[] hashes;
+
+        Digest(int[] keys, long[] hashes) {
+            this.keys = keys;
+            this.hashes = hashes;
+        }
+
+        // Index of the key, or -1.
+        int find(int key) {
+            int i = Arrays.binarySearch(keys, key);
+            return i < 0 ? -1 : i;
+        }
+
+        // The digest in the file if it was written for this database, else null.
+        static Digest read(Path file, long token) throws IOException {
+            if (!Files.exists(file)) return null;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != DIGEST_MAGIC || in.readLong() != token) return null;
+                int n = in.readInt();
+                int[] keys = new int[n];
+                long[] hashes = new long[n];
+                for (int i = 0; i < n; i++) {
+                    keys[i] = in.readInt();
+                    hashes[i] = in.readLong();
+                }
+                return new Digest(keys, hashes);
+            } catch (EOFException e) {
+                return null;  // cut short: treated as missing
+            }
+        }
+
+        // Written to a temporary file and moved over the old one, so a crash leaves either of them whole.
+        void write(Path file, long token) throws IOException {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(DIGEST_MAGIC);
+                out.writeLong(token);
+                out.writeInt(keys.length);
+                for (int i = 0; i < keys.length; i++) {
+                    out.writeInt(keys[i]);
+                    out.writeLong(hashes[i]);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    // Collects the keys and hashes of a file in file order; build() sorts them, the last record of a key wins.
+    private static final class DigestBuilder {
+        int[] keys = new int[1024];
+        long[] hashes = new long[1024];
+        int size;
+        final Set<Integer> failed = new HashSet<>();
+
+        void add(int key, long hash) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            keys[size] = key;
+            hashes[size] = hash;
+            size++;
+        }
+
+        Digest build(Digest old) {
+            // Sort (key, position) pairs packed into longs: the key (offset to sort unsigned) high, position low.
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((keys[i] ^ 0x80000000L) & 0xffffffffL) << 32 | i;
+            }
+            Arrays.parallelSort(order);
+            int[] k = new int[size];
+            long[] h = new long[size];
+            int n = 0;
+            for (int j = 0; j < size; j++) {
+                int i = (int) order[j];
+                int key = keys[i];
+                long hash = hashes[i];
+                if (failed.contains(key)) {
+                    // Keep what the database has (the old hash), or nothing for a row it never got.
+                    int o = old == null ? -1 : old.find(key);
+                    if (o < 0) continue;
+                    hash = old.hashes[o];
+                }
+                if (n > 0 && k[n - 1] == key) n--;
+                k[n] = key;
+                h[n] = hash;
+                n++;
+            }
+            return new Digest(Arrays.copyOf(k, n), Arrays.copyOf(h, n));
+        }
+    }
+
+    // Returns false if the load stopped on an error (rejected rows do not count).
+    public static boolean loadData(String folderPath) {
+        long start = System.nanoTime();
+        List<Result> results = new ArrayList<>();
+        boolean ok = false;
+        try {
+            long token;
+            try (Connection conn = DBConnection.getConnection()) {
+                token = LoadCheckpoint.databaseToken(conn);
+            }
+            for (BulkLoader.Table table : BulkLoader.TABLES) {
+                results.add(load(table, folderPath + "/" + table.fileName, token));
+            }
+            System.out.println(" Processing...Done! Changes are applied to the database!");
+            ok = true;
+        } catch (Exception e) {
+            System.out.println(" Error while loading data: " + e.getMessage());
+        }
+        ok &= AdminOperations.loadFinished();
+        Metrics.timer("admin.load.delta").record(start);
+        printSummary(results);
+        return ok;
+    }
+
+    static Result load(BulkLoader.Table table, String path, long token) throws SQLException, IOException {
+        Result result = new Result(table.name);
+        long start = System.nanoTime();
+        Path digestFile = Paths.get(path + ".digest");
+        Digest old = Digest.read(digestFile, token);
+        DigestBuilder fresh = new DigestBuilder();
+
+        try (Connection conn = DBConnection.getConnection();
+             RecordReader reader = new RecordReader(path);
+             BulkLoader.RejectWriter rejects = new BulkLoader.RejectWriter(path + ".rejected")) {
+
+            PreparedStatement pstmt = table.upsert.prepare(conn);
+            conn.setAutoCommit(false);
+            try {
+                BulkLoader.Batch batch = new BulkLoader.Batch(path);
+                long sinceCommit = 0;
+                long seen = 0;
+
+                while (reader.next()) {
+                    int key;
+                    try {
+                        key = reader.intField(0);
+                    } catch (RuntimeException e) {
+                        rejects.reject(reader.line(), e.getMessage());
+                        result.rejected++;
+                        continue;
+                    }
+                    long hash = reader.fieldsHash();
+                    fresh.add(key, hash);
+                    int o = old == null ? -1 : old.find(key);
+                    if (o >= 0) seen++;
+                    if (o >= 0 && old.hashes[o] == hash) {
+                        result.unchanged++;
+                        continue;
+                    }
+
+                    if (batch.size == 0) batch.start = reader.recordOffset();
+                    batch.end = reader.position();
+                    try {
+                        if (!table.binder.bind(reader, pstmt)) {
+                            rejects.reject(reader.line(), "not enough column data");
+                            result.rejected++;
+                            fresh.failed.add(key);
+                            continue;
+                        }
+                    } catch (Exception e) {
+                        rejects.reject(reader.line(), e.getMessage());
+                        result.rejected++;
+                        fresh.failed.add(key);
+                        continue;
+                    }
+                    pstmt.addBatch();
+                    batch.size++;
+                    if (o >= 0) result.changed++; else result.added++;
+
+                    if (batch.size >= BulkLoader.batchSize) {
+                        sinceCommit += flush(conn, pstmt, table, batch, old, fresh, rejects, result);
+                        if (sinceCommit >= BulkLoader.commitInterval) {
+                            conn.commit();
+                            sinceCommit = 0;
+                        }
+                    }
+                }
+                flush(conn, pstmt, table, batch, old, fresh, rejects, result);
+                conn.commit();
+                result.missing = old == null ? 0 : Math.max(0, old.keys.length - seen);
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+
+        fresh.build(old).write(digestFile, token);
+        result.elapsedNanos = System.nanoTime() - start;
+        Metrics.timer("admin.load.delta." + table.name).recordNanos(result.elapsedNanos);
+        System.out.println(" " + table.fileName + " SUCCESSFUL! " + (result.added + result.changed) + " rows merged"
+                + (result.rejected > 0 ? " (" + result.rejected + " rows rejected, see " + path + ".rejected)" : ""));
+        return result;
+    }
+
+    // Sends the queued MERGEs; on failure replays the changed records of the batch row by row.
+    private static int flush(Connection conn, PreparedStatement pstmt, BulkLoader.Table table, BulkLoader.Batch batch,
+                             Digest old, DigestBuilder fresh, BulkLoader.RejectWriter rejects, Result result)
+            throws SQLException, IOException {
+        if (batch.size == 0) return 0;
+
+        Savepoint savepoint = conn.setSavepoint();
+        int applied;
+        try {
+            table.upsert.executeBatch(pstmt);
+            applied = batch.size;
+        } catch (BatchUpdateException e) {
+            conn.rollback(savepoint);
+            pstmt.clearBatch();
+            applied = 0;
+            try (RecordReader replay = new RecordReader(Paths.get(batch.path), batch.start, batch.end)) {
+                while (replay.next()) {
+                    int key;
+                    int o;
+                    try {
+                        key = replay.intField(0);
+                        o = old == null ? -1 : old.find(key);
+                        if (o >= 0 && old.hashes[o] == replay.fieldsHash()) continue;
+                        if (!table.binder.bind(replay, pstmt)) continue;
+                    } catch (Exception bindEx) {
+                        continue; // already rejected when the batch was built
+                    }
+                    try {
+                        table.upsert.executeUpdate(pstmt);
+                        applied++;
+                    } catch (SQLException rowEx) {
+                        rejects.reject(replay.line(), rowEx.getMessage());
+                        result.rejected++;
+                        fresh.failed.add(key);
+                        if (o >= 0) result.changed--; else result.added--;
+                    }
+                }
+            }
+        }
+        try {
+            conn.releaseSavepoint(savepoint);
+        } catch (SQLException ignored) {
+            // Not supported by every driver; dropped on commit.
+        }
+        batch.size = 0;
+        return applied;
+    }
+
+    static void printSummary(List<Result> results) {
+        System.out.printf("| %-12s | %-10s | %-10s | %-10s | %-10s | %-8s | %-10s |\n",
+                "Table", "New", "Changed", "Unchanged", "Missing", "Rejected", "Seconds");
+        for (Result r : results) {
+            System.out.printf("| %-12s | %-10d | %-10d | %-10d | %-10d | %-8d | %-10.2f |\n",
+                    r.table, r.added, r.changed, r.unchanged, r.missing, r.rejected, r.elapsedNanos / 1e9);
+        }
+    }
+}
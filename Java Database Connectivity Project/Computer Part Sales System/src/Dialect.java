@@ -0,0 +1,70 @@
+/*
+ * The SQL differences between the databases the sales system runs on.
+ * - ORACLE: the Oracle server (the default backend).
+ * - H2: the embedded database (a local file or in-memory) for offline use, CI and load tests; it runs in
+ *   H2's own mode, no compatibility mode is needed.
+ * - The statements of Queries are written once, with placeholders for the parts that differ:
+ *     ${now}        the current date and time           SYSDATE          / LOCALTIMESTAMP
+ *     ${dual}       FROM clause of a one-row SELECT       FROM DUAL       / (none)
+ *     ${day(expr)}  the day of a date/time value         TRUNC(expr)      / CAST(expr AS DATE)
+ *   render(sql) fills them in. Everything else is SQL that both accept: INNER JOIN ... ON instead of
+ *   NATURAL JOIN, COALESCE instead of NVL, FETCH FIRST n ROWS ONLY, CAST on untyped bind parameters.
+ * - dropTable(table) is DROP TABLE ... CASCADE CONSTRAINTS on Oracle and DROP TABLE ... CASCADE on H2.
+ * - partitionByMonth(column) is the clause that range partitions a table by month (Oracle interval
+ *   partitioning), or null where partitioning is not available (H2). Used by TunedSchema.
+ * - forUrl(url) picks the dialect from the JDBC URL (DBConnection does this; -Dsales.db.dialect overrides).
+ * by Jeffery
+ */
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public enum Dialect {
+    ORACLE("SYSDATE", " FROM DUAL", "TRUNC(%s)", " CASCADE CONSTRAINTS",
+            " PARTITION BY RANGE (%s) INTERVAL (NUMTOYMINTERVAL(1, 'MONTH'))"
+                    + " (PARTITION p_initial VALUES LESS THAN (DATE '2000-01-01'))"),
+    H2("LOCALTIMESTAMP", "", "CAST(%s AS DATE)", " CASCADE", null);
+
+    private static final Pattern DAY = Pattern.compile("\\$\\{day\\(([^)]*)\\)}");
+
+    private final String now;
+    private final String dual;
+    private final String day;
+    private final String dropCascade;
+    private final String partitionByMonth;
+
+    Dialect(String now, String dual, String day, String dropCascade, String partitionByMonth) {
+        this.now = now;
+        this.dual = dual;
+        this.day = day;
+        this.dropCascade = dropCascade;
+        this.partitionByMonth = partitionByMonth;
+    }
+
+    // The SQL with its ${...} placeholders replaced for this database.
+    String render(String sql) {
+        if (sql.indexOf("${") < 0) return sql;
+        String s = sql.replace("${now}", now).replace("${dual}", dual);
+        Matcher m = DAY.matcher(s);
+        StringBuilder sb = new StringBuilder();
+        while (m.find()) {
+            m.appendReplacement(sb, Matcher.quoteReplacement(String.format(day, m.group(1))));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    String dropTable(String table) {
+        return "DROP TABLE " + table + dropCascade;
+    }
+
+    // Appended to a CREATE TABLE; null if this database cannot partition tables.
+    String partitionByMonth(String column) {
+        return partitionByMonth == null ? null : String.format(partitionByMonth, column);
+    }
+
+    static Dialect forUrl(String url) {
+        return url.toLowerCase(Locale.ROOT).startsWith("jdbc:h2:") ? H2 : ORACLE;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Hands out primary-key values (transaction tID, and any other integer key) without SELECT MAX per row.
+ * - IDs are reserved from the database in blocks (default 1000, -Dsales.id.blockSize). The high-water mark
+ *   of each key lives in the id_block table and is advanced in its own short transaction, so it survives
+ *   restarts and is shared safely by several JVMs: an ID is never handed out twice, gaps are accepted.
+ * - Within a block, nextId() is a single atomic increment; only the thread that exhausts a block takes
+ *   the lock and reserves the next one.
+ * - A reservation never starts below MAX(key) + 1 of the table itself, so rows inserted with explicit IDs
+ *   (the admin loaders) are skipped over. invalidateAll() drops the in-memory blocks after such loads or
+ *   after the tables are recreated. With shards the blocks are reserved on shard 0, above MAX(key) of
+ *   every shard, so tIDs stay unique over all of them.
+ * by Jeffery
+ */
+
+import java.sql.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class IdAllocator {
+
+    private static int blockSize = DBConnection.intSetting("sales.id.blockSize", 1000);
+
+    private static final Map<String, IdAllocator> ALLOCATORS = new ConcurrentHashMap<>();
+    private static final int MAX_RESERVE_ATTEMPTS = 5;
+
+    private final String table;
+    private final String column;
+    private final String name;
+    private final ReentrantLock refillLock = new ReentrantLock();
+    private volatile Block current = new Block(0, 0);
+
+    // IDs [next, end) of the block currently being handed out.
+    private static final class Block {
+        final AtomicLong next;
+        final long end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+
+    private IdAllocator(String table, String column) {
+        this.table = table;
+        this.column = column;
+        this.name = table + "." + column;
+    }
+
+    public static IdAllocator forTable(String table, String column) {
+        return ALLOCATORS.computeIfAbsent((table + "." + column).toLowerCase(), k -> new IdAllocator(table, column));
+    }
+
+    public static IdAllocator transactionIds() {
+        return forTable("transaction", "tID");
+    }
+
+    // Forgets every reserved block; the next nextId() reserves a fresh one above the current table contents.
+    public static void invalidateAll() {
+        for (IdAllocator allocator : ALLOCATORS.values()) {
+            allocator.current = new Block(0, 0);
+        }
+    }
+
+    public int nextId() throws SQLException {
+        while (true) {
+            Block block = current;
+            long id = block.next.getAndIncrement();
+            if (id < block.end) {
+                return (int) id;
+            }
+            refill(block);
+        }
+    }
+
+    private void refill(Block exhausted) throws SQLException {
+        refillLock.lock();
+        try {
+            if (current == exhausted) {
+                current = reserve();
+            }
+        } finally {
+            refillLock.unlock();
+        }
+    }
+
+    // Moves the persistent high-water mark forward by one block and returns the reserved range.
+    private Block reserve() throws SQLException {
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    long floor = (Shards.enabled ? Shards.maxKey(table, column) : maxKey(conn)) + 1;
+                    long start;
+
+                    try (PreparedStatement select = conn.prepareStatement("SELECT bNextID FROM id_block WHERE bName = ? FOR UPDATE")) {
+                        select.setString(1, name);
+                        try (ResultSet rs = select.executeQuery()) {
+                            if (rs.next()) {
+                                start = Math.max(rs.getLong(1), floor);
+                                try (PreparedStatement update = conn.prepareStatement("UPDATE id_block SET bNextID = ? WHERE bName = ?")) {
+                                    update.setLong(1, start + blockSize);
+                                    update.setString(2, name);
+                                    update.executeUpdate();
+                                }
+                            } else {
+                                start = floor;
+                                try (PreparedStatement insert = conn.prepareStatement("INSERT INTO id_block (bName, bNextID) VALUES (?, ?)")) {
+                                    insert.setString(1, name);
+                                    insert.setLong(2, start + blockSize);
+                                    insert.executeUpdate();
+                                }
+                            }
+                        }
+                    }
+
+                    conn.commit();
+                    if (start + blockSize > Integer.MAX_VALUE) {
+                        throw new SQLException("ID space of " + name + " is exhausted");
+                    }
+                    return new Block(start, start + blockSize);
+                } catch (SQLException e) {
+                    conn.rollback();
+                    // Two JVMs may try to create the same id_block row at once; the loser retries and updates it.
+                    if (attempt >= MAX_RESERVE_ATTEMPTS) throw e;
+                }
+            }
+        }
+    }
+
+    private long maxKey(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(" + column + ") FROM " + table)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Checkpoints of the resumable bulk load (load mode 5): an interrupted load (crash, kill, lost connection)
+ * resumes where it stopped instead of leaving a half-loaded table that only deleteTables + createTables +
+ * a full reload could fix.
+ * - One row per data file in load_checkpoint: the data file's size and modification time, the byte offset up
+ *   to which its records are committed, the key (first column) of the last committed record and whether the
+ *   file is complete.
+ * - BulkLoader saves the row in the same transaction as the rows it commits, so the checkpoint never claims
+ *   more or less than the table holds, whenever the load stops.
+ * - A data file that was changed since its checkpoint (other size or modification time) is loaded from the
+ *   start again. The rows of a folder are deleted once its whole load has succeeded.
+ * - The table also keeps a random token of the database (databaseToken), which DeltaLoader writes into its
+ *   digests: a digest taken against dropped and recreated tables is then recognised as stale.
+ * by Jeffery
+ */
+
+import java.io.File;
+import java.sql.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+final class LoadCheckpoint {
+
+    static final String DDL = "CREATE TABLE load_checkpoint (" +
+            "lFile VARCHAR(400) PRIMARY KEY, " +
+            "lSize NUMERIC(19), " +
+            "lModified NUMERIC(19), " +
+            "lOffset NUMERIC(19), " +
+            "lLastKey NUMERIC(19), " +
+            "lComplete INTEGER)";
+
+    private static final String TOKEN_ROW = "#database";
+
+    final String path;
+    final long size;
+    final long modified;
+    long offset;
+    long lastKey;
+    boolean complete;
+
+    private LoadCheckpoint(String path, long size, long modified) {
+        this.path = path;
+        this.size = size;
+        this.modified = modified;
+    }
+
+    // The checkpoint of a data file: the saved one if the file is unchanged since, else a new one at offset 0.
+    static LoadCheckpoint of(Connection conn, String dataPath) throws SQLException {
+        File file = new File(dataPath).getAbsoluteFile();
+        LoadCheckpoint cp = new LoadCheckpoint(file.getPath(), file.length(), file.lastModified());
+        PreparedStatement pstmt = Queries.CHECKPOINT_READ.prepare(conn);
+        pstmt.setString(1, cp.path);
+        try (ResultSet rs = Queries.CHECKPOINT_READ.executeQuery(pstmt)) {
+            if (rs.next() && rs.getLong("lSize") == cp.size && rs.getLong("lModified") == cp.modified) {
+                cp.offset = rs.getLong("lOffset");
+                cp.lastKey = rs.getLong("lLastKey");
+                cp.complete = rs.getInt("lComplete") != 0;
+            }
+        }
+        return cp;
+    }
+
+    // Records that the file is committed up to offset; call inside the transaction that commits those rows.
+    void save(Connection conn, long offset, long lastKey, boolean complete) throws SQLException {
+        PreparedStatement pstmt = Queries.CHECKPOINT_SAVE.prepare(conn);
+        pstmt.setString(1, path);
+        pstmt.setLong(2, size);
+        pstmt.setLong(3, modified);
+        pstmt.setLong(4, offset);
+        pstmt.setLong(5, lastKey);
+        pstmt.setInt(6, complete ? 1 : 0);
+        Queries.CHECKPOINT_SAVE.executeUpdate(pstmt);
+        this.offset = offset;
+        this.lastKey = lastKey;
+        this.complete = complete;
+    }
+
+    static void delete(String dataPath) throws SQLException {
+        try (Connection conn = DBConnection.getConnection()) {
+            PreparedStatement pstmt = Queries.CHECKPOINT_DELETE.prepare(conn);
+            pstmt.setString(1, new File(dataPath).getAbsolutePath());
+            Queries.CHECKPOINT_DELETE.executeUpdate(pstmt);
+        }
+    }
+
+    // A random number stored once per database; new tables get a new one.
+    static long databaseToken(Connection conn) throws SQLException {
+        PreparedStatement read = Queries.CHECKPOINT_READ.prepare(conn);
+        read.setString(1, TOKEN_ROW);
+        try (ResultSet rs = Queries.CHECKPOINT_READ.executeQuery(read)) {
+            if (rs.next()) return rs.getLong("lLastKey");
+        }
+        long token = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        PreparedStatement insert = Queries.CHECKPOINT_TOKEN.prepare(conn);
+        insert.setString(1, TOKEN_ROW);
+        insert.setLong(2, token);
+        try {
+            Queries.CHECKPOINT_TOKEN.executeUpdate(insert);
+            return token;
+        } catch (SQLException e) {
+            // Another loader stored its token first.
+            try (ResultSet rs = Queries.CHECKPOINT_READ.executeQuery(read)) {
+                if (rs.next()) return rs.getLong("lLastKey");
+            }
+            throw e;
+        }
+    }
+}
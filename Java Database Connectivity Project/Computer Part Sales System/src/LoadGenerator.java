@@ -0,0 +1,154 @@
+/*
+ * Load generator for the server mode: java -cp build/classes LoadGenerator [sessions,...] [seconds]
+ * Simulates store terminals against a running "ComputerPartSalesSystem --server" and prints how throughput
+ * and latency change with the number of concurrent sessions (default 1,10,100,1000,5000 for 10 s each).
+ * - Every simulated terminal is a virtual thread with its own TCP session in batch mode. It loops: wait
+ *   thinkMillis, then send one command (a search for searchPercent % of them, else a sale of a random part
+ *   by a random salesperson) and wait for its result. All sessions of a step connect first, then run
+ *   together for the given time; only commands completed within that time count.
+ * - With a think time the offered load grows with the number of sessions, so the table shows where the
+ *   server (in practice its connection pool and the database) saturates. thinkMillis=0 measures a closed
+ *   loop at full speed.
+ * - Parts and salespersons are drawn from 1..parts and 1..salespersons (sample_data by default). Sales of
+ *   parts that run out are counted as out of stock; load data with plenty of stock for long runs.
+ * - Latencies go into a LatencyHistogram per step (mean / p50 / p99 / max).
+ *
+ * Tunable with -Dsales.server.address, -Dsales.server.port, -Dsales.loadgen.parts, -Dsales.loadgen.salespersons,
+ * -Dsales.loadgen.searchPercent, -Dsales.loadgen.keyword and -Dsales.loadgen.thinkMillis.
+ * by Jeffery
+ */
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoadGenerator {
+
+    private static String host = DBConnection.setting("sales.server.address", "127.0.0.1");
+    private static int port = DBConnection.intSetting("sales.server.port", 5210);
+    private static int parts = DBConnection.intSetting("sales.loadgen.parts", 32);
+    private static int salespersons = DBConnection.intSetting("sales.loadgen.salespersons", 4);
+    private static int searchPercent = DBConnection.intSetting("sales.loadgen.searchPercent", 20);
+    private static String keyword = DBConnection.setting("sales.loadgen.keyword", "CORE");
+    private static long thinkMillis = DBConnection.longSetting("sales.loadgen.thinkMillis", 50);
+
+    private static final int SOCKET_TIMEOUT_MILLIS = 60_000;
+
+    // The results of one step (one number of sessions).
+    private static final class Step {
+        final int sessions;
+        final CountDownLatch connected;
+        final CountDownLatch go = new CountDownLatch(1);
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder outOfStock = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        volatile long deadline;
+
+        Step(int sessions) {
+            this.sessions = sessions;
+            this.connected = new CountDownLatch(sessions);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String counts = args.length > 0 ? args[0] : "1,10,100,1000,5000";
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+
+        System.out.println("Load on " + host + ":" + port + ", " + seconds + " s per step, think time " + thinkMillis
+                + " ms, " + searchPercent + "% searches");
+        System.out.printf("%9s %10s %10s %9s %9s %9s %9s %8s %8s%n",
+                "sessions", "commands", "per sec", "mean ms", "p50 ms", "p99 ms", "max ms", "no stock", "errors");
+        for (String count : counts.split(",")) {
+            Step step = run(Integer.parseInt(count.trim()), seconds);
+            long commands = step.latency.getCount();
+            System.out.printf("%9d %10d %10.1f %9.2f %9.2f %9.2f %9.2f %8d %8d%n",
+                    step.sessions, commands, commands / (double) seconds,
+                    step.latency.getMeanMillis(), step.latency.getPercentileMillis(50),
+                    step.latency.getPercentileMillis(99), step.latency.getMaxMillis(),
+                    step.outOfStock.sum(), step.errors.sum());
+        }
+    }
+
+    private static Step run(int sessions, long seconds) throws InterruptedException {
+        Step step = new Step(sessions);
+        List<Thread> threads = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            threads.add(Thread.ofVirtual().name("terminal-", i).start(() -> terminal(step)));
+        }
+        step.connected.await();
+        step.deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        step.go.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        return step;
+    }
+
+    private static void terminal(Step step) {
+        boolean connected = false;
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
+            in.readLine();  // greeting
+            out.println("batch");
+            out.flush();
+            step.connected.countDown();
+            connected = true;
+
+            step.go.await();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (true) {
+                if (thinkMillis > 0) Thread.sleep(random.nextLong(thinkMillis * 2 + 1));
+                if (System.nanoTime() >= step.deadline) break;
+
+                boolean search = random.nextInt(100) < searchPercent;
+                long start = System.nanoTime();
+                if (search) {
+                    out.println("search part asc " + keyword);
+                } else {
+                    out.println("sell " + (1 + random.nextInt(parts)) + " " + (1 + random.nextInt(salespersons)));
+                }
+                out.flush();
+                String status = readResult(in);
+                long end = System.nanoTime();
+                if (end > step.deadline) break;
+
+                step.latency.record(end - start);
+                switch (status) {
+                    case "ok":
+                        break;
+                    case "out_of_stock":
+                        step.outOfStock.increment();
+                        break;
+                    default:
+                        step.errors.increment();
+                }
+            }
+        } catch (IOException e) {
+            step.errors.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // A terminal that could not connect must not hold up the start of the step.
+            if (!connected) step.connected.countDown();
+        }
+    }
+
+    // Reads the lines of one command's result; returns its status (the third field of the last line).
+    private static String readResult(BufferedReader in) throws IOException {
+        while (true) {
+            String line = in.readLine();
+            if (line == null) throw new EOFException("server closed the session");
+            String[] fields = line.split("\t", 4);
+            if (fields.length < 3) throw new IOException("unexpected response: " + line);
+            if (!fields[2].equals("row")) return fields[2];
+        }
+    }
+}
@@ -12,17 +12,47 @@
  *    - Aggregate total sales value for each manufacturer (SUM of sold part prices),
  *      and sort by total sales value descending.
  *
- * - These functions mainly perform SELECT queries with grouping/aggregation and formatted output.
- * - Menu option "Show the N most popular part" is listed but may not be implemented yet.       
+ * - These functions mainly perform SELECT queries with grouping/aggregation and formatted output,
+ *   through the named statements of Queries.
+ * - Reports 2) and 3) read the summary tables kept by SalesAggregates (one row per salesperson /
+ *   manufacturer) instead of aggregating the whole transaction table each time.
+ * 4) showPopularParts(sc):
+ *    - Input N; show the N parts with the most transaction records (PopularParts: maintained
+ *      per-part counters and top-K set, or one SQL aggregate while those are not loaded).
+ *
+ * 5) showSalesInRange(sc):
+ *    - Input a date range and a grouping (manufacturer / category / part / salesperson); show the number of
+ *      sales and the sales value of each, summed from the daily / monthly buckets of SalesRollups.
+ *
+ * 6) showSalesAnalysis(sc):
+ *    - Ad-hoc question, e.g. the sales value of each category per salesperson: choose one or two groupings
+ *      (manufacturer / category / part / salesperson / day / month) and an optional date range; a parallel
+ *      scan of the ColumnStore columns answers it without any new SQL.
+ *
+ * - Each report is timed into Metrics (manager.*) from after the input until the last line is printed.
+ * - The report queries run on DBConnection.getReadConnection(): with a read side configured (e.g. a replica),
+ *   month-end reporting does not slow down the sales on the primary.
+ * - With several shards (Shards), reports 1) to 4) are answered by ShardReports: the partial aggregates of
+ *   all shards, computed in parallel and merged. 5) and 6) load the sales of every shard.
  * by Jeffery
  */
 
 
 import java.sql.*;
-import java.util.Scanner;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
 
 public class ManagerOperations {
 
+    private static final Metrics.Timer LIST_SALESPERSONS = Metrics.timer("manager.listSalespersons");
+    private static final Metrics.Timer SALES_BY_EXPERIENCE = Metrics.timer("manager.salesByExperience");
+    private static final Metrics.Timer SALES_BY_MANUFACTURER = Metrics.timer("manager.salesByManufacturer");
+    private static final Metrics.Timer POPULAR_PARTS = Metrics.timer("manager.popularParts");
+    private static final Metrics.Timer SALES_IN_RANGE = Metrics.timer("manager.salesInRange");
+    private static final Metrics.Timer SALES_ANALYSIS = Metrics.timer("manager.salesAnalysis");
+
     public static void showMenu(Scanner sc) {
         while (true) {
             System.out.println("\n-----Operations for manager menu-----");
@@ -31,7 +61,9 @@ public class ManagerOperations {
             System.out.println("2. Count the no. of sales record of each salesperson under a specific range on years of experience");
             System.out.println("3. Show the total sales value of each manufacturer");
             System.out.println("4. Show the N most popular part");
-            System.out.println("5. Return to the main menu");
+            System.out.println("5. Show the sales of a date range");
+            System.out.println("6. Analyse the sales by any two groupings");
+            System.out.println("7. Return to the main menu");
             System.out.print("Enter Your Choice: ");
 
             int choice = sc.nextInt();
@@ -47,7 +79,16 @@ public class ManagerOperations {
                 case 3:
                     showTotalSalesValue(sc);
                     break;
+                case 4:
+                    showPopularParts(sc);
+                    break;
                 case 5:
+                    showSalesInRange(sc);
+                    break;
+                case 6:
+                    showSalesAnalysis(sc);
+                    break;
+                case 7:
                     return;
                 default:
                     System.out.println("This operation isn't ready yet!");
@@ -64,18 +105,25 @@ public class ManagerOperations {
         int choice = sc.nextInt();
         sc.nextLine();
 
-        String order;
-        if (choice == 1){order = "ASC";}
-        else if (choice == 2){order = "DESC";}
-        else {order = "ASC";}
-        
-        String query = "SELECT SID, SNAME, SPHONENUMBER, SEXPERIENCE " +
-                       "FROM salesperson " +
-                       "ORDER BY SEXPERIENCE " + order;
+        Queries.Query query = choice == 2 ? Queries.LIST_SALESPERSONS_DESC : Queries.LIST_SALESPERSONS_ASC;
 
-        try (Connection conn = DBConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+        long start = System.nanoTime();
+        if (Shards.enabled) {
+            try {
+                System.out.printf("| %-2s | %-20s | %-15s | %-20s |\n", "ID" , "Name", "Mobile Phone", "Years of Experience");
+                for (Object[] r : ShardReports.listSalespersons(choice == 2)) {
+                    System.out.printf("| %-2d | %-20s | %-15d | %-20d |\n", r[0], r[1], r[2], r[3]);
+                }
+                System.out.println("End of Query");
+            } catch (SQLException e) {
+                System.err.println("Error: " + e.getMessage());
+            } finally {
+                LIST_SALESPERSONS.record(start);
+            }
+            return;
+        }
+        try (Connection conn = DBConnection.getReadConnection();
+             ResultSet rs = query.executeQuery(query.prepare(conn))) {
 
             
             System.out.printf("| %-2s | %-20s | %-15s | %-20s |\n", "ID" , "Name", "Mobile Phone", "Years of Experience");
@@ -86,6 +134,8 @@ public class ManagerOperations {
             
         } catch (SQLException e) {
             System.err.println("Error: " + e.getMessage());
+        } finally {
+            LIST_SALESPERSONS.record(start);
         }
     }
 
@@ -97,17 +147,35 @@ public class ManagerOperations {
         int upperbound = sc.nextInt();
         sc.nextLine();
 
-        String query = "SELECT S.SID, S.SNAME, S.SPHONENUMBER, S.SEXPERIENCE, COUNT(T.TID) AS A " +
-                       "FROM Salesperson S LEFT JOIN Transaction T ON S.SID = T.SID " +
-                       "WHERE S.SEXPERIENCE " +"<= "+upperbound+" AND S.SEXPERIENCE "+">= "+lowerbound+" "+
-                       "GROUP BY S.SID, S.SNAME, S.SPHONENUMBER, S.SEXPERIENCE " +
-                       "ORDER BY S.SID DESC";
+        long start = System.nanoTime();
+        if (Shards.enabled) {
+            try {
+                System.out.printf("| %-2s | %-20s | %-20s | %-21s |\n", "ID" , "Name", "Years of Experience", "Number of Transaction");
+                for (Object[] r : ShardReports.salesByExperience(lowerbound, upperbound)) {
+                    System.out.printf("| %-2d | %-20s | %-20d | %-21d |\n", r[0], r[1], r[2], r[3]);
+                }
+                System.out.println("End of Query");
+            } catch (SQLException e) {
+                System.err.println("Error: " + e.getMessage());
+            } finally {
+                SALES_BY_EXPERIENCE.record(start);
+            }
+            return;
+        }
+        try {
+            SalesAggregates.refresh();
+        } catch (SQLException e) {
+            System.err.println("Error: " + e.getMessage());
+            SALES_BY_EXPERIENCE.record(start);
+            return;
+        }
 
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+        try (Connection conn = DBConnection.getReadConnection()) {
+            PreparedStatement pstmt = Queries.SALES_BY_EXPERIENCE.prepare(conn);
+            pstmt.setInt(1, upperbound);
+            pstmt.setInt(2, lowerbound);
 
- 
-            try (ResultSet rs = pstmt.executeQuery()) {    
+            try (ResultSet rs = Queries.SALES_BY_EXPERIENCE.executeQuery(pstmt)) {
                 
                 System.out.printf("| %-2s | %-20s | %-20s | %-21s |\n", "ID" , "Name", "Years of Experience", "Number of Transaction");
                 while (rs.next()) {
@@ -118,6 +186,8 @@ public class ManagerOperations {
 
         } catch (SQLException e) {
             System.err.println("Error: " + e.getMessage());
+        } finally {
+            SALES_BY_EXPERIENCE.record(start);
         }
     }
 
@@ -127,23 +197,195 @@ public class ManagerOperations {
     
     
     private static void showTotalSalesValue(Scanner sc) {
-        String query = "SELECT M.MID, M.MName, SUM(P.PPRICE) AS A " +
-                       "FROM Manufacturer M INNER JOIN part P ON P.MID = M.MID INNER JOIN transaction T ON T.PID = P.PID " +
-                       "GROUP BY M.MID, M.MName "+
-                       "ORDER BY SUM(P.PPRICE) DESC";
+        long start = System.nanoTime();
+        if (Shards.enabled) {
+            try {
+                System.out.printf("| %-20s | %-20s | %-20s |\n", "Manufacturer ID" , "Manufacturer Name", "Total Sales Value");
+                for (Object[] r : ShardReports.salesByManufacturer()) {
+                    System.out.printf("| %-20d | %-20s | %-20d |\n", r[0], r[1], r[2]);
+                }
+                System.out.println("End of Query");
+            } catch (SQLException e) {
+                System.err.println("Error: " + e.getMessage());
+            } finally {
+                SALES_BY_MANUFACTURER.record(start);
+            }
+            return;
+        }
+        try {
+            SalesAggregates.refresh();
+        } catch (SQLException e) {
+            System.err.println("Error: " + e.getMessage());
+            SALES_BY_MANUFACTURER.record(start);
+            return;
+        }
 
-        try (Connection conn = DBConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+        try (Connection conn = DBConnection.getReadConnection();
+             ResultSet rs = Queries.SALES_BY_MANUFACTURER.executeQuery(Queries.SALES_BY_MANUFACTURER.prepare(conn))) {
 
             System.out.printf("| %-20s | %-20s | %-20s |\n", "Manufacturer ID" , "Manufacturer Name", "Total Sales Value");
             while (rs.next()) {
-                System.out.printf("| %-20d | %-20s | %-20d |\n", rs.getInt("MID"), rs.getString("MNAME"), rs.getInt("A"));
+                System.out.printf("| %-20d | %-20s | %-20d |\n", rs.getInt("MID"), rs.getString("MNAME"), rs.getLong("A"));
             }
             System.out.println("End of Query");
 
         } catch (SQLException e) {
             System.err.println("Error: " + e.getMessage());
+        } finally {
+            SALES_BY_MANUFACTURER.record(start);
+        }
+    }
+
+
+    private static void showPopularParts(Scanner sc) {
+        System.out.print("Type in the number of parts: ");
+        int n = sc.nextInt();
+        sc.nextLine();
+        if (n <= 0) {
+            System.out.println("Invalid input.");
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            System.out.printf("| %-7s | %-20s | %-18s |\n", "Part ID", "Part Name", "No. of Transaction");
+            for (PopularParts.Entry e : Shards.enabled ? ShardReports.topParts(n) : PopularParts.top(n)) {
+                System.out.printf("| %-7d | %-20s | %-18d |\n", e.pID, e.pName, e.count);
+            }
+            System.out.println("End of Query");
+        } catch (SQLException e) {
+            System.err.println("Error: " + e.getMessage());
+        } finally {
+            POPULAR_PARTS.record(start);
+        }
+    }
+
+
+    private static final DateTimeFormatter DATE_INPUT = DateTimeFormatter.ofPattern("d/M/yyyy");
+
+    private static void showSalesInRange(Scanner sc) {
+        System.out.println("Group the sales by:");
+        System.out.println("1. Manufacturer");
+        System.out.println("2. Category");
+        System.out.println("3. Part");
+        System.out.println("4. Salesperson");
+        System.out.print("Choose the grouping: ");
+        int choice = sc.nextInt();
+        sc.nextLine();
+        if (choice < 1 || choice > 4) {
+            System.out.println("Invalid input.");
+            return;
+        }
+        SalesRollups.Dimension dimension = SalesRollups.Dimension.values()[choice - 1];
+
+        LocalDate from;
+        LocalDate to;
+        try {
+            System.out.print("Type in the start date (DD/MM/YYYY): ");
+            from = LocalDate.parse(sc.next(), DATE_INPUT);
+            System.out.print("Type in the end date (DD/MM/YYYY): ");
+            to = LocalDate.parse(sc.next(), DATE_INPUT);
+            sc.nextLine();
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid date: " + e.getParsedString());
+            return;
+        }
+        if (to.isBefore(from)) {
+            System.out.println("The end date is before the start date.");
+            return;
+        }
+
+        String[] names = {"Manufacturer", "Category", "Part", "Salesperson"};
+        long start = System.nanoTime();
+        try {
+            List<SalesRollups.Total> totals = SalesRollups.range(dimension, from, to);
+            List<Integer> keys = new ArrayList<>(totals.size());
+            for (SalesRollups.Total t : totals) keys.add(t.key);
+            Map<Integer, String> labels = dimension.names(keys);
+
+            System.out.printf("| %-15s | %-20s | %-18s | %-17s |\n", names[choice - 1] + " ID", names[choice - 1] + " Name",
+                    "No. of Transaction", "Total Sales Value");
+            for (SalesRollups.Total t : totals) {
+                System.out.printf("| %-15d | %-20s | %-18d | %-17d |\n", t.key, labels.get(t.key), t.count, t.revenue);
+            }
+            System.out.println("End of Query");
+        } catch (SQLException e) {
+            System.err.println("Error: " + e.getMessage());
+        } finally {
+            SALES_IN_RANGE.record(start);
+        }
+    }
+
+
+    private static final String[] ANALYSIS_NAMES = {"Manufacturer", "Category", "Part", "Salesperson", "Day", "Month"};
+
+    private static void showSalesAnalysis(Scanner sc) {
+        System.out.println("Group the sales by:");
+        for (int i = 0; i < ANALYSIS_NAMES.length; i++) {
+            System.out.println((i + 1) + ". " + ANALYSIS_NAMES[i]);
+        }
+        System.out.print("Choose the first grouping: ");
+        int first = sc.nextInt();
+        System.out.print("Choose the second grouping (0 for none): ");
+        int second = sc.nextInt();
+        sc.nextLine();
+        if (first < 1 || first > ANALYSIS_NAMES.length || second < 0 || second > ANALYSIS_NAMES.length || second == first) {
+            System.out.println("Invalid input.");
+            return;
+        }
+
+        ColumnStore.Scan scan = ColumnStore.scan().groupBy(ColumnStore.Column.values()[first - 1]);
+        if (second > 0) scan.groupBy(ColumnStore.Column.values()[second - 1]);
+        System.out.print("Type in the start date (DD/MM/YYYY, or - for all sales): ");
+        String fromInput = sc.next();
+        if (!fromInput.equals("-")) {
+            try {
+                LocalDate from = LocalDate.parse(fromInput, DATE_INPUT);
+                System.out.print("Type in the end date (DD/MM/YYYY): ");
+                LocalDate to = LocalDate.parse(sc.next(), DATE_INPUT);
+                if (to.isBefore(from)) {
+                    sc.nextLine();
+                    System.out.println("The end date is before the start date.");
+                    return;
+                }
+                scan.between(from, to);
+            } catch (DateTimeParseException e) {
+                sc.nextLine();
+                System.out.println("Invalid date: " + e.getParsedString());
+                return;
+            }
+        }
+        sc.nextLine();
+
+        long start = System.nanoTime();
+        try {
+            List<ColumnStore.Group> groups = scan.run();
+            StringBuilder header = new StringBuilder("|");
+            List<Object> titles = new ArrayList<>();
+            for (int choice : second > 0 ? new int[]{first, second} : new int[]{first}) {
+                header.append(" %-15s | %-20s |");
+                titles.add(ANALYSIS_NAMES[choice - 1] + " ID");
+                titles.add(ANALYSIS_NAMES[choice - 1]);
+            }
+            header.append(" %-18s | %-17s |\n");
+            titles.add("No. of Transaction");
+            titles.add("Total Sales Value");
+            System.out.printf(header.toString(), titles.toArray());
+            for (ColumnStore.Group g : groups) {
+                List<Object> fields = new ArrayList<>();
+                for (int i = 0; i < g.keys.length; i++) {
+                    fields.add(g.keys[i]);
+                    fields.add(g.labels[i]);
+                }
+                fields.add(g.count);
+                fields.add(g.revenue);
+                System.out.printf(header.toString(), fields.toArray());
+            }
+            System.out.println("End of Query");
+        } catch (SQLException e) {
+            System.err.println("Error: " + e.getMessage());
+        } finally {
+            SALES_ANALYSIS.record(start);
         }
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * Latency histograms and counters for the menu operations and the database work underneath them.
+ * - Operation timers: one per operation (sell, search, each loader, each manager report, ...), declared as
+ *   constants of the class that runs the operation with Metrics.timer(name). Callers take
+ *   System.nanoTime() before the work (after reading the user's input) and call timer.record(start) in a
+ *   finally block, so a timer covers the database work plus result formatting but never the console input.
+ * - Database phases, recorded for every statement of every operation:
+ *     db.connection  time to get a connection from DBConnection (pool borrow, or a new logon)
+ *     db.execute     time inside execute / executeQuery / executeUpdate / executeBatch (Queries)
+ *     db.fetch       time inside ResultSet.next() while reading the rows (Queries)
+ *   The time an operation spends formatting is its own time minus these.
+ * - Counters: named LongAdders for outcomes (e.g. sales.sell.sold / outOfStock / notFound / failed).
+ * - Recording never allocates (LatencyHistogram) and touches only striped / per-bucket atomics, so the sell
+ *   path pays a handful of atomic increments per sale.
+ * - report() is shown by the admin menu; dumpOnExit() writes it to the file named by -Dsales.metrics.file
+ *   (nothing is written when it is not set).
+ * by Jeffery
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Metrics {
+
+    private static final Map<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+
+    // After the maps: reading it loads DBConnection, which registers its timers here.
+    private static final String DUMP_FILE = DBConnection.setting("sales.metrics.file", null);
+
+    public static final class Timer {
+        final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        // Records the time since start (a System.nanoTime() value).
+        public void record(long start) {
+            latency.record(System.nanoTime() - start);
+        }
+
+        public void recordNanos(long nanos) {
+            latency.record(nanos);
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+
+    // Database phases; the operation timers are declared by the Operations classes.
+    static final Timer CONNECTION = timer("db.connection");
+    static final Timer EXECUTE = timer("db.execute");
+    static final Timer FETCH = timer("db.fetch");
+
+    // Returns the timer registered under name, registering it on first use.
+    static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, Timer::new);
+    }
+
+    static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    // Every timer and counter that has been used, plus the pool and query statistics.
+    public static String report() {
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        sb.append("-- Operations and database phases --").append(nl);
+        boolean any = false;
+        for (Timer t : TIMERS.values()) {
+            if (t.latency.getCount() == 0) continue;
+            sb.append(String.format("%-36s total=%.1fms %s%n", t.name, t.latency.getTotalMillis(), t.latency));
+            any = true;
+        }
+        if (!any) sb.append("Nothing recorded yet").append(nl);
+
+        sb.append("-- Counters --").append(nl);
+        any = false;
+        for (Map.Entry<String, LongAdder> e : COUNTERS.entrySet()) {
+            long n = e.getValue().sum();
+            if (n == 0) continue;
+            sb.append(String.format("%-36s %d%n", e.getKey(), n));
+            any = true;
+        }
+        if (!any) sb.append("Nothing counted yet").append(nl);
+
+        sb.append("-- Connection pool --").append(nl).append(DBConnection.getPoolStats()).append(nl);
+        sb.append("-- Queries --").append(nl).append(Queries.getStats());
+        return sb.toString();
+    }
+
+    // Writes report() to DUMP_FILE, if one is configured; called on exit.
+    public static void dumpOnExit() {
+        if (DUMP_FILE == null || DUMP_FILE.isEmpty()) return;
+        Path path = Paths.get(DUMP_FILE);
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write("Metrics at " + LocalDateTime.now() + System.lineSeparator());
+            out.write(report());
+            System.out.println("Metrics written to " + path.toAbsolutePath());
+        } catch (IOException e) {
+            System.out.println("Error while writing metrics: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Parallel, dependency-aware variant of AdminOperations.loadData.
+ * - The load order comes from the FOREIGN KEY ... REFERENCES clauses in AdminOperations.TABLE_DDL:
+ *   a table starts loading as soon as every table it references has finished, so category,
+ *   manufacturer and salesperson load concurrently, part waits for category + manufacturer and
+ *   transaction waits for part + salesperson.
+ * - Each table (and each chunk of a large file) is loaded by BulkLoader.loadRange() on its own pooled
+ *   connection. Files larger than chunkBytes are split into byte ranges on line boundaries.
+ * - Progress (rows and rows/sec per table) is printed every few seconds while the load runs,
+ *   followed by the usual BulkLoader summary.
+ * - All-or-nothing: the target tables must be empty before the load starts. If any worker fails,
+ *   the other workers are cancelled and every table touched by this load is emptied again
+ *   (children first), so the database is left as it was.
+ *
+ * Tunable with -Dsales.load.workers (default: number of cores, at most 8) and -Dsales.load.chunkBytes.
+ * The connection pool (sales.pool.maxSize) should be at least as large as the number of workers.
+ * by Jeffery
+ */
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ParallelLoader {
+
+    private static int workers = DBConnection.intSetting("sales.load.workers", Math.min(8, Runtime.getRuntime().availableProcessors()));
+    private static long chunkBytes = DBConnection.longSetting("sales.load.chunkBytes", 16L * 1024 * 1024);
+
+    private static final long PROGRESS_INTERVAL_MILLIS = 2000;
+    private static final Pattern REFERENCES = Pattern.compile("REFERENCES\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    // One table being loaded: the results of its chunks plus wall-clock start / finish.
+    private static final class TableLoad {
+        final BulkLoader.Table table;
+        final List<BulkLoader.Result> chunks = new CopyOnWriteArrayList<>();
+        volatile long startedAt;
+        volatile long finishedAt;
+
+        TableLoad(BulkLoader.Table table) {
+            this.table = table;
+        }
+
+        long loaded() {
+            long n = 0;
+            for (BulkLoader.Result r : chunks) n += r.loaded;
+            return n;
+        }
+
+        BulkLoader.Result total() {
+            BulkLoader.Result total = new BulkLoader.Result(table.name);
+            for (BulkLoader.Result r : chunks) {
+                total.loaded += r.loaded;
+                total.rejected += r.rejected;
+            }
+            long end = finishedAt != 0 ? finishedAt : System.nanoTime();
+            total.elapsedNanos = startedAt == 0 ? 0 : end - startedAt;
+            return total;
+        }
+    }
+
+    // Table name -> names of the tables it references, read from the CREATE TABLE statements.
+    static Map<String, Set<String>> dependencyGraph() {
+        Map<String, Set<String>> graph = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : AdminOperations.TABLE_DDL.entrySet()) {
+            Set<String> parents = new LinkedHashSet<>();
+            Matcher m = REFERENCES.matcher(e.getValue());
+            while (m.find()) {
+                String parent = m.group(1).toLowerCase();
+                if (!parent.equals(e.getKey())) parents.add(parent);
+            }
+            graph.put(e.getKey(), parents);
+        }
+        return graph;
+    }
+
+    // Tables in an order where every table comes after the tables it references.
+    static List<BulkLoader.Table> loadOrder(Map<String, Set<String>> graph) {
+        List<BulkLoader.Table> ordered = new ArrayList<>();
+        Set<String> placed = new HashSet<>();
+        List<BulkLoader.Table> remaining = new ArrayList<>(BulkLoader.TABLES);
+
+        while (!remaining.isEmpty()) {
+            boolean progress = false;
+            for (Iterator<BulkLoader.Table> it = remaining.iterator(); it.hasNext(); ) {
+                BulkLoader.Table t = it.next();
+                if (placed.containsAll(graph.getOrDefault(t.name, Collections.emptySet()))) {
+                    ordered.add(t);
+                    placed.add(t.name);
+                    it.remove();
+                    progress = true;
+                }
+            }
+            if (!progress) {
+                List<String> names = new ArrayList<>();
+                for (BulkLoader.Table t : remaining) names.add(t.name);
+                throw new IllegalStateException("Circular foreign keys between tables " + names);
+            }
+        }
+        return ordered;
+    }
+
+    // Returns false if the load failed (and was rolled back); rejected rows do not count.
+    public static boolean loadData(String folderPath) {
+        long loadStart = System.nanoTime();
+        Map<String, Set<String>> graph = dependencyGraph();
+        List<BulkLoader.Table> order = loadOrder(graph);
+
+        try {
+            List<String> notEmpty = nonEmptyTables(order);
+            if (!notEmpty.isEmpty()) {
+                System.out.println(" Error while loading data: parallel load needs empty tables, but these already have rows: " + notEmpty);
+                return false;
+            }
+        } catch (SQLException e) {
+            System.out.println(" Error while loading data: " + e.getMessage());
+            return false;
+        }
+
+        AtomicInteger threadId = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, workers), r -> {
+            Thread t = new Thread(r, "loader-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "loader-progress");
+            t.setDaemon(true);
+            return t;
+        });
+
+        Map<String, TableLoad> loads = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Void>> done = new HashMap<>();
+        CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+
+        for (BulkLoader.Table table : order) {
+            TableLoad load = new TableLoad(table);
+            loads.put(table.name, load);
+
+            CompletableFuture<?>[] parents = graph.getOrDefault(table.name, Collections.emptySet()).stream()
+                    .map(done::get)
+                    .filter(Objects::nonNull)
+                    .toArray(CompletableFuture[]::new);
+
+            CompletableFuture<Void> f = CompletableFuture.allOf(parents)
+                    .thenComposeAsync(v -> loadTable(load, folderPath + "/" + table.fileName, executor), executor);
+            f.whenComplete((v, e) -> {
+                if (e != null) firstFailure.completeExceptionally(e);
+            });
+            done.put(table.name, f);
+        }
+
+        reporter.scheduleAtFixedRate(() -> printProgress(loads.values()),
+                PROGRESS_INTERVAL_MILLIS, PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<Void> all = CompletableFuture.allOf(done.values().toArray(new CompletableFuture<?>[0]));
+        boolean ok = false;
+        try {
+            CompletableFuture.anyOf(all, firstFailure).join();
+            System.out.println(" Processing...Done! Data is inputted to the database!");
+            ok = true;
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            System.out.println(" Error while loading data: " + cause.getMessage());
+            executor.shutdownNow();
+            awaitQuietly(executor);
+            rollBack(order, loads);
+        } finally {
+            reporter.shutdownNow();
+            executor.shutdownNow();
+            ok &= AdminOperations.loadFinished();
+            Metrics.timer("admin.load.parallel").record(loadStart);
+        }
+
+        List<BulkLoader.Result> results = new ArrayList<>();
+        for (TableLoad load : loads.values()) {
+            if (load.startedAt != 0) results.add(load.total());
+        }
+        BulkLoader.printSummary(results);
+        return ok;
+    }
+
+    // Splits the file into chunks and loads them concurrently; completes when every chunk is committed.
+    private static CompletableFuture<Void> loadTable(TableLoad load, String path, ExecutorService executor) {
+        load.startedAt = System.nanoTime();
+
+        long size;
+        try {
+            size = RecordReader.size(path);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new IOException(load.table.fileName + ": " + e.getMessage(), e));
+        }
+
+        int chunkCount = (int) Math.max(1, Math.min(Integer.MAX_VALUE, (size + chunkBytes - 1) / chunkBytes));
+        long chunkSize = chunkCount == 1 ? Long.MAX_VALUE : (size + chunkCount - 1) / chunkCount;
+
+        BulkLoader.RejectWriter rejects = new BulkLoader.RejectWriter(path + ".rejected");
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int i = 0; i < chunkCount; i++) {
+            long start = chunkCount == 1 ? 0 : i * chunkSize;
+            long end = chunkCount == 1 ? Long.MAX_VALUE : Math.min(size, start + chunkSize);
+            BulkLoader.Result result = new BulkLoader.Result(load.table.name);
+            load.chunks.add(result);
+
+            chunks.add(CompletableFuture.runAsync(() -> {
+                long began = System.nanoTime();
+                try {
+                    BulkLoader.loadRange(load.table, path, start, end, result, rejects);
+                } catch (SQLException | IOException e) {
+                    throw new CompletionException(new SQLException(load.table.fileName + ": " + e.getMessage(), e));
+                } finally {
+                    result.elapsedNanos = System.nanoTime() - began;
+                }
+            }, executor));
+        }
+
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).whenComplete((v, e) -> {
+            load.finishedAt = System.nanoTime();
+            Metrics.timer("admin.load.parallel." + load.table.name).recordNanos(load.finishedAt - load.startedAt);
+            try {
+                rejects.close();
+            } catch (IOException ignored) {
+            }
+            if (e == null) {
+                long rejected = load.total().rejected;
+                System.out.println(" " + load.table.fileName + " SUCCESSFUL!" + (rejected > 0 ? " (" + rejected + " rows rejected, see " + path + ".rejected)" : ""));
+            }
+        });
+    }
+
+    private static List<String> nonEmptyTables(List<BulkLoader.Table> tables) throws SQLException {
+        List<String> notEmpty = new ArrayList<>();
+        try (Connection conn = DBConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.setMaxRows(1);
+            for (BulkLoader.Table t : tables) {
+                try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM " + t.name)) {
+                    if (rs.next()) notEmpty.add(t.name);
+                }
+            }
+        }
+        return notEmpty;
+    }
+
+    // Empties every table this load wrote to, children before parents.
+    private static void rollBack(List<BulkLoader.Table> order, Map<String, TableLoad> loads) {
+        List<BulkLoader.Table> reversed = new ArrayList<>(order);
+        Collections.reverse(reversed);
+
+        try (Connection conn = DBConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (BulkLoader.Table t : reversed) {
+                if (loads.get(t.name).startedAt == 0) continue;
+                int removed = stmt.executeUpdate("DELETE FROM " + t.name);
+                System.out.println(" Rolled back " + t.fileName + " (" + removed + " rows removed)");
+            }
+        } catch (SQLException e) {
+            System.out.println(" Cleanup failed, please delete and recreate the tables: " + e.getMessage());
+        }
+    }
+
+    private static void printProgress(Collection<TableLoad> loads) {
+        StringBuilder sb = new StringBuilder(" Progress:");
+        for (TableLoad load : loads) {
+            if (load.startedAt == 0) continue;
+            long end = load.finishedAt != 0 ? load.finishedAt : System.nanoTime();
+            long rows = load.loaded();
+            double seconds = (end - load.startedAt) / 1e9;
+            sb.append(String.format(" %s=%d rows (%.0f rows/sec%s)", load.table.name, rows,
+                    seconds > 0 ? rows / seconds : 0.0, load.finishedAt != 0 ? ", done" : ""));
+        }
+        System.out.println(sb);
+    }
+
+    private static void awaitQuietly(ExecutorService executor) {
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
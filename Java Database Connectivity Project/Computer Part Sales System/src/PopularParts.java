@@ -0,0 +1,259 @@
+/*
+ * "Show the N most popular part" (ManagerOperations) without grouping the transaction table per request.
+ * - Warm state: a sale counter per part, plus the current top maxK parts kept in a sorted set ordered by
+ *   (count, PID) that works as a bounded min-heap: its first element is the weakest member. The counters are
+ *   loaded with one GROUP BY over the transaction table (of every shard) with the sales held (SalesFeed), so
+ *   no sale is counted twice or missed, and then kept up to date by recordSale() after every committed sale. Counts only grow, so a part enters the top set exactly when its new count beats the
+ *   weakest member, which is then evicted; parts that cannot enter skip the lock entirely.
+ * - top(n) for n <= maxK reads the first n members (O(n)) and looks up their names.
+ * - Cold state (first use, after resetCaches(), or n > maxK): top(n) answers with a single SQL aggregate
+ *   (GROUP BY pID ... FETCH FIRST n ROWS ONLY) and the warm state is loaded in the background.
+ * - Sales made by other JVMs are picked up in the background every ttlMillis, reading only the rows above
+ *   the tID watermark of the load.
+ *
+ * Tunable with -Dsales.popular.maxK (at most 1000) and -Dsales.popular.ttlMillis.
+ * by Jeffery
+ */
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class PopularParts {
+
+    private static int maxK = Math.min(1000, DBConnection.intSetting("sales.popular.maxK", 100));
+    private static long ttlMillis = DBConnection.longSetting("sales.popular.ttlMillis", 5 * 60 * 1000L);
+
+    // One line of the report.
+    static final class Entry {
+        final int pID;
+        final String pName;
+        final long count;
+
+        Entry(int pID, String pName, long count) {
+            this.pID = pID;
+            this.pName = pName;
+            this.count = count;
+        }
+    }
+
+    // Counter value of one part inside the top set; immutable so the set ordering never changes under it.
+    private static final class Rank implements Comparable<Rank> {
+        final int pID;
+        final long count;
+
+        Rank(int pID, long count) {
+            this.pID = pID;
+            this.count = count;
+        }
+
+        // Ascending: the weakest part (lowest count, then highest PID) first.
+        @Override
+        public int compareTo(Rank o) {
+            if (count != o.count) return Long.compare(count, o.count);
+            return Integer.compare(o.pID, pID);
+        }
+    }
+
+    private static final class State {
+        final Map<Integer, AtomicLong> counts;
+        final TreeSet<Rank> top = new TreeSet<>();
+        final Map<Integer, Rank> members = new HashMap<>();
+        final ReentrantLock lock = new ReentrantLock();
+        // The weakest member while the set is full, else null; read without the lock by recordSale.
+        volatile Rank weakest;
+        volatile long checkedAt = System.currentTimeMillis();
+
+        State(Map<Integer, AtomicLong> counts) {
+            this.counts = counts;
+            for (Map.Entry<Integer, AtomicLong> e : counts.entrySet()) {
+                offer(new Rank(e.getKey(), e.getValue().get()));
+            }
+        }
+
+        // Adds delta sales to a part and moves it into the top set if it now beats the weakest member.
+        void add(int partId, long delta) {
+            long count = counts.computeIfAbsent(partId, k -> new AtomicLong()).addAndGet(delta);
+            Rank r = new Rank(partId, count);
+            // weakest only moves up, so a stale read just sends more sales through the lock.
+            Rank w = weakest;
+            if (w != null && w.pID != partId && r.compareTo(w) <= 0) return;
+            lock.lock();
+            try {
+                // A concurrent sale of the same part may already have put a higher count in.
+                Rank old = members.get(partId);
+                if (old == null || old.count < count) offer(r);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Must hold lock (or be in the constructor).
+        void offer(Rank r) {
+            Rank old = members.get(r.pID);
+            if (old != null) {
+                top.remove(old);
+            } else if (top.size() >= maxK) {
+                if (r.compareTo(top.first()) <= 0) return;
+                members.remove(top.pollFirst().pID);
+            }
+            top.add(r);
+            members.put(r.pID, r);
+            weakest = top.size() >= maxK ? top.first() : null;
+        }
+
+        // Time to pick up the sales of other JVMs.
+        boolean expired() {
+            return System.currentTimeMillis() - checkedAt > ttlMillis;
+        }
+    }
+
+    private static volatile State state;
+    private static final SalesFeed feed = new SalesFeed();
+    private static final ReentrantLock loadLock = new ReentrantLock();
+    private static final AtomicLong generation = new AtomicLong();
+    private static final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "popular-parts-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Called after a sale of the part has been committed (inside the sales barrier, see SalesFeed).
+    static void recordSale(int transactionId, int partId, int salespersonId) {
+        State s = state;
+        if (s == null) return;
+        s.add(partId, 1);
+        feed.recorded(salespersonId, transactionId);
+    }
+
+    // The n most sold parts, most sold first.
+    public static List<Entry> top(int n) throws SQLException {
+        State s = state;
+        if (s == null || n > maxK) {
+            if (s == null) warmUpAsync();
+            return topFromDatabase(n);
+        }
+        if (s.expired()) pickUpAsync(s);
+
+        List<Rank> ranks = new ArrayList<>(n);
+        s.lock.lock();
+        try {
+            Iterator<Rank> it = s.top.descendingIterator();
+            while (it.hasNext() && ranks.size() < n) ranks.add(it.next());
+        } finally {
+            s.lock.unlock();
+        }
+        return withNames(ranks);
+    }
+
+    // The sales were changed outside the sell path (load / create / drop): go cold.
+    public static void invalidate() {
+        generation.incrementAndGet();
+        state = null;
+    }
+
+    private static void warmUpAsync() {
+        if (loadLock.isLocked()) return;
+        loader.execute(() -> {
+            try {
+                warmUp();
+            } catch (SQLException e) {
+                System.out.println("Error while loading part sales: " + e.getMessage());
+            }
+        });
+    }
+
+    // Loads the warm state, reading and installing it with the sales held.
+    static void warmUp() throws SQLException {
+        loadLock.lock();
+        try {
+            if (state != null) return;
+            long gen = generation.get();
+            SalesAggregates.holdSales();
+            try {
+                feed.reset();
+                Map<Integer, AtomicLong> counts = new ConcurrentHashMap<>();
+                // With shards every shard holds the sales of its own salespersons.
+                for (int shard = 0; shard < Shards.count(); shard++) {
+                    try (Connection conn = Shards.getConnection(shard)) {
+                        PreparedStatement pstmt = Queries.PART_SALE_COUNTS.prepare(conn);
+                        pstmt.setFetchSize(1000);
+                        try (ResultSet rs = Queries.PART_SALE_COUNTS.executeQuery(pstmt)) {
+                            while (rs.next()) {
+                                feed.saw(shard, rs.getLong(3));
+                                counts.computeIfAbsent(rs.getInt(1), k -> new AtomicLong()).addAndGet(rs.getLong(2));
+                            }
+                        }
+                    }
+                }
+                if (gen == generation.get()) state = new State(counts);
+            } finally {
+                SalesAggregates.releaseSales();
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private static void pickUpAsync(State s) {
+        if (loadLock.isLocked()) return;
+        loader.execute(() -> {
+            try {
+                pickUp(s);
+            } catch (SQLException e) {
+                System.out.println("Error while reading new sales: " + e.getMessage());
+            }
+        });
+    }
+
+    // Adds the sales of other JVMs above the watermark to s.
+    private static void pickUp(State s) throws SQLException {
+        loadLock.lock();
+        try {
+            if (state != s || !s.expired()) return;
+            SalesAggregates.holdSales();
+            try {
+                feed.pickUp((partId, salespersonId, manufacturerId, categoryId, day, price) -> s.add(partId, 1));
+                s.checkedAt = System.currentTimeMillis();
+            } finally {
+                SalesAggregates.releaseSales();
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private static List<Entry> topFromDatabase(int n) throws SQLException {
+        List<Entry> result = new ArrayList<>();
+        try (Connection conn = DBConnection.getReadConnection()) {
+            PreparedStatement pstmt = Queries.TOP_PARTS.prepare(conn);
+            pstmt.setInt(1, n);
+            try (ResultSet rs = Queries.TOP_PARTS.executeQuery(pstmt)) {
+                while (rs.next()) {
+                    result.add(new Entry(rs.getInt(1), rs.getString(2), rs.getLong(3)));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<Entry> withNames(List<Rank> ranks) throws SQLException {
+        List<Entry> result = new ArrayList<>(ranks.size());
+        if (ranks.isEmpty()) return result;
+
+        List<Integer> ids = new ArrayList<>(ranks.size());
+        for (Rank r : ranks) ids.add(r.pID);
+        Map<Integer, String> names;
+        try (Connection conn = DBConnection.getReadConnection()) {
+            names = Queries.lookupNames(conn, "part", "pID", "pName", ids);
+        }
+        for (Rank r : ranks) {
+            result.add(new Entry(r.pID, names.get(r.pID), r.count));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * The named SQL statements of the Operations classes, in one place.
+ * - Every query is a Query constant with a fixed SQL text. All values are bind parameters and each variant
+ *   (ASC / DESC ordering, case-sensitive / case-insensitive search) is its own statement, so Oracle sees a
+ *   small set of distinct texts and soft-parses them.
+ * - query.prepare(conn) returns the statement from the connection's statement cache (ConnectionPool), so a
+ *   pooled connection prepares each query once. The statement belongs to the connection: close the ResultSet,
+ *   never the statement.
+ * - query.executeQuery / executeUpdate / executeBatch run the statement and record the execution count and
+ *   latency of that query (and Metrics.EXECUTE). The ResultSet of executeQuery also times its next() calls,
+ *   recorded as the query's fetch time (and Metrics.FETCH) when it is closed. getStats() lists them.
+ * - Statements whose text depends on a table name (TableDumper pages, name look-ups) are defined on first use
+ *   with define(name, sql); the table names come from fixed lists, never from user input.
+ * - DDL (create / drop tables) cannot bind identifiers and stays on plain Statements.
+ * - The SQL texts run on every Dialect: the parts that differ are ${...} placeholders, rendered for the
+ *   configured database on first use (DBConnection.dialect()).
+ * by Jeffery
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Queries {
+
+    private static final Map<String, Query> REGISTRY = new ConcurrentSkipListMap<>();
+
+    public static final class Query {
+        final String name;
+        final String sql;
+        // sql rendered per Dialect (by ordinal), filled on first use.
+        private final String[] rendered = new String[Dialect.values().length];
+        private final LongAdder executions = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram fetchLatency = new LatencyHistogram();
+
+        private Query(String name, String sql) {
+            this.name = name;
+            this.sql = sql;
+        }
+
+        public PreparedStatement prepare(Connection conn) throws SQLException {
+            String text = sql(DBConnection.dialect());
+            if (conn instanceof ConnectionPool.StatementCache) {
+                return ((ConnectionPool.StatementCache) conn).prepareCached(text);
+            }
+            // Not pooled: the statement is closed together with the connection.
+            return conn.prepareStatement(text);
+        }
+
+        String sql(Dialect dialect) {
+            String text = rendered[dialect.ordinal()];
+            if (text == null) {
+                text = dialect.render(sql);
+                rendered[dialect.ordinal()] = text;
+            }
+            return text;
+        }
+
+        public ResultSet executeQuery(PreparedStatement pstmt) throws SQLException {
+            long start = System.nanoTime();
+            ResultSet rs;
+            try {
+                rs = pstmt.executeQuery();
+            } finally {
+                record(start);
+            }
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class}, new FetchTimer(this, rs));
+        }
+
+        public int executeUpdate(PreparedStatement pstmt) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return pstmt.executeUpdate();
+            } finally {
+                record(start);
+            }
+        }
+
+        public int[] executeBatch(PreparedStatement pstmt) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return pstmt.executeBatch();
+            } finally {
+                record(start);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public LatencyHistogram getFetchLatency() {
+            return fetchLatency;
+        }
+
+        private void record(long start) {
+            long nanos = System.nanoTime() - start;
+            executions.increment();
+            latency.record(nanos);
+            Metrics.EXECUTE.recordNanos(nanos);
+        }
+    }
+
+    // Sums the time spent in next() (where the driver fetches rows) and records it when the ResultSet is closed.
+    private static final class FetchTimer implements InvocationHandler {
+        private static final Method NEXT;
+        private static final Method CLOSE;
+
+        static {
+            try {
+                NEXT = ResultSet.class.getMethod("next");
+                CLOSE = ResultSet.class.getMethod("close");
+            } catch (NoSuchMethodException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final Query query;
+        private final ResultSet rs;
+        private long fetchNanos;
+        private boolean recorded;
+
+        FetchTimer(Query query, ResultSet rs) {
+            this.query = query;
+            this.rs = rs;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.equals(NEXT)) {
+                long start = System.nanoTime();
+                try {
+                    return rs.next();
+                } finally {
+                    fetchNanos += System.nanoTime() - start;
+                }
+            }
+            if (method.equals(CLOSE) && !recorded) {
+                recorded = true;
+                query.fetchLatency.record(fetchNanos);
+                Metrics.FETCH.recordNanos(fetchNanos);
+            }
+            try {
+                return method.invoke(rs, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    // Returns the query registered under name, registering it on first use.
+    static Query define(String name, String sql) {
+        Query q = REGISTRY.computeIfAbsent(name, n -> new Query(n, sql));
+        if (!q.sql.equals(sql)) {
+            throw new IllegalArgumentException("Query " + name + " is already defined with different SQL");
+        }
+        return q;
+    }
+
+    // ---- AdminOperations: data loading ----
+
+    static final Query INSERT_CATEGORY = define("admin.insertCategory",
+            "INSERT INTO category (cID, cName) VALUES (?, ?)");
+    static final Query INSERT_MANUFACTURER = define("admin.insertManufacturer",
+            "INSERT INTO manufacturer (mID, mName, mAddress, mPhoneNumber) VALUES (?, ?, ?, ?)");
+    static final Query INSERT_PART = define("admin.insertPart",
+            "INSERT INTO part (pID, pName, pPrice, mID, cID, pWarrantyPeriod, pAvailableQuantity) VALUES (?, ?, ?, ?, ?, ?, ?)");
+    static final Query INSERT_SALESPERSON = define("admin.insertSalesperson",
+            "INSERT INTO salesperson (sID, sName, sAddress, sPhoneNumber, sExperience) VALUES (?, ?, ?, ?, ?)");
+    static final Query INSERT_TRANSACTION = define("admin.insertTransaction",
+            "INSERT INTO transaction (tID, pID, sID, tDate) VALUES (?, ?, ?, ?)");
+
+    // ---- SalesOperations: part search ----
+
+    private static final String PART_ROWS =
+            "SELECT P.PID, P.PNAME, M.MNAME, C.CNAME, P.PAVAILABLEQUANTITY, P.PWARRANTYPERIOD, P.PPRICE " +
+            "FROM PART P INNER JOIN MANUFACTURER M ON P.MID = M.MID INNER JOIN CATEGORY C ON P.CID = C.CID";
+
+    // Indexed by searchIndex(byManufacturer, ignoreCase, ascending).
+    private static final Query[] SEARCH = new Query[8];
+
+    static {
+        for (int i = 0; i < SEARCH.length; i++) {
+            boolean byManufacturer = (i & 4) != 0;
+            boolean ignoreCase = (i & 2) != 0;
+            boolean ascending = (i & 1) == 0;
+            String column = byManufacturer ? "M.MNAME" : "P.PNAME";
+            String condition = ignoreCase ? "UPPER(" + column + ") LIKE UPPER(?) " : column + " LIKE ? ";
+            String name = "sales.search." + (byManufacturer ? "manufacturer" : "part")
+                    + (ignoreCase ? ".ignoreCase" : "") + (ascending ? ".asc" : ".desc");
+            SEARCH[i] = define(name, PART_ROWS + " WHERE " + condition + "ORDER BY P.PPRICE " + (ascending ? "ASC" : "DESC"));
+        }
+    }
+
+    static Query search(boolean byManufacturer, boolean ignoreCase, boolean ascending) {
+        return SEARCH[(byManufacturer ? 4 : 0) | (ignoreCase ? 2 : 0) | (ascending ? 0 : 1)];
+    }
+
+    static final Query CATALOGUE = define("sales.catalogue", PART_ROWS);
+    // The stock of a shard's store (CatalogueCache with shards).
+    static final Query PART_QUANTITIES = define("sales.partQuantities", "SELECT pID, pAvailableQuantity FROM part");
+
+    // ---- SalesOperations: selling ----
+
+    static final Query DECREMENT_STOCK = define("sales.decrementStock",
+            "UPDATE PART SET PAVAILABLEQUANTITY = PAVAILABLEQUANTITY - 1 WHERE PID = ? AND PAVAILABLEQUANTITY > 0");
+    static final Query SOLD_PART = define("sales.soldPart",
+            "SELECT PNAME, PAVAILABLEQUANTITY, PPRICE, MID, CID, ${now} AS NOW FROM PART WHERE PID = ?");
+    static final Query INSERT_SALE = define("sales.insertSale",
+            "INSERT INTO TRANSACTION (TID, PID, SID, TDATE) VALUES (?, ?, ?, ?)");
+    static final Query PART_EXISTS = define("sales.partExists",
+            "SELECT 1 FROM PART WHERE PID = ?");
+
+    // ---- ManagerOperations ----
+
+    private static final String LIST_SALESPERSONS =
+            "SELECT SID, SNAME, SPHONENUMBER, SEXPERIENCE FROM salesperson ORDER BY SEXPERIENCE ";
+    static final Query LIST_SALESPERSONS_ASC = define("manager.listSalespersons.asc", LIST_SALESPERSONS + "ASC");
+    static final Query LIST_SALESPERSONS_DESC = define("manager.listSalespersons.desc", LIST_SALESPERSONS + "DESC");
+
+    static final Query SALES_BY_EXPERIENCE = define("manager.salesByExperience",
+            "SELECT S.SID, S.SNAME, S.SEXPERIENCE, COALESCE(A.SSALECOUNT, 0) AS A " +
+            "FROM Salesperson S LEFT JOIN sales_by_salesperson A ON S.SID = A.SID " +
+            "WHERE S.SEXPERIENCE <= ? AND S.SEXPERIENCE >= ? " +
+            "ORDER BY S.SID DESC");
+    static final Query SALES_BY_MANUFACTURER = define("manager.salesByManufacturer",
+            "SELECT M.MID, M.MName, A.MREVENUE AS A " +
+            "FROM Manufacturer M INNER JOIN sales_by_manufacturer A ON A.MID = M.MID " +
+            "WHERE A.MSALECOUNT > 0 " +
+            "ORDER BY A.MREVENUE DESC");
+
+    static final Query TOP_PARTS = define("manager.topParts",
+            "SELECT P.pID, P.pName, C.cnt " +
+            "FROM part P INNER JOIN (SELECT pID, COUNT(*) AS cnt FROM transaction GROUP BY pID " +
+            "ORDER BY COUNT(*) DESC, pID FETCH FIRST ? ROWS ONLY) C ON C.pID = P.pID " +
+            "ORDER BY C.cnt DESC, P.pID");
+    static final Query PART_SALE_COUNTS = define("manager.partSaleCounts",
+            "SELECT pID, COUNT(*), MAX(tID) FROM transaction GROUP BY pID");
+    // Partial aggregates of one shard (ShardReports merges them).
+    static final Query SHARD_SALES_BY_SALESPERSON = define("shards.salesBySalesperson",
+            "SELECT S.SID, S.SNAME, S.SEXPERIENCE, COUNT(T.TID) AS A " +
+            "FROM Salesperson S LEFT JOIN transaction T ON T.SID = S.SID " +
+            "WHERE S.SEXPERIENCE <= ? AND S.SEXPERIENCE >= ? " +
+            "GROUP BY S.SID, S.SNAME, S.SEXPERIENCE");
+    static final Query SHARD_SALES_BY_MANUFACTURER = define("shards.salesByManufacturer",
+            "SELECT P.MID, SUM(P.PPRICE), COUNT(*) FROM transaction T INNER JOIN part P ON T.PID = P.PID GROUP BY P.MID");
+    static final Query DAILY_SALES = define("manager.dailySales",
+            "SELECT ${day(T.tDate)} AS d, P.mID, P.cID, T.pID, T.sID, COUNT(*) AS cnt, SUM(P.pPrice) AS rev, MAX(T.tID) AS maxTID " +
+            "FROM transaction T INNER JOIN part P ON T.pID = P.pID " +
+            "GROUP BY ${day(T.tDate)}, P.mID, P.cID, T.pID, T.sID");
+    // The sales above a tID watermark, with what the report caches count (SalesFeed).
+    static final Query SALES_AFTER = define("manager.salesAfter",
+            "SELECT T.tID, T.pID, T.sID, T.tDate, P.mID, P.cID, P.pPrice " +
+            "FROM transaction T INNER JOIN part P ON T.pID = P.pID WHERE T.tID > ?");
+
+    // ---- SalesAggregates ----
+
+    static final Query MERGE_MANUFACTURER_SALES = define("aggregates.mergeManufacturer",
+            "MERGE INTO sales_by_manufacturer A " +
+            "USING (SELECT CAST(? AS INTEGER) AS mID, CAST(? AS NUMERIC(19)) AS rev, CAST(? AS INTEGER) AS cnt${dual}) D ON (A.mID = D.mID) " +
+            "WHEN MATCHED THEN UPDATE SET A.mRevenue = A.mRevenue + D.rev, A.mSaleCount = A.mSaleCount + D.cnt " +
+            "WHEN NOT MATCHED THEN INSERT (mID, mRevenue, mSaleCount) VALUES (D.mID, D.rev, D.cnt)");
+    static final Query MERGE_SALESPERSON_SALES = define("aggregates.mergeSalesperson",
+            "MERGE INTO sales_by_salesperson A " +
+            "USING (SELECT CAST(? AS INTEGER) AS sID, CAST(? AS INTEGER) AS cnt${dual}) D ON (A.sID = D.sID) " +
+            "WHEN MATCHED THEN UPDATE SET A.sSaleCount = A.sSaleCount + D.cnt " +
+            "WHEN NOT MATCHED THEN INSERT (sID, sSaleCount) VALUES (D.sID, D.cnt)");
+    static final Query CLEAR_MANUFACTURER_SALES = define("aggregates.clearManufacturer",
+            "DELETE FROM sales_by_manufacturer");
+    static final Query CLEAR_SALESPERSON_SALES = define("aggregates.clearSalesperson",
+            "DELETE FROM sales_by_salesperson");
+    // Revenue at the current catalogue price, the same basis the sell path records (see SalesAggregates).
+    static final Query REBUILD_MANUFACTURER_SALES = define("aggregates.rebuildManufacturer",
+            "INSERT INTO sales_by_manufacturer (mID, mRevenue, mSaleCount) " +
+            "SELECT P.mID, SUM(P.pPrice), COUNT(*) FROM transaction T INNER JOIN part P ON T.pID = P.pID GROUP BY P.mID");
+    static final Query REBUILD_SALESPERSON_SALES = define("aggregates.rebuildSalesperson",
+            "INSERT INTO sales_by_salesperson (sID, sSaleCount) SELECT sID, COUNT(*) FROM transaction GROUP BY sID");
+    static final Query SUMMARY_STATE_WRITE = define("aggregates.stateWrite",
+            "MERGE INTO sales_summary_state A " +
+            "USING (SELECT CAST(? AS INTEGER) AS ssID, CAST(? AS INTEGER) AS ssStale${dual}) D " +
+            "ON (A.ssID = D.ssID) " +
+            "WHEN MATCHED THEN UPDATE SET A.ssStale = D.ssStale " +
+            "WHEN NOT MATCHED THEN INSERT (ssID, ssStale) VALUES (D.ssID, D.ssStale)");
+    static final Query SUMMARY_STATE_READ = define("aggregates.stateRead",
+            "SELECT ssStale FROM sales_summary_state WHERE ssID = ?");
+    static final Query SUMMARY_STATE_SWITCH = define("aggregates.stateSwitch",
+            "UPDATE sales_summary_state SET ssStale = ? WHERE ssID = ? AND ssStale = ?");
+
+    // ---- SaleJournal ----
+
+    static final Query JOURNAL_PART = define("journal.part",
+            "SELECT PNAME, PAVAILABLEQUANTITY, PPRICE, MID, CID FROM PART WHERE PID = ?");
+    static final Query JOURNAL_SALESPERSON = define("journal.salesperson",
+            "SELECT 1 FROM SALESPERSON WHERE SID = ?");
+    static final Query JOURNAL_TAKE_STOCK = define("journal.takeStock",
+            "UPDATE PART SET PAVAILABLEQUANTITY = PAVAILABLEQUANTITY - ? WHERE PID = ?");
+    static final Query JOURNAL_WRITTEN = define("journal.written",
+            "SELECT TID FROM TRANSACTION WHERE TID BETWEEN ? AND ?");
+
+    // ---- LoadCheckpoint ----
+
+    static final Query CHECKPOINT_READ = define("load.checkpointRead",
+            "SELECT lSize, lModified, lOffset, lLastKey, lComplete FROM load_checkpoint WHERE lFile = ?");
+    static final Query CHECKPOINT_SAVE = define("load.checkpointSave",
+            "MERGE INTO load_checkpoint L " +
+            "USING (SELECT CAST(? AS VARCHAR(400)) AS lFile, CAST(? AS NUMERIC(19)) AS lSize, CAST(? AS NUMERIC(19)) AS lModified, " +
+            "CAST(? AS NUMERIC(19)) AS lOffset, CAST(? AS NUMERIC(19)) AS lLastKey, CAST(? AS INTEGER) AS lComplete${dual}) D " +
+            "ON (L.lFile = D.lFile) " +
+            "WHEN MATCHED THEN UPDATE SET L.lSize = D.lSize, L.lModified = D.lModified, L.lOffset = D.lOffset, " +
+            "L.lLastKey = D.lLastKey, L.lComplete = D.lComplete " +
+            "WHEN NOT MATCHED THEN INSERT (lFile, lSize, lModified, lOffset, lLastKey, lComplete) " +
+            "VALUES (D.lFile, D.lSize, D.lModified, D.lOffset, D.lLastKey, D.lComplete)");
+    static final Query CHECKPOINT_DELETE = define("load.checkpointDelete",
+            "DELETE FROM load_checkpoint WHERE lFile = ?");
+    static final Query CHECKPOINT_TOKEN = define("load.checkpointToken",
+            "INSERT INTO load_checkpoint (lFile, lSize, lModified, lOffset, lLastKey, lComplete) VALUES (?, 0, 0, 0, ?, 1)");
+
+    // ---- ReplicaMonitor ----
+
+    static final Query HEARTBEAT_WRITE = define("replica.heartbeatWrite",
+            "MERGE INTO replica_heartbeat H " +
+            "USING (SELECT CAST(? AS INTEGER) AS hID, CAST(? AS NUMERIC(19)) AS hMillis${dual}) D " +
+            "ON (H.hID = D.hID) " +
+            "WHEN MATCHED THEN UPDATE SET H.hMillis = D.hMillis " +
+            "WHEN NOT MATCHED THEN INSERT (hID, hMillis) VALUES (D.hID, D.hMillis)");
+    static final Query HEARTBEAT_READ = define("replica.heartbeatRead",
+            "SELECT hMillis FROM replica_heartbeat WHERE hID = ?");
+
+    // ---- DeltaLoader: upserts of new and changed rows ----
+
+    static final Query UPSERT_CATEGORY = define("load.upsertCategory",
+            "MERGE INTO category T " +
+            "USING (SELECT CAST(? AS INTEGER) AS cID, CAST(? AS VARCHAR(50)) AS cName${dual}) D ON (T.cID = D.cID) " +
+            "WHEN MATCHED THEN UPDATE SET T.cName = D.cName " +
+            "WHEN NOT MATCHED THEN INSERT (cID, cName) VALUES (D.cID, D.cName)");
+    static final Query UPSERT_MANUFACTURER = define("load.upsertManufacturer",
+            "MERGE INTO manufacturer T " +
+            "USING (SELECT CAST(? AS INTEGER) AS mID, CAST(? AS VARCHAR(50)) AS mName, CAST(? AS VARCHAR(100)) AS mAddress, " +
+            "CAST(? AS INTEGER) AS mPhoneNumber${dual}) D ON (T.mID = D.mID) " +
+            "WHEN MATCHED THEN UPDATE SET T.mName = D.mName, T.mAddress = D.mAddress, T.mPhoneNumber = D.mPhoneNumber " +
+            "WHEN NOT MATCHED THEN INSERT (mID, mName, mAddress, mPhoneNumber) VALUES (D.mID, D.mName, D.mAddress, D.mPhoneNumber)");
+    static final Query UPSERT_PART = define("load.upsertPart",
+            "MERGE INTO part T " +
+            "USING (SELECT CAST(? AS INTEGER) AS pID, CAST(? AS VARCHAR(100)) AS pName, CAST(? AS INTEGER) AS pPrice, " +
+            "CAST(? AS INTEGER) AS mID, CAST(? AS INTEGER) AS cID, CAST(? AS INTEGER) AS pWarrantyPeriod, " +
+            "CAST(? AS INTEGER) AS pAvailableQuantity${dual}) D ON (T.pID = D.pID) " +
+            "WHEN MATCHED THEN UPDATE SET T.pName = D.pName, T.pPrice = D.pPrice, T.mID = D.mID, T.cID = D.cID, " +
+            "T.pWarrantyPeriod = D.pWarrantyPeriod, T.pAvailableQuantity = D.pAvailableQuantity " +
+            "WHEN NOT MATCHED THEN INSERT (pID, pName, pPrice, mID, cID, pWarrantyPeriod, pAvailableQuantity) " +
+            "VALUES (D.pID, D.pName, D.pPrice, D.mID, D.cID, D.pWarrantyPeriod, D.pAvailableQuantity)");
+    static final Query UPSERT_SALESPERSON = define("load.upsertSalesperson",
+            "MERGE INTO salesperson T " +
+            "USING (SELECT CAST(? AS INTEGER) AS sID, CAST(? AS VARCHAR(50)) AS sName, CAST(? AS VARCHAR(100)) AS sAddress, " +
+            "CAST(? AS INTEGER) AS sPhoneNumber, CAST(? AS INTEGER) AS sExperience${dual}) D ON (T.sID = D.sID) " +
+            "WHEN MATCHED THEN UPDATE SET T.sName = D.sName, T.sAddress = D.sAddress, T.sPhoneNumber = D.sPhoneNumber, " +
+            "T.sExperience = D.sExperience " +
+            "WHEN NOT MATCHED THEN INSERT (sID, sName, sAddress, sPhoneNumber, sExperience) " +
+            "VALUES (D.sID, D.sName, D.sAddress, D.sPhoneNumber, D.sExperience)");
+    static final Query UPSERT_TRANSACTION = define("load.upsertTransaction",
+            "MERGE INTO transaction T " +
+            "USING (SELECT CAST(? AS INTEGER) AS tID, CAST(? AS INTEGER) AS pID, CAST(? AS INTEGER) AS sID, " +
+            "CAST(? AS DATE) AS tDate${dual}) D ON (T.tID = D.tID) " +
+            "WHEN MATCHED THEN UPDATE SET T.pID = D.pID, T.sID = D.sID, T.tDate = D.tDate " +
+            "WHEN NOT MATCHED THEN INSERT (tID, pID, sID, tDate) VALUES (D.tID, D.pID, D.sID, D.tDate)");
+
+    // ---- ColumnStore ----
+
+    static final Query ANALYTICS_CATEGORIES = define("analytics.categories",
+            "SELECT cID, cName FROM category");
+    static final Query ANALYTICS_MANUFACTURERS = define("analytics.manufacturers",
+            "SELECT mID, mName FROM manufacturer");
+    static final Query ANALYTICS_PARTS = define("analytics.parts",
+            "SELECT pID, pName, pPrice, mID, cID FROM part");
+    static final Query ANALYTICS_SALESPERSONS = define("analytics.salespersons",
+            "SELECT sID, sName, sExperience FROM salesperson");
+    static final Query ANALYTICS_TRANSACTIONS = define("analytics.transactions",
+            "SELECT pID, sID, tDate, tID FROM transaction");
+
+    // ---- Name look-ups ----
+
+    // IN lists are padded to one of these sizes, so each table needs at most three statements.
+    private static final int[] IN_LIST_SIZES = {10, 100, 1000};
+
+    // ID -> name of the given IDs, e.g. lookupNames(conn, "part", "pID", "pName", ids).
+    static Map<Integer, String> lookupNames(Connection conn, String table, String idColumn, String nameColumn,
+                                            List<Integer> ids) throws SQLException {
+        Map<Integer, String> names = new HashMap<>();
+        int max = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+        for (int from = 0; from < ids.size(); from += max) {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + max));
+            int size = IN_LIST_SIZES[0];
+            for (int candidate : IN_LIST_SIZES) {
+                size = candidate;
+                if (candidate >= chunk.size()) break;
+            }
+            Query q = define("lookup." + table + "." + size,
+                    "SELECT " + idColumn + ", " + nameColumn + " FROM " + table + " WHERE " + idColumn +
+                    " IN (" + String.join(", ", Collections.nCopies(size, "?")) + ")");
+
+            PreparedStatement pstmt = q.prepare(conn);
+            for (int i = 0; i < size; i++) {
+                // Unused slots repeat the last ID.
+                pstmt.setInt(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+            }
+            try (ResultSet rs = q.executeQuery(pstmt)) {
+                while (rs.next()) {
+                    names.put(rs.getInt(1), rs.getString(2));
+                }
+            }
+        }
+        return names;
+    }
+
+    // Per executed query: name, executions, execute latency and (for queries) fetch latency.
+    public static String getStats() {
+        StringBuilder sb = new StringBuilder();
+        for (Query q : REGISTRY.values()) {
+            if (q.getExecutions() == 0) continue;
+            sb.append(String.format("%-40s executions=%d execute: %s%n", q.name, q.getExecutions(), q.latency));
+            if (q.fetchLatency.getCount() > 0) {
+                sb.append(String.format("%-40s fetch: %s%n", "", q.fetchLatency));
+            }
+        }
+        return sb.length() == 0 ? "No queries executed yet" + System.lineSeparator() : sb.toString();
+    }
+}
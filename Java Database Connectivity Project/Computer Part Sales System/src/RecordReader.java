@@ -0,0 +1,273 @@
+/*
+ * Streaming reader for the whitespace / tab separated data files used by the loaders.
+ * - Reads the file through a FileChannel into one reusable byte buffer and splits each line
+ *   into fields in place (only start / end offsets are kept), instead of Scanner + String.split.
+ * - Numbers and dd/mm/yyyy dates are parsed straight from the bytes; Strings are only created for
+ *   the text columns that are actually bound (field() / joinFields()).
+ * - joinFields(from, to) matches String.join(" ", Arrays.copyOfRange(tokens, from, to)), which is
+ *   how the variable-width names / addresses in part.txt, manufacturer.txt, ... are rebuilt.
+ * - Blank lines are skipped. Lines may end in \n or \r\n. Text is UTF-8.
+ * - A reader can be limited to a byte range [start, end) of the file: it returns the records that
+ *   begin inside the range, skipping a partial first line, so a file can be split into chunks
+ *   (or a failed batch re-read) without any record being read twice.
+ * by Jeffery
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+public class RecordReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final long end;
+
+    private byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;            // first unread byte in buf
+    private int limit;          // end of valid data in buf
+    private long bufferOffset;  // file offset of buf[0]
+    private long readPosition;  // file offset of the next channel read
+    private boolean eof;
+
+    private int recordStart;
+    private int recordEnd;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int count;
+
+    private byte[] scratch = new byte[256];
+
+    public RecordReader(String path) throws IOException {
+        this(Paths.get(path), 0, Long.MAX_VALUE);
+    }
+
+    public RecordReader(Path path, long start, long end) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.end = end;
+        this.bufferOffset = start;
+        this.readPosition = start;
+
+        if (start > 0 && !followsNewline(start)) {
+            // The range starts in the middle of a record; that record belongs to the previous range.
+            if (!scanRecord()) eof = true;
+            pos = recordEnd < limit ? recordEnd + 1 : limit;
+        }
+    }
+
+    public static long size(String path) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return ch.size();
+        }
+    }
+
+    // Advances to the next non-blank record. Returns false at the end of the file / range.
+    public boolean next() throws IOException {
+        while (true) {
+            if (bufferOffset + pos >= end) return false;
+            if (!scanRecord()) return false;
+
+            tokenize();
+            pos = recordEnd < limit ? recordEnd + 1 : limit;
+            if (count > 0) return true;
+        }
+    }
+
+    public int fieldCount() {
+        return count;
+    }
+
+    // File offset of the first byte of the current record.
+    public long recordOffset() {
+        return bufferOffset + recordStart;
+    }
+
+    // File offset just past the current record (where the next record starts).
+    public long position() {
+        return bufferOffset + pos;
+    }
+
+    public String field(int i) {
+        check(i);
+        return new String(buf, starts[i], ends[i] - starts[i], StandardCharsets.UTF_8);
+    }
+
+    // Fields [from, to) joined by single spaces; "" when the range is empty.
+    public String joinFields(int from, int to) {
+        if (from >= to) return "";
+        check(from);
+        check(to - 1);
+
+        int length = ends[to - 1] - starts[from];
+        if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            if (i > from) scratch[n++] = ' ';
+            int len = ends[i] - starts[i];
+            System.arraycopy(buf, starts[i], scratch, n, len);
+            n += len;
+        }
+        return new String(scratch, 0, n, StandardCharsets.UTF_8);
+    }
+
+    public int intField(int i) {
+        check(i);
+        return parseInt(starts[i], ends[i]);
+    }
+
+    // Parses a dd/mm/yyyy field, the layout of transaction.txt.
+    public java.sql.Date dateField(int i) {
+        check(i);
+        int s = starts[i];
+        int e = ends[i];
+        int slash1 = indexOf((byte) '/', s, e);
+        int slash2 = slash1 < 0 ? -1 : indexOf((byte) '/', slash1 + 1, e);
+        if (slash2 < 0) {
+            throw new IllegalArgumentException("Invalid date (expected dd/mm/yyyy): " + field(i));
+        }
+        int day = parseInt(s, slash1);
+        int month = parseInt(slash1 + 1, slash2);
+        int year = parseInt(slash2 + 1, e);
+        return java.sql.Date.valueOf(LocalDate.of(year, month, day));
+    }
+
+    // The current record as text, for error and reject messages.
+    public String line() {
+        if (count == 0) return "";
+        return new String(buf, starts[0], ends[count - 1] - starts[0], StandardCharsets.UTF_8);
+    }
+
+    // 64-bit FNV-1a hash of the fields, so records that differ only in spacing hash the same (DeltaLoader).
+    public long fieldsHash() {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < count; i++) {
+            for (int b = starts[i]; b < ends[i]; b++) {
+                h = (h ^ (buf[b] & 0xff)) * 0x100000001b3L;
+            }
+            h = (h ^ ' ') * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean followsNewline(long offset) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        return channel.read(one, offset - 1) == 1 && one.get(0) == '\n';
+    }
+
+    // Locates the next line starting at pos: sets recordStart / recordEnd (exclusive, at '\n' or EOF).
+    private boolean scanRecord() throws IOException {
+        int scanFrom = pos;
+        while (true) {
+            int nl = indexOf((byte) '\n', scanFrom, limit);
+            if (nl >= 0) {
+                recordStart = pos;
+                recordEnd = nl;
+                return true;
+            }
+            if (eof) {
+                if (pos >= limit) return false;
+                recordStart = pos;
+                recordEnd = limit;
+                return true;
+            }
+            int scanned = limit;
+            int shift = fill();
+            scanFrom = scanned - shift;
+        }
+    }
+
+    // Moves unread bytes to the front of the buffer (growing it for very long lines) and reads more.
+    // Returns how far existing data was shifted towards the start of the buffer.
+    private int fill() throws IOException {
+        int shift = pos;
+        if (shift > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            bufferOffset += pos;
+            pos = 0;
+        } else if (limit == buf.length) {
+            byte[] bigger = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, bigger, 0, limit);
+            buf = bigger;
+        }
+
+        int n = channel.read(ByteBuffer.wrap(buf, limit, buf.length - limit), readPosition);
+        if (n < 0) {
+            eof = true;
+        } else {
+            limit += n;
+            readPosition += n;
+        }
+        return shift;
+    }
+
+    private void tokenize() {
+        count = 0;
+        int i = recordStart;
+        while (i < recordEnd) {
+            while (i < recordEnd && isSpace(buf[i])) i++;
+            if (i >= recordEnd) break;
+            int s = i;
+            while (i < recordEnd && !isSpace(buf[i])) i++;
+
+            if (count == starts.length) {
+                starts = java.util.Arrays.copyOf(starts, count * 2);
+                ends = java.util.Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = s;
+            ends[count] = i;
+            count++;
+        }
+    }
+
+    private int parseInt(int s, int e) {
+        if (s >= e) throw numberFormat(s, e);
+        boolean negative = buf[s] == '-';
+        int i = (negative || buf[s] == '+') ? s + 1 : s;
+        if (i >= e) throw numberFormat(s, e);
+
+        long value = 0;
+        for (; i < e; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) throw numberFormat(s, e);
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) throw numberFormat(s, e);
+        }
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE) throw numberFormat(s, e);
+        return (int) value;
+    }
+
+    private NumberFormatException numberFormat(int s, int e) {
+        return new NumberFormatException("For input string: \"" + new String(buf, s, e - s, StandardCharsets.UTF_8) + "\"");
+    }
+
+    private int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private void check(int i) {
+        if (i < 0 || i >= count) {
+            throw new IllegalArgumentException("Missing column " + (i + 1) + " in line: " + line());
+        }
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+}
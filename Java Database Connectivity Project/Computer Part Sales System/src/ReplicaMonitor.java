@@ -0,0 +1,123 @@
+/*
+ * Replica lag and read-your-writes for the read side of DBConnection (sales.db.read.url).
+ * - Heartbeat: while a read side is in use, a background thread writes the current time into the one row of
+ *   replica_heartbeat on the primary every heartbeatMillis and reads the row back from the read side.
+ *   Replication carries the row over like any other; the lag is how far the heartbeat the replica has is
+ *   behind the last one written (0 when it has the latest; resolution heartbeatMillis).
+ *   Every reading is recorded into Metrics as db.replica.lag; getStats() shows the latest one. A read side
+ *   without the row (not replicated yet, or another database) counts db.replica.heartbeatErrors and has an
+ *   unknown lag.
+ * - Read-your-writes (sales.db.readYourWrites=true): a sale remembers, per thread, the time it committed
+ *   (wrote()). A search of that thread is answered by the replica only once the replica has a heartbeat
+ *   written after that time; heartbeats are written in order on the primary, so the replica then has the
+ *   sale too. Until then (about one or two heartbeats after the sale) DBConnection sends the search to the
+ *   primary and counts it as db.read.primary. Sales written by SaleJournal in the background are not tracked.
+ * - Without a read side nothing runs and nothing is written.
+ *
+ * Tunable with sales.db.readYourWrites and sales.db.read.heartbeatMillis (looked up like the other database
+ * settings, see DBConnection).
+ * by Jeffery
+ */
+
+import java.sql.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+final class ReplicaMonitor {
+
+    private static boolean readYourWrites = DBConnection.booleanSetting("sales.db.readYourWrites", false);
+    private static long heartbeatMillis = DBConnection.longSetting("sales.db.read.heartbeatMillis", 1000);
+
+    static final String DDL = "CREATE TABLE replica_heartbeat (" +
+            "hID INTEGER PRIMARY KEY, " +
+            "hMillis NUMERIC(19))";
+
+    private static final int HEARTBEAT_ROW = 1;
+
+    private static final Metrics.Timer LAG = Metrics.timer("db.replica.lag");
+    private static final LongAdder HEARTBEAT_ERRORS = Metrics.counter("db.replica.heartbeatErrors");
+
+    // Commit time (epoch millis) of the calling thread's last sale; 0: none.
+    private static final ThreadLocal<long[]> LAST_WRITE = ThreadLocal.withInitial(() -> new long[1]);
+
+    private static volatile long written;          // last heartbeat written to the primary
+    private static volatile long replicated = -1;  // last heartbeat read from the read side; -1: unknown
+    private static ScheduledExecutorService heartbeat;
+
+    private ReplicaMonitor() {
+    }
+
+    static synchronized void start() {
+        if (heartbeat != null) return;
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "replica-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        heartbeat.scheduleWithFixedDelay(ReplicaMonitor::beat, 0, Math.max(10, heartbeatMillis), TimeUnit.MILLISECONDS);
+    }
+
+    static synchronized void stop() {
+        if (heartbeat == null) return;
+        heartbeat.shutdownNow();
+        heartbeat = null;
+        written = 0;
+        replicated = -1;
+    }
+
+    // Called after the calling thread committed a sale.
+    static void wrote() {
+        if (readYourWrites && DBConnection.hasReadSide()) LAST_WRITE.get()[0] = System.currentTimeMillis();
+    }
+
+    // Whether the read side has the calling thread's sales (always, without readYourWrites).
+    static boolean seesOwnWrites() {
+        if (!readYourWrites) return true;
+        long last = LAST_WRITE.get()[0];
+        // Strictly later: a heartbeat taken in the same millisecond may predate the commit.
+        return last == 0 || replicated > last;
+    }
+
+    // The lag in milliseconds, or -1 if unknown.
+    static long lagMillis() {
+        long r = replicated;
+        return r < 0 ? -1 : Math.max(0, written - r);
+    }
+
+    static String getStats() {
+        long lag = lagMillis();
+        return (lag < 0 ? "lag unknown" : "lag=" + lag + "ms") + " heartbeat=" + heartbeatMillis + "ms"
+                + " readYourWrites=" + readYourWrites + " heartbeatErrors=" + HEARTBEAT_ERRORS.sum();
+    }
+
+    private static void beat() {
+        try {
+            long now = System.currentTimeMillis();
+            try (Connection conn = DBConnection.getConnection()) {
+                PreparedStatement pstmt = Queries.HEARTBEAT_WRITE.prepare(conn);
+                pstmt.setInt(1, HEARTBEAT_ROW);
+                pstmt.setLong(2, now);
+                Queries.HEARTBEAT_WRITE.executeUpdate(pstmt);
+            }
+            written = now;
+
+            ConnectionPool readPool = DBConnection.getReadPool();
+            if (readPool == null) return;
+            try (Connection conn = readPool.borrow()) {
+                PreparedStatement pstmt = Queries.HEARTBEAT_READ.prepare(conn);
+                pstmt.setInt(1, HEARTBEAT_ROW);
+                try (ResultSet rs = Queries.HEARTBEAT_READ.executeQuery(pstmt)) {
+                    replicated = rs.next() ? rs.getLong(1) : -1;
+                }
+            }
+            long lag = lagMillis();
+            if (lag >= 0) LAG.recordNanos(TimeUnit.MILLISECONDS.toNanos(lag));
+            else HEARTBEAT_ERRORS.increment();
+        } catch (SQLException | RuntimeException e) {
+            replicated = -1;
+            HEARTBEAT_ERRORS.increment();
+        }
+    }
+}
@@ -0,0 +1,653 @@
+/*
+ * Write-behind sale journal (optional): sales are acknowledged once they are on local disk, and reach the
+ * database moments later in large transactions, so a sale no longer waits for database round trips and commits.
+ * - Stock: the available quantity of every part sold is held in memory (read from PART on the first sale of
+ *   the part) and is authoritative while the journal is on; a sale reserves its unit with one atomic
+ *   decrement, so parts cannot be oversold. Salesperson IDs are checked once and remembered.
+ * - Journal: each sale is appended as one 32-byte record (seq, tID, pID, sID, date, CRC32) to a segment file
+ *   in the journal directory through a FileChannel, and sell() returns after the record is fsync'd.
+ *   Group commit: a sale that finds the disk busy waits for the running sync, and the next one writes and
+ *   syncs every record appended meanwhile in a single write + force, so one fsync serves all concurrent sales.
+ * - Drain: a background thread writes the synced sales to the database every drainMillis, up to drainBatch
+ *   per transaction: one batched INSERT into TRANSACTION plus one stock UPDATE per part (by the number sold),
+ *   then one commit. SalesAggregates, PopularParts and SalesRollups count a sale when it is drained.
+ *   Segments (segmentBytes each) are deleted once all their sales are in the database.
+ * - Replay: opening the journal (first sale, or at program start) reads the segments left by a process that
+ *   stopped before draining them, skips the tIDs that TRANSACTION already has (a drain commits sales and stock
+ *   together, so a present tID means the whole sale was applied) and writes the rest: exactly once, however
+ *   often a replay is interrupted. A record cut short by a crash was never acknowledged and is ignored.
+ * - The in-memory stock must be the only seller of the parts: one process per database (the server mode serves
+ *   all terminals from one process), guarded by a lock file in the journal directory. Data loads and table
+ *   changes drain the journal and drop the in-memory stock (invalidate()), with sales held off meanwhile;
+ *   sales that could not be drained then are taken off the stock when it is read again.
+ * - Drains are idempotent: a batch skips the tIDs TRANSACTION has already, so a commit whose acknowledgement
+ *   was lost is not written twice.
+ * - The sale date is this machine's clock at the time of the sale. If the journal cannot be written the sale
+ *   fails and its unit is released; the journal then refuses further sales until the program is restarted.
+ *
+ * Enabled with -Dsales.journal.enabled=true; tuned with -Dsales.journal.dir, -Dsales.journal.drainMillis,
+ * -Dsales.journal.drainBatch and -Dsales.journal.segmentBytes.
+ * by Jeffery
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+public class SaleJournal {
+
+    static boolean enabled = DBConnection.booleanSetting("sales.journal.enabled", false);
+    private static String directory = DBConnection.setting("sales.journal.dir", "journal");
+    private static long drainMillis = DBConnection.longSetting("sales.journal.drainMillis", 20);
+    private static int drainBatch = DBConnection.intSetting("sales.journal.drainBatch", 1000);
+    private static long segmentBytes = DBConnection.longSetting("sales.journal.segmentBytes", 64L << 20);
+
+    private static final int RECORD_BYTES = 32;
+    private static final String SEGMENT_PREFIX = "sales-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private static final Metrics.Timer SYNC = Metrics.timer("journal.sync");
+    private static final Metrics.Timer DRAIN = Metrics.timer("journal.drain");
+    private static final LongAdder SYNCS = Metrics.counter("journal.syncs");
+    private static final LongAdder APPENDED = Metrics.counter("journal.appended");
+    private static final LongAdder DRAINED = Metrics.counter("journal.drained");
+    private static final LongAdder REPLAYED = Metrics.counter("journal.replayed");
+
+    // The stock of a part while the journal is on, and what a sale of it reports.
+    private static final class PartStock {
+        final AtomicInteger available;
+        final String name;
+        final int price;
+        final int manufacturerId;
+        final int categoryId;
+
+        PartStock(int available, String name, int price, int manufacturerId, int categoryId) {
+            this.available = new AtomicInteger(available);
+            this.name = name;
+            this.price = price;
+            this.manufacturerId = manufacturerId;
+            this.categoryId = categoryId;
+        }
+
+        // Takes one unit; returns the quantity left, or -1 if there was none.
+        int take() {
+            int left = available.getAndUpdate(q -> q > 0 ? q - 1 : q);
+            return left > 0 ? left - 1 : -1;
+        }
+    }
+
+    // A sale appended to the journal; seq orders the records across segments.
+    private static final class Entry {
+        final long seq;
+        final SalesOperations.Sale sale;
+
+        Entry(long seq, SalesOperations.Sale sale) {
+            this.seq = seq;
+            this.sale = sale;
+        }
+    }
+
+    // A full segment file and the seq of its last record.
+    private static final class Segment {
+        final Path path;
+        final long lastSeq;
+
+        Segment(Path path, long lastSeq) {
+            this.path = path;
+            this.lastSeq = lastSeq;
+        }
+    }
+
+    private static final Map<Integer, PartStock> stock = new ConcurrentHashMap<>();
+    private static final Set<Integer> salespersons = ConcurrentHashMap.newKeySet();
+    // Held (read) by every sell() from taking its units until they are synced, and (write) by invalidate(),
+    // so the stock is never dropped while a sold unit is in neither the journal queue nor the map.
+    private static final ReentrantReadWriteLock sellLock = new ReentrantReadWriteLock();
+
+    // Records appended but not yet synced (guarded by appendLock).
+    private static final ReentrantLock appendLock = new ReentrantLock();
+    private static ByteBuffer pending = ByteBuffer.allocate(256 * RECORD_BYTES);
+    private static List<Entry> pendingEntries = new ArrayList<>();
+    private static long nextSeq = 1;
+    private static IOException failure;
+
+    // The segment being written (guarded by syncLock).
+    private static final ReentrantLock syncLock = new ReentrantLock();
+    private static ByteBuffer spare = ByteBuffer.allocate(256 * RECORD_BYTES);
+    private static FileChannel channel;
+    private static Path segment;
+    private static long segmentLastSeq;
+    private static volatile long syncedSeq;
+
+    // Synced sales in seq order; only the drain removes them.
+    private static final Queue<Entry> undrained = new ConcurrentLinkedQueue<>();
+    private static final Deque<Segment> fullSegments = new ConcurrentLinkedDeque<>();
+    private static final ReentrantLock drainLock = new ReentrantLock();
+    private static volatile boolean drainFailing;
+
+    private static final ReentrantLock openLock = new ReentrantLock();
+    private static volatile boolean open;
+    private static Path dir;
+    private static FileChannel lockChannel;
+    private static FileLock dirLock;
+    private static ScheduledExecutorService drainer;
+
+    // Sells partIds[i] to salespersonIds[i] for every i; returns once the sold ones are in the journal on disk.
+    // Checks every salesperson first, so an unknown one fails the whole call before anything is sold.
+    static List<SalesOperations.Sale> sell(int[] partIds, int[] salespersonIds) throws SQLException {
+        open();
+        sellLock.readLock().lock();
+        try {
+            return sellLocked(partIds, salespersonIds);
+        } finally {
+            sellLock.readLock().unlock();
+        }
+    }
+
+    private static List<SalesOperations.Sale> sellLocked(int[] partIds, int[] salespersonIds) throws SQLException {
+        for (int salespersonId : salespersonIds) {
+            checkSalesperson(salespersonId);
+        }
+
+        List<SalesOperations.Sale> sales = new ArrayList<>(partIds.length);
+        List<PartStock> taken = new ArrayList<>();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        try {
+            for (int i = 0; i < partIds.length; i++) {
+                PartStock part = part(partIds[i]);
+                int remaining = part == null ? -1 : part.take();
+                if (remaining < 0) {
+                    sales.add(new SalesOperations.Sale(part == null ? SalesOperations.Sale.Status.PART_NOT_FOUND
+                            : SalesOperations.Sale.Status.OUT_OF_STOCK,
+                            partIds[i], salespersonIds[i], null, 0, 0, 0, 0, 0, null));
+                    continue;
+                }
+                taken.add(part);
+                int tid = IdAllocator.transactionIds().nextId();
+                sales.add(new SalesOperations.Sale(SalesOperations.Sale.Status.SOLD, partIds[i], salespersonIds[i],
+                        part.name, remaining, tid, part.price, part.manufacturerId, part.categoryId, now));
+            }
+            if (!taken.isEmpty()) {
+                append(sales);
+            }
+        } catch (IOException e) {
+            release(taken);
+            throw new SQLException("Cannot write the sale journal: " + e.getMessage(), e);
+        } catch (SQLException | RuntimeException e) {
+            release(taken);
+            throw e;
+        }
+        for (SalesOperations.Sale sale : sales) {
+            if (sale.status == SalesOperations.Sale.Status.SOLD) {
+                CatalogueCache.quantityChanged(0, sale.partId, sale.remaining);
+            }
+        }
+        return sales;
+    }
+
+    private static void release(List<PartStock> taken) {
+        for (PartStock part : taken) {
+            part.available.incrementAndGet();
+        }
+    }
+
+    // Opens the journal: takes the directory lock, replays what an earlier process left and starts the drain.
+    public static void open() throws SQLException {
+        if (open) return;
+        openLock.lock();
+        try {
+            if (open) return;
+            dir = Paths.get(directory);
+            Files.createDirectories(dir);
+            lockChannel = FileChannel.open(dir.resolve("journal.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            dirLock = lockChannel.tryLock();
+            if (dirLock == null) {
+                throw new IOException(dir.toAbsolutePath() + " is in use by another process");
+            }
+            replay();
+
+            syncLock.lock();
+            try {
+                openSegment(nextSeq);
+            } finally {
+                syncLock.unlock();
+            }
+            ScheduledExecutorService d = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "sale-journal-drainer");
+                t.setDaemon(true);
+                return t;
+            });
+            d.scheduleWithFixedDelay(SaleJournal::drainQuietly, drainMillis, drainMillis, TimeUnit.MILLISECONDS);
+            drainer = d;
+            open = true;
+        } catch (IOException e) {
+            unlockDirectory();
+            throw new SQLException("Cannot open the sale journal: " + e.getMessage(), e);
+        } catch (SQLException | RuntimeException e) {
+            // The segments stay for the next attempt.
+            unlockDirectory();
+            throw e;
+        } finally {
+            openLock.unlock();
+        }
+    }
+
+    // Writes every synced sale to the database now (data loads and table changes call this first).
+    public static void drain() throws SQLException {
+        if (!open) return;
+        drainLock.lock();
+        try {
+            while (!undrained.isEmpty()) {
+                long start = System.nanoTime();
+                List<SalesOperations.Sale> batch = new ArrayList<>(drainBatch);
+                long lastSeq = 0;
+                Iterator<Entry> it = undrained.iterator();
+                while (it.hasNext() && batch.size() < drainBatch) {
+                    Entry e = it.next();
+                    batch.add(e.sale);
+                    lastSeq = e.seq;
+                }
+                // Written and counted under the sales barrier, like a direct sale (see SalesAggregates).
+                SalesAggregates.beginSale();
+                try {
+                    write(batch);
+                    for (int i = 0; i < batch.size(); i++) {
+                        undrained.poll();
+                    }
+                    for (SalesOperations.Sale sale : batch) {
+                        SalesOperations.addToReports(sale);
+                    }
+                } finally {
+                    SalesAggregates.endSale();
+                }
+                DRAINED.add(batch.size());
+                DRAIN.record(start);
+                deleteSegmentsUpTo(lastSeq);
+            }
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    // The part or salesperson tables were changed outside the sell path: drains the journal and drops the
+    // in-memory stock, so it is read again from PART. Sales wait meanwhile. What cannot be drained now stays
+    // queued, and part() takes it off the quantity it reads.
+    public static void invalidate() {
+        sellLock.writeLock().lock();
+        try {
+            try {
+                drain();
+            } catch (SQLException e) {
+                System.out.println("Error while writing the sale journal: " + e.getMessage());
+            }
+            stock.clear();
+            salespersons.clear();
+        } finally {
+            sellLock.writeLock().unlock();
+        }
+    }
+
+    // Stops the drain, writes what is left and closes the journal; called on exit. Sales that cannot be
+    // written now stay in the journal and are replayed by the next start.
+    public static void shutdown() {
+        openLock.lock();
+        try {
+            if (!open) return;
+            drainer.shutdownNow();
+            try {
+                drain();
+            } catch (SQLException e) {
+                System.out.println("Error while writing the sale journal, it is replayed on the next start: " + e.getMessage());
+            }
+            syncLock.lock();
+            try {
+                channel.close();
+                if (undrained.isEmpty()) {
+                    deleteSegmentsUpTo(Long.MAX_VALUE);
+                    Files.deleteIfExists(segment);
+                }
+            } finally {
+                syncLock.unlock();
+            }
+        } catch (IOException e) {
+            System.out.println("Error while closing the sale journal: " + e.getMessage());
+        } finally {
+            unlockDirectory();
+            open = false;
+            openLock.unlock();
+        }
+    }
+
+    private static void unlockDirectory() {
+        try {
+            if (lockChannel != null) lockChannel.close();  // releases dirLock as well
+        } catch (IOException e) {
+            // Released when the process exits.
+        }
+        lockChannel = null;
+        dirLock = null;
+    }
+
+    // ---- journal file ----
+
+    // Appends the sold sales and returns once they are synced.
+    private static void append(List<SalesOperations.Sale> sales) throws IOException {
+        long last;
+        appendLock.lock();
+        try {
+            if (failure != null) {
+                throw new IOException("the journal stopped after an earlier error (" + failure.getMessage() + ")");
+            }
+            for (SalesOperations.Sale sale : sales) {
+                if (sale.status != SalesOperations.Sale.Status.SOLD) continue;
+                if (pending.remaining() < RECORD_BYTES) {
+                    ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+                    pending.flip();
+                    larger.put(pending);
+                    pending = larger;
+                }
+                long seq = nextSeq++;
+                putRecord(pending, seq, sale);
+                pendingEntries.add(new Entry(seq, sale));
+                APPENDED.increment();
+            }
+            last = nextSeq - 1;
+        } finally {
+            appendLock.unlock();
+        }
+        sync(last);
+    }
+
+    // Group commit: whoever holds syncLock writes and syncs everything appended so far; the others wait for the
+    // lock and usually find their records synced already.
+    private static void sync(long seq) throws IOException {
+        if (syncedSeq >= seq) return;
+        syncLock.lock();
+        try {
+            if (syncedSeq >= seq) return;
+            ByteBuffer batch;
+            List<Entry> entries;
+            appendLock.lock();
+            try {
+                if (failure != null) {
+                    throw new IOException("the journal stopped after an earlier error (" + failure.getMessage() + ")");
+                }
+                batch = pending;
+                entries = pendingEntries;
+                pending = spare;
+                pendingEntries = new ArrayList<>();
+            } finally {
+                appendLock.unlock();
+            }
+
+            long start = System.nanoTime();
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                appendLock.lock();
+                try {
+                    failure = e;
+                } finally {
+                    appendLock.unlock();
+                }
+                throw e;
+            } finally {
+                SYNC.record(start);
+            }
+            SYNCS.increment();
+            batch.clear();
+            spare = batch;
+
+            long last = entries.get(entries.size() - 1).seq;
+            undrained.addAll(entries);
+            segmentLastSeq = last;
+            syncedSeq = last;
+            if (channel.size() >= segmentBytes) {
+                channel.close();
+                fullSegments.add(new Segment(segment, segmentLastSeq));
+                openSegment(last + 1);
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // Starts a new segment file; its name carries the seq of its first record.
+    private static void openSegment(long firstSeq) throws IOException {
+        segment = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSeq, SEGMENT_SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        // Make the new directory entry durable too, or a crash could lose the whole file.
+        try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+            d.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened / synced on this platform.
+        }
+    }
+
+    // Deletes the full segments whose sales are all in the database. A segment that cannot be deleted now is
+    // tried again after the next drain; were it replayed, its sales would all be skipped.
+    private static void deleteSegmentsUpTo(long seq) {
+        Segment s;
+        while ((s = fullSegments.peek()) != null && s.lastSeq <= seq) {
+            try {
+                Files.deleteIfExists(s.path);
+            } catch (IOException e) {
+                System.out.println("Sale journal: cannot delete " + s.path.getFileName() + ": " + e.getMessage());
+                return;
+            }
+            fullSegments.poll();
+        }
+    }
+
+    private static void putRecord(ByteBuffer buf, long seq, SalesOperations.Sale sale) {
+        int start = buf.position();
+        buf.putLong(seq);
+        buf.putInt(sale.transactionId);
+        buf.putInt(sale.partId);
+        buf.putInt(sale.salespersonId);
+        buf.putLong(sale.saleDate.getTime());
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), start, RECORD_BYTES - 4);
+        buf.putInt((int) crc.getValue());
+    }
+
+    // ---- database ----
+
+    // Sales and stock of the batch in one transaction; returns how many were written. The stock UPDATEs go in
+    // PID order, so two drains (or a drain and a loader) never lock the same parts in opposite orders.
+    // Sales whose tID TRANSACTION has already are skipped (a present tID means the whole sale was applied): an
+    // earlier attempt may have committed without hearing back, and replays find drained sales in the segments.
+    private static int write(List<SalesOperations.Sale> sales) throws SQLException {
+        Map<Integer, Integer> sold = new TreeMap<>();
+        int count = 0;
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Set<Integer> written = writtenTransactions(conn, sales);
+                PreparedStatement insert = Queries.INSERT_SALE.prepare(conn);
+                for (SalesOperations.Sale sale : sales) {
+                    if (written.contains(sale.transactionId)) continue;
+                    insert.setInt(1, sale.transactionId);
+                    insert.setInt(2, sale.partId);
+                    insert.setInt(3, sale.salespersonId);
+                    insert.setTimestamp(4, sale.saleDate);
+                    insert.addBatch();
+                    sold.merge(sale.partId, 1, Integer::sum);
+                    count++;
+                }
+                PreparedStatement update = Queries.JOURNAL_TAKE_STOCK.prepare(conn);
+                for (Map.Entry<Integer, Integer> e : sold.entrySet()) {
+                    update.setInt(1, e.getValue());
+                    update.setInt(2, e.getKey());
+                    update.addBatch();
+                }
+                if (!sold.isEmpty()) {
+                    Queries.INSERT_SALE.executeBatch(insert);
+                    Queries.JOURNAL_TAKE_STOCK.executeBatch(update);
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        return count;
+    }
+
+    // The tIDs of sales that TRANSACTION already has.
+    private static Set<Integer> writtenTransactions(Connection conn, List<SalesOperations.Sale> sales) throws SQLException {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (SalesOperations.Sale sale : sales) {
+            min = Math.min(min, sale.transactionId);
+            max = Math.max(max, sale.transactionId);
+        }
+        Set<Integer> written = new HashSet<>();
+        PreparedStatement pstmt = Queries.JOURNAL_WRITTEN.prepare(conn);
+        pstmt.setInt(1, min);
+        pstmt.setInt(2, max);
+        try (ResultSet rs = Queries.JOURNAL_WRITTEN.executeQuery(pstmt)) {
+            while (rs.next()) written.add(rs.getInt(1));
+        }
+        return written;
+    }
+
+    private static void drainQuietly() {
+        try {
+            drain();
+            if (drainFailing) {
+                drainFailing = false;
+                System.out.println("Sale journal: writing to the database again.");
+            }
+        } catch (SQLException | RuntimeException e) {
+            // Retried on the next run; reported once, not every drainMillis.
+            if (!drainFailing) {
+                drainFailing = true;
+                System.out.println("Error while writing the sale journal (retrying): " + e.getMessage());
+            }
+        }
+    }
+
+    // The part's in-memory stock, read from PART on first use; null if there is no such part. Sales of the part
+    // still queued for the database (when invalidate() could not drain them) are taken off the quantity read;
+    // drainLock keeps a drain from writing them between the read and the count.
+    private static PartStock part(int partId) throws SQLException {
+        PartStock part = stock.get(partId);
+        if (part != null) return part;
+        drainLock.lock();
+        try (Connection conn = DBConnection.getConnection()) {
+            PreparedStatement pstmt = Queries.JOURNAL_PART.prepare(conn);
+            pstmt.setInt(1, partId);
+            try (ResultSet rs = Queries.JOURNAL_PART.executeQuery(pstmt)) {
+                if (!rs.next()) return null;
+                int undrainedUnits = 0;
+                for (Entry e : undrained) {
+                    if (e.sale.partId == partId) undrainedUnits++;
+                }
+                part = new PartStock(rs.getInt("PAVAILABLEQUANTITY") - undrainedUnits, rs.getString("PNAME"),
+                        rs.getInt("PPRICE"), rs.getInt("MID"), rs.getInt("CID"));
+            }
+        } finally {
+            drainLock.unlock();
+        }
+        // Sales of this part take their units from the map only, so two threads that read it at the same time
+        // read the same quantity; the first one's copy is kept.
+        PartStock earlier = stock.putIfAbsent(partId, part);
+        return earlier != null ? earlier : part;
+    }
+
+    // Fails like the TRANSACTION foreign key would, but before the sale is taken.
+    private static void checkSalesperson(int salespersonId) throws SQLException {
+        if (salespersons.contains(salespersonId)) return;
+        try (Connection conn = DBConnection.getConnection()) {
+            PreparedStatement pstmt = Queries.JOURNAL_SALESPERSON.prepare(conn);
+            pstmt.setInt(1, salespersonId);
+            try (ResultSet rs = Queries.JOURNAL_SALESPERSON.executeQuery(pstmt)) {
+                if (!rs.next()) throw new SQLException("Salesperson " + salespersonId + " does not exist");
+            }
+        }
+        salespersons.add(salespersonId);
+    }
+
+    // ---- replay ----
+
+    // Writes the sales of the segments left in the directory that TRANSACTION does not have yet, then deletes them.
+    private static void replay() throws IOException, SQLException {
+        List<Path> files;
+        try (Stream<Path> s = Files.list(dir)) {
+            files = s.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().toList();
+        }
+        if (files.isEmpty()) return;
+
+        List<SalesOperations.Sale> sales = new ArrayList<>();
+        long maxSeq = 0;
+        for (Path file : files) {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+            CRC32 crc = new CRC32();
+            while (buf.remaining() >= RECORD_BYTES) {
+                int start = buf.position();
+                crc.reset();
+                crc.update(buf.array(), start, RECORD_BYTES - 4);
+                long seq = buf.getLong();
+                int tid = buf.getInt();
+                int pid = buf.getInt();
+                int sid = buf.getInt();
+                long date = buf.getLong();
+                if (buf.getInt() != (int) crc.getValue()) {
+                    buf.position(start);
+                    break;
+                }
+                maxSeq = Math.max(maxSeq, seq);
+                sales.add(new SalesOperations.Sale(SalesOperations.Sale.Status.SOLD, pid, sid, null, 0, tid, 0, 0, 0,
+                        new Timestamp(date)));
+            }
+            if (buf.hasRemaining()) {
+                // The tail of a write the crash cut short; it was never acknowledged.
+                System.out.println("Sale journal: ignored " + buf.remaining() + " incomplete bytes at the end of " + file.getFileName());
+            }
+        }
+
+        int replayed = 0;
+        for (int from = 0; from < sales.size(); from += drainBatch) {
+            replayed += write(sales.subList(from, Math.min(sales.size(), from + drainBatch)));
+        }
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        nextSeq = maxSeq + 1;
+        syncedSeq = maxSeq;
+        REPLAYED.add(replayed);
+        if (replayed > 0) {
+            // The report caches were built without these sales.
+            SalesAggregates.invalidate();
+            PopularParts.invalidate();
+            SalesRollups.invalidate();
+            CatalogueCache.invalidate();
+        }
+        System.out.println("Sale journal: replayed " + replayed + " of " + sales.size() + " journaled sales ("
+                + (sales.size() - replayed) + " were already in the database).");
+    }
+}
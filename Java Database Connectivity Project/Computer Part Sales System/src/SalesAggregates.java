@@ -0,0 +1,329 @@
+/*
+ * Incrementally maintained sales aggregates for the ManagerOperations reports.
+ * - Two summary tables (created with the other tables by AdminOperations.createTables):
+ *     sales_by_manufacturer (mID, mRevenue, mSaleCount)  -- SUM of sold part prices / number of sales
+ *     sales_by_salesperson  (sID, sSaleCount)            -- number of sales
+ *   so "total sales value per manufacturer" and "transactions per salesperson" read one row per
+ *   manufacturer / salesperson instead of joining and grouping the whole transaction history.
+ * - The sell path calls recordSale() after each committed sale. It only bumps in-memory LongAdder
+ *   counters; a background thread flushes the deltas every flushMillis with one batched MERGE per table,
+ *   so sales never wait on (or lock) a hot summary row. Several JVMs can flush into the same tables.
+ * - Reports call refresh() first, which flushes the pending deltas of this JVM.
+ * - rebuild() recomputes both tables from the transaction table (admin menu). It runs automatically on the
+ *   next report after data was loaded or the tables were recreated (AdminOperations.resetCaches). The
+ *   staleness is kept in the database as well (sales_summary_state), so the next report of any run or JVM
+ *   rebuilds, not only the one that loaded; a database whose summary tables were never rebuilt counts as
+ *   stale.
+ * - A crash loses the deltas not flushed yet, so the first sale of a run marks the state "pending" in the
+ *   database before it commits, and shutdown() clears the mark once everything is flushed. A run that finds
+ *   a pending mark it did not set (a run that crashed, or another JVM still running) rebuilds on its first
+ *   report.
+ * - A sale holds the sales barrier (beginSale / endSale) from before its database transaction until it is
+ *   counted, and rebuild() takes it exclusively: every sale of this JVM is then either in the rebuilt
+ *   tables or a pending delta, never both and never neither. Sales wait while a rebuild runs. The in-memory
+ *   report caches load the same way (holdSales / releaseSales, see SalesFeed).
+ * - Revenue is the current catalogue price (P.pPrice) of the sold parts, in the deltas (the price the sale
+ *   read) and in rebuild() alike. The transaction table keeps no price; prices only change through a data
+ *   load, which rebuilds (see above), so the two never disagree.
+ *
+ * Tunable with -Dsales.aggregates.flushMillis.
+ * by Jeffery
+ */
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class SalesAggregates {
+
+    private static long flushMillis = DBConnection.longSetting("sales.aggregates.flushMillis", 5000);
+
+    static final String MANUFACTURER_DDL = "CREATE TABLE sales_by_manufacturer (" +
+            "mID INTEGER PRIMARY KEY, " +
+            "mRevenue NUMERIC(19), " +
+            "mSaleCount INTEGER)";
+
+    static final String SALESPERSON_DDL = "CREATE TABLE sales_by_salesperson (" +
+            "sID INTEGER PRIMARY KEY, " +
+            "sSaleCount INTEGER)";
+
+    // One row: ssStale is STALE while the summary tables have to be rebuilt from the transaction table, PENDING
+    // while a run has deltas that a crash would lose, else CLEAN.
+    static final String STATE_DDL = "CREATE TABLE sales_summary_state (" +
+            "ssID INTEGER PRIMARY KEY, " +
+            "ssStale INTEGER)";
+
+    private static final int STATE_ROW = 1;
+    private static final int CLEAN = 0, STALE = 1, PENDING = 2;
+
+    // Cumulative counters of one key; "flushed" is the part already written to the summary table.
+    // Deltas are sum() - flushed, so no update is lost while a flush is reading the adders.
+    private static final class Counter {
+        final LongAdder revenue = new LongAdder();
+        final LongAdder count = new LongAdder();
+        long flushedRevenue;
+        long flushedCount;
+    }
+
+    private static final Map<Integer, Counter> byManufacturer = new ConcurrentHashMap<>();
+    private static final Map<Integer, Counter> bySalesperson = new ConcurrentHashMap<>();
+
+    // Serializes flush / rebuild / invalidate.
+    private static final ReentrantLock flushLock = new ReentrantLock();
+    // Shared by the sales between their transaction and recordSale, exclusive for rebuild (taken before flushLock).
+    private static final ReentrantReadWriteLock salesBarrier = new ReentrantReadWriteLock();
+    private static volatile boolean stale;
+    // This run marked the state PENDING (see beginSale).
+    private static volatile boolean pendingMarked;
+    private static final ReentrantLock markLock = new ReentrantLock();
+    private static volatile ScheduledExecutorService flusher;
+
+    // Called before a sale's database transaction begins; endSale() once it is counted (or failed).
+    static void beginSale() {
+        salesBarrier.readLock().lock();
+        // The summary tables are not used with shards (ShardReports aggregates the shards' transactions).
+        if (!pendingMarked && !Shards.enabled) markPending();
+    }
+
+    static void endSale() {
+        salesBarrier.readLock().unlock();
+    }
+
+    // Waits for the sales of this JVM in progress and keeps new ones from starting until releaseSales().
+    static void holdSales() {
+        salesBarrier.writeLock().lock();
+    }
+
+    static void releaseSales() {
+        salesBarrier.writeLock().unlock();
+    }
+
+    // Called after a sale has been committed.
+    static void recordSale(int manufacturerId, int salespersonId, int price) {
+        Counter m = byManufacturer.computeIfAbsent(manufacturerId, k -> new Counter());
+        m.revenue.add(price);
+        m.count.increment();
+        bySalesperson.computeIfAbsent(salespersonId, k -> new Counter()).count.increment();
+        startFlusher();
+    }
+
+    // Makes the summary tables current for this JVM: rebuilds them if they are stale, else flushes pending deltas.
+    public static void refresh() throws SQLException {
+        if (stale || staleInDatabase(!pendingMarked)) {
+            rebuild();
+        } else {
+            flush();
+        }
+    }
+
+    // Writes the pending deltas to the summary tables in one transaction.
+    public static void flush() throws SQLException {
+        flushLock.lock();
+        try {
+            if (stale) return;
+            // The sums each delta was computed from; they become the flushed marks once the commit succeeded,
+            // so a failed flush leaves its deltas pending and sales recorded meanwhile are not skipped.
+            List<long[]> written = new ArrayList<>();
+            List<Counter> counters = new ArrayList<>();
+            try (Connection conn = DBConnection.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    PreparedStatement mStmt = Queries.MERGE_MANUFACTURER_SALES.prepare(conn);
+                    PreparedStatement sStmt = Queries.MERGE_SALESPERSON_SALES.prepare(conn);
+                    for (Map.Entry<Integer, Counter> e : byManufacturer.entrySet()) {
+                        Counter c = e.getValue();
+                        // recordSale adds revenue before count, so a sale caught half-way is only ever
+                        // partly flushed now and completed by the next flush.
+                        long count = c.count.sum();
+                        long revenue = c.revenue.sum();
+                        if (count == c.flushedCount && revenue == c.flushedRevenue) continue;
+                        mStmt.setInt(1, e.getKey());
+                        mStmt.setLong(2, revenue - c.flushedRevenue);
+                        mStmt.setLong(3, count - c.flushedCount);
+                        mStmt.addBatch();
+                        counters.add(c);
+                        written.add(new long[]{revenue, count});
+                    }
+                    for (Map.Entry<Integer, Counter> e : bySalesperson.entrySet()) {
+                        Counter c = e.getValue();
+                        long count = c.count.sum();
+                        if (count == c.flushedCount) continue;
+                        sStmt.setInt(1, e.getKey());
+                        sStmt.setLong(2, count - c.flushedCount);
+                        sStmt.addBatch();
+                        counters.add(c);
+                        written.add(new long[]{0, count});
+                    }
+                    if (counters.isEmpty()) return;
+                    Queries.MERGE_MANUFACTURER_SALES.executeBatch(mStmt);
+                    Queries.MERGE_SALESPERSON_SALES.executeBatch(sStmt);
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+            for (int i = 0; i < counters.size(); i++) {
+                counters.get(i).flushedRevenue = written.get(i)[0];
+                counters.get(i).flushedCount = written.get(i)[1];
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Recomputes both summary tables from the transaction table and drops the pending deltas.
+    public static void rebuild() throws SQLException {
+        salesBarrier.writeLock().lock();
+        flushLock.lock();
+        try {
+            discardPending();
+            try (Connection conn = DBConnection.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    for (Queries.Query q : List.of(Queries.CLEAR_MANUFACTURER_SALES, Queries.CLEAR_SALESPERSON_SALES,
+                            Queries.REBUILD_MANUFACTURER_SALES, Queries.REBUILD_SALESPERSON_SALES)) {
+                        q.executeUpdate(q.prepare(conn));
+                    }
+                    writeState(conn, CLEAN);
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+            stale = false;
+            // No sale is in progress (barrier), so the next one marks the state again.
+            pendingMarked = false;
+        } finally {
+            flushLock.unlock();
+            salesBarrier.writeLock().unlock();
+        }
+    }
+
+    // The transaction table was changed outside the sell path (load / create / drop): rebuild before the next report.
+    public static void invalidate() {
+        flushLock.lock();
+        try {
+            discardPending();
+            stale = true;
+            try (Connection conn = DBConnection.getConnection()) {
+                writeState(conn, STALE);
+            } catch (SQLException e) {
+                // No summary tables (dropped): createTables starts them without a state row, which is stale too.
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Flushes what is pending, stops the background flusher and clears the PENDING mark; called on exit.
+    public static void shutdown() {
+        ScheduledExecutorService f = flusher;
+        if (f != null) f.shutdownNow();
+        salesBarrier.writeLock().lock();
+        try {
+            flush();
+            if (pendingMarked && !stale) {
+                try (Connection conn = DBConnection.getConnection()) {
+                    switchState(conn, PENDING, CLEAN);
+                }
+                pendingMarked = false;
+            }
+        } catch (SQLException e) {
+            System.out.println("Error while saving sales aggregates: " + e.getMessage());
+        } finally {
+            salesBarrier.writeLock().unlock();
+        }
+    }
+
+    // Marks the state PENDING before the first sale of this run (or after a rebuild) commits, so a crash
+    // before shutdown() leaves the mark behind. Any other state makes the next report rebuild (which clears
+    // pendingMarked, so the sale after it marks again).
+    private static void markPending() {
+        markLock.lock();
+        try {
+            if (pendingMarked) return;
+            try (Connection conn = DBConnection.getConnection()) {
+                // Not CLEAN: STALE, never rebuilt, or a PENDING mark left by another run.
+                if (!switchState(conn, CLEAN, PENDING)) stale = true;
+            } catch (SQLException e) {
+                // Summary tables dropped: there is nothing a crash could lose.
+            }
+            pendingMarked = true;
+        } finally {
+            markLock.unlock();
+        }
+    }
+
+    // Whether a load or table change (of any run) marked the summary tables stale in the database, or, with
+    // orPending, a run left deltas unflushed.
+    private static boolean staleInDatabase(boolean orPending) throws SQLException {
+        try (Connection conn = DBConnection.getConnection()) {
+            PreparedStatement pstmt = Queries.SUMMARY_STATE_READ.prepare(conn);
+            pstmt.setInt(1, STATE_ROW);
+            try (ResultSet rs = Queries.SUMMARY_STATE_READ.executeQuery(pstmt)) {
+                if (!rs.next()) return true;
+                int state = rs.getInt(1);
+                return state == STALE || orPending && state == PENDING;
+            }
+        }
+    }
+
+    private static void writeState(Connection conn, int state) throws SQLException {
+        PreparedStatement pstmt = Queries.SUMMARY_STATE_WRITE.prepare(conn);
+        pstmt.setInt(1, STATE_ROW);
+        pstmt.setInt(2, state);
+        Queries.SUMMARY_STATE_WRITE.executeUpdate(pstmt);
+    }
+
+    // Sets the state to "to" if it is "from"; false if it was not.
+    private static boolean switchState(Connection conn, int from, int to) throws SQLException {
+        PreparedStatement pstmt = Queries.SUMMARY_STATE_SWITCH.prepare(conn);
+        pstmt.setInt(1, to);
+        pstmt.setInt(2, STATE_ROW);
+        pstmt.setInt(3, from);
+        return Queries.SUMMARY_STATE_SWITCH.executeUpdate(pstmt) == 1;
+    }
+
+    // Treats everything recorded so far as already written.
+    private static void discardPending() {
+        for (Map<Integer, Counter> map : List.of(byManufacturer, bySalesperson)) {
+            for (Counter c : map.values()) {
+                c.flushedRevenue = c.revenue.sum();
+                c.flushedCount = c.count.sum();
+            }
+        }
+    }
+
+    private static void startFlusher() {
+        if (flusher != null) return;
+        flushLock.lock();
+        try {
+            if (flusher != null) return;
+            ScheduledExecutorService f = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "sales-aggregates-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            f.scheduleWithFixedDelay(() -> {
+                try {
+                    flush();
+                } catch (SQLException e) {
+                    System.out.println("Error while saving sales aggregates: " + e.getMessage());
+                }
+            }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+            flusher = f;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Keeps an in-memory report cache (SalesRollups, PopularParts, ColumnStore) in step with the transaction
+ * table, so that every sale is counted exactly once:
+ * - The cache loads (and installs what it loaded) between SalesAggregates.holdSales() and releaseSales():
+ *   no sale of this JVM commits meanwhile and none is between its commit and recordSale(), so a sale is
+ *   either read by the load or recorded afterwards, never both and never neither. The load reports the
+ *   highest tID it read on each shard (saw); that is the watermark.
+ * - recordSale() notes the tIDs of this JVM's sales above the watermark of their shard (recorded).
+ * - pickUp() reads only the rows above the watermark (a range scan of the tID primary key), with the sales
+ *   held again, passes on the ones this JVM did not record (sales of other JVMs) and raises the watermark.
+ *   The caches run it in the background every ttlMillis instead of loading everything again, so a report
+ *   never waits for it.
+ * A sale of another JVM that commits with a tID below the watermark (from an ID block that JVM reserved
+ * before) is not picked up; the next full load (after AdminOperations.resetCaches) counts it.
+ * by Jeffery
+ */
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+final class SalesFeed {
+
+    // Receives the sales pickUp() found.
+    interface Sink {
+        void add(int partId, int salespersonId, int manufacturerId, int categoryId, LocalDate day, int price);
+    }
+
+    // Highest tID read per shard (empty before the first load). Changed only with the sales held, and read by
+    // recorded() inside a sale, so the sales barrier orders the two.
+    private long[] watermark = new long[0];
+    // This JVM's sales above the watermark of their shard, already counted by the cache.
+    private final Set<Integer> recorded = ConcurrentHashMap.newKeySet();
+
+    // A full load starts (sales held): forgets the old watermark.
+    void reset() {
+        watermark = new long[Shards.count()];
+        recorded.clear();
+    }
+
+    // The load read tID on the shard.
+    void saw(int shard, long tid) {
+        if (tid > watermark[shard]) watermark[shard] = tid;
+    }
+
+    // A sale of this JVM was counted by the cache.
+    void recorded(int salespersonId, int tid) {
+        int shard = Shards.of(salespersonId);
+        if (shard < watermark.length && tid > watermark[shard]) recorded.add(tid);
+    }
+
+    // Passes the sales above the watermark that this JVM did not record to sink. The caller holds the sales.
+    void pickUp(Sink sink) throws SQLException {
+        for (int shard = 0; shard < watermark.length; shard++) {
+            try (Connection conn = Shards.getConnection(shard)) {
+                PreparedStatement pstmt = Queries.SALES_AFTER.prepare(conn);
+                pstmt.setLong(1, watermark[shard]);
+                try (ResultSet rs = Queries.SALES_AFTER.executeQuery(pstmt)) {
+                    while (rs.next()) {
+                        int tid = rs.getInt(1);
+                        saw(shard, tid);
+                        Timestamp date = rs.getTimestamp(4);
+                        if (recorded.remove(tid) || date == null) continue;
+                        sink.add(rs.getInt(2), rs.getInt(3), rs.getInt(5), rs.getInt(6),
+                                date.toLocalDateTime().toLocalDate(), rs.getInt(7));
+                    }
+                }
+            }
+        }
+        // Every recorded sale was committed before the sales were held, so the scan above met and removed it.
+        recorded.clear();
+    }
+}
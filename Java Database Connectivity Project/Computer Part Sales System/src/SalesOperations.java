@@ -5,13 +5,25 @@
  *    - Search parts by either Part Name or Manufacturer Name (partial match using LIKE).
  *    - Allow sorting results by price (ascending / descending).
  *    - Print results in a tabular format.
+ *    - The lookup itself is search(...): answered from CatalogueCache when it is enabled,
+ *      otherwise by the LIKE query (searchDatabase), on the read side of DBConnection (read-your-writes
+ *      with sales.db.readYourWrites).
  *
  * 2) Transaction(sc):
  *    - Sell a part by inputting Part ID and Salesperson ID.
- *    - Check availability from PART table (available quantity > 0).
- *    - If available: decrement quantity and insert a new row into TRANSACTION table.
+ *    - The sale itself is sell(partId, salespersonId): one database transaction that decrements the
+ *      available quantity with a conditional UPDATE (quantity > 0) and inserts a new row into TRANSACTION,
+ *      so concurrent salespersons cannot oversell a part. TIDs come from IdAllocator (block-reserved, never reused).
+ *    - Committed sales are counted in SalesAggregates, PopularParts, SalesRollups and ColumnStore for the manager reports.
+ *    - sell(partIds, salespersonIds) sells a group in one transaction with batched INSERTs (BatchMode).
+ *    - With -Dsales.journal.enabled=true both go through SaleJournal instead: the stock is reserved in memory,
+ *      the sale is acknowledged once it is in the local journal, and it reaches the database in the background.
+ *    - With shards (Shards) a sale runs on the shard of its salesperson, against that store's stock; the journal
+ *      and the sales summary tables are not used then.
  *
- * - Uses DBConnection.getConnection() and PreparedStatement for parameterized queries.
+ * - Uses DBConnection.getConnection() and the named, cached statements of Queries (all values bound).
+ * - sell() and search() are timed into Metrics (sales.sell, sales.search) and sell() counts its outcomes;
+ *   searchTable also times the lookup plus printing (sales.searchReport).
  * - This file contains both query (SELECT) and update (UPDATE/INSERT) operations.
  * by Jeffery
  */
@@ -21,8 +33,18 @@
 import java.sql.*;
 import java.util.*;
 import java.io.*;
+import java.util.concurrent.atomic.LongAdder;
 
 public class SalesOperations {
+
+    private static final Metrics.Timer SELL = Metrics.timer("sales.sell");
+    private static final Metrics.Timer SELL_GROUP = Metrics.timer("sales.sellGroup");
+    private static final Metrics.Timer SEARCH = Metrics.timer("sales.search");
+    private static final Metrics.Timer SEARCH_REPORT = Metrics.timer("sales.searchReport");
+    private static final LongAdder SOLD = Metrics.counter("sales.sell.sold");
+    private static final LongAdder OUT_OF_STOCK = Metrics.counter("sales.sell.outOfStock");
+    private static final LongAdder PART_NOT_FOUND = Metrics.counter("sales.sell.notFound");
+    private static final LongAdder SELL_FAILED = Metrics.counter("sales.sell.failed");
     
     public static void showMenu(Scanner sc) {
         while (true) {
@@ -52,8 +74,6 @@ public class SalesOperations {
 
     
     public static void searchTable(Scanner sc) {
-    try (Connection conn = DBConnection.getConnection()) {
-
         System.out.println("Choose the Search criterion: ");
         System.out.println("1. Part Name");
         System.out.println("2. Manufacturer Name");
@@ -70,112 +90,406 @@ public class SalesOperations {
         System.out.print("Choose the ordering: ");
         int ordering = sc.nextInt();
 
-
-        String searchColumn;
-        if (choice == 1) {
-            searchColumn = "PNAME";
-        } else if (choice == 2) {
-            searchColumn = "MNAME";
-        } else {
+        if (choice != 1 && choice != 2) {
             System.out.println("Invalid search criterion.");
             return;
         }
-
-        String order;
-        if (ordering == 1) {
-            order = "ASC";
-        } else if (ordering == 2) {
-            order = "DESC";
-        } else {
+        if (ordering != 1 && ordering != 2) {
             System.out.println("Invalid ordering choice.");
             return;
         }
 
-        String query = "SELECT PID, PNAME, MNAME, CNAME, PAVAILABLEQUANTITY, PWARRANTYPERIOD, PPRICE " +
-                       "FROM PART NATURAL JOIN MANUFACTURER NATURAL JOIN CATEGORY " +
-                       "WHERE " + searchColumn + " LIKE ? " +
-                       "ORDER BY PPRICE " + order;
+        long start = System.nanoTime();
+        try {
+            List<PartRow> rows = search(choice == 2, keyword, ordering == 1);
+            Writer out = TableDumper.consoleWriter();
+            Formatter fmt = new Formatter(out);
+            fmt.format("| %-2s | %-15s | %-15s | %-12s | %-8s | %-8s | %-8s |\n", "ID", "Name", "Manufacturer", "Category", "Quantity", "Warranty", "Price");
 
-        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
-            pstmt.setString(1, "%" + keyword + "%");
+            for (PartRow row : rows) {
+                fmt.format("| %-2d | %-15s | %-15s | %-12s | %-8d | %-8d | %-8.2f |\n", row.pID, row.pName, row.mName, row.cName, row.quantity, row.warranty, (double) row.price);
+            }
 
-            ResultSet rs = pstmt.executeQuery();
-            System.out.printf("| %-2s | %-15s | %-15s | %-12s | %-8s | %-8s | %-8s |\n", "ID", "Name", "Manufacturer", "Category", "Quantity", "Warranty", "Price");
+            out.write("End of Query" + System.lineSeparator());
+            out.flush();
+        } catch (SQLException | IOException e) {
+            System.out.println("Fail to Query：" + e.getMessage());
+        } finally {
+            SEARCH_REPORT.record(start);
+        }
+    }
 
-            while (rs.next()) {
-                System.out.printf("| %-2d | %-15s | %-15s | %-12s | %-8d | %-8d | %-8.2f |\n", rs.getInt("PID"), rs.getString("PNAME"), rs.getString("MNAME"), rs.getString("CNAME"), rs.getInt("PAVAILABLEQUANTITY"), rs.getInt("PWARRANTYPERIOD"), rs.getDouble("PPRICE"));
-            }
 
-            System.out.println("End of Query");
+    // One row of the part search: a part with its manufacturer and category names.
+    static final class PartRow {
+        final int pID;
+        final String pName;
+        final String mName;
+        final String cName;
+        final int quantity;
+        final int warranty;
+        final int price;
+
+        PartRow(int pID, String pName, String mName, String cName, int quantity, int warranty, int price) {
+            this.pID = pID;
+            this.pName = pName;
+            this.mName = mName;
+            this.cName = cName;
+            this.quantity = quantity;
+            this.warranty = warranty;
+            this.price = price;
         }
+    }
+
+    // Whether the console search ignores upper / lower case (-Dsales.search.ignoreCase=true).
+    private static boolean ignoreCaseSearch = DBConnection.booleanSetting("sales.search.ignoreCase", false);
 
-    } catch (SQLException e) {
-        System.out.println("Fail to Query：" + e.getMessage());
+    // Parts whose name (or manufacturer name) contains the keyword, ordered by price.
+    // Served from CatalogueCache when it is enabled and loaded, otherwise by the database.
+    public static List<PartRow> search(boolean byManufacturer, String keyword, boolean ascending) throws SQLException {
+        return search(byManufacturer, keyword, ascending, ignoreCaseSearch);
+    }
+
+    public static List<PartRow> search(boolean byManufacturer, String keyword, boolean ascending, boolean ignoreCase) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            List<PartRow> cached = CatalogueCache.search(byManufacturer, keyword, ascending, ignoreCase);
+            return cached != null ? cached : searchDatabase(byManufacturer, keyword, ascending, ignoreCase);
+        } finally {
+            SEARCH.record(start);
+        }
+    }
+
+    static List<PartRow> searchDatabase(boolean byManufacturer, String keyword, boolean ascending, boolean ignoreCase) throws SQLException {
+        Queries.Query query = Queries.search(byManufacturer, ignoreCase, ascending);
+        if (Shards.enabled) return searchShards(query, keyword);
+        try (Connection conn = DBConnection.getReadConnection(true)) {
+            return search(conn, query, keyword);
+        }
+    }
+
+    // With shards: the rows of shard 0 with the available quantity of all stores (every shard has the same parts).
+    private static List<PartRow> searchShards(Queries.Query query, String keyword) throws SQLException {
+        List<List<PartRow>> perShard = Shards.scatter(shard -> {
+            try (Connection conn = Shards.getConnection(shard)) {
+                return search(conn, query, keyword);
+            }
+        });
+        Map<Integer, Integer> quantity = new HashMap<>();
+        for (List<PartRow> rows : perShard) {
+            for (PartRow r : rows) quantity.merge(r.pID, r.quantity, Integer::sum);
+        }
+        List<PartRow> rows = new ArrayList<>(perShard.get(0).size());
+        for (PartRow r : perShard.get(0)) {
+            rows.add(new PartRow(r.pID, r.pName, r.mName, r.cName, quantity.get(r.pID), r.warranty, r.price));
+        }
+        return rows;
+    }
+
+    private static List<PartRow> search(Connection conn, Queries.Query query, String keyword) throws SQLException {
+        List<PartRow> rows = new ArrayList<>();
+        PreparedStatement pstmt = query.prepare(conn);
+        pstmt.setString(1, "%" + keyword + "%");
+
+        try (ResultSet rs = query.executeQuery(pstmt)) {
+            while (rs.next()) {
+                rows.add(new PartRow(rs.getInt("PID"), rs.getString("PNAME"), rs.getString("MNAME"), rs.getString("CNAME"),
+                        rs.getInt("PAVAILABLEQUANTITY"), rs.getInt("PWARRANTYPERIOD"), rs.getInt("PPRICE")));
+            }
+        }
+        return rows;
     }
-}
     
     
     
     public static void Transaction(Scanner sc) {
-    try (Connection conn = DBConnection.getConnection()) {
-
         System.out.print("Enter the Part ID: ");
         int partId = sc.nextInt();
 
         System.out.print("Enter the Salesperson ID: ");
         int salespersonId = sc.nextInt();
 
-        String checkQuery = "SELECT PNAME, PAVAILABLEQUANTITY FROM PART WHERE PID = ?";
-        try (PreparedStatement checkStmt = conn.prepareStatement(checkQuery)) {
-            checkStmt.setInt(1, partId);
-            ResultSet rs = checkStmt.executeQuery();
-
-            if (rs.next()) {
-                String partName = rs.getString("PNAME");
-                int availableQty = rs.getInt("PAVAILABLEQUANTITY");
-
-                if (availableQty > 0) {
-                    String updateQuery = "UPDATE PART SET PAVAILABLEQUANTITY = PAVAILABLEQUANTITY - 1 WHERE PID = ?";
-                    try (PreparedStatement updateStmt = conn.prepareStatement(updateQuery)) {
-                        updateStmt.setInt(1, partId);
-                        int updated = updateStmt.executeUpdate();
-
-                        if (updated > 0) {
-                            System.out.printf("Product: %s(id: %d) Remaining Quantity: %d%n", partName, partId, availableQty - 1);
-                        } 
-                        else {System.out.println("Fail to update the part.");}
-                    }
-                    
-                    int max=0;
-                    String getMaxID = "SELECT MAX(TID) FROM transaction";
-                    try (PreparedStatement pstmt = conn.prepareStatement(getMaxID);
-                        ResultSet abc = pstmt.executeQuery()) {  
-                    if (abc.next()) {
-                        max = abc.getInt("MAX(TID)");
-                    }
-                    }catch (SQLException e) {
-                        System.out.printf("%d",max);
-                    }
-                    
-                    
-                    
-                    
-                    
-                    String saveTransaction = "INSERT INTO TRANSACTION (TID, PID, SID, TDATE) VALUES (?, ?, ?, SYSDATE)";
-                    try (PreparedStatement saveStmt = conn.prepareStatement(saveTransaction)) {
-                        saveStmt.setInt(1,max+1);
-                        saveStmt.setInt(2, partId);
-                        saveStmt.setInt(3, salespersonId);
-                        saveStmt.executeUpdate();
-                    }
-                    
+        try {
+            Sale sale = sell(partId, salespersonId);
+            switch (sale.status) {
+                case SOLD:
+                    System.out.printf("Product: %s(id: %d) Remaining Quantity: %d%n", sale.partName, partId, sale.remaining);
+                    break;
+                case OUT_OF_STOCK:
+                    System.out.println("Cannot sell part. Out of stock.");
+                    break;
+                default:
+                    System.out.println("Part not found.");
+            }
+        } catch (SQLException e) {System.out.println(" Transaction failed: " + e.getMessage());}
+    }
+
+
+    // Outcome of one sale. partName / remaining / transactionId / price / manufacturerId / categoryId / saleDate
+    // are only set when status is SOLD.
+    static final class Sale {
+        enum Status { SOLD, OUT_OF_STOCK, PART_NOT_FOUND }
+
+        final Status status;
+        final int partId;
+        final int salespersonId;
+        final String partName;
+        final int remaining;
+        final int transactionId;
+        final int price;
+        final int manufacturerId;
+        final int categoryId;
+        final Timestamp saleDate;
+
+        Sale(Status status, int partId, int salespersonId, String partName, int remaining, int transactionId,
+             int price, int manufacturerId, int categoryId, Timestamp saleDate) {
+            this.status = status;
+            this.partId = partId;
+            this.salespersonId = salespersonId;
+            this.partName = partName;
+            this.remaining = remaining;
+            this.transactionId = transactionId;
+            this.price = price;
+            this.manufacturerId = manufacturerId;
+            this.categoryId = categoryId;
+            this.saleDate = saleDate;
+        }
+    }
+
+    // Thrown by sell(partIds, salespersonIds) with shards when the group of one shard failed after the groups
+    // of other shards were committed. sales[i] is the committed outcome of sale i, or null if sale i was not
+    // sold (its shard failed or was not reached); only those are to be retried. The cause is the failure.
+    static final class PartlySoldException extends SQLException {
+        private static final long serialVersionUID = 1L;
+        // Sale is not serializable; the outcomes only matter to the caller that catches this.
+        final transient Sale[] sales;
+
+        PartlySoldException(Sale[] sales, Throwable cause) {
+            super("Sold on some shards only: " + cause.getMessage(), cause);
+            this.sales = sales;
+        }
+    }
+
+    // Sells one unit of a part as a single database transaction.
+    public static Sale sell(int partId, int salespersonId) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Sale sale = SaleJournal.enabled && !Shards.enabled
+                    ? SaleJournal.sell(new int[]{partId}, new int[]{salespersonId}).get(0)
+                    : sellOnce(partId, salespersonId);
+            count(sale);
+            return sale;
+        } catch (SQLException | RuntimeException e) {
+            SELL_FAILED.increment();
+            throw e;
+        } finally {
+            SELL.record(start);
+        }
+    }
+
+    // Sells partIds[i] to salespersonIds[i] for every i in one database transaction on one connection: the
+    // INSERTs into TRANSACTION go as one batch and there is a single commit, so a group costs far fewer
+    // round trips than selling one by one. All or nothing: if any sale fails (e.g. an unknown salesperson),
+    // the whole group is rolled back and the exception thrown; the caller can retry the sales one by one.
+    // Row locks of the sold parts are held until the end of the group, so keep groups small.
+    // With the SaleJournal on, the group is appended to the journal with one sync instead.
+    // With shards, a group of several shards' salespersons is sold as one such group per shard (all or nothing
+    // per shard). If a shard fails after others committed, PartlySoldException tells which sales were sold.
+    public static List<Sale> sell(int[] partIds, int[] salespersonIds) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            if (Shards.enabled) {
+                return sellByShard(partIds, salespersonIds);
+            }
+            if (SaleJournal.enabled) {
+                List<Sale> sales = SaleJournal.sell(partIds, salespersonIds);
+                for (Sale sale : sales) {
+                    count(sale);
+                }
+                return sales;
+            }
+            return sellOnShard(partIds, salespersonIds);
+        } finally {
+            SELL_GROUP.record(start);
+        }
+    }
+
+    // The group on one connection, to the shard of the first salesperson (all of them are on it).
+    private static List<Sale> sellOnShard(int[] partIds, int[] salespersonIds) throws SQLException {
+        int[] tids = new int[partIds.length];
+        for (int i = 0; i < tids.length; i++) {
+            tids[i] = IdAllocator.transactionIds().nextId();
+        }
+        List<Sale> sales = new ArrayList<>(partIds.length);
+        SalesAggregates.beginSale();
+        try (Connection conn = Shards.connectionFor(salespersonIds[0])) {
+            conn.setAutoCommit(false);
+            try {
+                // Prepared once: taking it from the statement cache again would clear the batch.
+                PreparedStatement insertBatch = Queries.INSERT_SALE.prepare(conn);
+                boolean anySold = false;
+                for (int i = 0; i < partIds.length; i++) {
+                    Sale sale = sell(conn, partIds[i], salespersonIds[i], tids[i], insertBatch);
+                    anySold |= sale.status == Sale.Status.SOLD;
+                    sales.add(sale);
+                }
+                if (anySold) {
+                    Queries.INSERT_SALE.executeBatch(insertBatch);
                 }
-                else {System.out.println("Cannot sell part. Out of stock.");}
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
             }
-            else {System.out.println("Part not found.");}
+            for (Sale sale : sales) {
+                committed(sale);
+            }
+        } finally {
+            SalesAggregates.endSale();
+        }
+        for (Sale sale : sales) {
+            count(sale);
         }
+        return sales;
+    }
 
-    } catch (SQLException e) {System.out.println(" Transaction failed: " + e.getMessage());}
+    // The sales of each shard as one group on that shard, returned in the order of the input. The shards are
+    // sold one after the other and stop at the first failing group.
+    private static List<Sale> sellByShard(int[] partIds, int[] salespersonIds) throws SQLException {
+        int[] shardOf = new int[partIds.length];
+        int[] groupSize = new int[Shards.count()];
+        for (int i = 0; i < partIds.length; i++) {
+            shardOf[i] = Shards.of(salespersonIds[i]);
+            groupSize[shardOf[i]]++;
+        }
+        Sale[] result = new Sale[partIds.length];
+        boolean anyCommitted = false;
+        for (int shard = 0; shard < groupSize.length; shard++) {
+            if (groupSize[shard] == 0) continue;
+            int[] parts = new int[groupSize[shard]];
+            int[] salespersons = new int[groupSize[shard]];
+            int[] positions = new int[groupSize[shard]];
+            for (int i = 0, n = 0; i < partIds.length; i++) {
+                if (shardOf[i] != shard) continue;
+                parts[n] = partIds[i];
+                salespersons[n] = salespersonIds[i];
+                positions[n++] = i;
+            }
+            List<Sale> sales;
+            try {
+                sales = sellOnShard(parts, salespersons);
+            } catch (SQLException | RuntimeException e) {
+                // Nothing is sold yet: the plain failure, as without shards.
+                if (!anyCommitted) throw e;
+                throw new PartlySoldException(result, e);
+            }
+            for (int n = 0; n < positions.length; n++) result[positions[n]] = sales.get(n);
+            anyCommitted = true;
+        }
+        return Arrays.asList(result);
+    }
+
+    private static Sale sellOnce(int partId, int salespersonId) throws SQLException {
+        // Taken before borrowing a connection: a block refill needs a pooled connection of its own.
+        int tid = IdAllocator.transactionIds().nextId();
+        // Before borrowing too: a waiting sale must not hold a connection the rebuild needs.
+        SalesAggregates.beginSale();
+        try (Connection conn = Shards.connectionFor(salespersonId)) {
+            conn.setAutoCommit(false);
+            try {
+                Sale sale = sell(conn, partId, salespersonId, tid, null);
+                conn.commit();
+                committed(sale);
+                return sale;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        } finally {
+            SalesAggregates.endSale();
+        }
+    }
+
+    // Brings the in-memory state derived from the sales up to date after a sale was committed.
+    private static void committed(Sale sale) {
+        if (sale.status != Sale.Status.SOLD) return;
+        ReplicaMonitor.wrote();
+        CatalogueCache.quantityChanged(Shards.of(sale.salespersonId), sale.partId, sale.remaining);
+        addToReports(sale);
+    }
+
+    // Counts a sold sale in the report state; SaleJournal calls it once the sale is in the database.
+    static void addToReports(Sale sale) {
+        // The summary tables are not used with shards (ShardReports aggregates the shards' transactions).
+        if (!Shards.enabled) SalesAggregates.recordSale(sale.manufacturerId, sale.salespersonId, sale.price);
+        PopularParts.recordSale(sale.transactionId, sale.partId, sale.salespersonId);
+        SalesRollups.recordSale(sale.transactionId, sale.saleDate.toLocalDateTime().toLocalDate(), sale.manufacturerId,
+                sale.categoryId, sale.partId, sale.salespersonId, sale.price);
+        ColumnStore.recordSale(sale.transactionId, sale.partId, sale.salespersonId,
+                sale.saleDate.toLocalDateTime().toLocalDate(), sale.price);
+    }
+
+    private static void count(Sale sale) {
+        switch (sale.status) {
+            case SOLD: SOLD.increment(); break;
+            case OUT_OF_STOCK: OUT_OF_STOCK.increment(); break;
+            default: PART_NOT_FOUND.increment();
+        }
+    }
+
+    // The sale itself, on a connection with auto-commit off; the caller commits or rolls back.
+    // - The stock is decremented with a conditional UPDATE, so two sellers can never both take the last unit:
+    //   the second one waits for the row lock and then matches no row.
+    // - The transaction ID tid comes from IdAllocator's in-memory block, so no SELECT MAX(TID) scan per sale.
+    //   It is simply left unused (a gap) if the part cannot be sold.
+    // - With an insertBatch (a prepared INSERT_SALE) the TRANSACTION row is only added to that batch; the caller
+    //   executes it. With null it is inserted right away.
+    static Sale sell(Connection conn, int partId, int salespersonId, int tid, PreparedStatement insertBatch) throws SQLException {
+        PreparedStatement updateStmt = Queries.DECREMENT_STOCK.prepare(conn);
+        updateStmt.setInt(1, partId);
+        if (Queries.DECREMENT_STOCK.executeUpdate(updateStmt) == 0) {
+            return new Sale(partExists(conn, partId) ? Sale.Status.OUT_OF_STOCK : Sale.Status.PART_NOT_FOUND,
+                    partId, salespersonId, null, 0, 0, 0, 0, 0, null);
+        }
+
+        String partName;
+        int remaining;
+        int price;
+        int manufacturerId;
+        int categoryId;
+        Timestamp saleDate;
+        // The database time (SYSDATE on Oracle) is read once and stored as tDate, so SalesRollups buckets the sale on the same day as the table.
+        PreparedStatement checkStmt = Queries.SOLD_PART.prepare(conn);
+        checkStmt.setInt(1, partId);
+        try (ResultSet rs = Queries.SOLD_PART.executeQuery(checkStmt)) {
+            rs.next();
+            partName = rs.getString("PNAME");
+            remaining = rs.getInt("PAVAILABLEQUANTITY");
+            price = rs.getInt("PPRICE");
+            manufacturerId = rs.getInt("MID");
+            categoryId = rs.getInt("CID");
+            saleDate = rs.getTimestamp("NOW");
+        }
+
+        PreparedStatement saveStmt = insertBatch != null ? insertBatch : Queries.INSERT_SALE.prepare(conn);
+        saveStmt.setInt(1, tid);
+        saveStmt.setInt(2, partId);
+        saveStmt.setInt(3, salespersonId);
+        saveStmt.setTimestamp(4, saleDate);
+        if (insertBatch != null) {
+            saveStmt.addBatch();
+        } else {
+            Queries.INSERT_SALE.executeUpdate(saveStmt);
+        }
+        return new Sale(Sale.Status.SOLD, partId, salespersonId, partName, remaining, tid, price, manufacturerId, categoryId, saleDate);
+    }
+
+    private static boolean partExists(Connection conn, int partId) throws SQLException {
+        PreparedStatement pstmt = Queries.PART_EXISTS.prepare(conn);
+        pstmt.setInt(1, partId);
+        try (ResultSet rs = Queries.PART_EXISTS.executeQuery(pstmt)) {
+            return rs.next();
+        }
     }
     
 }
@@ -0,0 +1,273 @@
+/*
+ * Date-bucketed sales rollups for the date-range manager report.
+ * - For each dimension (manufacturer, category, part, salesperson) sales are summed into daily, weekly
+ *   (Monday to Sunday) and monthly buckets; every bucket maps a key (mID / cID / pID / sID) to a sale count
+ *   and revenue.
+ * - range(dimension, from, to) covers the range with whole months where it can, whole weeks around them and
+ *   single days at the ragged ends, so a query touches at most 24 daily and 8 weekly buckets plus one
+ *   bucket per month and its cost does not depend on how many transactions the range holds.
+ * - Backfilled on first use with one GROUP BY (day, mID, cID, pID, sID) over the transaction table (of every
+ *   shard, see Shards), then kept current by recordSale() from the sell path. The backfill runs with the
+ *   sales held (SalesFeed), so no sale is counted twice or missed. Every ttlMillis the sales of other JVMs
+ *   are picked up in the background, reading only the rows above the tID watermark; a report never waits
+ *   for that. Dropped by AdminOperations.resetCaches().
+ * - Days are the transaction dates as stored (the day of tDate); the sell path reads the database time once and stores
+ *   the same value, so memory and table agree on the day of a sale.
+ *
+ * Tunable with -Dsales.rollups.ttlMillis.
+ * by Jeffery
+ */
+
+import java.sql.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class SalesRollups {
+
+    private static long ttlMillis = DBConnection.longSetting("sales.rollups.ttlMillis", 5 * 60 * 1000L);
+
+    // The table / columns that name a key of the dimension (for Queries.lookupNames).
+    enum Dimension {
+        MANUFACTURER("manufacturer", "mID", "mName"),
+        CATEGORY("category", "cID", "cName"),
+        PART("part", "pID", "pName"),
+        SALESPERSON("salesperson", "sID", "sName");
+
+        final String table;
+        final String idColumn;
+        final String nameColumn;
+
+        Dimension(String table, String idColumn, String nameColumn) {
+            this.table = table;
+            this.idColumn = idColumn;
+            this.nameColumn = nameColumn;
+        }
+
+        // Key -> name of the given keys.
+        Map<Integer, String> names(List<Integer> keys) throws SQLException {
+            try (Connection conn = DBConnection.getReadConnection()) {
+                return Queries.lookupNames(conn, table, idColumn, nameColumn, keys);
+            }
+        }
+    }
+
+    // One line of a report.
+    static final class Total {
+        final int key;
+        long count;
+        long revenue;
+
+        Total(int key) {
+            this.key = key;
+        }
+    }
+
+    private static final class Cell {
+        final LongAdder count = new LongAdder();
+        final LongAdder revenue = new LongAdder();
+    }
+
+    // Key -> sums of one day, week or month.
+    private static final class Bucket {
+        final Map<Integer, Cell> cells = new ConcurrentHashMap<>();
+
+        void add(int key, long count, long revenue) {
+            Cell c = cells.computeIfAbsent(key, k -> new Cell());
+            c.count.add(count);
+            c.revenue.add(revenue);
+        }
+    }
+
+    // Buckets of every dimension, keyed by epoch day / epoch day of the week's Monday / month number
+    // (year * 12 + month - 1).
+    private static final class State {
+        final List<Map<Integer, Bucket>> days = new ArrayList<>();
+        final List<Map<Integer, Bucket>> weeks = new ArrayList<>();
+        final List<Map<Integer, Bucket>> months = new ArrayList<>();
+        volatile long checkedAt = System.currentTimeMillis();
+
+        State() {
+            for (int i = 0; i < Dimension.values().length; i++) {
+                days.add(new ConcurrentHashMap<>());
+                weeks.add(new ConcurrentHashMap<>());
+                months.add(new ConcurrentHashMap<>());
+            }
+        }
+
+        void add(LocalDate day, int[] keys, long count, long revenue) {
+            int dayKey = (int) day.toEpochDay();
+            int weekKey = weekKey(day);
+            int monthKey = monthKey(day);
+            for (int d = 0; d < keys.length; d++) {
+                days.get(d).computeIfAbsent(dayKey, k -> new Bucket()).add(keys[d], count, revenue);
+                weeks.get(d).computeIfAbsent(weekKey, k -> new Bucket()).add(keys[d], count, revenue);
+                months.get(d).computeIfAbsent(monthKey, k -> new Bucket()).add(keys[d], count, revenue);
+            }
+        }
+
+        // Time to pick up the sales of other JVMs.
+        boolean expired() {
+            return System.currentTimeMillis() - checkedAt > ttlMillis;
+        }
+    }
+
+    private static volatile State state;
+    private static final SalesFeed feed = new SalesFeed();
+    private static final ReentrantLock loadLock = new ReentrantLock();
+    private static final AtomicLong generation = new AtomicLong();
+    private static final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "sales-rollups-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Called after a sale has been committed (inside the sales barrier, see SalesFeed).
+    static void recordSale(int transactionId, LocalDate day, int manufacturerId, int categoryId, int partId,
+                           int salespersonId, int price) {
+        State s = state;
+        if (s == null) return;
+        s.add(day, new int[]{manufacturerId, categoryId, partId, salespersonId}, 1, price);
+        feed.recorded(salespersonId, transactionId);
+    }
+
+    // Totals per key of the dimension for the days from..to (inclusive), most revenue first.
+    public static List<Total> range(Dimension dimension, LocalDate from, LocalDate to) throws SQLException {
+        State s = current();
+        Map<Integer, Bucket> days = s.days.get(dimension.ordinal());
+        Map<Integer, Bucket> weeks = s.weeks.get(dimension.ordinal());
+        Map<Integer, Bucket> months = s.months.get(dimension.ordinal());
+
+        Map<Integer, Total> totals = new HashMap<>();
+        LocalDate d = from;
+        while (!d.isAfter(to)) {
+            LocalDate monthEnd = d.withDayOfMonth(d.lengthOfMonth());
+            LocalDate weekEnd = d.plusDays(6);
+            LocalDate nextMonth = monthEnd.plusDays(1);
+            Bucket bucket;
+            if (d.getDayOfMonth() == 1 && !monthEnd.isAfter(to)) {
+                bucket = months.get(monthKey(d));
+                d = monthEnd.plusDays(1);
+            } else if (d.getDayOfWeek() == DayOfWeek.MONDAY && !weekEnd.isAfter(to)
+                    && (!weekEnd.isAfter(monthEnd) || nextMonth.withDayOfMonth(nextMonth.lengthOfMonth()).isAfter(to))) {
+                // A week that runs into the next month only if that month is not covered whole.
+                bucket = weeks.get(weekKey(d));
+                d = weekEnd.plusDays(1);
+            } else {
+                bucket = days.get((int) d.toEpochDay());
+                d = d.plusDays(1);
+            }
+            if (bucket == null) continue;
+            for (Map.Entry<Integer, Cell> e : bucket.cells.entrySet()) {
+                Total t = totals.computeIfAbsent(e.getKey(), Total::new);
+                t.count += e.getValue().count.sum();
+                t.revenue += e.getValue().revenue.sum();
+            }
+        }
+
+        List<Total> result = new ArrayList<>(totals.values());
+        result.sort((a, b) -> a.revenue != b.revenue ? Long.compare(b.revenue, a.revenue) : Integer.compare(a.key, b.key));
+        return result;
+    }
+
+    // The sales were changed outside the sell path (load / create / drop): backfill again on next use.
+    public static void invalidate() {
+        generation.incrementAndGet();
+        state = null;
+    }
+
+    private static State current() throws SQLException {
+        State s = state;
+        if (s == null) return load();
+        if (s.expired()) pickUpAsync(s);
+        return s;
+    }
+
+    // The backfill, read and installed with the sales held.
+    private static State load() throws SQLException {
+        loadLock.lock();
+        try {
+            State s = state;
+            if (s != null) return s;
+            long gen = generation.get();
+            SalesAggregates.holdSales();
+            try {
+                feed.reset();
+                State fresh = backfill();
+                if (gen == generation.get()) {
+                    state = fresh;
+                }
+                return fresh;
+            } finally {
+                SalesAggregates.releaseSales();
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private static void pickUpAsync(State s) {
+        if (loadLock.isLocked()) return;
+        loader.execute(() -> {
+            try {
+                pickUp(s);
+            } catch (SQLException e) {
+                System.out.println("Error while reading new sales: " + e.getMessage());
+            }
+        });
+    }
+
+    // Adds the sales of other JVMs above the watermark to s.
+    private static void pickUp(State s) throws SQLException {
+        loadLock.lock();
+        try {
+            if (state != s || !s.expired()) return;
+            SalesAggregates.holdSales();
+            try {
+                feed.pickUp((partId, salespersonId, manufacturerId, categoryId, day, price) ->
+                        s.add(day, new int[]{manufacturerId, categoryId, partId, salespersonId}, 1, price));
+                s.checkedAt = System.currentTimeMillis();
+            } finally {
+                SalesAggregates.releaseSales();
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    // Must hold the sales (see load).
+    private static State backfill() throws SQLException {
+        State s = new State();
+        // With shards every shard holds the sales of its own salespersons.
+        for (int shard = 0; shard < Shards.count(); shard++) {
+            try (Connection conn = Shards.getConnection(shard)) {
+                PreparedStatement pstmt = Queries.DAILY_SALES.prepare(conn);
+                pstmt.setFetchSize(1000);
+                try (ResultSet rs = Queries.DAILY_SALES.executeQuery(pstmt)) {
+                    while (rs.next()) {
+                        feed.saw(shard, rs.getLong("maxTID"));
+                        java.sql.Date day = rs.getDate("d");
+                        if (day == null) continue;
+                        int[] keys = {rs.getInt("mID"), rs.getInt("cID"), rs.getInt("pID"), rs.getInt("sID")};
+                        s.add(day.toLocalDate(), keys, rs.getLong("cnt"), rs.getLong("rev"));
+                    }
+                }
+            }
+        }
+        return s;
+    }
+
+    private static int weekKey(LocalDate day) {
+        return (int) day.with(DayOfWeek.MONDAY).toEpochDay();
+    }
+
+    private static int monthKey(LocalDate day) {
+        return day.getYear() * 12 + day.getMonthValue() - 1;
+    }
+}
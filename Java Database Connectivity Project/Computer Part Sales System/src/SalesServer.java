@@ -0,0 +1,180 @@
+/*
+ * Server mode: java ComputerPartSalesSystem --server [port]
+ * Serves many store terminals from one process, so they share one connection pool, one catalogue cache,
+ * one ID allocator and one set of sales aggregates instead of every terminal running its own JVM.
+ * - Line protocol over TCP (telnet / nc work): the server greets with one line, the client answers
+ *     menu    the interactive menus of the console program (admin, salesperson, manager), option 4 ends it
+ *     batch   BatchMode commands, one per line, with its tab-separated results (what LoadGenerator uses)
+ *   and the session runs until that ends or the client disconnects.
+ * - Every session runs on its own virtual thread: a session blocked on its socket or on a database call
+ *   costs a few hundred bytes instead of a platform thread, so thousands of idle or waiting terminals are
+ *   cheap. The database work is still bounded by the connection pool (-Dsales.pool.maxSize).
+ * - Menus and operations keep printing with System.out; SessionConsole sends it to the session's socket.
+ *   Session output is buffered and flushed whenever the session waits for input, so a prompt is sent
+ *   exactly when the terminal has to answer it. In batch sessions the messages meant for people (load
+ *   progress etc.) go to the server's console instead, the results stay machine-readable.
+ * - Binds to 127.0.0.1 by default, the protocol has no authentication. Typing "quit" on the server's console
+ *   stops it: no new sessions, open sessions are disconnected, then the usual exit (aggregates, metrics, pool).
+ *
+ * Tunable with -Dsales.server.port, -Dsales.server.address and -Dsales.server.backlog.
+ * by Jeffery
+ */
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SalesServer {
+
+    static int port = DBConnection.intSetting("sales.server.port", 5210);
+    private static String address = DBConnection.setting("sales.server.address", "127.0.0.1");
+    private static int backlog = DBConnection.intSetting("sales.server.backlog", 4096);
+
+    static final String GREETING = "Computer part sales system: type menu or batch";
+
+    private static final Metrics.Timer SESSION = Metrics.timer("server.session");
+    private static final LongAdder SESSIONS = Metrics.counter("server.sessions");
+    private static final LongAdder SESSIONS_FAILED = Metrics.counter("server.sessions.failed");
+
+    private static final Set<Socket> open = ConcurrentHashMap.newKeySet();
+    private static volatile ServerSocket server;
+
+    // Reads from the socket, but first flushes what the session wrote, so the client sees every prompt and
+    // result before it is asked for more.
+    private static final class FlushingInput extends FilterInputStream {
+        private final Flushable output;
+
+        FlushingInput(InputStream in, Flushable output) {
+            super(in);
+            this.output = output;
+        }
+
+        @Override
+        public int read() throws IOException {
+            output.flush();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            output.flush();
+            return super.read(b, off, len);
+        }
+    }
+
+    // Accepts sessions until "quit" is typed on the console; returns when every session has ended.
+    public static void run(int port) throws IOException {
+        PrintStream console = System.out;
+        System.setOut(new SessionConsole(console));
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.bind(new InetSocketAddress(InetAddress.getByName(address), port), backlog);
+            server = socket;
+            console.println("Sales server listening on " + address + ":" + socket.getLocalPort() + ", type quit to stop.");
+            Thread.ofVirtual().name("server-console").start(SalesServer::readConsole);
+
+            try (ExecutorService sessions = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("session-", 1).factory())) {
+                while (true) {
+                    Socket client;
+                    try {
+                        client = socket.accept();
+                    } catch (SocketException e) {
+                        if (socket.isClosed()) break;
+                        throw e;
+                    }
+                    open.add(client);
+                    sessions.execute(() -> serve(client));
+                }
+                for (Socket client : open) {
+                    closeQuietly(client);
+                }
+            }
+        } finally {
+            server = null;
+            System.setOut(console);
+        }
+        console.println("Sales server stopped.");
+    }
+
+    // Stops accepting sessions; run() then disconnects the open ones and returns.
+    public static void stop() {
+        ServerSocket socket = server;
+        if (socket != null) closeQuietly(socket);
+    }
+
+    private static void readConsole() {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().equalsIgnoreCase("quit")) {
+                    stop();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // No console (e.g. started in the background): the server runs until the process is stopped.
+        }
+    }
+
+    private static void serve(Socket client) {
+        long start = System.nanoTime();
+        SESSIONS.increment();
+        try (client) {
+            client.setTcpNoDelay(true);
+            PrintStream out = new PrintStream(new BufferedOutputStream(client.getOutputStream(), 8192), false, StandardCharsets.UTF_8);
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            InputStream in = new FlushingInput(client.getInputStream(), writer);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+            out.println(GREETING);
+            String mode = reader.readLine();
+            if (mode == null) return;
+            switch (mode.trim().toLowerCase(Locale.ROOT)) {
+                case "menu":
+                    SessionConsole.bind(out);
+                    ComputerPartSalesSystem.runMenu(new Scanner(reader));
+                    break;
+                case "batch":
+                    SessionConsole.bind(System.err);
+                    BatchMode.run(reader, writer);
+                    break;
+                default:
+                    out.println("Unknown session type " + mode.trim() + ", expected menu or batch.");
+            }
+            writer.flush();
+        } catch (NoSuchElementException e) {
+            // The terminal hung up while a menu waited for input.
+        } catch (IOException | RuntimeException e) {
+            ServerSocket socket = server;
+            if (socket != null && !socket.isClosed()) {
+                SESSIONS_FAILED.increment();
+                System.err.println("Session " + client.getRemoteSocketAddress() + " ended: " + e);
+            }
+        } finally {
+            SessionConsole.unbind();
+            open.remove(client);
+            SESSION.record(start);
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            // Already closed.
+        }
+    }
+}
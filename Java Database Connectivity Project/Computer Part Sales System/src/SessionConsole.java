@@ -0,0 +1,75 @@
+/*
+ * System.out in server mode: a thread that serves a session prints to that session, every other thread (the
+ * accept loop, the aggregate flusher, loader workers) to the server's own console.
+ * - The operations and menus keep printing with System.out. SalesServer installs this stream once and every
+ *   session thread binds its output with bind(out) and unbind() when it ends.
+ * - Each call is forwarded to the session's stream without taking a lock of its own, so sessions never wait
+ *   for one another when they print.
+ * - current() is the bound stream of the calling thread (null outside a session); TableDumper writes its
+ *   tables there.
+ * by Jeffery
+ */
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+final class SessionConsole extends PrintStream {
+
+    private static final ThreadLocal<PrintStream> SESSION = new ThreadLocal<>();
+
+    private final PrintStream console;
+
+    SessionConsole(PrintStream console) {
+        super(console, true);
+        this.console = console;
+    }
+
+    static void bind(PrintStream out) {
+        SESSION.set(out);
+    }
+
+    static void unbind() {
+        SESSION.remove();
+    }
+
+    static PrintStream current() {
+        return SESSION.get();
+    }
+
+    private PrintStream target() {
+        PrintStream out = SESSION.get();
+        return out != null ? out : console;
+    }
+
+    @Override public void flush() { target().flush(); }
+    @Override public void close() { target().flush(); }
+    @Override public boolean checkError() { return target().checkError(); }
+    @Override public void write(int b) { target().write(b); }
+    @Override public void write(byte[] buf, int off, int len) { target().write(buf, off, len); }
+    @Override public void print(boolean b) { target().print(b); }
+    @Override public void print(char c) { target().print(c); }
+    @Override public void print(int i) { target().print(i); }
+    @Override public void print(long l) { target().print(l); }
+    @Override public void print(float f) { target().print(f); }
+    @Override public void print(double d) { target().print(d); }
+    @Override public void print(char[] s) { target().print(s); }
+    @Override public void print(String s) { target().print(s); }
+    @Override public void print(Object obj) { target().print(obj); }
+    @Override public void println() { target().println(); }
+    @Override public void println(boolean x) { target().println(x); }
+    @Override public void println(char x) { target().println(x); }
+    @Override public void println(int x) { target().println(x); }
+    @Override public void println(long x) { target().println(x); }
+    @Override public void println(float x) { target().println(x); }
+    @Override public void println(double x) { target().println(x); }
+    @Override public void println(char[] x) { target().println(x); }
+    @Override public void println(String x) { target().println(x); }
+    @Override public void println(Object x) { target().println(x); }
+    @Override public PrintStream printf(String format, Object... args) { return target().printf(format, args); }
+    @Override public PrintStream printf(Locale l, String format, Object... args) { return target().printf(l, format, args); }
+    @Override public PrintStream format(String format, Object... args) { return target().format(format, args); }
+    @Override public PrintStream format(Locale l, String format, Object... args) { return target().format(l, format, args); }
+    @Override public PrintStream append(CharSequence csq) { return target().append(csq); }
+    @Override public PrintStream append(CharSequence csq, int start, int end) { return target().append(csq, start, end); }
+    @Override public PrintStream append(char c) { return target().append(c); }
+}
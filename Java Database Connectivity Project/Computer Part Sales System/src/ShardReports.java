@@ -0,0 +1,150 @@
+/*
+ * The manager reports over all shards (see Shards): scatter-gather with partial aggregates.
+ * - Scatter: the report's partial query runs on every shard at once (Shards.scatter), each on its own pooled
+ *   connection, and reads the shard's own transaction rows:
+ *     salespersons / sales by experience   the shard's salespersons (with their sale counts)
+ *     sales by manufacturer                SUM of prices and COUNT per manufacturer
+ *     popular parts                        COUNT per part (all parts, not a per-shard top N, which could miss
+ *                                          a part that is second everywhere and first overall)
+ * - Gather: the partial results are merged here. Salespersons live on one shard only, so their rows are
+ *   concatenated and sorted; per manufacturer and per part the partial sums are added, then sorted and
+ *   named from the catalogue of shard 0.
+ * - The rows have the columns and order of the unsharded reports, so ManagerOperations and BatchMode print
+ *   them the same way. Each partial query is timed into Metrics (shards.partial).
+ * by Jeffery
+ */
+
+import java.sql.*;
+import java.util.*;
+
+public class ShardReports {
+
+    private static final Metrics.Timer PARTIAL = Metrics.timer("shards.partial");
+
+    private ShardReports() {
+    }
+
+    // {sID, sName, sPhoneNumber, sExperience} of every salesperson, by years of experience.
+    static List<Object[]> listSalespersons(boolean descending) throws SQLException {
+        Queries.Query query = descending ? Queries.LIST_SALESPERSONS_DESC : Queries.LIST_SALESPERSONS_ASC;
+        List<Object[]> rows = concat(Shards.scatter(shard -> {
+            long start = System.nanoTime();
+            List<Object[]> part = new ArrayList<>();
+            try (Connection conn = Shards.getConnection(shard);
+                 ResultSet rs = query.executeQuery(query.prepare(conn))) {
+                while (rs.next()) {
+                    part.add(new Object[]{rs.getInt("SID"), rs.getString("SNAME"), rs.getInt("SPHONENUMBER"), rs.getInt("SEXPERIENCE")});
+                }
+            } finally {
+                PARTIAL.record(start);
+            }
+            return part;
+        }));
+        Comparator<Object[]> byExperience = Comparator.comparingInt(r -> (Integer) r[3]);
+        rows.sort(descending ? byExperience.reversed() : byExperience);
+        return rows;
+    }
+
+    // {sID, sName, sExperience, number of sales} of the salespersons in the experience range, by sID descending.
+    static List<Object[]> salesByExperience(int lower, int upper) throws SQLException {
+        List<Object[]> rows = concat(Shards.scatter(shard -> {
+            long start = System.nanoTime();
+            List<Object[]> part = new ArrayList<>();
+            try (Connection conn = Shards.getConnection(shard)) {
+                PreparedStatement pstmt = Queries.SHARD_SALES_BY_SALESPERSON.prepare(conn);
+                pstmt.setInt(1, upper);
+                pstmt.setInt(2, lower);
+                try (ResultSet rs = Queries.SHARD_SALES_BY_SALESPERSON.executeQuery(pstmt)) {
+                    while (rs.next()) {
+                        part.add(new Object[]{rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getLong(4)});
+                    }
+                }
+            } finally {
+                PARTIAL.record(start);
+            }
+            return part;
+        }));
+        rows.sort(Comparator.comparingInt((Object[] r) -> (Integer) r[0]).reversed());
+        return rows;
+    }
+
+    // {mID, mName, total sales value} of the manufacturers with sales, by sales value descending.
+    static List<Object[]> salesByManufacturer() throws SQLException {
+        Map<Integer, long[]> totals = new HashMap<>();
+        for (Map<Integer, long[]> part : Shards.scatter(shard -> {
+            long start = System.nanoTime();
+            Map<Integer, long[]> sums = new HashMap<>();
+            try (Connection conn = Shards.getConnection(shard);
+                 ResultSet rs = Queries.SHARD_SALES_BY_MANUFACTURER.executeQuery(Queries.SHARD_SALES_BY_MANUFACTURER.prepare(conn))) {
+                while (rs.next()) {
+                    sums.put(rs.getInt(1), new long[]{rs.getLong(2), rs.getLong(3)});
+                }
+            } finally {
+                PARTIAL.record(start);
+            }
+            return sums;
+        })) {
+            for (Map.Entry<Integer, long[]> e : part.entrySet()) {
+                long[] t = totals.computeIfAbsent(e.getKey(), k -> new long[2]);
+                t[0] += e.getValue()[0];
+                t[1] += e.getValue()[1];
+            }
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (Map.Entry<Integer, long[]> e : totals.entrySet()) {
+            if (e.getValue()[1] > 0) ids.add(e.getKey());
+        }
+        ids.sort(Comparator.comparingLong((Integer id) -> totals.get(id)[0]).reversed());
+        Map<Integer, String> names = names("manufacturer", "mID", "mName", ids);
+        List<Object[]> rows = new ArrayList<>(ids.size());
+        for (int id : ids) rows.add(new Object[]{id, names.get(id), totals.get(id)[0]});
+        return rows;
+    }
+
+    // The n parts with the most sales over all shards, most sold first (ties by pID).
+    static List<PopularParts.Entry> topParts(int n) throws SQLException {
+        Map<Integer, Long> counts = new HashMap<>();
+        for (Map<Integer, Long> part : Shards.scatter(shard -> {
+            long start = System.nanoTime();
+            Map<Integer, Long> c = new HashMap<>();
+            try (Connection conn = Shards.getConnection(shard)) {
+                PreparedStatement pstmt = Queries.PART_SALE_COUNTS.prepare(conn);
+                pstmt.setFetchSize(1000);
+                try (ResultSet rs = Queries.PART_SALE_COUNTS.executeQuery(pstmt)) {
+                    while (rs.next()) c.put(rs.getInt(1), rs.getLong(2));
+                }
+            } finally {
+                PARTIAL.record(start);
+            }
+            return c;
+        })) {
+            for (Map.Entry<Integer, Long> e : part.entrySet()) counts.merge(e.getKey(), e.getValue(), Long::sum);
+        }
+        List<Map.Entry<Integer, Long>> ranked = new ArrayList<>(counts.entrySet());
+        ranked.sort(Map.Entry.<Integer, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        if (ranked.size() > n) ranked = ranked.subList(0, n);
+        List<Integer> ids = new ArrayList<>(ranked.size());
+        for (Map.Entry<Integer, Long> e : ranked) ids.add(e.getKey());
+        Map<Integer, String> names = names("part", "pID", "pName", ids);
+        List<PopularParts.Entry> result = new ArrayList<>(ranked.size());
+        for (Map.Entry<Integer, Long> e : ranked) {
+            result.add(new PopularParts.Entry(e.getKey(), names.get(e.getKey()), e.getValue()));
+        }
+        return result;
+    }
+
+    private static List<Object[]> concat(List<List<Object[]>> parts) {
+        List<Object[]> rows = new ArrayList<>();
+        for (List<Object[]> part : parts) rows.addAll(part);
+        return rows;
+    }
+
+    // Names from the catalogue, which every shard has; shard 0's is used.
+    private static Map<Integer, String> names(String table, String idColumn, String nameColumn, List<Integer> ids)
+            throws SQLException {
+        if (ids.isEmpty()) return Collections.emptyMap();
+        try (Connection conn = Shards.getConnection(0)) {
+            return Queries.lookupNames(conn, table, idColumn, nameColumn, ids);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Several databases (shards) for a multi-store deployment: each shard holds the catalogue and the sales of
+ * its own salespersons, so the sales of the stores no longer all hit one transaction table.
+ * - Configuration (looked up like the other database settings, see DBConnection):
+ *     sales.shards                   number of shards (default 1: no sharding)
+ *     sales.shard.<i>.url            the database of shard i, for i = 1 .. shards-1; shard 0 is sales.db.url
+ *     sales.shard.<i>.user / .password   (default: those of sales.db)
+ *     sales.shard.sidRange           salespersons are dealt to the shards in ranges of this many sIDs
+ *                                    (1..sidRange to shard 0, the next range to shard 1, ...; default 1000)
+ *   Every shard has its own ConnectionPool, sized like the primary's. configure(urls, user, password) sets
+ *   the shards at runtime (the benchmarks use several in-memory databases).
+ * - Partitioning: salesperson and transaction rows live on the shard of their sID (of(sID)); category,
+ *   manufacturer and part are copied to every shard. The available quantity of a part is the stock of the
+ *   shard's store, so a sale touches one database only: the sell path (SalesOperations) takes its connection
+ *   from connectionFor(sID), and a group of sales spanning shards is sold as one group per shard. A sale
+ *   takes from its salesperson's store only, so it can be out of stock while other stores still have units.
+ * - Transaction IDs stay unique over all shards: IdAllocator reserves them from shard 0 above the highest
+ *   tID of any shard (maxKey).
+ * - createTables, deleteTables and the load modes 1 and 2 run on every shard (onEveryShard). loadData
+ *   writes the folder's files for each shard into <folder>/shard-<i> first: category.txt and
+ *   manufacturer.txt copied, salesperson.txt and transaction.txt split by sID, and part.txt copied with the
+ *   available quantity of every part dealt out to the stores (quantity / shards each, the remainder one
+ *   unit each to the first shards), so all stores together hold the file's stock.
+ * - Reports: ShardReports runs the manager reports on all shards in parallel (scatter) and merges the
+ *   partial aggregates (gather). SalesRollups and ColumnStore load their sales from every shard. The part
+ *   search (and CatalogueCache) shows the stock of all stores together; showTable shows part, salesperson
+ *   and transaction shard by shard. The sales summary tables and SaleJournal are not used with shards.
+ * - getConnection() of DBConnection stays on shard 0, except inside onEveryShard / scatter, where it is
+ *   pinned to the shard being worked on, so the existing operations run unchanged on any shard.
+ * by Jeffery
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+
+public class Shards {
+
+    private static int sidRange = Math.max(1, DBConnection.intSetting("sales.shard.sidRange", 1000));
+
+    // A piece of work run once per shard.
+    interface Task<T> {
+        T run(int shard) throws Exception;
+    }
+
+    static volatile boolean enabled;
+    // Pools of shards 1..n-1; [0] is null (shard 0 is DBConnection's pool).
+    private static volatile ConnectionPool[] pools = new ConnectionPool[1];
+    private static final ThreadLocal<Integer> PINNED = new ThreadLocal<>();
+    private static ExecutorService workers;
+
+    static {
+        int count = DBConnection.intSetting("sales.shards", 1);
+        if (count > 1) {
+            String[] urls = new String[count];
+            String[] users = new String[count];
+            String[] passwords = new String[count];
+            for (int i = 1; i < count; i++) {
+                urls[i] = DBConnection.setting("sales.shard." + i + ".url", null);
+                users[i] = DBConnection.setting("sales.shard." + i + ".user", null);
+                passwords[i] = DBConnection.setting("sales.shard." + i + ".password", null);
+            }
+            if (Arrays.asList(urls).subList(1, count).contains(null)) {
+                System.out.println("sales.shards is " + count + " but not every sales.shard.<i>.url is set; running unsharded.");
+            } else {
+                install(urls, users, passwords);
+            }
+        }
+    }
+
+    private Shards() {
+    }
+
+    public static int count() {
+        return pools.length;
+    }
+
+    // The shard of a salesperson (0 without sharding).
+    public static int of(int salespersonId) {
+        if (!enabled) return 0;
+        return Math.floorMod(Math.floorDiv(salespersonId - 1, sidRange), pools.length);
+    }
+
+    // A connection to the shard that owns the salesperson's sales.
+    public static Connection connectionFor(int salespersonId) throws SQLException {
+        return getConnection(of(salespersonId));
+    }
+
+    public static Connection getConnection(int shard) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return (shard == 0 ? DBConnection.getPool() : pools[shard]).borrow();
+        } finally {
+            Metrics.CONNECTION.record(start);
+        }
+    }
+
+    // The pool DBConnection.getConnection() must use on this thread, or null for its own (shard 0).
+    static ConnectionPool pinnedPool() {
+        if (!enabled) return null;
+        Integer shard = PINNED.get();
+        return shard == null ? null : pools[shard];
+    }
+
+    static boolean isPinned() {
+        return PINNED.get() != null;
+    }
+
+    // Runs action on every shard in turn, on this thread, with getConnection() pinned to the shard. Returns
+    // false if it failed (returned false) on any shard; the shards after a failed one still run it.
+    static boolean onEveryShard(Predicate<Integer> action) {
+        boolean ok = true;
+        for (int shard = 0; shard < pools.length; shard++) {
+            System.out.println("Shard " + shard + ":");
+            PINNED.set(shard);
+            try {
+                ok &= action.test(shard);
+            } finally {
+                PINNED.remove();
+            }
+        }
+        return ok;
+    }
+
+    // Runs task on all shards at once and returns the results in shard order.
+    static <T> List<T> scatter(Task<T> task) throws SQLException {
+        int count = pools.length;
+        if (count == 1) return Collections.singletonList(call(task, 0));
+        List<Future<T>> futures = new ArrayList<>(count);
+        ExecutorService executor = workers();
+        for (int shard = 0; shard < count; shard++) {
+            int s = shard;
+            futures.add(executor.submit(() -> {
+                PINNED.set(s);
+                try {
+                    return call(task, s);
+                } finally {
+                    PINNED.remove();
+                }
+            }));
+        }
+        List<T> results = new ArrayList<>(count);
+        try {
+            for (Future<T> f : futures) results.add(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the shards", e);
+        } catch (ExecutionException e) {
+            for (Future<T> f : futures) f.cancel(true);
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            throw new SQLException(cause.getMessage(), cause);
+        }
+        return results;
+    }
+
+    private static <T> T call(Task<T> task, int shard) throws SQLException {
+        try {
+            return task.run(shard);
+        } catch (SQLException e) {
+            throw new SQLException("Shard " + shard + ": " + e.getMessage(), e.getSQLState(), e.getErrorCode(), e);
+        } catch (Exception e) {
+            throw new SQLException("Shard " + shard + ": " + e.getMessage(), e);
+        }
+    }
+
+    // MAX(column) of the table over all shards.
+    static long maxKey(String table, String column) throws SQLException {
+        long max = 0;
+        for (long m : scatter(shard -> {
+            try (Connection conn = getConnection(shard);
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT MAX(" + column + ") FROM " + table)) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        })) {
+            max = Math.max(max, m);
+        }
+        return max;
+    }
+
+    // Splits the data files of folder per shard, then runs loader on every shard's folder. Returns false if
+    // the files could not be split or the loader failed on a shard.
+    static boolean loadData(String folder, Predicate<String> loader) {
+        Path source = Paths.get(folder);
+        int count = pools.length;
+        Path[] targets = new Path[count];
+        try {
+            for (int shard = 0; shard < count; shard++) {
+                targets[shard] = Files.createDirectories(source.resolve("shard-" + shard));
+                for (String catalogue : new String[]{"category.txt", "manufacturer.txt"}) {
+                    Files.copy(source.resolve(catalogue), targets[shard].resolve(catalogue), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            splitStock(source, "part.txt", targets);
+            split(source, "salesperson.txt", 0, targets);
+            split(source, "transaction.txt", 2, targets);
+        } catch (IOException | RuntimeException e) {
+            System.out.println(" Error while splitting the data files: " + e.getMessage());
+            return false;
+        }
+        return onEveryShard(shard -> loader.test(targets[shard].toString()));
+    }
+
+    // Writes every record of the file to the shard of the sID in field sidField; unreadable ones to shard 0,
+    // whose loader rejects them.
+    private static void split(Path source, String file, int sidField, Path[] targets) throws IOException {
+        BufferedWriter[] out = new BufferedWriter[targets.length];
+        try (RecordReader reader = new RecordReader(source.resolve(file).toString())) {
+            for (int shard = 0; shard < targets.length; shard++) {
+                out[shard] = Files.newBufferedWriter(targets[shard].resolve(file), StandardCharsets.UTF_8);
+            }
+            while (reader.next()) {
+                int shard;
+                try {
+                    shard = of(reader.intField(sidField));
+                } catch (RuntimeException e) {
+                    shard = 0;
+                }
+                out[shard].write(reader.line());
+                out[shard].newLine();
+            }
+        } finally {
+            for (BufferedWriter w : out) {
+                if (w != null) w.close();
+            }
+        }
+    }
+
+    // Writes every record of the part file to every shard with its available quantity (the last field) dealt
+    // out over the shards; records without a readable quantity unchanged, the loaders reject them.
+    private static void splitStock(Path source, String file, Path[] targets) throws IOException {
+        BufferedWriter[] out = new BufferedWriter[targets.length];
+        try (RecordReader reader = new RecordReader(source.resolve(file).toString())) {
+            for (int shard = 0; shard < targets.length; shard++) {
+                out[shard] = Files.newBufferedWriter(targets[shard].resolve(file), StandardCharsets.UTF_8);
+            }
+            while (reader.next()) {
+                String line = reader.line();
+                int last = reader.fieldCount() - 1;
+                int quantity;
+                try {
+                    quantity = reader.intField(last);
+                } catch (RuntimeException e) {
+                    quantity = -1;
+                }
+                // The line up to the quantity, separators kept.
+                String head = line.substring(0, line.length() - reader.field(last).length());
+                for (int shard = 0; shard < targets.length; shard++) {
+                    if (quantity < 0) {
+                        out[shard].write(line);
+                    } else {
+                        out[shard].write(head + (quantity / targets.length + (shard < quantity % targets.length ? 1 : 0)));
+                    }
+                    out[shard].newLine();
+                }
+            }
+        } finally {
+            for (BufferedWriter w : out) {
+                if (w != null) w.close();
+            }
+        }
+    }
+
+    // Points shard 0 (DBConnection) at urls[0] and shards 1.. at the other URLs.
+    public static void configure(String[] urls, String user, String password) {
+        DBConnection.configure(urls[0], user, password);
+        String[] users = new String[urls.length];
+        String[] passwords = new String[urls.length];
+        Arrays.fill(users, user);
+        Arrays.fill(passwords, password);
+        install(urls, users, passwords);
+    }
+
+    private static synchronized void install(String[] urls, String[] users, String[] passwords) {
+        ConnectionPool[] p = new ConnectionPool[urls.length];
+        for (int i = 1; i < urls.length; i++) {
+            p[i] = DBConnection.newPool(urls[i], users[i], passwords[i]);
+        }
+        pools = p;
+        enabled = p.length > 1;
+    }
+
+    // Closes the pools of shards 1..; DBConnection.configure / shutdown call this.
+    static synchronized void shutdown() {
+        for (ConnectionPool p : pools) {
+            if (p != null) p.close();
+        }
+        pools = new ConnectionPool[1];
+        enabled = false;
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+    }
+
+    private static synchronized ExecutorService workers() {
+        if (workers == null) {
+            workers = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "shard-worker");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return workers;
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ * Compact columnar snapshot files (<table>.snap) for exporting / importing the five tables.
+ * - exportAll(folder) streams every table through JDBC (with a fetch size) into one file per table;
+ *   importAll(folder) loads them back with batched inserts, parents before children. The import is the
+ *   "Snapshot files" load mode of the admin menu and skips all text parsing.
+ * - Layout (big-endian, written through a FileChannel):
+ *     header:    magic "CPSSNAP1", table name, column count, then per column: name and type
+ *                (1 = INT, 2 = STRING, 3 = DATE as epoch day)
+ *     row group: row count (0 ends the file), then each column of the group in turn:
+ *                a null flag (+ null bitmap if set), then
+ *                INT / DATE: rowCount ints
+ *                STRING:     dictionary (count, then length + UTF-8 bytes per entry) and rowCount int codes
+ *   Strings are dictionary-encoded per row group (rowGroupSize rows), so repeated names and dates cost
+ *   4 bytes per row and memory stays bounded by one row group on both sides.
+ * by Jeffery
+ */
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.*;
+
+public class SnapshotFile {
+
+    private static int rowGroupSize = DBConnection.intSetting("sales.snapshot.rowGroupSize", 65536);
+
+    static final byte INT = 1;
+    static final byte STRING = 2;
+    static final byte DATE = 3;
+
+    private static final byte[] MAGIC = "CPSSNAP1".getBytes(StandardCharsets.US_ASCII);
+    private static final int IO_BUFFER = 1 << 20;
+
+    // Returns false if a table could not be exported.
+    public static boolean exportAll(String folderPath) {
+        long start = System.nanoTime();
+        try {
+            for (BulkLoader.Table table : BulkLoader.TABLES) {
+                Path file = Paths.get(folderPath, table.name + ".snap");
+                long began = System.nanoTime();
+                long rows = exportTable(table.name, file);
+                Metrics.timer("admin.export.snapshot." + table.name).record(began);
+                System.out.printf(" %s.snap: %d rows, %d bytes%n", table.name, rows, file.toFile().length());
+            }
+            System.out.printf("Processing...Done! Tables exported in %.2f s%n", (System.nanoTime() - start) / 1e9);
+            return true;
+        } catch (SQLException | IOException e) {
+            System.out.println(" Error while exporting data: " + e.getMessage());
+            return false;
+        } finally {
+            Metrics.timer("admin.export.snapshot").record(start);
+        }
+    }
+
+    // Returns false if a table could not be imported.
+    public static boolean importAll(String folderPath) {
+        long start = System.nanoTime();
+        List<BulkLoader.Result> results = new ArrayList<>();
+        boolean ok = false;
+        try {
+            for (BulkLoader.Table table : BulkLoader.TABLES) {
+                results.add(importTable(table.name, Paths.get(folderPath, table.name + ".snap")));
+                System.out.println(" " + table.name + ".snap SUCCESSFUL!");
+            }
+            System.out.println(" Processing...Done! Data is inputted to the database!");
+            ok = true;
+        } catch (SQLException | IOException e) {
+            System.out.println(" Error while loading data: " + e.getMessage());
+        }
+        ok &= AdminOperations.loadFinished();
+        Metrics.timer("admin.load.snapshot").record(start);
+        BulkLoader.printSummary(results);
+        return ok;
+    }
+
+    static long exportTable(String table, Path file) throws SQLException, IOException {
+        try (Connection conn = DBConnection.getConnection();
+             Statement stmt = conn.createStatement();
+             Output out = new Output(file)) {
+            stmt.setFetchSize(Math.min(rowGroupSize, 10000));
+
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + table)) {
+                ResultSetMetaData meta = rs.getMetaData();
+                int columnCount = meta.getColumnCount();
+                byte[] types = new byte[columnCount];
+                Column[] columns = new Column[columnCount];
+
+                out.put(MAGIC);
+                out.putString(table);
+                out.putInt(columnCount);
+                for (int c = 0; c < columnCount; c++) {
+                    types[c] = typeOf(meta, c + 1);
+                    columns[c] = new Column(types[c], rowGroupSize);
+                    out.putString(meta.getColumnName(c + 1));
+                    out.put(types[c]);
+                }
+
+                long total = 0;
+                int n = 0;
+                while (rs.next()) {
+                    for (int c = 0; c < columnCount; c++) {
+                        columns[c].read(rs, c + 1, n);
+                    }
+                    n++;
+                    if (n == rowGroupSize) {
+                        writeGroup(out, columns, n);
+                        total += n;
+                        n = 0;
+                    }
+                }
+                if (n > 0) {
+                    writeGroup(out, columns, n);
+                    total += n;
+                }
+                out.putInt(0);
+                return total;
+            }
+        }
+    }
+
+    static BulkLoader.Result importTable(String table, Path file) throws SQLException, IOException {
+        BulkLoader.Result result = new BulkLoader.Result(table);
+        long start = System.nanoTime();
+
+        try (Input in = new Input(file);
+             Connection conn = DBConnection.getConnection()) {
+            byte[] magic = in.getBytes(MAGIC.length);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file + " is not a snapshot file");
+            }
+            String storedTable = in.getString();
+            if (!storedTable.equalsIgnoreCase(table)) {
+                throw new IOException(file + " holds table " + storedTable + ", expected " + table);
+            }
+
+            int columnCount = in.getInt();
+            String[] names = new String[columnCount];
+            Column[] columns = new Column[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                names[c] = in.getString();
+                columns[c] = new Column(in.get(), 0);
+            }
+
+            String sql = "INSERT INTO " + table + " (" + String.join(", ", names) + ") VALUES ("
+                    + String.join(", ", Collections.nCopies(columnCount, "?")) + ")";
+
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                long sinceCommit = 0;
+                int n;
+                while ((n = in.getInt()) > 0) {
+                    for (Column column : columns) {
+                        column.readGroup(in, n);
+                    }
+                    for (int row = 0; row < n; row++) {
+                        for (int c = 0; c < columnCount; c++) {
+                            columns[c].bind(pstmt, c + 1, row);
+                        }
+                        pstmt.addBatch();
+                        if ((row + 1) % BulkLoader.batchSize == 0) {
+                            executeBatch(pstmt);
+                        }
+                    }
+                    executeBatch(pstmt);
+
+                    result.loaded += n;
+                    sinceCommit += n;
+                    if (sinceCommit >= BulkLoader.commitInterval) {
+                        conn.commit();
+                        sinceCommit = 0;
+                    }
+                }
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+
+        result.elapsedNanos = System.nanoTime() - start;
+        Metrics.timer("admin.load.snapshot." + table).recordNanos(result.elapsedNanos);
+        return result;
+    }
+
+    // The INSERT text depends on the columns stored in the file, so it is not a Queries statement; its batches
+    // are timed into Metrics.EXECUTE here.
+    private static void executeBatch(PreparedStatement pstmt) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            pstmt.executeBatch();
+        } finally {
+            Metrics.EXECUTE.record(start);
+        }
+    }
+
+    private static byte typeOf(ResultSetMetaData meta, int column) throws SQLException {
+        switch (meta.getColumnType(column)) {
+            case Types.DATE:
+            case Types.TIMESTAMP:
+                return DATE;
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+            case Types.BIGINT:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return INT;
+            default:
+                return STRING;
+        }
+    }
+
+    private static void writeGroup(Output out, Column[] columns, int n) throws IOException {
+        out.putInt(n);
+        for (Column column : columns) {
+            column.writeGroup(out, n);
+        }
+    }
+
+    // One column of the current row group, kept as primitive ints (values or dictionary codes).
+    private static final class Column {
+        final byte type;
+        int[] values;
+        long[] nulls;
+        boolean anyNull;
+        // STRING only: dictionary of the current row group.
+        final Map<String, Integer> codes = new HashMap<>();
+        final List<String> dictionary = new ArrayList<>();
+
+        Column(byte type, int capacity) {
+            this.type = type;
+            this.values = new int[Math.max(capacity, 16)];
+            this.nulls = new long[(values.length + 63) / 64];
+        }
+
+        void read(ResultSet rs, int column, int row) throws SQLException {
+            if (row == 0) reset();
+            int value;
+            switch (type) {
+                case INT:
+                    value = rs.getInt(column);
+                    break;
+                case DATE:
+                    java.sql.Date date = rs.getDate(column);
+                    value = date == null ? 0 : (int) date.toLocalDate().toEpochDay();
+                    break;
+                default:
+                    String s = rs.getString(column);
+                    value = s == null ? 0 : codes.computeIfAbsent(s, k -> {
+                        dictionary.add(k);
+                        return dictionary.size() - 1;
+                    });
+            }
+            values[row] = value;
+            if (rs.wasNull()) {
+                nulls[row >>> 6] |= 1L << row;
+                anyNull = true;
+            }
+        }
+
+        void writeGroup(Output out, int n) throws IOException {
+            out.put((byte) (anyNull ? 1 : 0));
+            if (anyNull) {
+                for (int i = 0; i < (n + 63) / 64; i++) out.putLong(nulls[i]);
+            }
+            if (type == STRING) {
+                out.putInt(dictionary.size());
+                for (String s : dictionary) out.putString(s);
+            }
+            out.putInts(values, n);
+        }
+
+        void readGroup(Input in, int n) throws IOException {
+            if (values.length < n) {
+                values = new int[n];
+                nulls = new long[(n + 63) / 64];
+            }
+            reset();
+            anyNull = in.get() != 0;
+            if (anyNull) {
+                for (int i = 0; i < (n + 63) / 64; i++) nulls[i] = in.getLong();
+            }
+            if (type == STRING) {
+                int size = in.getInt();
+                for (int i = 0; i < size; i++) dictionary.add(in.getString());
+            }
+            in.getInts(values, n);
+        }
+
+        void bind(PreparedStatement pstmt, int index, int row) throws SQLException {
+            boolean isNull = anyNull && (nulls[row >>> 6] & (1L << row)) != 0;
+            switch (type) {
+                case INT:
+                    if (isNull) pstmt.setNull(index, Types.INTEGER);
+                    else pstmt.setInt(index, values[row]);
+                    break;
+                case DATE:
+                    if (isNull) pstmt.setNull(index, Types.DATE);
+                    else pstmt.setDate(index, java.sql.Date.valueOf(LocalDate.ofEpochDay(values[row])));
+                    break;
+                default:
+                    if (isNull) pstmt.setNull(index, Types.VARCHAR);
+                    else pstmt.setString(index, dictionary.get(values[row]));
+            }
+        }
+
+        private void reset() {
+            if (anyNull) Arrays.fill(nulls, 0L);
+            anyNull = false;
+            codes.clear();
+            dictionary.clear();
+        }
+    }
+
+    // Buffered big-endian writer on a FileChannel.
+    private static final class Output implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(IO_BUFFER);
+
+        Output(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        }
+
+        void put(byte b) throws IOException {
+            ensure(1);
+            buf.put(b);
+        }
+
+        void putInt(int v) throws IOException {
+            ensure(4);
+            buf.putInt(v);
+        }
+
+        void putLong(long v) throws IOException {
+            ensure(8);
+            buf.putLong(v);
+        }
+
+        void putInts(int[] values, int n) throws IOException {
+            int i = 0;
+            while (i < n) {
+                ensure(4);
+                int chunk = Math.min(n - i, buf.remaining() / 4);
+                buf.asIntBuffer().put(values, i, chunk);
+                buf.position(buf.position() + chunk * 4);
+                i += chunk;
+            }
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int i = 0;
+            while (i < bytes.length) {
+                ensure(1);
+                int chunk = Math.min(bytes.length - i, buf.remaining());
+                buf.put(bytes, i, chunk);
+                i += chunk;
+            }
+        }
+
+        void putString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            put(bytes);
+        }
+
+        private void ensure(int n) throws IOException {
+            if (buf.remaining() < n) flush();
+        }
+
+        private void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) channel.write(buf);
+            buf.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    // Buffered big-endian reader on a FileChannel.
+    private static final class Input implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(IO_BUFFER);
+
+        Input(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            buf.limit(0);
+        }
+
+        byte get() throws IOException {
+            require(1);
+            return buf.get();
+        }
+
+        int getInt() throws IOException {
+            require(4);
+            return buf.getInt();
+        }
+
+        long getLong() throws IOException {
+            require(8);
+            return buf.getLong();
+        }
+
+        void getInts(int[] values, int n) throws IOException {
+            int i = 0;
+            while (i < n) {
+                require(4);
+                int chunk = Math.min(n - i, buf.remaining() / 4);
+                buf.asIntBuffer().get(values, i, chunk);
+                buf.position(buf.position() + chunk * 4);
+                i += chunk;
+            }
+        }
+
+        byte[] getBytes(int n) throws IOException {
+            byte[] bytes = new byte[n];
+            int i = 0;
+            while (i < n) {
+                require(1);
+                int chunk = Math.min(n - i, buf.remaining());
+                buf.get(bytes, i, chunk);
+                i += chunk;
+            }
+            return bytes;
+        }
+
+        String getString() throws IOException {
+            return new String(getBytes(getInt()), StandardCharsets.UTF_8);
+        }
+
+        private void require(int n) throws IOException {
+            if (buf.remaining() >= n) return;
+            buf.compact();
+            while (buf.position() < n) {
+                if (channel.read(buf) < 0) throw new EOFException("Unexpected end of snapshot file");
+            }
+            buf.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
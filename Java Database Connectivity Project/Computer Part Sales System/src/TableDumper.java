@@ -0,0 +1,124 @@
+/*
+ * Streams the content of a table to the console (or any Writer) for AdminOperations.showTable.
+ * - Rows are read in pages using keyset pagination on the primary key
+ *   (WHERE key > last key ORDER BY key FETCH FIRST pageSize ROWS ONLY), with a JDBC fetch size,
+ *   so memory use does not depend on the table size and no page needs an OFFSET scan.
+ * - Each row is formatted once into a reused StringBuilder and written to a large buffered writer
+ *   instead of several System.out.print calls per cell.
+ * - maxRows stops the dump after N rows (0 = all rows).
+ * - Only the tables created by AdminOperations.createTables can be shown; their two page queries are
+ *   named Queries (admin.show.<table>.first / .next), cached per connection.
+ *
+ * Tunable with -Dsales.show.fetchSize and -Dsales.show.pageSize.
+ * by Jeffery
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.Map;
+
+public class TableDumper {
+
+    private static int fetchSize = DBConnection.intSetting("sales.show.fetchSize", 1000);
+    private static int pageSize = DBConnection.intSetting("sales.show.pageSize", 10000);
+
+    private static final int OUTPUT_BUFFER = 1 << 16;
+
+    static final Map<String, String> PRIMARY_KEYS = Map.of(
+            "category", "cID",
+            "manufacturer", "mID",
+            "part", "pID",
+            "salesperson", "sID",
+            "transaction", "tID");
+
+    // Where consoleWriter() writes; the benchmarks replace it to discard the tables they print.
+    static OutputStream console = new FileOutputStream(FileDescriptor.out);
+
+    // A buffered writer on the process' standard output (or on the session's output when a SalesServer session
+    // calls it). Flush it when done; do not close it.
+    static Writer consoleWriter() {
+        System.out.flush();
+        OutputStream session = SessionConsole.current();
+        return new BufferedWriter(new OutputStreamWriter(session != null ? session : console, StandardCharsets.UTF_8), OUTPUT_BUFFER);
+    }
+
+    // Writes a header line and up to maxRows rows (0 = all) of the table; returns the number of rows written.
+    public static long dump(String tableName, long maxRows, Writer out) throws SQLException, IOException {
+        String table = tableName.toLowerCase();
+        String key = PRIMARY_KEYS.get(table);
+        if (key == null) {
+            throw new SQLException("Unknown table " + tableName);
+        }
+
+        Queries.Query firstPage = Queries.define("admin.show." + table + ".first",
+                "SELECT * FROM " + table + " ORDER BY " + key + " FETCH FIRST ? ROWS ONLY");
+        Queries.Query nextPage = Queries.define("admin.show." + table + ".next",
+                "SELECT * FROM " + table + " WHERE " + key + " > ? ORDER BY " + key + " FETCH FIRST ? ROWS ONLY");
+
+        StringBuilder line = new StringBuilder(256);
+        long written = 0;
+
+        try (Connection conn = DBConnection.getReadConnection()) {
+            PreparedStatement first = firstPage.prepare(conn);
+            PreparedStatement next = nextPage.prepare(conn);
+            first.setFetchSize(fetchSize);
+            next.setFetchSize(fetchSize);
+
+            long lastKey = 0;
+            boolean header = true;
+            while (true) {
+                int limit = pageSize;
+                if (maxRows > 0) limit = (int) Math.min(limit, maxRows - written);
+                if (limit <= 0) break;
+
+                PreparedStatement page;
+                Queries.Query pageQuery;
+                if (header) {
+                    page = first;
+                    pageQuery = firstPage;
+                    page.setInt(1, limit);
+                } else {
+                    page = next;
+                    pageQuery = nextPage;
+                    page.setLong(1, lastKey);
+                    page.setInt(2, limit);
+                }
+
+                int rows = 0;
+                try (ResultSet rs = pageQuery.executeQuery(page)) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    int columnCount = meta.getColumnCount();
+                    int keyColumn = rs.findColumn(key);
+
+                    if (header) {
+                        line.setLength(0);
+                        for (int i = 1; i <= columnCount; i++) {
+                            line.append("| ").append(meta.getColumnName(i)).append(' ');
+                        }
+                        line.append('|').append(System.lineSeparator());
+                        out.append(line);
+                        header = false;
+                    }
+
+                    while (rs.next()) {
+                        line.setLength(0);
+                        for (int i = 1; i <= columnCount; i++) {
+                            line.append("| ").append(rs.getString(i)).append(' ');
+                        }
+                        line.append('|').append(System.lineSeparator());
+                        out.append(line);
+
+                        lastKey = rs.getLong(keyColumn);
+                        rows++;
+                    }
+                }
+
+                written += rows;
+                if (rows < limit) break;
+            }
+        }
+        out.flush();
+        return written;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * In-memory trigram index for substring search over part / manufacturer names.
+ * - Every 3-character window of the lower-cased text is a key; each key maps to a sorted int[] posting
+ *   list of the IDs (PIDs) whose text contains it. No boxed IDs are stored.
+ * - candidates(keyword) intersects the posting lists of the keyword's trigrams, smallest list first, and
+ *   returns the IDs that may contain the keyword. The caller verifies each candidate (exact or
+ *   case-insensitive contains), so one index serves both case-sensitive and case-insensitive search.
+ * - Keywords shorter than 3 characters cannot be narrowed down; candidates() returns null for them
+ *   and the caller scans all rows.
+ * - add() / remove() update the index incrementally (binary insert / delete in the affected lists);
+ *   a read / write lock lets many searches run while no update is in progress.
+ * by Jeffery
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class TrigramIndex {
+
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // A sorted, growable list of distinct ints.
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        boolean add(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) return false;
+            at = -at - 1;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+            return true;
+        }
+
+        void remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) return;
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+        }
+    }
+
+    public void add(int id, String text) {
+        if (text == null) return;
+        String s = normalize(text);
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i + 3 <= s.length(); i++) {
+                postings.computeIfAbsent(key(s, i), k -> new Postings()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id, String text) {
+        if (text == null) return;
+        String s = normalize(text);
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i + 3 <= s.length(); i++) {
+                Long key = key(s, i);
+                Postings p = postings.get(key);
+                if (p == null) continue;
+                p.remove(id);
+                if (p.size == 0) postings.remove(key);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Sorted IDs whose text may contain the keyword (ignoring case), or null if the keyword is too short to use the index.
+    public int[] candidates(String keyword) {
+        String s = normalize(keyword);
+        if (s.length() < 3) return null;
+
+        lock.readLock().lock();
+        try {
+            int grams = s.length() - 2;
+            Postings[] lists = new Postings[grams];
+            for (int i = 0; i < grams; i++) {
+                Postings p = postings.get(key(s, i));
+                if (p == null) return new int[0];
+                lists[i] = p;
+            }
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+            int[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+            int n = result.length;
+            for (int l = 1; l < lists.length && n > 0; l++) {
+                n = intersect(result, n, lists[l]);
+            }
+            return n == result.length ? result : Arrays.copyOf(result, n);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Keeps the first n entries of result that also appear in p (both sorted); returns the new count.
+    private static int intersect(int[] result, int n, Postings p) {
+        int out = 0;
+        int j = 0;
+        for (int i = 0; i < n && j < p.size; i++) {
+            int id = result[i];
+            if (p.size - j > 32) {
+                // Gallop through long lists instead of stepping one element at a time.
+                int at = Arrays.binarySearch(p.ids, j, p.size, id);
+                if (at >= 0) {
+                    result[out++] = id;
+                    j = at + 1;
+                } else {
+                    j = -at - 1;
+                }
+            } else {
+                while (j < p.size && p.ids[j] < id) j++;
+                if (j < p.size && p.ids[j] == id) {
+                    result[out++] = id;
+                    j++;
+                }
+            }
+        }
+        return out;
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    private static Long key(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+}
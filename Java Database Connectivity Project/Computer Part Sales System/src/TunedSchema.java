@@ -0,0 +1,89 @@
+/*
+ * The tuned physical schema (-Dsales.schema.tuned=true, or "create tuned" in batch mode): the indexes the
+ * operations' joins and reports need, on top of the primary keys that createTables always creates.
+ *     transaction (pID)             FK; PopularParts / top parts GROUP BY pID, the manufacturer summary rebuild
+ *                                   join; deleting or re-keying a part does not scan (or on Oracle lock) the table
+ *     transaction (sID)             FK; the salesperson summary rebuild GROUP BY sID
+ *     transaction (tDate, pID, sID) SalesRollups' daily backfill and ColumnStore's load read it instead of the
+ *                                   table; date ranges over the transactions
+ *     part (mID), part (cID)        FK; the part search joins and searches by manufacturer
+ *     salesperson (sExperience, sID, sName, sPhoneNumber)
+ *                                   the list ordered by experience and the experience range report, without
+ *                                   touching the table or sorting
+ *   Nothing indexes pAvailableQuantity, so the stock UPDATE of every sale maintains no index; a sale pays
+ *   for three index entries of its transaction row.
+ * - With -Dsales.schema.partition=true the transaction table is range partitioned by month of tDate
+ *   (interval partitioning; Oracle with the partitioning option), so date range reports read only the months
+ *   they cover. The date index is then LOCAL; a sale without a date is refused. Backends without
+ *   partitioning (H2) get the plain table and a message.
+ * - With -Dsales.schema.deferIndexes=true createTables leaves the indexes out and the loaders build them
+ *   once the data is in (buildIndexes, via AdminOperations.loadFinished): one sorted build per index instead
+ *   of maintaining it row by row during a bulk load. Indexes that already exist are skipped.
+ *
+ * Tunable with -Dsales.schema.tuned, -Dsales.schema.partition and -Dsales.schema.deferIndexes.
+ * by Jeffery
+ */
+
+import java.sql.*;
+import java.util.*;
+
+public class TunedSchema {
+
+    static boolean enabled = DBConnection.booleanSetting("sales.schema.tuned", false);
+    private static boolean partition = DBConnection.booleanSetting("sales.schema.partition", false);
+    static boolean deferIndexes = DBConnection.booleanSetting("sales.schema.deferIndexes", false);
+
+    private static final Metrics.Timer BUILD_INDEXES = Metrics.timer("admin.buildIndexes");
+
+    // Index name -> {table, columns}, in build order.
+    static final Map<String, String[]> INDEXES = new LinkedHashMap<>();
+
+    static {
+        INDEXES.put("idx_transaction_part", new String[]{"transaction", "pID"});
+        INDEXES.put("idx_transaction_salesperson", new String[]{"transaction", "sID"});
+        INDEXES.put("idx_transaction_date", new String[]{"transaction", "tDate, pID, sID"});
+        INDEXES.put("idx_part_manufacturer", new String[]{"part", "mID"});
+        INDEXES.put("idx_part_category", new String[]{"part", "cID"});
+        INDEXES.put("idx_salesperson_experience", new String[]{"salesperson", "sExperience, sID, sName, sPhoneNumber"});
+    }
+
+    // The CREATE TABLE statement of a table in the tuned schema.
+    static String tableDdl(String table, String ddl) {
+        if (!table.equals("transaction") || !partition) return ddl;
+        String clause = DBConnection.dialect().partitionByMonth("tDate");
+        if (clause == null) {
+            System.out.println("Note: " + DBConnection.dialect() + " has no table partitioning, transaction is created unpartitioned.");
+            return ddl;
+        }
+        return ddl + clause;
+    }
+
+    // Creates the indexes that do not exist yet.
+    public static void buildIndexes() throws SQLException {
+        long start = System.nanoTime();
+        try (Connection conn = DBConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            Set<String> existing = new HashSet<>();
+            DatabaseMetaData meta = conn.getMetaData();
+            for (String table : new String[]{"TRANSACTION", "PART", "SALESPERSON"}) {
+                // approximate = true: the Oracle driver would otherwise ANALYZE the table first.
+                try (ResultSet rs = meta.getIndexInfo(null, conn.getSchema(), table, false, true)) {
+                    while (rs.next()) {
+                        String name = rs.getString("INDEX_NAME");
+                        if (name != null) existing.add(name.toUpperCase(Locale.ROOT));
+                    }
+                }
+            }
+            for (Map.Entry<String, String[]> e : INDEXES.entrySet()) {
+                if (existing.contains(e.getKey().toUpperCase(Locale.ROOT))) continue;
+                String table = e.getValue()[0];
+                boolean local = table.equals("transaction") && partition && e.getKey().equals("idx_transaction_date")
+                        && DBConnection.dialect().partitionByMonth("tDate") != null;
+                stmt.executeUpdate("CREATE INDEX " + e.getKey() + " ON " + table + " (" + e.getValue()[1] + ")"
+                        + (local ? " LOCAL" : ""));
+            }
+        } finally {
+            BUILD_INDEXES.record(start);
+        }
+    }
+}